@@ -4,6 +4,8 @@ import com.sampullara.cli.Args;
 import com.sampullara.cli.Argument;
 import gin.edit.Edit;
 import gin.edit.Edit.EditType;
+import gin.edit.EditBandit;
+import gin.edit.NoEdit;
 import gin.edit.llm.LLMConfig;
 import gin.edit.llm.LLMConfig.PromptType;
 import gin.test.InternalTestRunner;
@@ -82,8 +84,16 @@ public class LocalSearch implements Serializable {
             + "You probably don't want to set this to true for Automatic Program Repair.")
     protected Boolean failFast = false;
 
+    @Argument(alias = "eb", description = EditBandit.ENABLE_DESCRIPTION)
+    protected Boolean editBandit = false;
+
+    @Argument(alias = "ebd", description = EditBandit.DECAY_DESCRIPTION)
+    protected Double editBanditDecay = EditBandit.DEFAULT_DECAY;
+
     protected SourceFile sourceFile;
     protected Random rng;
+    // chooses the class of each new edit; null to choose uniformly
+    protected transient EditBandit bandit;
     InternalTestRunner testRunner;
 
     // Constructor parses arguments
@@ -95,6 +105,7 @@ public class LocalSearch implements Serializable {
         this.sourceFile = SourceFile.makeSourceFileForEditTypes(editTypes, this.filename.toString(), Collections.singletonList(this.methodSignature));
 
         this.rng = new JDKRandomBridge(RandomSource.MT, Long.valueOf(seed));
+        this.bandit = EditBandit.fromOptions(editBandit, editBanditDecay);
         if (this.packageDir == null) {
             this.packageDir = (this.filename.getParentFile() != null) ? this.filename.getParentFile().getAbsoluteFile() : new File(System.getProperty("user.dir"));
         }
@@ -169,6 +180,10 @@ public class LocalSearch implements Serializable {
             Patch neighbour = neighbour(bestPatch);
             UnitTestResultSet testResultSet = testRunner.runTests(neighbour, null, 1);
 
+            if (neighbour.size() > bestPatch.size()) {
+                rewardEdit(neighbour, testResultSet, bestTime);
+            }
+
             String msg;
 
             if (!testResultSet.getValidPatch()) {
@@ -194,10 +209,31 @@ public class LocalSearch implements Serializable {
                 100.0f * ((origTime - bestTime) / (1.0f * origTime)),
                 bestPatch));
 
+        if (bandit != null) {
+            Logger.info(bandit);
+        }
+
         bestPatch.writePatchedSourceToFile(sourceFile.getRelativePathToWorkingDir() + ".optimised", null);
 
     }
 
+    /**
+     * Reward the class of the edit just added to a patch with how the patch did when tested.
+     *
+     * @param neighbour the patch, with the new edit last
+     * @param bestTime  execution time of the patch the edit was added to
+     */
+    private void rewardEdit(Patch neighbour, UnitTestResultSet testResultSet, long bestTime) {
+        Edit edit = neighbour.getEdits().get(neighbour.size() - 1);
+        if (bandit == null || edit instanceof NoEdit) {
+            return;
+        }
+        boolean passed = testResultSet.getValidPatch() && testResultSet.getCleanCompile() && testResultSet.allTestsSuccessful();
+        long time = testResultSet.totalExecutionTime();
+        double improvement = (passed && time < bestTime) ? (bestTime - time) / (double) bestTime : 0;
+        bandit.record(edit.getClass(), passed, improvement, testResultSet.getCompileTimeNS() + time);
+    }
+
 
     /**
      * Generate a neighbouring patch, by either deleting an edit, or adding a new one.
@@ -212,7 +248,7 @@ public class LocalSearch implements Serializable {
         if (neighbour.size() > 0 && rng.nextFloat() > 0.5) {
             neighbour.remove(rng.nextInt(neighbour.size()));
         } else {
-            neighbour.addRandomEditOfClasses(rng, editTypes);
+            neighbour.addRandomEditOfClasses(rng, editTypes, bandit);
         }
 
         return neighbour;
@@ -0,0 +1,120 @@
+package gin;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A set of patches to several source files, evaluated together as one change.
+ * Each patch is against the source file of one top-level class.
+ */
+public class MultiClassPatch implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = -3157280466231380919L;
+
+    /**
+     * Patch for each class, by fully qualified class name, in the order they were added.
+     */
+    private final Map<String, Patch> patches = new LinkedHashMap<>();
+    private boolean lastApplyWasValid = false;
+    private boolean lastApplyWasNoOp = false;
+    private List<Boolean> editsValidOnLastApply = Collections.emptyList();
+
+    /**
+     * Add the patch of one class.
+     *
+     * @param className fully qualified name of the top-level class in the patch's source file
+     * @param patch     patch to that source file
+     * @throws IllegalArgumentException if the class already has a patch
+     */
+    public void add(String className, Patch patch) {
+        if (patches.containsKey(className)) {
+            throw new IllegalArgumentException("Class " + className + " is already patched.");
+        }
+        patches.put(className, patch);
+    }
+
+    public Set<String> getClassNames() {
+        return Collections.unmodifiableSet(patches.keySet());
+    }
+
+    public Map<String, Patch> getPatches() {
+        return Collections.unmodifiableMap(patches);
+    }
+
+    /**
+     * @return the patch of the first class added, used where a single patch is reported
+     */
+    public Patch getPrimaryPatch() {
+        return patches.values().iterator().next();
+    }
+
+    /**
+     * @return the number of edits over all classes
+     */
+    public int size() {
+        int size = 0;
+        for (Patch patch : patches.values()) {
+            size += patch.size();
+        }
+        return size;
+    }
+
+    /**
+     * Apply the patch of each class.
+     *
+     * @param metadata passed on to each patch; see {@link Patch#apply(Object)}
+     * @return the patched source of each class, by fully qualified class name
+     */
+    public Map<String, String> apply(Object metadata) {
+        Map<String, String> patchedSources = new LinkedHashMap<>();
+        lastApplyWasValid = true;
+        lastApplyWasNoOp = true;
+        editsValidOnLastApply = new ArrayList<>();
+        for (Map.Entry<String, Patch> entry : patches.entrySet()) {
+            Patch patch = entry.getValue();
+            patchedSources.put(entry.getKey(), patch.apply(metadata));
+            lastApplyWasValid &= patch.lastApplyWasValid();
+            lastApplyWasNoOp &= patch.lastApplyWasNoOp();
+            editsValidOnLastApply.addAll(patch.getEditsInvalidOnLastApply());
+        }
+        return patchedSources;
+    }
+
+    /**
+     * @return true if the patches of all classes applied cleanly on the last apply
+     */
+    public boolean lastApplyWasValid() {
+        return lastApplyWasValid;
+    }
+
+    /**
+     * @return true if the code of no class changed on the last apply
+     */
+    public boolean lastApplyWasNoOp() {
+        return lastApplyWasNoOp;
+    }
+
+    /**
+     * @return whether each edit was applied on the last apply, over all classes in order
+     */
+    public List<Boolean> getEditsInvalidOnLastApply() {
+        return editsValidOnLastApply;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        for (Map.Entry<String, Patch> entry : patches.entrySet()) {
+            description.append(entry.getKey()).append(": ").append(entry.getValue()).append(" ");
+        }
+        return description.toString().trim();
+    }
+
+}
@@ -2,6 +2,8 @@ package gin;
 
 import gin.edit.Edit;
 import gin.edit.Edit.EditType;
+import gin.edit.EditBandit;
+import gin.edit.EditFactory;
 import gin.edit.NoEdit;
 import gin.edit.line.LineEdit;
 import gin.edit.llm.LLMReplaceStatement;
@@ -13,8 +15,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serial;
 import java.io.Serializable;
+import java.lang.ref.SoftReference;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.regex.Pattern;
 
 /**
  * Represents a patch, a potential set of changes to a sourcefile.
@@ -38,7 +42,15 @@ public class Patch implements Serializable, Cloneable {
      * identifies individual edits that were applied successfully (true) or failed due to JP (false)
      */
     List<Boolean> editsValidOnLastApply;
+    /**
+     * true if the edits left the code unchanged on the last apply; see {@link SourceFile#hasSameCodeAs}
+     */
+    boolean lastApplyWasNoOp;
     private Class<?> superClassOfEdits;
+    /**
+     * source files given by applying prefixes of the edits, longest first; shared with clones
+     */
+    private transient AppliedPrefix appliedPrefixes;
 
     public Patch(SourceFile sourceFile) {
         this.sourceFile = sourceFile;
@@ -52,6 +64,7 @@ public class Patch implements Serializable, Cloneable {
         Patch clonePatch = new Patch(this.sourceFile);
         clonePatch.edits = new LinkedList<>(this.edits);
         clonePatch.superClassOfEdits = this.superClassOfEdits;
+        clonePatch.appliedPrefixes = this.appliedPrefixes;
         return clonePatch;
     }
 
@@ -141,17 +154,49 @@ public class Patch implements Serializable, Cloneable {
      * (move to next edit for 1 and 2; or return original unaltered source for 3)
      * <p>
      * 
+     * The source file given by applying the edits is kept, softly referenced, along with
+     * those kept for shorter prefixes of the edits, and shared with clones of this patch.
+     * Applying starts from the longest prefix still kept, so a patch made by adding an
+     * edit to one just applied, or by removing one, replays only the edits after it.
+     * Patches with edits that are not deterministic are always applied in full.
+     * <p>
+     * 
      * @param metadata to use when applying the edits; could use, e.g., an error code or filter on how to apply it
      *
      * @return text of patched sourcecode; if there were problems, we just get the same sourcefile back
      */
     public String apply(Object metadata) {
 
-        SourceFile patchedSourceFile = sourceFile.copyOf();
         lastApplyWasValid = true;
+        lastApplyWasNoOp = false;
         editsValidOnLastApply = new ArrayList<>();
 
-        for (Edit edit : edits) {
+        SourceFile prefixSourceFile = null;
+        int prefixLength = 0;
+        for (AppliedPrefix prefix = appliedPrefixes; (prefix != null) && (prefixSourceFile == null); prefix = prefix.shorter()) {
+            if (prefix.isPrefixOf(edits, metadata)) {
+                prefixSourceFile = prefix.sourceFile().get();
+                if (prefixSourceFile != null) {
+                    prefixLength = prefix.edits().length;
+                    editsValidOnLastApply.addAll(prefix.editsValid());
+                    lastApplyWasValid = !prefix.editsValid().contains(false);
+                }
+            }
+        }
+        SourceFile sealedSourceFile = (prefixSourceFile == null) ? sourceFile : prefixSourceFile;
+
+        // edits change this copy in place; if one fails part way through, the copy is
+        // rebuilt from the last sealed source file by the edits applied since
+        SourceFile patchedSourceFile = (prefixLength == edits.size()) ? sealedSourceFile : sealedSourceFile.editableCopy();
+        List<Edit> appliedSinceSealed = new ArrayList<>();
+
+        for (Edit edit : edits.subList(prefixLength, edits.size())) {
+            if (!edit.chainsChanges()) {
+                patchedSourceFile.seal();
+            }
+            SourceFile beforeThisEdit = patchedSourceFile;
+            int inPlaceChanges = beforeThisEdit.getInPlaceChanges();
+            boolean applied = false;
             try {
                 SourceFile patchedByThisEdit = edit.apply(patchedSourceFile, metadata);
                 if (patchedByThisEdit == null) {
@@ -160,6 +205,13 @@ public class Patch implements Serializable, Cloneable {
                 } else {
                     patchedSourceFile = patchedByThisEdit; // only if the edit actually worked do we update the source
                     editsValidOnLastApply.add(true);
+                    applied = true;
+                    if (edit.chainsChanges()) {
+                        appliedSinceSealed.add(edit);
+                    } else {
+                        sealedSourceFile = patchedSourceFile;
+                        appliedSinceSealed.clear();
+                    }
                 }
             } catch (Exception e) {
                 lastApplyWasValid = false;
@@ -169,10 +221,23 @@ public class Patch implements Serializable, Cloneable {
                 
                 e.printStackTrace();
             }
+            if (!applied && (beforeThisEdit.getInPlaceChanges() != inPlaceChanges)) {
+                patchedSourceFile = replay(sealedSourceFile, appliedSinceSealed, metadata);
+            }
+        }
+
+        // the original source is printed once, so an unchanged program is not printed again
+        if (patchedSourceFile.hasSameCodeAs(sourceFile)) {
+            lastApplyWasNoOp = true;
+            keepAppliedPrefix(patchedSourceFile, prefixLength, metadata);
+            return sourceFile.getSource();
         }
 
         try {
-            return patchedSourceFile.getSource();
+            // printed before it is kept, as printing a tree shared between threads is not safe
+            String patchedSource = patchedSourceFile.getSource();
+            keepAppliedPrefix(patchedSourceFile, prefixLength, metadata);
+            return patchedSource;
         } catch (ClassCastException e) {
             // sometimes happens if an edit has violated JavaParser's expectations
             // - see https://github.com/drdrwhite/ginfork/issues/104
@@ -183,6 +248,79 @@ public class Patch implements Serializable, Cloneable {
 
     }
     
+    /**
+     * Keep the source file given by applying all the edits, unless it was already kept, and
+     * drop any kept source file that is no longer for a prefix of the edits.
+     *
+     * @param patchedSourceFile result of applying the edits
+     * @param prefixLength      number of edits that were not applied, as their result was kept
+     */
+    private void keepAppliedPrefix(SourceFile patchedSourceFile, int prefixLength, Object metadata) {
+        if ((prefixLength == edits.size()) || !isDeterministic()) {
+            return;
+        }
+        for (Edit edit : edits) {
+            if (!edit.chainsChanges()) {
+                return;
+            }
+        }
+        patchedSourceFile.seal();
+        AppliedPrefix kept = null;
+        Deque<AppliedPrefix> shorter = new ArrayDeque<>();
+        for (AppliedPrefix prefix = appliedPrefixes; prefix != null; prefix = prefix.shorter()) {
+            if (prefix.isPrefixOf(edits, metadata) && (prefix.sourceFile().get() != null)) {
+                shorter.push(prefix);
+            }
+        }
+        while (!shorter.isEmpty()) {
+            AppliedPrefix prefix = shorter.pop();
+            kept = new AppliedPrefix(prefix.edits(), prefix.metadata(), prefix.sourceFile(), prefix.editsValid(), kept);
+        }
+        appliedPrefixes = new AppliedPrefix(edits.toArray(new Edit[0]), metadata, new SoftReference<>(patchedSourceFile),
+                List.copyOf(editsValidOnLastApply), kept);
+    }
+
+    /**
+     * The source file given by applying some edits, from the first.
+     *
+     * @param edits      the edits applied
+     * @param metadata   the metadata they were applied with
+     * @param sourceFile the sealed result; cleared under memory pressure
+     * @param editsValid whether each edit applied
+     * @param shorter    the next longest prefix kept, or null
+     */
+    private record AppliedPrefix(Edit[] edits, Object metadata, SoftReference<SourceFile> sourceFile,
+                                 List<Boolean> editsValid, AppliedPrefix shorter) {
+
+        boolean isPrefixOf(List<Edit> patchEdits, Object patchMetadata) {
+            if ((edits.length > patchEdits.size()) || !Objects.equals(metadata, patchMetadata)) {
+                return false;
+            }
+            Iterator<Edit> it = patchEdits.iterator();
+            for (Edit edit : edits) {
+                if (it.next() != edit) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * @return an editable copy of the base with the edits applied again, each of which applied before
+     */
+    private static SourceFile replay(SourceFile base, List<Edit> edits, Object metadata) {
+        SourceFile sf = base.editableCopy();
+        for (Edit edit : edits) {
+            SourceFile next = edit.apply(sf, metadata);
+            if (next != null) {
+                sf = next;
+            }
+        }
+        return sf;
+    }
+
     /**apply with no metadata*/
     public String apply() {
     	return this.apply(null);
@@ -205,7 +343,19 @@ public class Patch implements Serializable, Cloneable {
      * @param allowableEditTypes - list of allowable edit types
      */
     public void addRandomEditOfClasses(Random rng, List<Class<? extends Edit>> allowableEditTypes) {
-        this.add(randomEdit(rng, allowableEditTypes));
+        this.add(randomEdit(rng, allowableEditTypes, null));
+    }
+
+    /**
+     * add a random edit to this patch, one of a specific list of classes, with the class
+     * chosen by a bandit rather than uniformly
+     *
+     * @param rng                - for random number generation
+     * @param allowableEditTypes - list of allowable edit types
+     * @param bandit             - chooses the edit class; null to choose uniformly
+     */
+    public void addRandomEditOfClasses(Random rng, List<Class<? extends Edit>> allowableEditTypes, EditBandit bandit) {
+        this.add(randomEdit(rng, allowableEditTypes, bandit));
     }
 
     /**
@@ -228,7 +378,12 @@ public class Patch implements Serializable, Cloneable {
         addRandomEditOfClasses(rng, Edit.getEditClassesOfTypes(allowableEditTypes));
     }
 
-    private Edit randomEdit(Random rng, List<Class<? extends Edit>> allowableEditTypes) {
+    /**
+     * Edit classes that cannot edit the source file are never chosen. This uses no state
+     * shared between patches other than the given random number generator, so patches can
+     * be mutated on several threads, each with its own generator.
+     */
+    private Edit randomEdit(Random rng, List<Class<? extends Edit>> allowableEditTypes, EditBandit bandit) {
         // generate a random edit. target methods are accounted for here
         // by pulling the appropriate line/statement IDs from sourceFile
 
@@ -237,24 +392,16 @@ public class Patch implements Serializable, Cloneable {
             System.exit(-1);
         }
 
-        Edit edit = null;
+        List<Class<? extends Edit>> editTypes = applicableEditTypes(allowableEditTypes);
+        if (editTypes.isEmpty()) {
+            return new NoEdit();
+        }
 
         // decide what edit we're doing to make
-        Class<? extends Edit> editType = allowableEditTypes.get(rng.nextInt(allowableEditTypes.size()));
+        Class<? extends Edit> editType = (bandit == null) ? editTypes.get(rng.nextInt(editTypes.size())) : bandit.choose(editTypes, rng);
 
-        // make one
-        try {
-            edit = editType.getDeclaredConstructor(SourceFile.class, Random.class).newInstance(sourceFile, rng);
-        } catch (NoSuchMethodException e) {
-            // we get here if the edit author forgot to add a (SourceFile,Random) constructor
-            // leave edit null, it'll be filled below.
-            // BUT we should issue a warning...
-            Logger.warn("(SourceFile,Random) constructor not found for edit class " + editType);
-        } catch (Exception e) {
-            // e.g. NoApplicableNodesException
-            // we get here if the chosen edit couldn't be created for the given source file
-            // leave edit null, it'll be filled below.
-        }
+        // make one; null if the chosen edit couldn't be created for the given source file
+        Edit edit = EditFactory.of(editType).create(sourceFile, rng);
 
         if (edit == null) {
             edit = new NoEdit();
@@ -263,6 +410,24 @@ public class Patch implements Serializable, Cloneable {
         return edit;
 
     }
+
+    /**
+     * @return the allowable edit types that can edit the source file; the same list if all can
+     */
+    private List<Class<? extends Edit>> applicableEditTypes(List<Class<? extends Edit>> allowableEditTypes) {
+        for (int i = 0; i < allowableEditTypes.size(); i++) {
+            if (!sourceFile.canBeEditedBy(allowableEditTypes.get(i))) {
+                List<Class<? extends Edit>> applicable = new ArrayList<>(allowableEditTypes.subList(0, i));
+                for (Class<? extends Edit> editType : allowableEditTypes.subList(i + 1, allowableEditTypes.size())) {
+                    if (sourceFile.canBeEditedBy(editType)) {
+                        applicable.add(editType);
+                    }
+                }
+                return applicable;
+            }
+        }
+        return allowableEditTypes;
+    }
     
     public void writePatchedSourceToFile(String filename) {
     	writePatchedSourceToFile(filename, null);
@@ -283,6 +448,18 @@ public class Patch implements Serializable, Cloneable {
 
     }
 
+    /**
+     * @return true if applying the patch to the same source always gives the same result
+     */
+    public boolean isDeterministic() {
+        for (Edit e : edits) {
+            if (!e.isDeterministic()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public boolean isOnlyLineEdits() {
         boolean rval = true;
         for (Edit e : edits) {
@@ -309,6 +486,13 @@ public class Patch implements Serializable, Cloneable {
         return editsValidOnLastApply;
     }
 
+    /**
+     * @return true if the code was unchanged by the last apply, ignoring layout and comments
+     */
+    public boolean lastApplyWasNoOp() {
+        return lastApplyWasNoOp;
+    }
+
     @Override
     public String toString() {
         StringBuilder description = new StringBuilder("| ");
@@ -318,6 +502,61 @@ public class Patch implements Serializable, Cloneable {
         return description.toString().trim();
     }
 
+    /**
+     * Parses a patch in the form written by {@link #toString()}, e.g. as found in a results CSV.
+     * Edits are separated by " | ", so that operators such as || within an edit are kept whole;
+     * each is parsed by the static fromString(String) method of its class.
+     *
+     * @param patchText  the patch, as given by {@link #toString()}
+     * @param sourceFile the source file the patch applies to
+     * @return the patch
+     * @throws IllegalArgumentException if an edit could not be parsed, or is of a type that does not
+     *                                  apply to the kind of source file given
+     */
+    public static Patch fromString(String patchText, SourceFile sourceFile) {
+        Patch patch = new Patch(sourceFile);
+        for (Edit edit : parseEdits(patchText)) {
+            boolean lineEdit = edit.getEditType() == EditType.LINE;
+            if (lineEdit != (sourceFile instanceof SourceFileLine)) {
+                throw new IllegalArgumentException("Edit " + edit + " is a " + (lineEdit ? "line" : "statement")
+                        + " edit, so cannot be applied to a " + sourceFile.getClass().getSimpleName()
+                        + "; patches mixing line and statement edits are not supported");
+            }
+            patch.add(edit);
+        }
+        return patch;
+    }
+
+    /**
+     * @param patchText a patch, as given by {@link #toString()}
+     * @return its edits, in order
+     * @throws IllegalArgumentException if an edit could not be parsed
+     */
+    public static List<Edit> parseEdits(String patchText) {
+        String text = patchText.trim();
+        if (text.startsWith("|")) {
+            text = text.substring(1);
+        }
+        if (text.endsWith("|")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        List<Edit> edits = new ArrayList<>();
+        for (String editString : text.split(Pattern.quote(" | "))) {
+            editString = editString.trim();
+            if (editString.isEmpty()) {
+                continue;
+            }
+            String editAction = editString.split("\\s+")[0];
+            try {
+                Class<?> clazz = Class.forName(editAction);
+                Object edit = clazz.getMethod("fromString", String.class).invoke(null, editString);
+                edits.add((Edit) edit);
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalArgumentException("Cannot parse edit: " + editString, e);
+            }
+        }
+        return edits;
+    }
 
 }
 
@@ -15,10 +15,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serial;
 import java.io.Serializable;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -79,83 +76,27 @@ public class PatchAnalyser implements Serializable {
         analyser.analyse();
     }
 
+    /**
+     * Parse the patch with {@link Patch#fromString}, for the line or the tree view of the source
+     * according to the type of its edits.
+     */
     private static Patch parsePatch(String patchText, SourceFileLine sourceFileLine, SourceFileTree sourceFileTree) {
 
-        if (patchText.equals("|")) {
-            Logger.info("No edits to be applied. Running original code.");
-            return new Patch(sourceFileTree);
-        }
-
-        List<Edit> editInstances = new ArrayList<>();
-
-        String patchTrim = patchText.trim();
-        String cleanPatch = patchTrim;
-
-        if (patchTrim.startsWith("|")) {
-            cleanPatch = patchText.replaceFirst("\\|", "").trim();
-        }
-
-        String[] editStrings = cleanPatch.trim().split("\\|");
-
-        boolean allLineEdits = true;
-        boolean allStatementEdits = true;
-
-        for (String editString : editStrings) {
-
-            String[] tokens = editString.trim().split("\\s+");
-
-            String editAction = tokens[0];
-
-            Class<?> clazz = null;
-
-            try {
-                clazz = Class.forName(editAction);
-            } catch (ClassNotFoundException e) {
-                Logger.error("Patch edit type unrecognised: " + editAction);
-                Logger.trace(e);
-                System.exit(-1);
-            }
-
-            Method parserMethod = null;
-            try {
-                parserMethod = clazz.getMethod("fromString", String.class);
-            } catch (NoSuchMethodException e) {
-                Logger.error("Patch edit type has no fromString method: " + clazz.getCanonicalName());
-                Logger.trace(e);
-                System.exit(-1);
-            }
-
-            Edit editInstance = null;
-            try {
-                editInstance = (Edit) parserMethod.invoke(null, editString.trim());
-            } catch (IllegalAccessException e) {
-                Logger.error("Cannot parse patch: access error invoking edit class.");
-                Logger.trace(e);
-                System.exit(-1);
-            } catch (InvocationTargetException e) {
-                Logger.error("Cannot parse patch: invocation error invoking edit class.");
-                Logger.trace(e);
-                System.exit(-1);
+        try {
+            List<Edit> edits = Patch.parseEdits(patchText);
+            if (edits.isEmpty()) {
+                Logger.info("No edits to be applied. Running original code.");
+                return new Patch(sourceFileTree);
             }
-
-            allLineEdits &= editInstance.getEditType() == EditType.LINE;
-            allStatementEdits &= editInstance.getEditType() != EditType.LINE;
-            editInstances.add(editInstance);
-
-        }
-
-        if (!allLineEdits && !allStatementEdits) {
-            Logger.error("Cannot proceed: mixed line/statement edit types found in patch");
+            boolean lineEdits = edits.get(0).getEditType() == EditType.LINE;
+            return Patch.fromString(patchText, lineEdits ? sourceFileLine : sourceFileTree);
+        } catch (IllegalArgumentException e) {
+            Logger.error("Cannot parse patch: " + e.getMessage());
+            Logger.trace(e);
             System.exit(-1);
+            return null;
         }
 
-        Patch patch = new Patch(allLineEdits ? sourceFileLine : sourceFileTree);
-        for (Edit e : editInstances) {
-            patch.add(e);
-        }
-
-        return patch;
-
     }
 
     private static void logTestResults(UnitTestResultSet results) {
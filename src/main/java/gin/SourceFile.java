@@ -4,6 +4,7 @@ import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import gin.edit.Edit;
+import gin.edit.EditFactory;
 import gin.edit.line.LineEdit;
 import gin.misc.FullyQualifiedNames;
 import org.pmw.tinylog.Logger;
@@ -16,6 +17,7 @@ import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -37,6 +39,11 @@ public abstract class SourceFile implements Serializable {
      */
     protected Set<TargetMethod> targetMethods;
 
+    /**
+     * whether an edit of each class can be made for this source file, found on first use
+     */
+    private transient volatile Map<Class<? extends Edit>, Boolean> editApplicability;
+
     public SourceFile(String filename, Set<TargetMethod> targetMethods) {
 
         this.filename = filename;
@@ -156,6 +163,45 @@ public abstract class SourceFile implements Serializable {
      */
     public abstract SourceFile copyOf();
 
+    /**
+     * A copy that the edit methods change in place, instead of copying it again, until it is
+     * sealed. Only for a caller holding the only reference to it, applying edits that chain
+     * their changes; see {@link Edit#chainsChanges()}. By default, a plain copy.
+     *
+     * @return an editable copy of this SourceFile object
+     */
+    public SourceFile editableCopy() {
+        return copyOf();
+    }
+
+    /**
+     * Stop changing this copy in place, so that edits copy it again, e.g. before it is shared.
+     */
+    public void seal() {
+    }
+
+    /**
+     * @return the number of changes made in place to this editable copy; 0 if it was always sealed
+     */
+    public int getInPlaceChanges() {
+        return 0;
+    }
+
+    /**
+     * @param editType an edit class
+     * @return false if no edit of the class can be made for this source file, e.g. as it has
+     * no binary operators for BinaryOperatorReplacement; found once for each class
+     */
+    public boolean canBeEditedBy(Class<? extends Edit> editType) {
+        Map<Class<? extends Edit>, Boolean> applicability = editApplicability;
+        if (applicability == null) {
+            // a race only finds the same answers twice
+            applicability = new ConcurrentHashMap<>();
+            editApplicability = applicability;
+        }
+        return applicability.computeIfAbsent(editType, type -> EditFactory.of(type).canEdit(this));
+    }
+
     /**
      * Get the path to the file relative to the working directory.
      *
@@ -182,6 +228,26 @@ public abstract class SourceFile implements Serializable {
     public abstract String getSource();
 
     public abstract String getMethodSource();
+
+    /**
+     * Check whether edits left the code unchanged, without printing either source.
+     *
+     * @param original the source file this one was derived from by edits
+     * @return true if this source file holds the same code as the original
+     */
+    public boolean hasSameCodeAs(SourceFile original) {
+        return (this == original) || (getClass() == original.getClass() && sameCodeAs(original));
+    }
+
+    /**
+     * @param original source file of the same class as this one
+     * @return true if this source file holds the same code as the original; by default,
+     * if the sources are identical
+     */
+    protected boolean sameCodeAs(SourceFile original) {
+        return getSource().equals(original.getSource());
+    }
+
     public String toString() {
         return this.getSource();
     }
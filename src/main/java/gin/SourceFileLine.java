@@ -10,11 +10,12 @@ import org.pmw.tinylog.Logger;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serial;
+import java.io.Serializable;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.regex.Pattern;
 
 /**
  * A SourceFile designed for supporting line-level edits
@@ -22,38 +23,58 @@ import java.util.Map.Entry;
  * In practice SourceFile can be viewed as immutable. The only way it can be changed
  * is via the insert/delete line/statement/node or replaceNode methods, which
  * create and return a new SourceFile as part of their signature
+ * <p>
+ * The original lines, and the IDs derived from parsing them, are held once and shared by
+ * every copy. A copy records only its edits, as sorted arrays of deleted line numbers and of
+ * inserted lines with the line each follows, replaced rather than changed by each edit, so a
+ * copy is made in constant time and an edit in time linear in the number of edits. The source
+ * is built from runs of original lines copied straight from the original text.
  */
 public class SourceFileLine extends SourceFile {
 
     @Serial
     private static final long serialVersionUID = -4661893718115291631L;
 
+    private static final int[] NO_LINES = new int[0];
+    private static final String[] NO_INSERTED_LINES = new String[0];
+
+    private static final Pattern NON_WHITESPACE = Pattern.compile("\\S");
+
     /**
-     * the raw lines in the source
+     * the original lines and their IDs, shared by all copies
      */
-    private final SortedMap<LineID, String> lines;
+    private final OriginalLines original;
 
     /**
-     * IDs of lines in the target methods
+     * numbers of the original lines deleted, in ascending order
      */
-    private List<LineID> lineIDsInTargetMethod;
+    private final int[] deletedLines;
 
     /**
-     * IDs of empty lines
+     * for each inserted line, the number of the original line it follows, in ascending order;
+     * lines inserted after the same line are in the order they were inserted
      */
-    private List<LineID> lineIDsEmpty;
+    private final int[] insertedAfter;
 
     /**
-     * IDs of comment lines
+     * the inserted lines, in the same order as {@link #insertedAfter}
      */
-    private List<LineID> lineIDsComments;
+    private final String[] insertedLines;
+
+    /**
+     * base of the polynomial hash over tokens
+     */
+    private static final long TOKEN_HASH_BASE = 0x9E3779B97F4A7C15L;
 
 
     public SourceFileLine(String filename, List<String> targetMethodNames) {
 
         super(filename, targetMethodNames);
 
-        this.lines = readLines(filename);
+        this.original = new OriginalLines(readLines(filename));
+        this.deletedLines = NO_LINES;
+        this.insertedAfter = NO_LINES;
+        this.insertedLines = NO_INSERTED_LINES;
         populateIDLists();
 
     }
@@ -69,37 +90,35 @@ public class SourceFileLine extends SourceFile {
      * <p>
      * this is only called by methods within this class that are going to make a change
      *
-     * @param sf the sourceFile to copy
+     * @param sf            the sourceFile to copy
+     * @param deletedLines  the deleted lines of the copy
+     * @param insertedAfter the lines the inserted lines of the copy follow
+     * @param insertedLines the inserted lines of the copy
      */
-    private SourceFileLine(SourceFileLine sf) {
+    private SourceFileLine(SourceFileLine sf, int[] deletedLines, int[] insertedAfter, String[] insertedLines) {
 
         super(sf.filename, sf.targetMethods);
 
-        // copy the lines
-        this.lines = new TreeMap<>(sf.lines);
-        this.lineIDsInTargetMethod = new ArrayList<>(sf.lineIDsInTargetMethod); // instead, copy the lines
-        this.lineIDsEmpty = new ArrayList<>(sf.lineIDsEmpty);
-        this.lineIDsComments = new ArrayList<>(sf.lineIDsComments);
+        // the original lines are shared, and the edits are never changed, only replaced
+        this.original = sf.original;
+        this.deletedLines = deletedLines;
+        this.insertedAfter = insertedAfter;
+        this.insertedLines = insertedLines;
 
     }
 
 
     @Override
     public SourceFile copyOf() {
-        return new SourceFileLine(this);
+        return new SourceFileLine(this, deletedLines, insertedAfter, insertedLines);
     }
 
     /*============== the following are setup methods - reading files, building ID lists etc ==============*/
 
-    private SortedMap<LineID, String> readLines(String filename) {
-        SortedMap<LineID, String> lines = new TreeMap<>();
+    private List<String> readLines(String filename) {
+        List<String> lines = Collections.emptyList();
         try {
-            // readAllLines doesn't guarantee a modifiable list, so we copy to ArrayList
-            List<String> rawLines = Files.readAllLines(Paths.get(filename), Charset.defaultCharset());
-
-            for (int i = 0; i < rawLines.size(); i++) {
-                lines.put(new LineID(true, i + 1, 0), rawLines.get(i));
-            }
+            lines = Files.readAllLines(Paths.get(filename), Charset.defaultCharset());
         } catch (IOException e) {
             Logger.error("Exception reading program source: " + e);
             System.exit(-1);
@@ -111,52 +130,41 @@ public class SourceFileLine extends SourceFile {
     /**
      * This updates the lists of IDs for things like the locations
      * of the target methods and blank lines / comments
+     * <p>
+     * Called once, for the original lines; copies share the lists.
      */
     private void populateIDLists() {
 
         // A JavaParser CU is used to find the lines for the methods
-        CompilationUnit compilationUnit = StaticJavaParser.parse(this.getSource());
-
-        this.lineIDsInTargetMethod = new ArrayList<>();
+        CompilationUnit compilationUnit = StaticJavaParser.parse(original.text);
+        int lineCount = original.lines.length - 1;
 
         if (this.targetMethods == null || targetMethods.isEmpty()) {
-            if (this.lines != null) {
-                this.lineIDsInTargetMethod.addAll(this.lines.keySet());
-            }
+            original.lineIDsInTargetMethod = original.allLineIDs;
         } else {
             List<Node> targetMethodRootNodes = getTargetMethodRootNodesFromCU(compilationUnit, this.targetMethods);
 
-            // put in a set to start with to avoid duplicates
-            SortedSet<LineID> ids = new TreeSet<>();
+            // mark the lines of each method, to avoid duplicates
+            boolean[] inTargetMethod = new boolean[lineCount + 1];
 
             for (Node node : targetMethodRootNodes) {
-                // javaparser line numbers start at 1, now list also starts at 1 so no need to subtract 1
-                int targetMethodStartLine = node.getRange().get().begin.line;
-                int targetMethodEndLine = node.getRange().get().end.line;
-
-                if (this.lines != null) {
-                    for (int i = 1; i <= lines.size(); i++) {
-                        if ((i >= targetMethodStartLine) && (i <= targetMethodEndLine)) {
-                            ids.add(new LineID(true, i, 0));
-                        }
-                    }
-                }
+                // javaparser line numbers start at 1, as do line IDs
+                int targetMethodStartLine = Math.max(1, node.getRange().get().begin.line);
+                int targetMethodEndLine = Math.min(lineCount, node.getRange().get().end.line);
+                Arrays.fill(inTargetMethod, targetMethodStartLine, Math.max(targetMethodStartLine, targetMethodEndLine + 1), true);
             }
 
-            this.lineIDsInTargetMethod.addAll(ids);
+            original.lineIDsInTargetMethod = lineNumbers(inTargetMethod);
         }
 
         // work out where the empty lines are
         // in theory this is just those of zero length or containing only whitespace
         // so we runTests for lines with anything that's not whitespace
-        this.lineIDsEmpty = new ArrayList<>();
-        if (this.lines != null) {
-            for (Entry<LineID, String> e : lines.entrySet()) {
-                if (!e.getValue().matches("^.*\\S+.*$")) {
-                    this.lineIDsEmpty.add(e.getKey());
-                }
-            }
+        boolean[] empty = new boolean[lineCount + 1];
+        for (int i = 1; i <= lineCount; i++) {
+            empty[i] = !NON_WHITESPACE.matcher(original.lines[i]).find();
         }
+        original.lineIDsEmpty = lineNumbers(empty);
 
         // where are the lines that only contain comments?
         // first we look for all comments and tag their lines
@@ -164,11 +172,12 @@ public class SourceFileLine extends SourceFile {
         // where something else either starts or finishes on a comment line
         // (this should catch anything where there's an inline comment)
         // some info on comments here https://github.com/javaparser/javaparser/wiki/Comments-(Features)
-        SortedSet<Integer> possibleCommentLines = new TreeSet<>();
+        boolean[] possibleCommentLines = new boolean[lineCount + 1];
         List<Comment> allComments = compilationUnit.getAllContainedComments();
         for (Comment comment : allComments) {
-            for (int i = comment.getBegin().get().line; i <= comment.getEnd().get().line; i++) {
-                possibleCommentLines.add(i);
+            int end = Math.min(lineCount, comment.getEnd().get().line);
+            for (int i = comment.getBegin().get().line; i <= end; i++) {
+                possibleCommentLines[i] = true;
             }
         }
         for (Node n : compilationUnit.getChildNodesByType(Node.class)) {
@@ -180,34 +189,56 @@ public class SourceFileLine extends SourceFile {
                 // it's rare that this won't have a range but some things don't (e.g. in lambda expressions)
                 // we just ignore those
                 Optional<Position> beginOpt = n.getBegin();
-                if (beginOpt.isPresent()) {
-                    int begin = beginOpt.get().line;
-                    possibleCommentLines.remove(begin);
+                if (beginOpt.isPresent() && beginOpt.get().line <= lineCount) {
+                    possibleCommentLines[beginOpt.get().line] = false;
                 }
 
                 Optional<Position> endOpt = n.getEnd();
-                if (endOpt.isPresent()) {
-                    int end = n.getEnd().get().line;
-                    possibleCommentLines.remove(end);
+                if (endOpt.isPresent() && endOpt.get().line <= lineCount) {
+                    possibleCommentLines[endOpt.get().line] = false;
                 }
             }
         }
 
-        this.lineIDsComments = new ArrayList<>();
-        for (Integer i : possibleCommentLines) {
-            this.lineIDsComments.add(new LineID(true, i, 0));
+        original.lineIDsComments = lineNumbers(possibleCommentLines);
+
+        original.lineIDsNonEmptyOrComments = nonEmptyOrComments(original.allLineIDs);
+        original.lineIDsNonEmptyOrCommentsInTargetMethod = nonEmptyOrComments(original.lineIDsInTargetMethod);
+    }
+
+    /**
+     * @return the numbers of the marked lines, in ascending order
+     */
+    private static List<Integer> lineNumbers(boolean[] marked) {
+        List<Integer> lineIDs = new ArrayList<>();
+        for (int i = 1; i < marked.length; i++) {
+            if (marked[i]) {
+                lineIDs.add(i);
+            }
         }
+        return Collections.unmodifiableList(lineIDs);
     }
 
     /*============== the following are getter methods ==============*/
 
     @Override
     public String getSource() {
-        StringBuilder buf = new StringBuilder();
-        for (String line : lines.values()) {
-            buf.append(line);
-            buf.append(System.lineSeparator());
+        if (isUnchanged()) {
+            return original.text;
         }
+        StringBuilder buf = new StringBuilder(original.text.length() + 80 * insertedLines.length);
+        visitLines(new LineVisitor() {
+            @Override
+            public void originalLines(int first, int last) {
+                buf.append(original.text, original.starts[first], original.starts[last + 1]);
+            }
+
+            @Override
+            public void insertedLine(int after, String line) {
+                buf.append(line);
+                buf.append(System.lineSeparator());
+            }
+        });
         return buf.toString();
     }
 
@@ -216,6 +247,87 @@ public class SourceFileLine extends SourceFile {
         return "";
     }
 
+    /**
+     * Compares the token sequences of the two files, ignoring whitespace outside literals
+     * and line comments. Each file's tokens are hashed with a polynomial hash that can be
+     * combined line by line: the original lines' hashes are computed once, so only the
+     * lines an edit inserted are tokenised.
+     */
+    @Override
+    protected boolean sameCodeAs(SourceFile original) {
+        return tokenHash() == ((SourceFileLine) original).tokenHash();
+    }
+
+    private long tokenHash() {
+        LineHashes hashes = original.getLineHashes();
+        if (isUnchanged()) {
+            return hashes.total;
+        }
+        long[] hash = {0};
+        visitLines(new LineVisitor() {
+            @Override
+            public void originalLines(int first, int last) {
+                for (int i = first; i <= last; i++) {
+                    hash[0] = hash[0] * hashes.powers[i] + hashes.hashes[i];
+                }
+            }
+
+            @Override
+            public void insertedLine(int after, String line) {
+                long[] hashAndPower = hashTokens(line);
+                hash[0] = hash[0] * hashAndPower[1] + hashAndPower[0];
+            }
+        });
+        return hash[0];
+    }
+
+    /**
+     * Tokens are runs of characters up to whitespace, a quote or a line comment; string
+     * and character literals are single tokens with their whitespace, and a text block
+     * delimiter makes the rest of the line one token.
+     *
+     * @return the polynomial hash of the line's tokens, and the base raised to the number of tokens
+     */
+    static long[] hashTokens(String line) {
+        long hash = 0;
+        long power = 1;
+        int i = 0;
+        int n = line.length();
+        while (i < n) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (line.startsWith("//", i)) {
+                break;
+            }
+            int start = i;
+            if (line.startsWith("\"\"\"", i)) {
+                i = n;
+            } else if (c == '"' || c == '\'') {
+                i++;
+                while (i < n && line.charAt(i) != c) {
+                    i += (line.charAt(i) == '\\') ? 2 : 1;
+                }
+                i = Math.min(n, i + 1);
+            } else {
+                while (i < n && !Character.isWhitespace(line.charAt(i)) && line.charAt(i) != '"'
+                        && line.charAt(i) != '\'' && !line.startsWith("//", i)) {
+                    i++;
+                }
+            }
+            // FNV-1a over the token's characters
+            long tokenHash = 0xcbf29ce484222325L;
+            for (int j = start; j < i; j++) {
+                tokenHash = (tokenHash ^ line.charAt(j)) * 0x100000001b3L;
+            }
+            hash = hash * TOKEN_HASH_BASE + tokenHash;
+            power *= TOKEN_HASH_BASE;
+        }
+        return new long[]{hash, power};
+    }
+
     /*============== the following are line editing methods ==============*/
 
     /**
@@ -223,7 +335,7 @@ public class SourceFileLine extends SourceFile {
      * @return copy of line from source with given line number, or null if line has been deleted
      */
     public String getLine(int lineNumber) {
-        return lines.get(new LineID(true, lineNumber, 0));
+        return isOriginalLine(lineNumber) ? original.lines[lineNumber] : null;
     }
 
     /**
@@ -234,16 +346,16 @@ public class SourceFileLine extends SourceFile {
      * @return a modified copy of this {@link SourceFileLine}
      */
     public SourceFileLine removeLine(int lineNumber) {
-        LineID toDelete = new LineID(true, lineNumber, 0);
-
         // line already deleted? don't bother proceeding.
-        if (!lines.containsKey(toDelete)) {
+        if (!isOriginalLine(lineNumber)) {
             return this;
         } else {
-            // make a copy of this sourceFile
-            SourceFileLine sf = new SourceFileLine(this);
-            sf.lines.remove(toDelete);
-            return sf;
+            int index = -Arrays.binarySearch(deletedLines, lineNumber) - 1;
+            int[] deleted = new int[deletedLines.length + 1];
+            System.arraycopy(deletedLines, 0, deleted, 0, index);
+            deleted[index] = lineNumber;
+            System.arraycopy(deletedLines, index, deleted, index + 1, deletedLines.length - index);
+            return new SourceFileLine(this, deleted, insertedAfter, insertedLines);
         }
     }
 
@@ -257,9 +369,20 @@ public class SourceFileLine extends SourceFile {
      */
     public SourceFileLine insertLine(int lineNumber, String line) {
         if (lineNumber >= 1) {
-            SourceFileLine sf = new SourceFileLine(this);
-            sf.lines.put(getNextInsertPoint(lineNumber), line);
-            return sf;
+            // after the specified line, and any other lines inserted after it
+            int index = 0;
+            while (index < insertedAfter.length && insertedAfter[index] <= lineNumber) {
+                index++;
+            }
+            int[] after = new int[insertedAfter.length + 1];
+            String[] inserted = new String[insertedLines.length + 1];
+            System.arraycopy(insertedAfter, 0, after, 0, index);
+            System.arraycopy(insertedLines, 0, inserted, 0, index);
+            after[index] = lineNumber;
+            inserted[index] = line;
+            System.arraycopy(insertedAfter, index, after, index + 1, insertedAfter.length - index);
+            System.arraycopy(insertedLines, index, inserted, index + 1, insertedLines.length - index);
+            return new SourceFileLine(this, deletedLines, after, inserted);
         } else {
             return this;
         }
@@ -268,61 +391,47 @@ public class SourceFileLine extends SourceFile {
 
     /*============== the following are methods to get IDs and counts to assist in making edits ==============*/
 
-    public List<Integer> getAllLineIDs() {
-        List<Integer> lineIDs = new ArrayList<>(lines.size());
-        for (LineID id : lines.keySet()) {
-            lineIDs.add(id.lineNumber);
-        }
-        return Collections.unmodifiableList(lineIDs);
-    }
-
     /**
-     * make a new LineID to follow the specified original line, and any other
-     * lines inserted after it, but before the next original line
+     * @return the line numbers of the lines in the source, in order; an inserted line has
+     * the number of the original line it follows
      */
-    private LineID getNextInsertPoint(int originalLineNumber) {
-        // find the lines after the specified line, but before a hypothetical
-        // (as we might be at end anyway) next line
-        LineID currentLine = new LineID(true, originalLineNumber, 0);
-        LineID nextLine = new LineID(true, originalLineNumber + 1, 0);
-
-        Set<LineID> insertedLines = this.lines.tailMap(currentLine).headMap(nextLine).keySet();
-        int nextOffset = 0;
-        for (LineID l : insertedLines) {
-            nextOffset = Math.max(nextOffset, l.offset + 1);
+    public List<Integer> getAllLineIDs() {
+        if (isUnchanged()) {
+            return original.allLineIDs;
         }
+        List<Integer> lineIDs = new ArrayList<>(original.lines.length - 1 - deletedLines.length + insertedLines.length);
+        visitLines(new LineVisitor() {
+            @Override
+            public void originalLines(int first, int last) {
+                for (int i = first; i <= last; i++) {
+                    lineIDs.add(i);
+                }
+            }
 
-        return new LineID(false, originalLineNumber, nextOffset);
+            @Override
+            public void insertedLine(int after, String line) {
+                lineIDs.add(after);
+            }
+        });
+        return Collections.unmodifiableList(lineIDs);
     }
 
     public List<Integer> getLineIDsInTargetMethod() {
-        List<Integer> lineIDs = new ArrayList<>(lineIDsInTargetMethod.size());
-        for (LineID id : lineIDsInTargetMethod) {
-            lineIDs.add(id.lineNumber);
-        }
-        return Collections.unmodifiableList(lineIDs);
+        return original.lineIDsInTargetMethod;
     }
 
     /**
      * @return a list of line numbers corresponding to empty lines (i.e. those of zero length or containing only whitespace)
      */
     public List<Integer> getLineIDsEmpty() {
-        List<Integer> lineIDs = new ArrayList<>(lineIDsEmpty.size());
-        for (LineID id : lineIDsEmpty) {
-            lineIDs.add(id.lineNumber);
-        }
-        return Collections.unmodifiableList(lineIDs);
+        return original.lineIDsEmpty;
     }
 
     /**
      * @return a list of line numbers corresponding to lines that are purely comments
      */
     public List<Integer> getLineIDsOnlyComments() {
-        List<Integer> lineIDs = new ArrayList<>(lineIDsComments.size());
-        for (LineID id : lineIDsComments) {
-            lineIDs.add(id.lineNumber);
-        }
-        return Collections.unmodifiableList(lineIDs);
+        return original.lineIDsComments;
     }
 
     /**
@@ -332,7 +441,17 @@ public class SourceFileLine extends SourceFile {
      * with the IDs returned by getLineIDsEmpty() and getLineIDsOnlyComments() removed
      */
     public List<Integer> getLineIDsNonEmptyOrComments(boolean inTargetMethod) {
-        SortedSet<Integer> allLineIDs = new TreeSet<>(inTargetMethod ? getLineIDsInTargetMethod() : getAllLineIDs());
+        if (inTargetMethod) {
+            return original.lineIDsNonEmptyOrCommentsInTargetMethod;
+        } else if (isUnchanged()) {
+            return original.lineIDsNonEmptyOrComments;
+        } else {
+            return nonEmptyOrComments(getAllLineIDs());
+        }
+    }
+
+    private List<Integer> nonEmptyOrComments(List<Integer> lineIDs) {
+        SortedSet<Integer> allLineIDs = new TreeSet<>(lineIDs);
 
         getLineIDsEmpty().forEach(allLineIDs::remove);
         getLineIDsOnlyComments().forEach(allLineIDs::remove);
@@ -344,29 +463,146 @@ public class SourceFileLine extends SourceFile {
     /*============== the following are some helper methods and classes ==============*/
 
     /**
-     * used to keep the list of lines in the correct order
-     *
-     * @param lineNumber original code line number
-     * @param offset     this is used to sort inserted lines following the lineNumber they were inserted after
+     * @return true if there are no edits to the original lines
+     */
+    private boolean isUnchanged() {
+        return deletedLines.length == 0 && insertedLines.length == 0;
+    }
+
+    /**
+     * @return true if the line number is that of an original line that has not been deleted
      */
-    private record LineID(boolean isOriginalLine, int lineNumber, int offset) implements Comparable<LineID> {
+    private boolean isOriginalLine(int lineNumber) {
+        return lineNumber >= 1 && lineNumber < original.lines.length && Arrays.binarySearch(deletedLines, lineNumber) < 0;
+    }
 
-        @Override
-        public int compareTo(LineID that) {
-            if (isOriginalLine || (this.lineNumber != that.lineNumber)) {
-                return Integer.compare(this.lineNumber, that.lineNumber);
+    /**
+     * Visits the lines of the source in order: runs of original lines that were not deleted,
+     * and inserted lines, each after the original line it follows, deleted or not.
+     */
+    private void visitLines(LineVisitor visitor) {
+        int lineCount = original.lines.length - 1;
+        int line = 1; // the next original line
+        int d = 0;
+        int k = 0;
+        while (line <= lineCount || k < insertedLines.length) {
+            int nextDeleted = (d < deletedLines.length) ? deletedLines[d] : Integer.MAX_VALUE;
+            int nextInsertedAfter = (k < insertedAfter.length) ? insertedAfter[k] : Integer.MAX_VALUE;
+            int last = Math.min(lineCount, Math.min(nextDeleted - 1, nextInsertedAfter));
+            if (last >= line) {
+                visitor.originalLines(line, last);
+                line = last + 1;
+            } else if (k < insertedLines.length && (nextInsertedAfter < line || line > lineCount)) {
+                visitor.insertedLine(insertedAfter[k], insertedLines[k]);
+                k++;
             } else {
-                if (that.isOriginalLine) {
-                    return 1;
-                } else {
-                    return Integer.compare(this.offset, that.offset);
+                d++; // the next original line is deleted
+                line++;
+            }
+        }
+    }
+
+    private interface LineVisitor {
+
+        /**
+         * @param first number of the first original line in the run
+         * @param last  number of the last original line in the run
+         */
+        void originalLines(int first, int last);
+
+        /**
+         * @param after number of the original line the inserted line follows
+         * @param line  the inserted line
+         */
+        void insertedLine(int after, String line);
+
+    }
+
+    /**
+     * the lines as read from the file, with the IDs found by parsing them
+     */
+    private static class OriginalLines implements Serializable {
+
+        @Serial
+        private static final long serialVersionUID = 6154085513307370112L;
+
+        /**
+         * the lines, by line number from 1
+         */
+        private final String[] lines;
+
+        /**
+         * the source: every line followed by a line separator
+         */
+        private final String text;
+
+        /**
+         * offset of each line in the text, by line number, and the length of the text after the last
+         */
+        private final int[] starts;
+
+        private final List<Integer> allLineIDs;
+        private List<Integer> lineIDsInTargetMethod;
+        private List<Integer> lineIDsEmpty;
+        private List<Integer> lineIDsComments;
+        private List<Integer> lineIDsNonEmptyOrComments;
+        private List<Integer> lineIDsNonEmptyOrCommentsInTargetMethod;
+
+        /**
+         * token hashes of the lines, computed on first use; see {@link SourceFileLine#sameCodeAs}
+         */
+        private transient volatile LineHashes lineHashes;
+
+        OriginalLines(List<String> rawLines) {
+            int count = rawLines.size();
+            this.lines = new String[count + 1];
+            this.starts = new int[count + 2];
+            StringBuilder buf = new StringBuilder();
+            List<Integer> lineIDs = new ArrayList<>(count);
+            for (int i = 1; i <= count; i++) {
+                lines[i] = rawLines.get(i - 1);
+                starts[i] = buf.length();
+                buf.append(lines[i]);
+                buf.append(System.lineSeparator());
+                lineIDs.add(i);
+            }
+            starts[count + 1] = buf.length();
+            this.text = buf.toString();
+            this.allLineIDs = Collections.unmodifiableList(lineIDs);
+        }
+
+        LineHashes getLineHashes() {
+            LineHashes hashes = lineHashes;
+            if (hashes == null) {
+                hashes = new LineHashes(new long[lines.length], new long[lines.length]);
+                long total = 0;
+                for (int i = 1; i < lines.length; i++) {
+                    long[] hashAndPower = hashTokens(lines[i]);
+                    hashes.hashes[i] = hashAndPower[0];
+                    hashes.powers[i] = hashAndPower[1];
+                    total = total * hashAndPower[1] + hashAndPower[0];
                 }
+                hashes.total = total;
+                lineHashes = hashes;
             }
+            return hashes;
         }
 
-        @Override
-        public String toString() {
-            return (this.isOriginalLine ? "O" : "I") + this.lineNumber + (this.isOriginalLine ? "" : "." + this.offset);
+    }
+
+    /**
+     * token hash and base power of each original line, by line number
+     */
+    private static class LineHashes {
+
+        private final long[] hashes;
+        private final long[] powers;
+        private long total;
+
+        LineHashes(long[] hashes, long[] powers) {
+            this.hashes = hashes;
+            this.powers = powers;
         }
+
     }
 }
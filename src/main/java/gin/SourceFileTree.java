@@ -1,5 +1,8 @@
 package gin;
 
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.Position;
+import com.github.javaparser.Range;
 import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.*;
 import com.github.javaparser.ast.body.FieldDeclaration;
@@ -13,12 +16,17 @@ import com.github.javaparser.ast.stmt.Statement;
 import com.github.javaparser.ast.type.Type;
 import gin.misc.BlockedByJavaParserException;
 import gin.misc.CloneVisitorCopyIDs;
+import gin.misc.IntObjectMap;
+import gin.misc.IntSet;
 import org.pmw.tinylog.Logger;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.Serial;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Function;
 
 /**
  * A SourceFile designed for supporting AST-level edits (e.g. statements)
@@ -48,18 +56,21 @@ public class SourceFileTree extends SourceFile {
      * <br><br>
      * The CU nodes include, using Node.setData(), an ID that can be used
      * to reference them. For speed, these Node-ID pairs are also held
-     * in a Map. Anything extra inserted by edits does not have an ID
+     * in an int-keyed map. Anything extra inserted by edits does not have an ID
      * (for now, maybe useful in future?) possibly under a different key
      * to the original IDs
+     * <br><br>
+     * The lists of IDs below are only built when first needed, as they are not
+     * needed to apply edits, and are shared with copies until an edit changes them.
      */
     private final CompilationUnit compilationUnit;
-    private Map<Integer, Node> allNodes;
-    private List<Integer> allBlockIDs;
+    private transient IntObjectMap<Node> allNodes;
+    private transient List<Integer> allBlockIDs;
 
     /**
      * keys are IDs, values are lists of statement IDs in the block
      */
-    private Map<Integer, List<Integer>> insertionPointsInBlock;
+    private transient IntObjectMap<List<Integer>> insertionPointsInBlock;
 
     /**
      * nodes containing each target method
@@ -69,22 +80,66 @@ public class SourceFileTree extends SourceFile {
     /**
      * IDs if all nodes in a target method; i.e. descendents of the nodes in targetMethodRootNodes
      */
-    private List<Integer> targetMethodNodeIDs;
+    private transient List<Integer> targetMethodNodeIDs;
 
     /**
      * node IDs of all statements in the target methods
      */
-    private List<Integer> targetMethodStatementIDs;
+    private transient List<Integer> targetMethodStatementIDs;
 
     /**
      * node IDs of all statements
      */
-    private List<Integer> allStatementIDs;
+    private transient List<Integer> allStatementIDs;
 
     /**
      * node IDs of all blockstatements in the target methods
      */
-    private List<Integer> targetMethodBlockIDs;
+    private transient List<Integer> targetMethodBlockIDs;
+
+    /**
+     * the members of targetMethodStatementIDs and targetMethodNodeIDs, for checking membership
+     * without a scan as edits made in place change the lists; null until the lists are owned
+     */
+    private transient IntSet targetMethodStatementIDSet;
+    private transient IntSet targetMethodNodeIDSet;
+
+    /**
+     * true once the lists of IDs are built; and if they are shared with another source file,
+     * so must be copied before an edit changes them
+     */
+    private transient volatile boolean idListsBuilt = false;
+    private transient boolean idListsShared = false;
+
+    /**
+     * true if an edit changed code outside the target methods, in this source file
+     * or any it was copied from
+     */
+    private boolean changedOutsideTargetMethods = false;
+
+    /**
+     * the printed source and the structural hash of each target method, computed on first use
+     */
+    private transient volatile String source;
+    private transient volatile int[] targetMethodHashes;
+
+    /**
+     * true while this is an editable copy, changed in place by edits; see {@link #editableCopy()}
+     */
+    private transient boolean editable = false;
+    private transient int inPlaceChanges = 0;
+
+    /**
+     * if true, the source is the text of the original file with only the target methods
+     * printed in; see {@link #setMethodScopedPrinting(boolean)}
+     */
+    private boolean methodScopedPrinting = false;
+
+    /**
+     * the original file's text around the target methods, shared by all copies;
+     * {@link SourceTemplate#NONE} if the target methods cannot be printed alone
+     */
+    private transient volatile SourceTemplate sourceTemplate;
 
     public SourceFileTree(String filename, List<String> targetMethodNames) {
 
@@ -92,7 +147,8 @@ public class SourceFileTree extends SourceFile {
 
         this.compilationUnit = buildCompilationUnitFromSource(new File(filename));
 
-        this.populateIDListsFromCompilationUnit();
+        this.indexNodes();
+        this.targetMethodRootNodes = findTargetMethodRootNodes();
 
     }
 
@@ -120,10 +176,28 @@ public class SourceFileTree extends SourceFile {
 
         super(sf.filename, sf.targetMethods);
 
+        this.changedOutsideTargetMethods = sf.changedOutsideTargetMethods;
+        this.methodScopedPrinting = sf.methodScopedPrinting;
+        this.sourceTemplate = sf.sourceTemplate;
+
         // clone the compilation unit (including IDs)
         this.compilationUnit = cloneCompilationUnitWithIDs(sf.compilationUnit, nodesToReplace);
 
-        this.populateIDListsFromCompilationUnit();
+        this.indexNodes();
+        this.targetMethodRootNodes = findTargetMethodRootNodes(sf);
+
+        // the IDs are the same unless nodes were replaced, so share the lists of them;
+        // not those of an editable file, which it changes in place
+        if (nodesToReplace.isEmpty() && sf.idListsBuilt && !sf.editable) {
+            this.allStatementIDs = sf.allStatementIDs;
+            this.targetMethodStatementIDs = sf.targetMethodStatementIDs;
+            this.targetMethodNodeIDs = sf.targetMethodNodeIDs;
+            this.allBlockIDs = sf.allBlockIDs;
+            this.targetMethodBlockIDs = sf.targetMethodBlockIDs;
+            this.insertionPointsInBlock = sf.insertionPointsInBlock;
+            this.idListsShared = true;
+            this.idListsBuilt = true;
+        }
 
     }
 
@@ -154,6 +228,27 @@ public class SourceFileTree extends SourceFile {
         return new SourceFileTree(this);
     }
 
+    /**
+     * The tree is cloned once here; edits then change it in place and update the ID lists
+     * for the nodes they detach and attach, rather than cloning and re-indexing it per edit.
+     */
+    @Override
+    public SourceFile editableCopy() {
+        SourceFileTree sf = new SourceFileTree(this);
+        sf.editable = true;
+        return sf;
+    }
+
+    @Override
+    public void seal() {
+        editable = false;
+    }
+
+    @Override
+    public int getInPlaceChanges() {
+        return inPlaceChanges;
+    }
+
     /**
      * called when rebuilding CU from scratch (e.g. after reading from a file)
      * this will update the IDs etc.
@@ -186,26 +281,111 @@ public class SourceFileTree extends SourceFile {
      * updates the supporting lists of IDs, assuming that
      * this.compilationUnit exists and has IDs
      * <p>
-     * this is called after creating a new CU from scratch
-     * and after cloning an existing one
+     * this is called after a target method itself is replaced; otherwise,
+     * the lists are built on first use, see {@link #buildIDLists()}
      */
     private void populateIDListsFromCompilationUnit() {
+        indexNodes();
+        targetMethodRootNodes = findTargetMethodRootNodes();
+        idListsBuilt = false;
+        idListsShared = false;
+        targetMethodStatementIDSet = null;
+        targetMethodNodeIDSet = null;
+    }
 
-        // update the cache of IDs in the CU
-        this.allNodes = new HashMap<>();
-        for (Node n : this.compilationUnit.getChildNodesByType(Node.class)) {
-            this.allNodes.put(n.containsData(NODEKEY_ID) ? n.getData(NODEKEY_ID) : NODE_NULL_ID, n);
+    /**
+     * updates the cache of IDs in the CU
+     */
+    private void indexNodes() {
+        List<Node> nodes = this.compilationUnit.getChildNodesByType(Node.class);
+        this.allNodes = new IntObjectMap<>(nodes.size());
+        for (Node n : nodes) {
+            this.allNodes.put(idOf(n), n);
         }
+    }
 
-        // find the root nodes for the target methods
+    /**
+     * @return the root nodes for the target methods, or null if there are none
+     */
+    private List<Node> findTargetMethodRootNodes() {
         if (this.targetMethods == null || targetMethods.isEmpty()) {
-            this.targetMethodRootNodes = null;
+            return null;
         } else {
-            this.targetMethodRootNodes = getTargetMethodRootNodesFromCU(this.compilationUnit, this.targetMethods);
+            return getTargetMethodRootNodesFromCU(this.compilationUnit, this.targetMethods);
+        }
+    }
+
+    /**
+     * @param sf the source file this one was cloned from
+     * @return the root nodes for the target methods, found by the IDs of those in the
+     * given source file rather than by name, unless one of them was replaced
+     */
+    private List<Node> findTargetMethodRootNodes(SourceFileTree sf) {
+        if (sf.targetMethodRootNodes == null) {
+            return null;
+        }
+        List<Node> roots = new ArrayList<>(sf.targetMethodRootNodes.size());
+        for (Node root : sf.targetMethodRootNodes) {
+            Node copy = (root == sf.compilationUnit) ? this.compilationUnit : allNodes.get(idOf(root));
+            if (copy == null || idOf(root) == NODE_NULL_ID) {
+                return findTargetMethodRootNodes();
+            }
+            roots.add(copy);
+        }
+        return roots;
+    }
+
+    /**
+     * Builds the lists of IDs, if they have not been built, for the tree as it is now.
+     */
+    private void buildIDLists() {
+        if (!idListsBuilt) {
+            synchronized (this) {
+                if (!idListsBuilt) {
+                    findStatementsAndNodes();
+                    findBlocks();
+                    targetMethodStatementIDSet = null;
+                    targetMethodNodeIDSet = null;
+                    idListsShared = false;
+                    idListsBuilt = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the lists of IDs were built, and may now be changed by this source file
+     */
+    private boolean ownIDLists() {
+        if (!idListsBuilt) {
+            return false;
+        }
+        if (idListsShared) {
+            allStatementIDs = new ArrayList<>(allStatementIDs);
+            targetMethodStatementIDs = new ArrayList<>(targetMethodStatementIDs);
+            targetMethodNodeIDs = new ArrayList<>(targetMethodNodeIDs);
+            allBlockIDs = new ArrayList<>(allBlockIDs);
+            targetMethodBlockIDs = new ArrayList<>(targetMethodBlockIDs);
+            IntObjectMap<List<Integer>> insertionPoints = new IntObjectMap<>(insertionPointsInBlock.size());
+            for (int block : insertionPointsInBlock.keys()) {
+                insertionPoints.put(block, new ArrayList<>(insertionPointsInBlock.get(block)));
+            }
+            insertionPointsInBlock = insertionPoints;
+            idListsShared = false;
+        }
+        if (targetMethodStatementIDSet == null) {
+            targetMethodStatementIDSet = toIntSet(targetMethodStatementIDs);
+            targetMethodNodeIDSet = toIntSet(targetMethodNodeIDs);
         }
+        return true;
+    }
 
-        findStatementsAndNodes();
-        findBlocks();
+    private static IntSet toIntSet(List<Integer> ids) {
+        IntSet set = new IntSet(ids.size());
+        for (int id : ids) {
+            set.add(id);
+        }
+        return set;
     }
 
     /*============== the following are general getter methods used in various places ==============*/
@@ -220,78 +400,172 @@ public class SourceFileTree extends SourceFile {
         allStatementIDs = new ArrayList<>();
 
         for (Statement s : compilationUnit.getChildNodesByType(Statement.class)) {
-            Integer id = s.containsData(NODEKEY_ID) ? s.getData(NODEKEY_ID) : SourceFileTree.NODE_NULL_ID;
-            allStatementIDs.add(id);
+            allStatementIDs.add(idOf(s));
         }
 
         if (this.targetMethodRootNodes != null) {
-            // temp keep these in a sorted set to remove duplicates for overlapping methods
+            // temp keep these in a set to remove duplicates for overlapping methods
             // (e.g. method in an inner class, where the inner class is also in a target method)
-            SortedSet<Integer> sIDs = new TreeSet<>(); // statementIDs (a subset of nodeIDs)
-            SortedSet<Integer> nIDs = new TreeSet<>(); // nodeIDs
+            IntSet sIDs = new IntSet(); // statementIDs (a subset of nodeIDs)
+            IntSet nIDs = new IntSet(); // nodeIDs
 
             for (Node tn : this.targetMethodRootNodes) {
-                List<Node> nodesInTargetMethod = tn.getChildNodesByType(Node.class);
-
-                for (Node n : nodesInTargetMethod) {
-                    Integer id = n.containsData(NODEKEY_ID) ? n.getData(NODEKEY_ID) : SourceFileTree.NODE_NULL_ID;
-                    if (id != null) { // only track nodes in the original source, i.e. those with IDs
-                        nIDs.add(id);
-                        if (Statement.class.isAssignableFrom(n.getClass())) {
-                            sIDs.add(id);
-                        }
+                for (Node n : tn.getChildNodesByType(Node.class)) {
+                    int id = idOf(n);
+                    nIDs.add(id);
+                    if (n instanceof Statement) {
+                        sIDs.add(id);
                     }
                 }
             }
 
-            targetMethodNodeIDs.addAll(nIDs);
-            targetMethodStatementIDs.addAll(sIDs);
+            addSorted(targetMethodNodeIDs, nIDs.toArray());
+            addSorted(targetMethodStatementIDs, sIDs.toArray());
         } else {
             // no target methods? just add all nodes and statements
             targetMethodStatementIDs.addAll(allStatementIDs);
-            targetMethodNodeIDs.addAll(allNodes.keySet());
+            addSorted(targetMethodNodeIDs, allNodes.keys());
         }
     }
 
     private void findBlocks() {
         List<BlockStmt> allBlocks = compilationUnit.getChildNodesByType(BlockStmt.class);
         allBlockIDs = new ArrayList<>(allBlocks.size());
-        insertionPointsInBlock = new HashMap<>();
+        insertionPointsInBlock = new IntObjectMap<>(allBlocks.size());
 
         for (BlockStmt b : allBlocks) {
-            allBlockIDs.add(b.containsData(NODEKEY_ID) ? b.getData(NODEKEY_ID) : SourceFileTree.NODE_NULL_ID);
+            allBlockIDs.add(idOf(b));
             NodeList<Statement> statements = b.getStatements();
-            List<Integer> statementIDs = new ArrayList<>(statements.size());
-            statementIDs.add(b.containsData(NODEKEY_ID) ? b.getData(NODEKEY_ID) : SourceFileTree.NODE_NULL_ID); // add the blockID too, representing the start of the block
+            List<Integer> statementIDs = new ArrayList<>(statements.size() + 1);
+            statementIDs.add(idOf(b)); // add the blockID too, representing the start of the block
             for (Statement statement : statements) {
-                statementIDs.add(statement.containsData(NODEKEY_ID) ? statement.getData(NODEKEY_ID) : SourceFileTree.NODE_NULL_ID);
+                statementIDs.add(idOf(statement));
             }
 
-            insertionPointsInBlock.put(b.containsData(NODEKEY_ID) ? b.getData(NODEKEY_ID) : NODE_NULL_ID, statementIDs);
+            insertionPointsInBlock.put(idOf(b), statementIDs);
         }
 
         targetMethodBlockIDs = new ArrayList<>();
         if (this.targetMethodRootNodes != null) {
+            // the blocks within each target method, in the same order as in the whole file
             for (Node n : this.targetMethodRootNodes) {
-                List<BlockStmt> listTargetMethod = n.getChildNodesByType(BlockStmt.class);
-                for (BlockStmt b : allBlocks) {
-                    if (listTargetMethod.contains(b)) {
-                        targetMethodBlockIDs.add(b.containsData(NODEKEY_ID) ? b.getData(NODEKEY_ID) : SourceFileTree.NODE_NULL_ID);
-                    }
+                for (BlockStmt b : n.getChildNodesByType(BlockStmt.class)) {
+                    targetMethodBlockIDs.add(idOf(b));
                 }
             }
         } else {
-            for (BlockStmt b : allBlocks) { // no target methods? just add all
-                targetMethodBlockIDs.add(b.containsData(NODEKEY_ID) ? b.getData(NODEKEY_ID) : SourceFileTree.NODE_NULL_ID);
-            }
+            targetMethodBlockIDs.addAll(allBlockIDs); // no target methods? just add all
+        }
+    }
+
+    private static void addSorted(List<Integer> list, int[] ids) {
+        Arrays.sort(ids);
+        for (int id : ids) {
+            list.add(id);
         }
     }
 
     /**
-     * @return the source
+     * @return the source, printed on first use
      */
     public String getSource() {
-        return this.compilationUnit.toString();
+        String printed = source;
+        if (printed == null) {
+            SourceTemplate template = (methodScopedPrinting && !changedOutsideTargetMethods) ? getSourceTemplate() : null;
+            printed = (template == null) ? null : template.splice(targetMethodRootNodes);
+            if (printed == null) {
+                printed = this.compilationUnit.toString();
+            }
+            source = printed;
+        }
+        return printed;
+    }
+
+    /**
+     * Print only the target methods, splicing them into the text of the original file,
+     * rather than printing the whole compilation unit, as long as edits stay within the
+     * target methods. The rest of the file then keeps its original layout, so the same
+     * patch gives a different source in each mode, but always the same source in one.
+     * Set on the original source file, before patches are applied to it.
+     *
+     * @param methodScopedPrinting true to print only the target methods
+     */
+    public void setMethodScopedPrinting(boolean methodScopedPrinting) {
+        this.methodScopedPrinting = methodScopedPrinting;
+        this.source = null;
+        if (methodScopedPrinting) {
+            getSourceTemplate(); // now, so that copies share it
+        }
+    }
+
+    private SourceTemplate getSourceTemplate() {
+        SourceTemplate template = sourceTemplate;
+        if (template == null) {
+            template = (targetMethods == null || targetMethods.isEmpty()) ? SourceTemplate.NONE
+                    : SourceTemplate.of(filename, cu -> getTargetMethodRootNodesFromCU(cu, targetMethods));
+            sourceTemplate = template;
+        }
+        return (template == SourceTemplate.NONE) ? null : template;
+    }
+
+    /**
+     * Compares the target methods structurally, using hashes of the original's target
+     * methods computed once, and the whole compilation unit only if an edit reached
+     * outside the target methods. Comments are part of the structure.
+     */
+    @Override
+    protected boolean sameCodeAs(SourceFile original) {
+        SourceFileTree other = (SourceFileTree) original;
+        if (this.changedOutsideTargetMethods || other.changedOutsideTargetMethods) {
+            return this.compilationUnit.equals(other.compilationUnit);
+        }
+        List<Node> roots = this.getTargetMethodRoots();
+        List<Node> otherRoots = other.getTargetMethodRoots();
+        if (roots.size() != otherRoots.size()) {
+            return false;
+        }
+        int[] otherHashes = other.getTargetMethodHashes();
+        for (int i = 0; i < roots.size(); i++) {
+            // equal hashes are confirmed, so that a collision is never taken for a no-op
+            if (roots.get(i).hashCode() != otherHashes[i] || !roots.get(i).equals(otherRoots.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<Node> getTargetMethodRoots() {
+        return (targetMethodRootNodes == null) ? Collections.singletonList(compilationUnit) : targetMethodRootNodes;
+    }
+
+    private int[] getTargetMethodHashes() {
+        int[] hashes = targetMethodHashes;
+        if (hashes == null) {
+            List<Node> roots = getTargetMethodRoots();
+            hashes = new int[roots.size()];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = roots.get(i).hashCode();
+            }
+            targetMethodHashes = hashes;
+        }
+        return hashes;
+    }
+
+    /**
+     * @return true if the node is within a target method, or there are no target methods
+     */
+    private boolean isInTargetMethod(Node node) {
+        if (targetMethodRootNodes == null) {
+            return true;
+        }
+        for (Node n = node; n != null; n = n.getParentNode().orElse(null)) {
+            for (Node root : targetMethodRootNodes) {
+                if (n == root) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     @Override
@@ -326,10 +600,10 @@ public class SourceFileTree extends SourceFile {
     }
 
     public String nodeListWithIDs() {
-        List<Integer> ids = new ArrayList<>(allNodes.keySet());
-        Collections.sort(ids);
+        int[] ids = allNodes.keys();
+        Arrays.sort(ids);
         StringBuilder output = new StringBuilder();
-        for (Integer id : ids) {
+        for (int id : ids) {
             Node node = getNode(id);
             output.append("[").append(id).append("] ").append(node.toString()).append("\n");
         }
@@ -383,12 +657,20 @@ public class SourceFileTree extends SourceFile {
         if (!this.allNodes.containsKey(statementID)) {
             return this;
         } else {
-            SourceFileTree sf = new SourceFileTree(this);
+            boolean outsideTargetMethods = !isInTargetMethod(this.allNodes.get(statementID));
+            SourceFileTree sf = editable ? this : new SourceFileTree(this);
 
             Node target = sf.allNodes.get(statementID);
+            Node parent = target.getParentNode().orElse(null);
 
             if (target.remove()) { // only proceed if JavaParser lets us remove the node
-                sf.allNodes.remove(statementID);
+                sf.changedOutsideTargetMethods |= outsideTargetMethods;
+                if (sf == this) {
+                    unindex(target, parent);
+                    changedInPlace();
+                } else {
+                    sf.allNodes.remove(statementID);
+                }
                 return sf;
             } else {
                 throw new BlockedByJavaParserException("Could not delete statement with node ID " + statementID);
@@ -412,7 +694,8 @@ public class SourceFileTree extends SourceFile {
         if (!this.allNodes.containsKey(blockID) || !this.allNodes.containsKey(insertionPoint)) {
             return this;
         } else {
-            SourceFileTree sf = new SourceFileTree(this);
+            boolean outsideTargetMethods = !isInTargetMethod(this.allNodes.get(blockID));
+            SourceFileTree sf = editable ? this : new SourceFileTree(this);
 
             Statement copy = statementToInsert.clone(); // always clone to avoid nasty stateful stuff
             copy.setData(NODEKEY_ID, NODE_NULL_ID); // clear the ID of the copy
@@ -435,6 +718,11 @@ public class SourceFileTree extends SourceFile {
 
                 // Location found! Now insert.
                 ((BlockStmt) parent).addStatement(insertIndex, copy);
+                sf.changedOutsideTargetMethods |= outsideTargetMethods;
+                if (sf == this) {
+                    index(copy, parent, insertIndex);
+                    changedInPlace();
+                }
 
                 return sf;
             } else {
@@ -461,12 +749,178 @@ public class SourceFileTree extends SourceFile {
             //replacementNodeCopy.setData(NODEKEY_ID, ID);  // don't do this. it then makes edits to the replaced node possible. Issue https://github.com/drdrwhite/ginfork/issues/46
             replacementNodeCopy.setData(NODEKEY_ID, NODE_NULL_ID);
 
+            Node target = this.allNodes.get(ID);
+            boolean outsideTargetMethods = !isInTargetMethod(target);
+
+            if (editable) {
+                Node parent = target.getParentNode().orElse(null);
+                int position = positionInBlock(parent, target);
+                if (target.replace(replacementNodeCopy)) {
+                    changedOutsideTargetMethods |= outsideTargetMethods;
+                    unindex(target, parent);
+                    index(replacementNodeCopy, parent, position);
+                    changedInPlace();
+                    if (targetMethodDetached()) {
+                        // a target method itself was replaced, so find them again
+                        populateIDListsFromCompilationUnit();
+                    }
+                    return this;
+                }
+                // JavaParser would not replace the node in place, so copy with it replaced
+            }
+
             Map<Integer, Node> nodesToReplace = Collections.singletonMap(ID, replacementNodeCopy);
 
-            return new SourceFileTree(this, nodesToReplace);
+            SourceFileTree sf = new SourceFileTree(this, nodesToReplace);
+            sf.editable = editable; // a new copy, held only by the caller like this one
+            sf.changedOutsideTargetMethods |= outsideTargetMethods;
+            return sf;
+        }
+    }
+
+    /**
+     * Removes the IDs of a subtree just detached in place from the ID lists,
+     * as rebuilding them from the compilation unit would.
+     *
+     * @param subtree the detached node
+     * @param parent  its parent before it was detached, or null
+     */
+    private void unindex(Node subtree, Node parent) {
+        boolean listsBuilt = ownIDLists();
+        IntSet ids = new IntSet();
+        for (Node n : subtree.findAll(Node.class)) {
+            int id = idOf(n);
+            if (allNodes.get(id) == n) {
+                allNodes.remove(id);
+            }
+            if (id != NODE_NULL_ID) {
+                ids.add(id);
+                if (listsBuilt && (n instanceof BlockStmt)) {
+                    insertionPointsInBlock.remove(id);
+                }
+            }
+        }
+        if (!listsBuilt) {
+            return; // built from the tree as it is when first needed
+        }
+        if (!ids.isEmpty()) {
+            allStatementIDs.removeIf(ids::contains);
+            allBlockIDs.removeIf(ids::contains);
+            targetMethodStatementIDs.removeIf(ids::contains);
+            targetMethodNodeIDs.removeIf(ids::contains);
+            targetMethodBlockIDs.removeIf(ids::contains);
+            for (int id : ids.toArray()) {
+                targetMethodStatementIDSet.remove(id);
+                targetMethodNodeIDSet.remove(id);
+            }
+        }
+        if (parent instanceof BlockStmt) {
+            List<Integer> insertionPoints = insertionPointsInBlock.get(idOf(parent));
+            if (insertionPoints != null) {
+                insertionPoints.remove(Integer.valueOf(idOf(subtree)));
+            }
+        }
+    }
+
+    /**
+     * Adds the nodes of a subtree just attached in place to the ID lists, as rebuilding
+     * them from the compilation unit would; nodes added by edits have no ID of their own.
+     *
+     * @param subtree  the attached node
+     * @param parent   its parent
+     * @param position its index among the statements of the parent, if that is a block; -1 otherwise
+     */
+    private void index(Node subtree, Node parent, int position) {
+        List<Node> nodes = subtree.findAll(Node.class);
+        for (Node n : nodes) {
+            allNodes.put(idOf(n), n);
+        }
+        if (!ownIDLists()) {
+            return; // built from the tree as it is when first needed
+        }
+        boolean inTargetMethod = isInTargetMethod(subtree);
+        IntSet ids = new IntSet();
+        for (Node n : nodes) {
+            int id = idOf(n);
+            ids.add(id);
+            if (n instanceof Statement) {
+                allStatementIDs.add(id);
+                if (inTargetMethod && targetMethodStatementIDSet.add(id)) {
+                    targetMethodStatementIDs.add(id);
+                }
+            }
+            if (n instanceof BlockStmt) {
+                allBlockIDs.add(id);
+                if (inTargetMethod) {
+                    targetMethodBlockIDs.add(id);
+                }
+                List<Integer> insertionPoints = new ArrayList<>();
+                insertionPoints.add(id);
+                for (Statement s : ((BlockStmt) n).getStatements()) {
+                    insertionPoints.add(idOf(s));
+                }
+                insertionPointsInBlock.put(id, insertionPoints);
+            }
+        }
+        if (inTargetMethod) {
+            for (int id : ids.toArray()) {
+                if (targetMethodNodeIDSet.add(id)) {
+                    targetMethodNodeIDs.add(id);
+                }
+            }
+        }
+        if ((parent instanceof BlockStmt) && (position >= 0)) {
+            List<Integer> insertionPoints = insertionPointsInBlock.get(idOf(parent));
+            if (insertionPoints != null) {
+                // the first insertion point is the start of the block
+                insertionPoints.add(Math.min(position + 1, insertionPoints.size()), idOf(subtree));
+            }
         }
     }
 
+    /**
+     * records a change made in place, dropping anything computed from the tree before it
+     */
+    private void changedInPlace() {
+        inPlaceChanges++;
+        source = null;
+        targetMethodHashes = null;
+    }
+
+    /**
+     * @return true if a target method root node is no longer in the compilation unit
+     */
+    private boolean targetMethodDetached() {
+        if (targetMethodRootNodes == null) {
+            return false;
+        }
+        for (Node root : targetMethodRootNodes) {
+            if ((root != compilationUnit) && (root.findCompilationUnit().orElse(null) != compilationUnit)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the index of the child among the statements of the parent, or -1 if the parent is not a block
+     */
+    private static int positionInBlock(Node parent, Node child) {
+        if (parent instanceof BlockStmt) {
+            NodeList<Statement> statements = ((BlockStmt) parent).getStatements();
+            for (int i = 0; i < statements.size(); i++) {
+                if (statements.get(i) == child) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int idOf(Node n) {
+        return n.containsData(NODEKEY_ID) ? n.getData(NODEKEY_ID) : NODE_NULL_ID;
+    }
+
     /*============== the following are methods to get IDs and counts to assist in making edits ==============*/
 
     /**
@@ -500,7 +954,43 @@ public class SourceFileTree extends SourceFile {
         }
     }
 
+    /**
+     * @param ID of node
+     * @return the class of the node, without copying it; null if there is no such node
+     */
+    public Class<? extends Node> getNodeClass(int ID) {
+        Node node = this.allNodes.get(ID);
+        return (node == null) ? null : node.getClass();
+    }
+
+    /**
+     * @param ID of node
+     * @return the class of the node's parent, without copying it; null if there is no such node or it has no parent
+     */
+    public Class<? extends Node> getParentNodeClass(int ID) {
+        Node node = this.allNodes.get(ID);
+        return (node == null) ? null : node.getParentNode().map(Node::getClass).orElse(null);
+    }
+
+    /**
+     * @param ID of node
+     * @return the number of nodes above the node in the tree; -1 if there is no such node
+     */
+    public int getNodeDepth(int ID) {
+        Node node = this.allNodes.get(ID);
+        if (node == null) {
+            return -1;
+        }
+        int depth = 0;
+        while (node.getParentNode().isPresent()) {
+            node = node.getParentNode().get();
+            depth++;
+        }
+        return depth;
+    }
+
     public List<Integer> getAllBlockIDs() {
+        buildIDLists();
         return Collections.unmodifiableList(allBlockIDs);
     }
 
@@ -511,6 +1001,7 @@ public class SourceFileTree extends SourceFile {
      * @return null if blockID not found
      */
     public List<Integer> getInsertionPointsInBlock(int block) {
+        buildIDLists();
         return insertionPointsInBlock.get(block);
     }
 
@@ -519,10 +1010,12 @@ public class SourceFileTree extends SourceFile {
      * that sit within the target method
      */
     public List<Integer> getStatementIDsInTargetMethod() {
+        buildIDLists();
         return Collections.unmodifiableList(targetMethodStatementIDs);
     }
 
     public int getRandomStatementID(boolean inTargetMethod, Random rng) {
+        buildIDLists();
         List<Integer> l = inTargetMethod ? targetMethodStatementIDs : allStatementIDs;
         return l.get(rng.nextInt(l.size()));
     }
@@ -538,6 +1031,7 @@ public class SourceFileTree extends SourceFile {
      * size 1, there are no matching statements!)
      */
     public Map<Integer, List<Integer>> getMatchedStatementLists(boolean sourceInTargetMethod, boolean destinationInTargetMethod) {
+        buildIDLists();
         List<Integer> destinationIDs = destinationInTargetMethod ? targetMethodStatementIDs : allStatementIDs;
         Map<Integer, List<Integer>> rval = new HashMap<>();
         for (Integer destinationID : destinationIDs) {
@@ -553,6 +1047,7 @@ public class SourceFileTree extends SourceFile {
      * that sit within the target method
      */
     public List<Integer> getNodeIDsInTargetMethod() {
+        buildIDLists();
         return Collections.unmodifiableList(targetMethodNodeIDs);
     }
 
@@ -562,6 +1057,7 @@ public class SourceFileTree extends SourceFile {
      * @return -1 if no blocks found
      */
     public int getRandomBlockID(boolean inTargetMethod, Random rng) {
+        buildIDLists();
         List<Integer> l = inTargetMethod ? targetMethodBlockIDs : allBlockIDs;
         if (l.isEmpty()) {
             return -1;
@@ -621,6 +1117,7 @@ public class SourceFileTree extends SourceFile {
     public List<Integer> getNodeIDsByClass(boolean inTargetMethod, List<Class<? extends Node>> clazzes) {
         List<Integer> rval;
         if (inTargetMethod) {
+            buildIDLists();
             rval = new ArrayList<>(targetMethodNodeIDs.size());
             for (int i : targetMethodNodeIDs) {
                 for (Class<? extends Node> clazz : clazzes) {
@@ -632,7 +1129,10 @@ public class SourceFileTree extends SourceFile {
             }
         } else {
             rval = new ArrayList<>();
-            for (Node n : allNodes.values()) {
+            int[] ids = allNodes.keys();
+            Arrays.sort(ids);
+            for (int id : ids) {
+                Node n = allNodes.get(id);
                 for (Class<? extends Node> clazz : clazzes) {
                     if (clazz.isAssignableFrom(n.getClass())) {
                         rval.add(n.containsData(NODEKEY_ID) ? n.getData(NODEKEY_ID) : NODE_NULL_ID); // no need to check for null, these nodes are only ones from the original and have IDs
@@ -645,6 +1145,7 @@ public class SourceFileTree extends SourceFile {
     }
 
     public List<Integer> getAllStatementIDs() {
+        buildIDLists();
         return Collections.unmodifiableList(allStatementIDs);
     }
 
@@ -653,6 +1154,7 @@ public class SourceFileTree extends SourceFile {
      * that sit within the target method
      */
     public List<Integer> getBlockIDsInTargetMethod() {
+        buildIDLists();
         return Collections.unmodifiableList(targetMethodBlockIDs);
     }
 
@@ -776,6 +1278,103 @@ public class SourceFileTree extends SourceFile {
         return rval;
     }
 
+    /**
+     * The text of the original file, cut around the target methods. Parsing the file again
+     * finds the target methods in the same order as they are in every copy, so the printed
+     * methods of a copy can be put back in the gaps.
+     */
+    private static final class SourceTemplate {
+
+        private static final SourceTemplate NONE = new SourceTemplate(new String[0], new String[0]);
+
+        /**
+         * text before each target method (including its comment) and after the last
+         */
+        private final String[] segments;
+
+        /**
+         * indentation of the line each target method starts on
+         */
+        private final String[] indents;
+
+        private SourceTemplate(String[] segments, String[] indents) {
+            this.segments = segments;
+            this.indents = indents;
+        }
+
+        /**
+         * @param findTargetMethods finds the target methods in a compilation unit
+         * @return the template for the target methods of the file, or {@link #NONE} if
+         * the whole file is targeted, or one target method is within another
+         */
+        static SourceTemplate of(String filename, Function<CompilationUnit, List<Node>> findTargetMethods) {
+            String text;
+            CompilationUnit cu;
+            try {
+                text = Files.readString(Path.of(filename));
+                cu = StaticJavaParser.parse(text);
+            } catch (IOException | ParseProblemException e) {
+                Logger.warn("Printing the whole of " + filename + ", as it could not be read again: " + e.getMessage());
+                return NONE;
+            }
+            List<Node> roots = findTargetMethods.apply(cu);
+            if (roots.size() == 1 && roots.get(0) == cu) {
+                return NONE;
+            }
+
+            List<Integer> lineStarts = new ArrayList<>();
+            lineStarts.add(0);
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\n' || (c == '\r' && (i + 1 == text.length() || text.charAt(i + 1) != '\n'))) {
+                    lineStarts.add(i + 1);
+                }
+            }
+
+            String[] segments = new String[roots.size() + 1];
+            String[] indents = new String[roots.size()];
+            int previousEnd = 0;
+            for (int i = 0; i < roots.size(); i++) {
+                Node root = roots.get(i);
+                Optional<Range> range = root.getRange();
+                if (range.isEmpty()) {
+                    return NONE;
+                }
+                Position begin = root.getComment().flatMap(Node::getRange).map(r -> r.begin).orElse(range.get().begin);
+                int start = lineStarts.get(begin.line - 1) + begin.column - 1;
+                int end = lineStarts.get(range.get().end.line - 1) + range.get().end.column;
+                if (start < previousEnd) {
+                    return NONE;
+                }
+                segments[i] = text.substring(previousEnd, start);
+                indents[i] = text.substring(lineStarts.get(begin.line - 1), start).replaceAll("\\S", " ");
+                previousEnd = end;
+            }
+            segments[roots.size()] = text.substring(previousEnd);
+            return new SourceTemplate(segments, indents);
+        }
+
+        /**
+         * @param roots the target methods of a copy of the file
+         * @return the file's text with the target methods printed in their place, or null if
+         * the copy does not have the same number of target methods
+         */
+        String splice(List<Node> roots) {
+            if (roots == null || roots.size() != indents.length) {
+                return null;
+            }
+            StringBuilder source = new StringBuilder();
+            for (int i = 0; i < indents.length; i++) {
+                source.append(segments[i]);
+                String method = roots.get(i).toString();
+                source.append(method.replace("\n", "\n" + indents[i]));
+            }
+            source.append(segments[indents.length]);
+            return source.toString();
+        }
+
+    }
+
     public static class VariableTypeAndName {
         public final Type type;
         public final SimpleName name;
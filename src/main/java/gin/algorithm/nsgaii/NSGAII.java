@@ -6,6 +6,8 @@ import com.sampullara.cli.Argument;
 import gin.Patch;
 import gin.SourceFile;
 import gin.edit.Edit;
+import gin.edit.EditBandit;
+import gin.edit.NoEdit;
 import gin.test.UnitTest;
 import gin.test.UnitTestResultSet;
 import gin.util.Sampler;
@@ -19,8 +21,12 @@ import java.io.IOException;
 import java.io.Serial;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
+import java.util.function.ToLongFunction;
 
 public class NSGAII extends Sampler {
 
@@ -42,15 +48,33 @@ public class NSGAII extends Sampler {
     @Argument(alias = "is", description = "Random seed for individual selection")
     protected Integer individualSeed = 123;
 
+    @Argument(alias = "ob", description = "Comma separated objectives to minimise, any number of: time, memory, cpu, energy")
+    protected String objectives = "time,memory";
+
+    @Argument(alias = "eb", description = EditBandit.ENABLE_DESCRIPTION)
+    protected Boolean editBandit = false;
+
+    @Argument(alias = "ebd", description = EditBandit.DECAY_DESCRIPTION)
+    protected Double editBanditDecay = EditBandit.DEFAULT_DECAY;
+
     // Allowed edit types for sampling: parsed from editType
     protected List<Class<? extends Edit>> editTypes;
 
     protected Random mutationRng;
     protected Random individualRng;
+    // Chooses the class of each mutation's edit; null to choose uniformly
+    protected transient EditBandit bandit;
+    // Objectives parsed from objectives, and the direction of each: all minimised
+    protected List<Objective> objectiveList;
+    protected List<Integer> fitnessDirs;
     protected String methodName;
     private String className;
     private float initTime;
     private long initMem;
+    // objectives of the original code, that mutants of it are rewarded for improving on
+    private long[] initCosts;
+    // individual each patch selected for breeding, or crossed over from them, inherits its objectives from, until mutated
+    private transient Map<Patch, NSGAInd> inherited = new IdentityHashMap<>();
     private List<UnitTest> tests;
 
     public NSGAII(String[] args) {
@@ -79,12 +103,30 @@ public class NSGAII extends Sampler {
         Logger.info("Number of individuals: " + indNumber);
         Logger.info("Random seed for mutation operator selection: " + mutationSeed);
         Logger.info("Random seed for individual selection: " + individualSeed);
+        Logger.info("Objectives: " + objectiveList);
     }
 
     private void setup() {
         mutationRng = new JDKRandomBridge(RandomSource.MT, Long.valueOf(mutationSeed));
         individualRng = new JDKRandomBridge(RandomSource.MT, Long.valueOf(individualSeed));
         editTypes = Edit.parseEditClassesFromString(editType);
+        bandit = EditBandit.fromOptions(editBandit, editBanditDecay);
+        objectiveList = new ArrayList<>();
+        fitnessDirs = new ArrayList<>();
+        for (String objective : objectives.split(",")) {
+            try {
+                objectiveList.add(Objective.valueOf(objective.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                Logger.error("Unknown objective: " + objective);
+                System.exit(-1);
+            }
+            fitnessDirs.add(-1);
+        }
+    }
+
+    @Override
+    protected long getSurrogateSeed() {
+        return mutationSeed;
     }
 
     // Implementation of gin.util.Sampler's abstract method
@@ -101,10 +143,14 @@ public class NSGAII extends Sampler {
                 Logger.info("Running NSGAII on method " + method);
 
                 // Setup SourceFile for patching
-                SourceFile sourceFile = SourceFile.makeSourceFileForEditTypes(editTypes, method.getFileSource().getPath(), Collections.singletonList(method.getMethodName()));
+                SourceFile sourceFile = makeSourceFile(editTypes, method.getFileSource().getPath(), Collections.singletonList(method.getMethodName()));
 
                 search(method, new Patch(sourceFile));
 
+                if (bandit != null) {
+                    Logger.info(bandit);
+                }
+
             }
         }
 
@@ -121,52 +167,83 @@ public class NSGAII extends Sampler {
         UnitTestResultSet initRes = initFitness(className, tests, origPatch);
         initMem = initRes.totalMemoryUsage();
         initTime = initRes.totalExecutionTime() / 1000000.0f;
+        initCosts = measure(initRes);
         writePatch(initRes, methodName);
 
-        ArrayList<Integer> dirs = new ArrayList<>();
-        dirs.add(-1);
-        dirs.add(-1);
-        NSGAIIPop P = new NSGAIIPop(2, dirs);
-        UnitTestResultSet resultSet;
+        NSGAIIPop P = new NSGAIIPop(objectiveList.size(), fitnessDirs);
         Logger.info("Generating initial generation");
+        List<Patch> initialPatches = new ArrayList<>();
+        List<long[]> parentCosts = new ArrayList<>();
         for (int i = 0; i < indNumber; i++) {
-            Patch patch = mutate(origPatch);
-            resultSet = testPatch(className, tests, patch, null);
-            writePatch(resultSet, methodName);
-            ArrayList<Long> fitnesses = new ArrayList<>();
-            if (resultSet.allTestsSuccessful()) {
-                fitnesses.add(resultSet.totalExecutionTime());
-                fitnesses.add(resultSet.totalMemoryUsage());
-            } else {
-                fitnesses.add(Long.MAX_VALUE);
-                fitnesses.add(Long.MAX_VALUE);
-            }
-            P.addInd(patch, fitnesses);
-
+            initialPatches.add(mutate(origPatch));
+            parentCosts.add(initCosts);
         }
+        addTestedPatches(P, initialPatches, parentCosts);
         for (int g = 0; g < genNumber; g++) {
             Logger.info("Generating generation " + g);
             NSGAIIPop Q = NSGAIIOffspring(P, origPatch);
             NSGAIIPop R = new NSGAIIPop(P, Q);
             Logger.info("getting next generation");
             ArrayList<Patch> patches = R.getNextGen(indNumber);
-            P = new NSGAIIPop(2, dirs);
-            for (Patch patch : patches) {
-                Logger.info("Testing patch: " + patch);
-                resultSet = testPatch(className, tests, patch, null);
-
-                writePatch(resultSet, methodName);
-                ArrayList<Long> fitnesses = new ArrayList<>();
-                if (resultSet.allTestsSuccessful()) {
-                    fitnesses.add(resultSet.totalExecutionTime());
-                    fitnesses.add(resultSet.totalMemoryUsage());
-                } else {
-                    fitnesses.add(Long.MAX_VALUE);
-                    fitnesses.add(Long.MAX_VALUE);
+            P = new NSGAIIPop(objectiveList.size(), fitnessDirs);
+            addTestedPatches(P, patches, null);
+        }
+    }
+
+    /**
+     * Tests all the patches as one batch, so they can be evaluated in parallel,
+     * and adds them to the population with their fitnesses.
+     *
+     * @param parentCosts if each patch has just been mutated, so its last edit is rewarded, the
+     *                    objective values of the patch each was mutated from; otherwise null
+     */
+    private void addTestedPatches(NSGAIIPop pop, List<Patch> patches, List<long[]> parentCosts) {
+        List<UnitTestResultSet> results = testPatches(className, tests, patches, null);
+        for (int i = 0; i < patches.size(); i++) {
+            UnitTestResultSet resultSet = results.get(i);
+            writePatch(resultSet, methodName);
+            long[] fitnesses = measure(resultSet);
+            if (parentCosts != null) {
+                rewardEdit(patches.get(i), resultSet, fitnesses, parentCosts.get(i));
+            }
+            pop.addInd(patches.get(i), fitnesses);
+        }
+    }
+
+    private long[] measure(UnitTestResultSet resultSet) {
+        long[] fitnesses = new long[objectiveList.size()];
+        for (int m = 0; m < fitnesses.length; m++) {
+            fitnesses[m] = resultSet.allTestsSuccessful() ? objectiveList.get(m).measure(resultSet) : Long.MAX_VALUE;
+        }
+        return fitnesses;
+    }
+
+    /**
+     * Reward the class of a mutant's last edit, the one added by mutation, with how the mutant
+     * did when tested; its improvement is the mean relative improvement over the patch it was
+     * mutated from across the objectives, counting only those improved.
+     *
+     * @param parentCosts objective values of the patch mutated; those of a patch that failed are not improved on
+     */
+    private void rewardEdit(Patch patch, UnitTestResultSet resultSet, long[] fitnesses, long[] parentCosts) {
+        if (bandit == null || patch.size() == 0 || resultSet.getSkipped()) {
+            return;
+        }
+        Edit edit = patch.getEdits().get(patch.size() - 1);
+        if (edit instanceof NoEdit) {
+            return;
+        }
+        boolean passed = resultSet.getValidPatch() && resultSet.getCleanCompile() && resultSet.allTestsSuccessful();
+        double improvement = 0;
+        if (passed) {
+            for (int m = 0; m < fitnesses.length; m++) {
+                if (parentCosts[m] > 0 && parentCosts[m] != Long.MAX_VALUE && fitnesses[m] < parentCosts[m]) {
+                    improvement += (parentCosts[m] - fitnesses[m]) / (double) parentCosts[m];
                 }
-                P.addInd(patch, fitnesses);
             }
+            improvement /= fitnesses.length;
         }
+        bandit.record(edit.getClass(), passed, improvement, resultSet.getCompileTimeNS() + resultSet.totalExecutionTime());
     }
 
     public NSGAIIPop NSGAIIOffspring(NSGAIIPop pop, Patch origpatch) {
@@ -182,16 +259,16 @@ public class NSGAII extends Sampler {
             NSGAInd ind1 = population.get(individualRng.nextInt(population.size()));
             NSGAInd ind2 = population.get(individualRng.nextInt(population.size()));
             if (ind1.getRank() < ind2.getRank()) {
-                patches.add(ind1.getPatch().clone());
+                patches.add(select(ind1));
             }
             if (ind1.getRank() > ind2.getRank()) {
-                patches.add(ind2.getPatch().clone());
+                patches.add(select(ind2));
             } else {
                 float coinFlip = mutationRng.nextFloat();
                 if (coinFlip < 0.5) {
-                    patches.add(ind1.getPatch().clone());
+                    patches.add(select(ind1));
                 } else {
-                    patches.add(ind2.getPatch().clone());
+                    patches.add(select(ind2));
                 }
             }
         }
@@ -199,36 +276,32 @@ public class NSGAII extends Sampler {
         patches = crossover(patches, origpatch);
         //mutation
         List<Patch> mutatedPatches = new ArrayList<>();
+        List<long[]> parentCosts = new ArrayList<>();
         for (Patch patch : patches) {
             if (mutationRng.nextFloat() < 0.5) {
                 mutatedPatches.add(mutate(patch));
+                NSGAInd parent = inherited.get(patch);
+                parentCosts.add((parent == null) ? initCosts : parent.getFitnesses());
             }
         }
+        inherited.clear();
         patches = mutatedPatches;
-        ArrayList<Integer> dirs = new ArrayList<>();
-        dirs.add(-1);
-        dirs.add(-1);
-        NSGAIIPop Q = new NSGAIIPop(2, dirs);
+        NSGAIIPop Q = new NSGAIIPop(objectiveList.size(), fitnessDirs);
         //fitness
-        for (Patch patch : patches) {
-            UnitTestResultSet resultSet;
-            resultSet = testPatch(className, tests, patch, null);
-
-            writePatch(resultSet, methodName);
-            ArrayList<Long> fitnesses = new ArrayList<>();
-            if (resultSet.allTestsSuccessful()) {
-                fitnesses.add(resultSet.totalExecutionTime());
-                fitnesses.add(resultSet.totalMemoryUsage());
-            } else {
-                fitnesses.add(Long.MAX_VALUE);
-                fitnesses.add(Long.MAX_VALUE);
-            }
-            Q.addInd(patch, fitnesses);
-        }
+        addTestedPatches(Q, patches, parentCosts);
 
         return Q;
     }
 
+    /**
+     * @return a copy of the individual's patch to breed from, which inherits its objective values
+     */
+    private Patch select(NSGAInd ind) {
+        Patch patch = ind.getPatch().clone();
+        inherited.put(patch, ind);
+        return patch;
+    }
+
     protected UnitTestResultSet initFitness(String className, List<UnitTest> tests, Patch origPatch) {
 
         return testPatch(className, tests, origPatch, null);
@@ -236,7 +309,7 @@ public class NSGAII extends Sampler {
 
     protected Patch mutate(Patch oldPatch) {
         Patch patch = oldPatch.clone();
-        patch.addRandomEditOfClasses(mutationRng, editTypes);
+        patch.addRandomEditOfClasses(mutationRng, editTypes, bandit);
         return patch;
     }
 
@@ -276,6 +349,15 @@ public class NSGAII extends Sampler {
                 }
             }
 
+            // offspring inherit the objective values of the better ranked parent
+            NSGAInd ind1 = inherited.get(parent1);
+            NSGAInd ind2 = inherited.get(parent2);
+            if (ind1 != null && ind2 != null) {
+                NSGAInd better = (ind2.getRank() < ind1.getRank()) ? ind2 : ind1;
+                inherited.put(child1, better);
+                inherited.put(child2, better);
+            }
+
             crossedPatches.add(parent1);
             crossedPatches.add(parent2);
             crossedPatches.add(child1);
@@ -287,6 +369,27 @@ public class NSGAII extends Sampler {
 
 
 
+    /**
+     * Objectives that can be minimised, each measured over all the tests of a patch.
+     */
+    protected enum Objective {
+        TIME(UnitTestResultSet::totalExecutionTime),
+        MEMORY(UnitTestResultSet::totalMemoryUsage),
+        CPU(UnitTestResultSet::totalCPUTime),
+        // in microjoules, so that it is a whole number like the others
+        ENERGY(results -> Math.round(results.totalEnergyUsage() * 1e6));
+
+        private final ToLongFunction<UnitTestResultSet> measure;
+
+        Objective(ToLongFunction<UnitTestResultSet> measure) {
+            this.measure = measure;
+        }
+
+        public long measure(UnitTestResultSet results) {
+            return measure.applyAsLong(results);
+        }
+    }
+
     /*============== Helper methods  ==============*/
 
     protected void writeNewHeader() {
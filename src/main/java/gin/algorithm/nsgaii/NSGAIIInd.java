@@ -2,19 +2,17 @@ package gin.algorithm.nsgaii;
 
 import gin.Patch;
 
-import java.util.ArrayList;
-
 public class NSGAIIInd extends NSGAInd {
     private double crowding;
 
-    public NSGAIIInd(Patch patch, ArrayList<Long> fitnesses) {
+    public NSGAIIInd(Patch patch, long[] fitnesses) {
         super(patch, fitnesses);
 
 
         this.crowding = 0;
     }
 
-    public NSGAIIInd(ArrayList<Long> fitnesses) {
+    public NSGAIIInd(long[] fitnesses) {
         super(fitnesses);
         this.crowding = 0;
     }
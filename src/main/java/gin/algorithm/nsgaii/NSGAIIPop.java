@@ -4,6 +4,7 @@ import gin.Patch;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 
 public class NSGAIIPop extends NSGAPop {
 
@@ -12,7 +13,7 @@ public class NSGAIIPop extends NSGAPop {
         super(noObj);
     }
 
-    public NSGAIIPop(int noObj, ArrayList<Integer> fitnessDirs) {
+    public NSGAIIPop(int noObj, List<Integer> fitnessDirs) {
         super(noObj, fitnessDirs);
     }
 
@@ -20,28 +21,23 @@ public class NSGAIIPop extends NSGAPop {
         super(p, q);
     }
 
-    public void addInd(Patch patch, ArrayList<Long> fitnesses) {
-        if (fitnesses.size() != noObj) {
+    public void addInd(Patch patch, long[] fitnesses) {
+        if (fitnesses.length != noObj) {
             throw new IllegalArgumentException("Incorrect number of fitnesses");
         }
         population.add(new NSGAIIInd(patch, fitnesses));
     }
 
+    /**
+     * Set the crowding distance of each individual within its front; call after nonDominatedSort.
+     */
     public void setCrowding() {
-        for (int m = 0; m < noObj; m++) {
-            sortByObj(m);
-            ((NSGAIIInd) population.get(0)).setCrowding(Double.MAX_VALUE);
-            ((NSGAIIInd) population.get(population.size() - 1)).setCrowding(Double.MAX_VALUE);
-            double max = population.get(population.size() - 1).getFitnesses().get(m);
-            double min = population.get(0).getFitnesses().get(m);
-            double denom = max - min;
-            for (int i = 1; i < population.size() - 1; i++) {
-                double currentDist = ((NSGAIIInd) population.get(i)).getCrowding();
-                double num = population.get(i + 1).getFitnesses().get(m) - population.get(i - 1).getFitnesses().get(m);
-                ((NSGAIIInd) population.get(i)).setCrowding(currentDist + (num / denom));
+        for (int[] front : frontIndices) {
+            double[] distance = NonDominatedSort.crowdingDistance(costs, front);
+            for (int i = 0; i < front.length; i++) {
+                ((NSGAIIInd) population.get(front[i])).setCrowding(distance[i]);
             }
         }
-
     }
 
 
@@ -49,13 +45,14 @@ public class NSGAIIPop extends NSGAPop {
         ArrayList<Patch> out = new ArrayList<>();
         nonDominatedSort();
         setCrowding();
-        for (int front = 1; front <= fronts.size(); front++) {
-            if (fronts.get(front).size() < popSize - out.size()) {
+        for (int front = 1; front <= fronts.size() && out.size() < popSize; front++) {
+            if (fronts.get(front).size() <= popSize - out.size()) {
                 for (NSGAInd ind : fronts.get(front)) {
                     out.add(ind.getPatch().clone());
                 }
             } else {
-                fronts.get(front).sort(Comparator.comparing((NSGAInd ind) -> ((NSGAIIInd) ind).getCrowding()));
+                // the least crowded of the last front to fit
+                fronts.get(front).sort(Comparator.comparingDouble((NSGAInd ind) -> ((NSGAIIInd) ind).getCrowding()).reversed());
                 int frontInd = 0;
                 while (out.size() < popSize) {
                     out.add(fronts.get(front).get(frontInd).getPatch().clone());
@@ -3,8 +3,10 @@ package gin.algorithm.nsgaii;
 import gin.Patch;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public abstract class NSGAPop {
@@ -12,20 +14,26 @@ public abstract class NSGAPop {
     protected ArrayList<NSGAInd> population;
     protected int noObj;
     protected Map<Integer, ArrayList<NSGAInd>> fronts;
-    protected ArrayList<Integer> fitnessDirs = new ArrayList<>();
+    // 1 to maximise an objective, -1 to minimise it
+    protected int[] fitnessDirs;
+    // Set by nonDominatedSort: costs[objective][individual], all minimised, and the individuals in each front
+    protected double[][] costs;
+    protected int[][] frontIndices;
 
     public NSGAPop(int noObj) {
         this.population = new ArrayList<>();
         this.noObj = noObj;
-        for (int i = 0; i < noObj; i++) {
-            fitnessDirs.add(1);
-        }
+        this.fitnessDirs = new int[noObj];
+        Arrays.fill(fitnessDirs, 1);
     }
 
-    public NSGAPop(int noObj, ArrayList<Integer> fitnessDirs) {
+    public NSGAPop(int noObj, List<Integer> fitnessDirs) {
+        if (fitnessDirs.size() != noObj) {
+            throw new IllegalArgumentException("Incorrect number of fitness directions");
+        }
         this.population = new ArrayList<>();
         this.noObj = noObj;
-        this.fitnessDirs = fitnessDirs;
+        this.fitnessDirs = fitnessDirs.stream().mapToInt(Integer::intValue).toArray();
     }
 
     public NSGAPop(NSGAPop p, NSGAPop q) {
@@ -33,13 +41,13 @@ public abstract class NSGAPop {
             throw new IllegalArgumentException("No objectives dont match");
         }
         noObj = p.noObj;
-        if (p.fitnessDirs.equals(q.fitnessDirs)) {
+        if (Arrays.equals(p.fitnessDirs, q.fitnessDirs)) {
             fitnessDirs = p.fitnessDirs;
 
         } else {
             throw new IllegalArgumentException("Fitness Directions do not match");
         }
-        this.population = new ArrayList<>();
+        this.population = new ArrayList<>(p.population.size() + q.population.size());
         for (NSGAInd ind : p.getPopulation()) {
             addInd(ind);
         }
@@ -48,66 +56,55 @@ public abstract class NSGAPop {
         }
     }
 
-    public abstract void addInd(Patch patch, ArrayList<Long> fitnesses);
+    public abstract void addInd(Patch patch, long[] fitnesses);
 
     public void addInd(NSGAInd ind) {
         population.add(ind);
     }
 
-    protected void nonDominatedSort() {
-        Map<NSGAInd, ArrayList<NSGAInd>> dominationSets = new HashMap<>();
-        Map<NSGAInd, Integer> dominationScores = new HashMap<>();
-        fronts = new HashMap<>();
-        fronts.put(1, new ArrayList<>());
-        for (NSGAInd p : population) {
-            ArrayList<NSGAInd> dominationSet = new ArrayList<>();
-            int dominationScore = 0;
-            for (NSGAInd q : population) {
-                if (dominates(p, q)) {
-                    dominationSet.add(q);
-                } else if (dominates(q, p)) {
-                    dominationScore += 1;
-                }
-            }
-            dominationScores.put(p, dominationScore);
-            dominationSets.put(p, dominationSet);
-            if (dominationScore == 0) {
-                fronts.get(1).add(p);
+    /**
+     * @return costs[objective][individual], negated for objectives to be maximised so that all are minimised
+     */
+    protected double[][] getCosts() {
+        double[][] costs = new double[noObj][population.size()];
+        for (int i = 0; i < population.size(); i++) {
+            long[] fitnesses = population.get(i).getFitnesses();
+            for (int m = 0; m < noObj; m++) {
+                costs[m][i] = -fitnessDirs[m] * (double) fitnesses[m];
             }
         }
-        int i = 1;
-        while (true) {
-            ArrayList<NSGAInd> currentFront = fronts.get(i);
-            ArrayList<NSGAInd> nextFront = new ArrayList<>();
-            for (NSGAInd p : currentFront) {
-                for (NSGAInd q : dominationSets.get(p)) {
-                    Integer score = dominationScores.get(q);
-                    score -= 1;
-                    dominationScores.put(q, score);
-                    if (score == 0) {
-                        q.setRank(i + 1);
-                        nextFront.add(q);
-                    }
-                }
-            }
-            i += 1;
-            if (nextFront.size() == 0) {
-                break;
-            } else {
-                fronts.put(i, nextFront);
+        return costs;
+    }
+
+    /**
+     * Rank the population into fronts, from 1 for the non-dominated front.
+     */
+    protected void nonDominatedSort() {
+        costs = getCosts();
+        int[] ranks = NonDominatedSort.rank(costs);
+        frontIndices = NonDominatedSort.fronts(ranks);
+        fronts = new HashMap<>();
+        for (int f = 0; f < frontIndices.length; f++) {
+            ArrayList<NSGAInd> front = new ArrayList<>(frontIndices[f].length);
+            for (int i : frontIndices[f]) {
+                NSGAInd ind = population.get(i);
+                ind.setRank(f + 1);
+                front.add(ind);
             }
+            fronts.put(f + 1, front);
         }
     }
 
-
     public boolean dominates(NSGAInd p, NSGAInd q) {
         boolean better = false;
+        long[] pFitnesses = p.getFitnesses();
+        long[] qFitnesses = q.getFitnesses();
         for (int i = 0; i < noObj; i++) {
-            float dir = fitnessDirs.get(i);
-            if (p.getFitnesses().get(i) * dir < q.getFitnesses().get(i) * dir) {
+            int comparison = Long.compare(pFitnesses[i], qFitnesses[i]) * fitnessDirs[i];
+            if (comparison < 0) {
                 return false;
             }
-            if (p.getFitnesses().get(i) * dir > q.getFitnesses().get(i) * dir) {
+            if (comparison > 0) {
                 better = true;
             }
         }
@@ -115,7 +112,7 @@ public abstract class NSGAPop {
     }
 
     public void sortByObj(int index) {
-        population.sort(Comparator.comparing((NSGAInd ind) -> ind.getFitnesses().get(index)));
+        population.sort(Comparator.comparingLong((NSGAInd ind) -> ind.getFitnesses()[index]));
     }
 
     public ArrayList<NSGAInd> getPopulation() {
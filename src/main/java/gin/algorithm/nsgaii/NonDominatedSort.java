@@ -0,0 +1,301 @@
+package gin.algorithm.nsgaii;
+
+import java.util.Arrays;
+
+/**
+ * Non-dominated sorting and crowding distance over an objective matrix, costs[objective][individual],
+ * with every objective minimised. Each objective is a contiguous array, so that crowding distance is
+ * computed a column at a time.
+ * <p>
+ * One or two objectives are ranked by a sweep in O(n log n) (Jensen 2003; Fortin et al. 2013); more
+ * objectives by efficient non-dominated sort (Zhang et al. 2015), which makes the same comparisons
+ * as Deb's fast non-dominated sort at worst, but usually far fewer, and keeps no domination lists.
+ */
+public final class NonDominatedSort {
+
+    private NonDominatedSort() {
+    }
+
+    /**
+     * @param costs costs[objective][individual], minimised; every row the same length
+     * @return the front of each individual, from 1 for the non-dominated front. Individuals with
+     * equal costs in every objective share a front.
+     */
+    public static int[] rank(double[][] costs) {
+        if (costs.length == 0) {
+            return new int[0];
+        }
+        int n = costs[0].length;
+        for (double[] row : costs) {
+            if (row.length != n) {
+                throw new IllegalArgumentException("Objective rows differ in length");
+            }
+        }
+        switch (costs.length) {
+            case 1:
+                return sweep(costs[0], new double[n]);
+            case 2:
+                return sweep(costs[0], costs[1]);
+            default:
+                return efficientNonDominatedSort(costs);
+        }
+    }
+
+    /**
+     * @param ranks front of each individual, from 1, as given by {@link #rank}
+     * @return fronts[f] holds the individuals in front f + 1, in increasing order
+     */
+    public static int[][] fronts(int[] ranks) {
+        int maxRank = 0;
+        for (int rank : ranks) {
+            maxRank = Math.max(maxRank, rank);
+        }
+        int[] sizes = new int[maxRank];
+        for (int rank : ranks) {
+            sizes[rank - 1]++;
+        }
+        int[][] fronts = new int[maxRank][];
+        for (int f = 0; f < maxRank; f++) {
+            fronts[f] = new int[sizes[f]];
+        }
+        Arrays.fill(sizes, 0);
+        for (int i = 0; i < ranks.length; i++) {
+            int f = ranks[i] - 1;
+            fronts[f][sizes[f]++] = i;
+        }
+        return fronts;
+    }
+
+    /**
+     * Crowding distance of each member of a front: the sum over the objectives of the gap between
+     * its neighbours either side, relative to the spread of the front. The members at either end
+     * of any objective are infinitely far from the rest, so they are always kept. Objectives on
+     * which the whole front is equal, or which are unbounded, add nothing.
+     *
+     * @param costs costs[objective][individual], minimised
+     * @param front the individuals in the front
+     * @return the distance of each member of the front, in the same order
+     */
+    public static double[] crowdingDistance(double[][] costs, int[] front) {
+        int s = front.length;
+        double[] distance = new double[s];
+        if (s <= 2) {
+            Arrays.fill(distance, Double.POSITIVE_INFINITY);
+            return distance;
+        }
+        double[] column = new double[s];
+        double[] sorted = new double[s];
+        int[] order = new int[s];
+        int[] buffer = new int[s];
+        for (double[] objective : costs) {
+            for (int p = 0; p < s; p++) {
+                column[p] = objective[front[p]];
+                order[p] = p;
+            }
+            sortIndices(order, buffer, column);
+            for (int i = 0; i < s; i++) {
+                sorted[i] = column[order[i]];
+            }
+            distance[order[0]] = Double.POSITIVE_INFINITY;
+            distance[order[s - 1]] = Double.POSITIVE_INFINITY;
+            double range = sorted[s - 1] - sorted[0];
+            if (!(range > 0) || range == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            double scale = 1.0 / range;
+            for (int i = 1; i < s - 1; i++) {
+                distance[order[i]] += (sorted[i + 1] - sorted[i - 1]) * scale;
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Sorted by the first objective, ties broken by the second, an individual is dominated by an
+     * earlier one exactly when that has no greater second cost and is not equal to it. Fronts found
+     * so far are kept as the least second cost of any member, which does not decrease from one
+     * front to the next, so each individual's front is found by binary search.
+     */
+    private static int[] sweep(double[] f1, double[] f2) {
+        int n = f1.length;
+        int[] ranks = new int[n];
+        if (n == 0) {
+            return ranks;
+        }
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        sortIndices(order, new int[n], f1, f2);
+
+        double[] frontMin = new double[n];
+        int frontCount = 0;
+        int previous = -1;
+        for (int i : order) {
+            if (previous >= 0 && f1[i] == f1[previous] && f2[i] == f2[previous]) {
+                ranks[i] = ranks[previous];
+                continue;
+            }
+            // first front whose least second cost is greater than this one's
+            int low = 0;
+            int high = frontCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (frontMin[mid] <= f2[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            frontMin[low] = f2[i];
+            if (low == frontCount) {
+                frontCount++;
+            }
+            ranks[i] = low + 1;
+            previous = i;
+        }
+        return ranks;
+    }
+
+    /**
+     * Efficient non-dominated sort with binary search (Zhang et al. 2015). Sorted lexicographically,
+     * an individual can only be dominated by earlier ones, so fronts are built in one pass. As an
+     * individual dominated by front k is also dominated by every front before it, its front is found
+     * by binary search, each step scanning one front from its most recent member.
+     */
+    private static int[] efficientNonDominatedSort(double[][] costs) {
+        int m = costs.length;
+        int n = costs[0].length;
+        int[] ranks = new int[n];
+        if (n == 0) {
+            return ranks;
+        }
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        sortIndices(order, new int[n], costs);
+
+        // in sorted order and row by row, so that comparing two individuals reads contiguous memory
+        double[] points = new double[n * m];
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < m; k++) {
+                points[i * m + k] = costs[k][order[i]];
+            }
+        }
+
+        // members of each front, as positions in sorted order
+        int[][] fronts = new int[n][];
+        int[] frontSizes = new int[n];
+        int frontCount = 0;
+        int[] sortedRanks = new int[n];
+        for (int i = 0; i < n; i++) {
+            int front;
+            if (i > 0 && equal(points, i - 1, i, m)) {
+                front = sortedRanks[i - 1];
+            } else {
+                int low = 0;
+                int high = frontCount;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (dominatedByFront(points, i, m, fronts[mid], frontSizes[mid])) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                front = low;
+                if (front == frontCount) {
+                    frontCount++;
+                }
+            }
+            add(fronts, frontSizes, front, i);
+            sortedRanks[i] = front;
+            ranks[order[i]] = front + 1;
+        }
+        return ranks;
+    }
+
+    private static boolean dominatedByFront(double[] points, int p, int m, int[] front, int size) {
+        for (int j = size - 1; j >= 0; j--) {
+            if (weaklyDominates(points, front[j], p, m)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if q is no worse than p in every objective but the first, which q cannot be
+     * worse in as it sorts before p; with equal individuals handled apart, that means q dominates p
+     */
+    private static boolean weaklyDominates(double[] points, int q, int p, int m) {
+        int qBase = q * m;
+        int pBase = p * m;
+        for (int k = 1; k < m; k++) {
+            if (points[qBase + k] > points[pBase + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equal(double[] points, int p, int q, int m) {
+        for (int k = 0; k < m; k++) {
+            if (points[p * m + k] != points[q * m + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void add(int[][] lists, int[] sizes, int list, int value) {
+        int[] values = lists[list];
+        if (values == null) {
+            values = lists[list] = new int[4];
+        } else if (sizes[list] == values.length) {
+            values = lists[list] = Arrays.copyOf(values, values.length * 2);
+        }
+        values[sizes[list]++] = value;
+    }
+
+    /**
+     * Stable merge sort of indices, lexicographically by the keys, so that keys are never boxed.
+     */
+    private static void sortIndices(int[] indices, int[] buffer, double[]... keys) {
+        mergeSort(indices, buffer, 0, indices.length, keys);
+    }
+
+    private static void mergeSort(int[] a, int[] buffer, int from, int to, double[][] keys) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(a, buffer, from, mid, keys);
+        mergeSort(a, buffer, mid, to, keys);
+        if (compare(a[mid - 1], a[mid], keys) <= 0) {
+            return;
+        }
+        System.arraycopy(a, from, buffer, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && compare(buffer[i], buffer[j], keys) <= 0)) {
+                a[k] = buffer[i++];
+            } else {
+                a[k] = buffer[j++];
+            }
+        }
+    }
+
+    private static int compare(int x, int y, double[][] keys) {
+        for (double[] key : keys) {
+            int c = Double.compare(key[x], key[y]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+}
@@ -114,5 +114,21 @@ public abstract class Edit implements Serializable {
     // implementation note: considering making metadata generic rather than just an Object but that's a wider scale refactoring
     public abstract SourceFile apply(SourceFile sourceFile, Object metadata);
 
+    /**
+     * @return true if applying the edit to the same source always gives the same result
+     */
+    public boolean isDeterministic() {
+        return true;
+    }
+
+    /**
+     * @return true if each change this edit makes is to the result of its last one, never
+     * twice to the source file it is given, so that the file may be changed in place;
+     * see {@link SourceFile#editableCopy()}
+     */
+    public boolean chainsChanges() {
+        return true;
+    }
+
     public enum EditType {LINE, STATEMENT, MODIFY_STATEMENT, MATCHED_STATEMENT, INSERT_STATEMENT}
 }
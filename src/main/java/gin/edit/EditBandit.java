@@ -0,0 +1,222 @@
+package gin.edit;
+
+import org.pmw.tinylog.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Chooses the class of each new edit by Thompson sampling, learning online which edit classes
+ * pay off for the code being improved, rather than choosing uniformly.
+ * <p>
+ * Each edit class is an arm. Once the patch an edit was added to has been tested, its class is
+ * rewarded: nothing if the patch failed to compile or to pass the tests, otherwise half a point,
+ * plus up to half a point for the relative fitness improvement. An arm is played by sampling its
+ * mean reward from a normal approximation of the posterior, and dividing that by the arm's mean
+ * cost (compile and test time) relative to all arms, so rewards are traded off per second of
+ * evaluation. A patch that fails is charged at least the mean cost of testing a patch that
+ * passes, as a patch that fails to compile, or fails fast, costs the search a full evaluation
+ * all the same: otherwise edit classes that seldom compile would look cheap. Edit classes that
+ * give patches which do not compile or pass soon stop being chosen, bar the odd sample, while
+ * untried classes are tried early on.
+ * <p>
+ * Choosing does not change the bandit, so mutants of a whole generation can be chosen before any
+ * is tested, and still be spread over the promising arms. Past rewards and costs are discounted
+ * by a constant factor at each new one, so the bandit can follow changes in which edits pay off
+ * as the search moves on.
+ */
+public class EditBandit {
+
+    /**
+     * Descriptions of the options for the bandit, shared by the searches that offer them
+     * as -eb and -ebd, with {@link #fromOptions} to act on them.
+     */
+    public static final String ENABLE_DESCRIPTION = "Choose the class of each new edit by a bandit that learns which edit classes give patches that compile, pass and improve fitness for the least evaluation time, rather than uniformly";
+    public static final String DECAY_DESCRIPTION = "Edit bandit: factor by which past rewards are discounted at each new one, so the bandit follows changes in which edits pay off; 1 never forgets";
+    public static final double DEFAULT_DECAY = 0.99;
+
+    /**
+     * reward for a patch that compiles and passes, before any improvement is added
+     */
+    static final double PASS_REWARD = 0.5;
+
+    /**
+     * the prior counts as one observation of this reward
+     */
+    private static final double PRIOR_REWARD = 0.5;
+
+    private final double decay;
+    private final Map<Class<? extends Edit>, Arm> arms = new LinkedHashMap<>();
+    // discounted totals over all arms, for their mean cost
+    private double totalCost = 0;
+    private double totalPlays = 0;
+    // discounted totals over the patches that passed, for the least a failure is charged
+    private double passedCost = 0;
+    private double passedPlays = 0;
+
+    /**
+     * @param decay factor by which past rewards and costs are discounted at each new one, in (0, 1];
+     *              1 never forgets
+     */
+    public EditBandit(double decay) {
+        if (!(decay > 0 && decay <= 1)) {
+            throw new IllegalArgumentException("Bandit decay must be in (0, 1]: " + decay);
+        }
+        this.decay = decay;
+    }
+
+    /**
+     * @param enabled whether edit classes are chosen by a bandit, i.e. -eb
+     * @param decay   the bandit's decay, i.e. -ebd
+     * @return a new bandit, or null if not enabled, for edit classes to be chosen uniformly
+     */
+    public static EditBandit fromOptions(Boolean enabled, Double decay) {
+        if (enabled == null || !enabled) {
+            return null;
+        }
+        Logger.info("Edit bandit decay: " + decay);
+        return new EditBandit(decay);
+    }
+
+    /**
+     * @param editTypes classes to choose from; not empty
+     * @param rng       for sampling the arms
+     * @return the class to make an edit of
+     */
+    public synchronized Class<? extends Edit> choose(List<Class<? extends Edit>> editTypes, Random rng) {
+        double meanCost = (totalPlays > 0) ? totalCost / totalPlays : 0;
+        Class<? extends Edit> best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (Class<? extends Edit> editType : editTypes) {
+            Arm arm = arms.get(editType);
+            double score = (arm == null) ? Arm.sample(0, 0, rng) : arm.sample(rng) / arm.relativeCost(meanCost);
+            if (score > bestScore) {
+                best = editType;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Reward an edit class with how the patch it was added to did when tested.
+     *
+     * @param editType    class of the edit
+     * @param passed      true if the patch compiled and passed all tests
+     * @param improvement relative fitness improvement on the patch compared with; 0 if none,
+     *                    counted up to 1
+     * @param costNS      time taken to compile and test the patch, in nanoseconds; a patch that
+     *                    failed is charged at least the mean for a patch that passed
+     */
+    public synchronized void record(Class<? extends Edit> editType, boolean passed, double improvement, long costNS) {
+        double reward = passed ? PASS_REWARD + (1 - PASS_REWARD) * Math.min(1, Math.max(0, improvement)) : 0;
+        double cost = Math.max(1, costNS);
+        if (!passed && passedPlays > 0) {
+            cost = Math.max(cost, passedCost / passedPlays);
+        }
+        for (Arm arm : arms.values()) {
+            arm.discount(decay);
+        }
+        totalCost = totalCost * decay + cost;
+        totalPlays = totalPlays * decay + 1;
+        passedCost *= decay;
+        passedPlays *= decay;
+        if (passed) {
+            passedCost += cost;
+            passedPlays++;
+        }
+        arms.computeIfAbsent(editType, k -> new Arm()).add(reward, cost);
+    }
+
+    /**
+     * @return the estimated mean reward of the edit class, before costs; the prior if it was never played
+     */
+    public synchronized double getMeanReward(Class<? extends Edit> editType) {
+        Arm arm = arms.get(editType);
+        return (arm == null) ? PRIOR_REWARD : arm.mean();
+    }
+
+    /**
+     * @return the mean cost charged to the edit class, in nanoseconds; 0 if it was never played
+     */
+    public synchronized double getMeanCost(Class<? extends Edit> editType) {
+        Arm arm = arms.get(editType);
+        return (arm == null || arm.plays == 0) ? 0 : arm.costs / arm.plays;
+    }
+
+    /**
+     * @return the discounted number of times the edit class was rewarded
+     */
+    public synchronized double getPlays(Class<? extends Edit> editType) {
+        Arm arm = arms.get(editType);
+        return (arm == null) ? 0 : arm.plays;
+    }
+
+    @Override
+    public synchronized String toString() {
+        double meanCost = (totalPlays > 0) ? totalCost / totalPlays : 0;
+        StringBuilder sb = new StringBuilder("Edit bandit:");
+        for (Map.Entry<Class<? extends Edit>, Arm> entry : arms.entrySet()) {
+            Arm arm = entry.getValue();
+            sb.append(String.format(" %s (plays %.1f, reward %.3f, cost x%.2f);",
+                    entry.getKey().getSimpleName(), arm.plays, arm.mean(), arm.relativeCost(meanCost)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * discounted sums of the rewards and costs of one edit class
+     */
+    private static class Arm {
+
+        private double plays = 0;
+        private double rewards = 0;
+        private double costs = 0;
+
+        void add(double reward, double cost) {
+            plays++;
+            rewards += reward;
+            costs += cost;
+        }
+
+        void discount(double decay) {
+            plays *= decay;
+            rewards *= decay;
+            costs *= decay;
+        }
+
+        double mean() {
+            return mean(rewards, plays);
+        }
+
+        double sample(Random rng) {
+            return sample(rewards, plays, rng);
+        }
+
+        /**
+         * @return the arm's mean cost over the mean of all arms, taking the overall mean as one
+         * prior observation, so a single slow test does not sink an arm
+         */
+        double relativeCost(double meanCost) {
+            if (!(meanCost > 0)) {
+                return 1;
+            }
+            return (costs + meanCost) / (plays + 1) / meanCost;
+        }
+
+        static double mean(double rewards, double plays) {
+            return (rewards + PRIOR_REWARD) / (plays + 1);
+        }
+
+        static double sample(double rewards, double plays, Random rng) {
+            double mean = mean(rewards, plays);
+            // rewards are in [0, 1], so their variance is at most that of a coin with the same mean
+            double sd = Math.sqrt(mean * (1 - mean) / (plays + 1));
+            return Math.max(0, mean + sd * rng.nextGaussian());
+        }
+
+    }
+
+}
@@ -0,0 +1,104 @@
+package gin.edit;
+
+import gin.SourceFile;
+import gin.edit.modifynode.NoApplicableNodesException;
+import org.pmw.tinylog.Logger;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+
+/**
+ * Creates random edits of one class through its (SourceFile, Random) constructor, which is
+ * resolved once into a method handle. There is one factory per edit class. A factory holds
+ * no state of its own, so edits can be created on several threads at once, as long as
+ * each thread has its own random number generator.
+ */
+public final class EditFactory {
+
+    private static final ClassValue<EditFactory> FACTORIES = new ClassValue<>() {
+        @Override
+        protected EditFactory computeValue(Class<?> type) {
+            return new EditFactory(type.asSubclass(Edit.class));
+        }
+    };
+
+    private static final MethodType RANDOM_EDIT = MethodType.methodType(Edit.class, SourceFile.class, Random.class);
+
+    /**
+     * seeds tried before deciding that no edit of a class can be made for a source file
+     */
+    private static final int APPLICABILITY_PROBES = 4;
+
+    private final MethodHandle constructor;
+
+    private EditFactory(Class<? extends Edit> editType) {
+        MethodHandle handle = null;
+        try {
+            handle = MethodHandles.publicLookup()
+                    .findConstructor(editType, MethodType.methodType(void.class, SourceFile.class, Random.class))
+                    .asType(RANDOM_EDIT);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            // we get here if the edit author forgot to add a public (SourceFile,Random) constructor
+            Logger.warn("(SourceFile,Random) constructor not found for edit class " + editType);
+        }
+        this.constructor = handle;
+    }
+
+    /**
+     * @param editType an edit class
+     * @return the factory for the edit class
+     */
+    public static EditFactory of(Class<? extends Edit> editType) {
+        return FACTORIES.get(editType);
+    }
+
+    /**
+     * @param sourceFile the source file to edit
+     * @param rng        random number generator used to choose what to edit
+     * @return a random edit for the source file, or null if one could not be created
+     */
+    public Edit create(SourceFile sourceFile, Random rng) {
+        if (constructor == null) {
+            return null;
+        }
+        try {
+            return (Edit) constructor.invokeExact(sourceFile, rng);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // e.g. NoApplicableNodesException, or nothing left to choose from in the source file
+            return null;
+        }
+    }
+
+    /**
+     * Tries to create an edit for the source file with a few fixed seeds. Use
+     * {@link SourceFile#canBeEditedBy(Class)}, which asks once for each edit class.
+     *
+     * @param sourceFile the source file to edit
+     * @return false if no edit of this class can be made for the source file, e.g. as it has no
+     * binary operators for {@link gin.edit.modifynode.BinaryOperatorReplacement}
+     */
+    public boolean canEdit(SourceFile sourceFile) {
+        if (constructor == null) {
+            return false;
+        }
+        for (int seed = 0; seed < APPLICABILITY_PROBES; seed++) {
+            try {
+                // only whether an edit can be made matters; invoke, unlike invokeExact, may drop the edit
+                constructor.invoke(sourceFile, new Random(seed));
+                return true;
+            } catch (NoApplicableNodesException e) {
+                return false;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                // may only have been the choice made with this seed, so try another
+            }
+        }
+        return false;
+    }
+
+}
@@ -82,6 +82,22 @@ public class LLMReplaceStatement extends StatementEdit {
         return new LLMReplaceStatement(destFilename, destination);
     }
 
+    /**
+     * @return false: each application asks the model for a new replacement
+     */
+    @Override
+    public boolean isDeterministic() {
+        return false;
+    }
+
+    /**
+     * @return false: each variant replaces the statement in the same source file
+     */
+    @Override
+    public boolean chainsChanges() {
+        return false;
+    }
+
     @Override
     public SourceFile apply(SourceFile sourceFile, Object tagReplacements) {
     	List<SourceFile> l = applyMultiple(sourceFile, 1, (Map<PromptTemplate.PromptTag,String>)tagReplacements);
@@ -0,0 +1,56 @@
+package gin.misc;
+
+/**
+ * A set of ints, by open addressing with linear probing, so that members are never boxed.
+ */
+public class IntSet {
+
+    private static final Object PRESENT = Boolean.TRUE;
+
+    private final IntObjectMap<Object> map;
+
+    public IntSet() {
+        this.map = new IntObjectMap<>();
+    }
+
+    /**
+     * @param expectedSize number of members the set should hold without growing
+     */
+    public IntSet(int expectedSize) {
+        this.map = new IntObjectMap<>(expectedSize);
+    }
+
+    /**
+     * @return true if the value was not already a member
+     */
+    public boolean add(int value) {
+        return map.put(value, PRESENT) == null;
+    }
+
+    public boolean contains(int value) {
+        return map.containsKey(value);
+    }
+
+    /**
+     * @return true if the value was a member
+     */
+    public boolean remove(int value) {
+        return map.remove(value) != null;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    /**
+     * @return the members, in no particular order
+     */
+    public int[] toArray() {
+        return map.keys();
+    }
+
+}
@@ -0,0 +1,73 @@
+package gin.misc;
+
+import org.apache.commons.rng.JumpableUniformRandomProvider;
+import org.apache.commons.rng.UniformRandomProvider;
+import org.apache.commons.rng.simple.RandomSource;
+
+import java.io.Serial;
+import java.util.Random;
+
+/**
+ * Independent streams of random numbers, split from one seeded generator by jumping it
+ * ahead, so that streams never overlap. The streams depend only on the seed and the order
+ * they are taken in. Tasks run in parallel give the same results on every run if each is
+ * handed its own stream, in order, before they start.
+ */
+public class RandomStreams {
+
+    private final JumpableUniformRandomProvider source;
+
+    /**
+     * @param seed seed of the generator the streams are split from
+     */
+    public RandomStreams(long seed) {
+        this.source = (JumpableUniformRandomProvider) RandomSource.create(RandomSource.XO_RO_SHI_RO_128_PP, seed);
+    }
+
+    /**
+     * @return the next stream
+     */
+    public synchronized Random next() {
+        return new StreamRandom(source.jump());
+    }
+
+    /**
+     * @param count number of streams
+     * @return the next streams, in order
+     */
+    public synchronized Random[] next(int count) {
+        Random[] streams = new Random[count];
+        for (int i = 0; i < count; i++) {
+            streams[i] = next();
+        }
+        return streams;
+    }
+
+    /**
+     * a Random drawing from one stream; like any Random other than java.util.Random itself,
+     * for use on one thread at a time
+     */
+    private static class StreamRandom extends Random {
+
+        @Serial
+        private static final long serialVersionUID = -2917434810617218235L;
+
+        private final UniformRandomProvider stream;
+
+        StreamRandom(UniformRandomProvider stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public synchronized void setSeed(long seed) {
+            // called by the Random constructor, before the stream is set; streams are not reseeded
+        }
+
+        @Override
+        protected int next(int bits) {
+            return stream.nextInt() >>> (32 - bits);
+        }
+
+    }
+
+}
@@ -0,0 +1,118 @@
+package gin.test;
+
+import com.opencsv.CSVReaderHeaderAware;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-test timeouts derived from the runtimes of the tests on the unmodified code.
+ * <p>
+ * A test's timeout is a multiple of a high percentile of its baseline execution times,
+ * plus a floor to absorb noise in very short tests. Timeouts never exceed the flat
+ * timeout the tests started with, and tests that did not pass on the baseline keep it.
+ * Derived timeouts are kept by test name, so they can be written to a file and reused.
+ */
+public class AdaptiveTimeouts {
+
+    private static final String[] HEADER = {"UnitTest", "TimeoutMS"};
+
+    private final double multiplier;
+    private final double percentile;
+    private final long floorMS;
+    private final Map<String, Long> timeouts = new LinkedHashMap<>();
+
+    /**
+     * @param multiplier multiple of the baseline percentile given to each test
+     * @param percentile percentile of the baseline execution times, between 0 and 100
+     * @param floorMS    added to each timeout, in milliseconds
+     */
+    public AdaptiveTimeouts(double multiplier, double percentile, long floorMS) {
+        this.multiplier = multiplier;
+        this.percentile = Math.min(100.0, Math.max(0.0, percentile));
+        this.floorMS = floorMS;
+    }
+
+    /**
+     * Derive timeouts from a run of the unmodified code, for any test that has none yet,
+     * and set the timeout of each of the given tests.
+     *
+     * @param baseline results of the empty patch
+     * @param tests    the tests to set timeouts for; the same objects used to test patches
+     */
+    public void apply(UnitTestResultSet baseline, Collection<UnitTest> tests) {
+
+        Map<UnitTest, long[]> runtimes = baseline.getUnitTestTimes();
+        for (UnitTest test : tests) {
+            Long timeoutMS = timeouts.get(test.toString());
+            if (timeoutMS == null) {
+                long[] times = runtimes.get(test);
+                if (times == null || !passed(baseline, test)) {
+                    continue;
+                }
+                timeoutMS = Math.min(test.getTimeoutMS(), timeoutFor(times));
+                timeouts.put(test.toString(), timeoutMS);
+            }
+            test.setTimeoutMS(timeoutMS);
+        }
+
+    }
+
+    /**
+     * @param timesNS baseline execution times of a test, in nanoseconds
+     * @return the timeout in milliseconds: multiplier times the percentile, plus the floor
+     */
+    public long timeoutFor(long[] timesNS) {
+        long[] sorted = timesNS.clone();
+        Arrays.sort(sorted);
+        // nearest rank
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        long percentileNS = sorted[Math.max(0, rank - 1)];
+        return (long) Math.ceil(multiplier * percentileNS / 1000000.0) + floorMS;
+    }
+
+    public Map<String, Long> getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Write all timeouts derived so far, one test per row.
+     */
+    public void write(File file) throws IOException {
+        try (CSVWriter writer = new CSVWriter(new FileWriter(file))) {
+            writer.writeNext(HEADER);
+            for (Map.Entry<String, Long> entry : timeouts.entrySet()) {
+                writer.writeNext(new String[]{entry.getKey(), Long.toString(entry.getValue())});
+            }
+        }
+    }
+
+    /**
+     * Read timeouts written by {@link #write}. Tests found in the file are not derived again.
+     */
+    public void read(File file) throws IOException {
+        try (CSVReaderHeaderAware reader = new CSVReaderHeaderAware(new FileReader(file))) {
+            Map<String, String> row;
+            while ((row = reader.readMap()) != null) {
+                timeouts.put(row.get(HEADER[0]), Long.parseLong(row.get(HEADER[1])));
+            }
+        } catch (CsvValidationException | NumberFormatException e) {
+            throw new IOException("Invalid timeouts file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean passed(UnitTestResultSet baseline, UnitTest test) {
+        return baseline.getResults().stream()
+                .filter(result -> result.getTest().equals(test))
+                .allMatch(UnitTestResult::getPassed);
+    }
+
+}
@@ -0,0 +1,267 @@
+package gin.test;
+
+import org.pmw.tinylog.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of compilation results: the bytecode of the classes produced,
+ * or the compile error. Entries are keyed by a hash of the normalised source of each class
+ * and of everything else the compilation depends on: the JDK version, the compiler options,
+ * and the classpath, each entry of which is fingerprinted by the size and modification time
+ * of its files. Patches that differ as edit lists but give the same program are so compiled
+ * once, while an entry persisted by an earlier run is not reused once the project or its
+ * dependencies have been rebuilt. Fingerprints are taken once per classpath per JVM, as the
+ * classpath is not expected to change during a run.
+ * <p>
+ * Entries are held in memory up to a maximum number, least recently used first out.
+ * Given a directory, each entry is also written there and read back on a memory miss,
+ * so compilations are reused across runs.
+ * <p>
+ * Normalisation is deliberately conservative: line endings are unified and trailing
+ * whitespace removed, as neither changes the meaning of Java source. Comments and other
+ * whitespace are kept, since stripping them textually could alter string literals.
+ */
+public class BytecodeCache {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    /**
+     * fingerprint of each full classpath seen, by the classpath string
+     */
+    private static final Map<String, String> CLASS_PATH_FINGERPRINTS = new ConcurrentHashMap<>();
+
+    private final int maxEntries;
+    private final File directory;
+    private final Map<String, Entry> entries;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param maxEntries number of entries held in memory
+     * @param directory  where to persist entries between runs, or null to keep them in memory only
+     */
+    public BytecodeCache(int maxEntries, File directory) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.directory = directory;
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            Logger.warn("Could not create bytecode cache directory " + directory + ", caching in memory only.");
+        }
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > BytecodeCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * The result of compiling some sources.
+     *
+     * @param classes bytecode of every class produced, by binary name; null if compilation failed
+     * @param error   the compile errors, or null if compilation succeeded
+     */
+    public record Entry(Map<String, byte[]> classes, String error) {
+    }
+
+    /**
+     * @param sources   full source of each class, by fully qualified class name
+     * @param classPath classpath the sources are compiled against
+     * @return the key of the compilation of the given sources by {@link Compiler}
+     */
+    public static String key(Map<String, String> sources, String classPath) {
+        return key(sources, classPath, Compiler.OPTIONS);
+    }
+
+    /**
+     * @param sources   full source of each class, by fully qualified class name
+     * @param classPath classpath the sources are compiled against
+     * @param options   compiler options the sources are compiled with, besides the classpath
+     * @return the key of the compilation of the given sources
+     */
+    public static String key(Map<String, String> sources, String classPath, List<String> options) {
+        MessageDigest digest = newDigest();
+        update(digest, Runtime.version().toString());
+        update(digest, String.join("\0", options));
+        String fullClassPath = Compiler.fullClassPath(classPath);
+        update(digest, fullClassPath);
+        update(digest, CLASS_PATH_FINGERPRINTS.computeIfAbsent(fullClassPath, BytecodeCache::fingerprint));
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            update(digest, source.getKey());
+            update(digest, normalise(source.getValue()));
+        }
+        return HEX.formatHex(digest.digest());
+    }
+
+    /**
+     * @return a hash of the path, size and modification time of every file on the classpath,
+     * directories included recursively
+     */
+    static String fingerprint(String classPath) {
+        MessageDigest digest = newDigest();
+        for (String entry : classPath.split(File.pathSeparator)) {
+            if (entry.isEmpty()) {
+                continue;
+            }
+            File file = new File(entry);
+            update(digest, file.getAbsolutePath());
+            if (file.isDirectory()) {
+                try (Stream<Path> paths = Files.walk(file.toPath())) {
+                    paths.filter(Files::isRegularFile).sorted().forEach(path -> update(digest, path + ":" + stat(path.toFile())));
+                } catch (IOException | UncheckedIOException e) {
+                    // unhashable, so never equal to another run's fingerprint
+                    Logger.warn("Could not fingerprint classpath entry " + file + ": " + e.getMessage());
+                    update(digest, String.valueOf(System.nanoTime()));
+                }
+            } else {
+                update(digest, stat(file));
+            }
+        }
+        return HEX.formatHex(digest.digest());
+    }
+
+    private static String stat(File file) {
+        return file.exists() ? file.length() + ":" + file.lastModified() : "missing";
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    /**
+     * @return the source with unified line endings and no trailing whitespace on any line
+     */
+    static String normalise(String source) {
+        return source.replace("\r\n", "\n").replace('\r', '\n').replaceAll("[ \\t\\f]+\\n", "\n").stripTrailing();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // length-prefixed, so that the boundaries between values are part of the key
+        digest.update(new byte[]{(byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16), (byte) (bytes.length >>> 8), (byte) bytes.length});
+        digest.update(bytes);
+    }
+
+    /**
+     * @return the cached compilation with the given key, or null if there is none
+     */
+    public Entry get(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        // disk is read outside the lock, so that other threads' lookups do not wait on it
+        if (entry == null && directory != null) {
+            entry = read(key);
+        }
+        synchronized (this) {
+            if (entry == null) {
+                misses++;
+            } else {
+                hits++;
+                entries.putIfAbsent(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    public void put(String key, Entry entry) {
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+        if (directory != null) {
+            write(key, entry);
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the fraction of lookups that found a cached compilation
+     */
+    public synchronized double getReuseRate() {
+        return (hits + misses == 0) ? 0.0 : (double) hits / (hits + misses);
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key + ".bin");
+    }
+
+    private Entry read(String key) {
+        File file = fileFor(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (!in.readBoolean()) {
+                return new Entry(null, new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8));
+            }
+            int count = in.readInt();
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String className = in.readUTF();
+                classes.put(className, in.readNBytes(in.readInt()));
+            }
+            return new Entry(classes, null);
+        } catch (IOException e) {
+            Logger.warn("Ignoring unreadable bytecode cache entry " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void write(String key, Entry entry) {
+        File file = fileFor(key);
+        try {
+            // written aside then moved, so that a concurrent reader, in this run or another, never reads a partial entry
+            File temp = File.createTempFile("entry", ".tmp", directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+                out.writeBoolean(entry.classes() != null);
+                if (entry.classes() == null) {
+                    byte[] error = String.valueOf(entry.error()).getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(error.length);
+                    out.write(error);
+                } else {
+                    out.writeInt(entry.classes().size());
+                    for (Map.Entry<String, byte[]> c : entry.classes().entrySet()) {
+                        out.writeUTF(c.getKey());
+                        out.writeInt(c.getValue().length);
+                        out.write(c.getValue());
+                    }
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.warn("Could not write bytecode cache entry " + file + ": " + e.getMessage());
+        }
+    }
+
+}
@@ -38,6 +38,17 @@ public class CacheClassLoader extends URLClassLoader implements Serializable {
         providedClassPath = classPaths;
     }
 
+    /**
+     * Constructs a ClassLoader with no classpath of its own, delegating to the
+     * given parent. Used for loaders that only overlay a few classes.
+     *
+     * @param parent the loader to delegate to.
+     */
+    protected CacheClassLoader(ClassLoader parent) {
+        super(new URL[0], parent);
+        providedClassPath = new URL[0];
+    }
+
     /**
      * Constructs a ClassLoader with the system classpath and the elements given
      * as input. The input should be a full classpath with elements separated by
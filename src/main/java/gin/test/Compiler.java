@@ -1,34 +1,64 @@
 package gin.test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serial;
 import java.io.Serializable;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
 import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
 import javax.tools.ToolProvider;
 
 import org.mdkt.compiler.CompiledCode;
-import org.mdkt.compiler.InMemoryJavaCompiler;
 import org.pmw.tinylog.Logger;
 
 /**
- * Wraps the InMemoryJavaCompiler to compile a class given its name and a classpath.
+ * Compiles patched classes in memory with the system Java compiler.
+ * <p>
+ * The compiler keeps one file manager open between compilations, with the classpath
+ * already set, so the jars on the classpath are opened and indexed once rather than for
+ * every patch; only the patched compilation units are parsed each time. A compiler is
+ * not meant to be shared between threads: each thread evaluating patches should own one,
+ * as with {@link EvaluationPool#getCompiler()}. Call {@link #close()} to release the
+ * file manager.
  */
-public class Compiler implements Serializable {
+public class Compiler implements Serializable, AutoCloseable {
 
     @Serial
     private static final long serialVersionUID = -5411786808143665676L;
 
     private String lastError;
-    
+
+    /**
+     * File manager kept warm between compilations, and the classpath it was set up for.
+     */
+    private transient StandardJavaFileManager fileManager;
+    private transient String fileManagerClassPath;
+
+    /**
+     * Options given to every in-memory compilation, besides the classpath.
+     */
+    public static final List<String> OPTIONS = List.of();
+
+    private long compilations = 0;
+    private long totalCompileTimeNS = 0;
+    private long lastCompileTimeNS = 0;
+
     public Compiler() {
     	this.lastError = null;
     }
@@ -36,48 +66,170 @@ public class Compiler implements Serializable {
     public String getLastError() {
 		return lastError;
 	}
-    
+
+    /**
+     * @return the wall-clock time taken by the last in-memory compilation, in ns
+     */
+    public long getLastCompileTimeNS() {
+        return lastCompileTimeNS;
+    }
+
+    /**
+     * @return the number of in-memory compilations so far, successful or not
+     */
+    public long getCompilations() {
+        return compilations;
+    }
+
+    /**
+     * @return the wall-clock time taken by all in-memory compilations so far, in ns
+     */
+    public long getTotalCompileTimeNS() {
+        return totalCompileTimeNS;
+    }
+
     /**
      * Compile a class to bytecode, given the fully qualified classname, a source string, and an optional classpath.
+     * Inner classes are compiled but not returned; see {@link #compile(Map, String)}.
      *
      * @param className Full class name, e.g. org.mypackage.StringHelper
      * @param source    String of full source file.
      * @param classPath Standard Java classpath string.
-     * @return the compiled code
+     * @return the compiled code, or null if compilation failed
      */
     public CompiledCode compile(String className, String source, String classPath) {
 
-        CompiledCode code;
-        lastError = null;
+        Map<String, byte[]> byteCode = compile(Collections.singletonMap(className, source), classPath);
+        if (byteCode == null) {
+            if (lastError.contains("does not exist")) {
+                Logger.error("Did you set the classpath with -cp=?");
+            }
+            return null;
+        }
 
         try {
+            CompiledCode code = new CompiledCode(className);
+            code.openOutputStream().write(byteCode.get(className));
+            return code;
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            return null;
+        }
 
-            InMemoryJavaCompiler compiler = InMemoryJavaCompiler.newInstance();
-            compiler = compiler.ignoreWarnings();
+    }
 
-            String fullClassPath = classPath == null ?
-                    System.getProperty("java.class.path") :
-                    classPath + File.pathSeparator + System.getProperty("java.class.path");
+    /**
+     * Compile several classes to bytecode together, in a single compilation task, so that
+     * they can refer to each other's changes.
+     *
+     * @param sources   full source of each top-level class, by fully qualified class name
+     * @param classPath Standard Java classpath string, or null.
+     * @return the bytecode of every class produced, inner classes included, by binary name;
+     * null if compilation failed, with the errors in {@link #getLastError()}
+     */
+    public synchronized Map<String, byte[]> compile(Map<String, String> sources, String classPath) {
 
-            compiler.useOptions("-classpath", fullClassPath, "-Xlint:unchecked");
+        lastError = null;
+        long start = System.nanoTime();
 
-            code = compiler.compileToRawBytes(className, source);
-            
-        } catch (Exception e) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnosticsCollector = new DiagnosticCollector<>();
+        Map<String, ClassOutput> outputs = new LinkedHashMap<>();
 
-            if (e.getMessage().contains("does not exist")) {
-                Logger.error("Did you set the classpath with -cp=?");
+        try {
+
+            StandardJavaFileManager fm = getFileManager(compiler, classPath);
+
+            List<JavaFileObject> compilationUnits = new ArrayList<>(sources.size());
+            sources.forEach((className, source) -> compilationUnits.add(new SourceInput(className, source)));
+
+            // the classpath is already set on the file manager
+            JavaCompiler.CompilationTask task = compiler.getTask(null, new InMemoryFileManager(fm, outputs),
+                    diagnosticsCollector, OPTIONS, null, compilationUnits);
+
+            if (!task.call()) {
+                StringBuilder errors = new StringBuilder();
+                for (Diagnostic<? extends JavaFileObject> diagnostic : diagnosticsCollector.getDiagnostics()) {
+                    if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                        errors.append(diagnostic).append(System.lineSeparator());
+                    }
+                }
+                lastError = errors.toString();
+                return null;
             }
 
-            code = null;
-            lastError = e.getMessage();
+        } catch (IOException ex) {
+            Logger.error(ex, "Error while trying to set the classpath of the StandardJavaFileManager instance.");
+            lastError = ex.getMessage();
+            return null;
+        } finally {
+            lastCompileTimeNS = System.nanoTime() - start;
+            totalCompileTimeNS += lastCompileTimeNS;
+            compilations++;
+        }
+
+        Map<String, byte[]> byteCode = new LinkedHashMap<>();
+        outputs.forEach((className, output) -> byteCode.put(className, output.getByteCode()));
+        return byteCode;
+
+    }
 
+    /**
+     * @param classPath Standard Java classpath string, or null.
+     * @return the classpath compilations are actually run against: the given one followed by
+     * this JVM's own
+     */
+    public static String fullClassPath(String classPath) {
+        return classPath == null ?
+                System.getProperty("java.class.path") :
+                classPath + File.pathSeparator + System.getProperty("java.class.path");
+    }
+
+    /**
+     * @return the warm file manager, set up for the given classpath; a new one if the
+     * classpath changed since the last compilation
+     */
+    private StandardJavaFileManager getFileManager(JavaCompiler compiler, String classPath) throws IOException {
+
+        String fullClassPath = fullClassPath(classPath);
+
+        if (fileManager != null && fullClassPath.equals(fileManagerClassPath)) {
+            return fileManager;
+        }
+        close();
+
+        StandardJavaFileManager fm = compiler.getStandardFileManager(null, null, null);
+        List<File> entries = new ArrayList<>();
+        for (String entry : fullClassPath.split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                entries.add(new File(entry));
+            }
         }
+        fm.setLocation(StandardLocation.CLASS_PATH, entries);
 
-        return code;
+        fileManager = fm;
+        fileManagerClassPath = fullClassPath;
+        return fm;
 
     }
 
+    /**
+     * Release the warm file manager, and the jars it holds open. The compiler can still be
+     * used afterwards; the next compilation opens a new file manager.
+     */
+    @Override
+    public synchronized void close() {
+        if (fileManager != null) {
+            try {
+                fileManager.close();
+            } catch (IOException ex) {
+                Logger.error(ex, "Error while trying to close the StandardJavaFileManager instance.");
+            }
+            fileManager = null;
+            fileManagerClassPath = null;
+        }
+    }
+
     public boolean compileFile(File source, String classPath) {
 
         JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
@@ -113,4 +265,67 @@ public class Compiler implements Serializable {
         return compiled;
     }
 
+    /**
+     * Source of a class held in memory.
+     */
+    private static class SourceInput extends SimpleJavaFileObject {
+
+        private final String source;
+
+        SourceInput(String className, String source) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+
+    }
+
+    /**
+     * Bytecode of a class, written by the compiler to memory.
+     */
+    private static class ClassOutput extends SimpleJavaFileObject {
+
+        private final ByteArrayOutputStream byteCode = new ByteArrayOutputStream();
+
+        ClassOutput(String className) {
+            super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return byteCode;
+        }
+
+        byte[] getByteCode() {
+            return byteCode.toByteArray();
+        }
+
+    }
+
+    /**
+     * Reads the classpath through the standard file manager, and keeps all class files
+     * written by the compiler in memory.
+     */
+    private static class InMemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        private final Map<String, ClassOutput> outputs;
+
+        InMemoryFileManager(StandardJavaFileManager fileManager, Map<String, ClassOutput> outputs) {
+            super(fileManager);
+            this.outputs = outputs;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            ClassOutput output = new ClassOutput(className);
+            outputs.put(className, output);
+            return output;
+        }
+
+    }
+
 }
@@ -0,0 +1,404 @@
+package gin.test;
+
+import gin.Patch;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Results of testing patched programs, kept for the whole search so that a program is
+ * not tested again when another patch gives the same source, e.g. after crossover rebuilds
+ * an identical edit list.
+ * <p>
+ * Entries are keyed by a hash of the target class, the normalised patched source, whether
+ * the patch applied cleanly, the set of tests and the number of repetitions. A program that
+ * failed to compile or failed a test is deterministic: its results are reused straight
+ * away, unless a test timed out, which may not happen again. A program that passed all
+ * tests is still measured on each request, for runtime or energy, and the mean and variance
+ * of its total test time are updated, until the 95% confidence interval of the mean is
+ * within the given fraction of it. From then on, its results are reused, with each
+ * measurement replaced by its mean over all runs. Measurements are kept by test and
+ * repetition, as tests may run in a different order each time. A program that fails after
+ * passing is flaky, and is always tested again.
+ * <p>
+ * Only the most recently used entries are kept, up to a given number, and an entry keeps
+ * only the outcome and measurements of each test run, not the patched source.
+ * <p>
+ * Patches with edits that are not deterministic, such as those asking a language model
+ * for a replacement, are never memoised.
+ * <p>
+ * Patches tested concurrently are looked up by {@link #test} on the thread that tests them,
+ * once it has applied the patch, so that applying and printing patches is not serialised on
+ * the thread submitting them. A program already being tested on another thread is not tested
+ * again: the thread waits for those results and reuses them.
+ */
+public class EvaluationMemo {
+
+    private static final double Z_95 = 1.96;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final double confidence;
+    private final int maxEntries;
+    private final Map<String, Entry> entries;
+    // programs being tested by test, by key
+    private final Map<String, CompletableFuture<UnitTestResultSet>> testing = new HashMap<>();
+
+    private long lookups = 0;
+    private long avoided = 0;
+
+    /**
+     * @param confidence half-width of the 95% confidence interval of the mean total test time,
+     *                   as a fraction of the mean, below which passing programs are not run again;
+     *                   0 to always run them again
+     * @param maxEntries number of programs whose results are kept
+     */
+    public EvaluationMemo(double confidence, int maxEntries) {
+        this.confidence = confidence;
+        this.maxEntries = Math.max(1, maxEntries);
+        // access order, so the least recently used entry is evicted first
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > EvaluationMemo.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * A patch applied to find its entry.
+     *
+     * @param key     key of the patched program, to {@link #record} its results with
+     * @param results reused results, with the patch given to {@link #lookup}; null if the program must be tested
+     */
+    public record Lookup(String key, UnitTestResultSet results) {
+    }
+
+    /**
+     * Apply the patch and look up the results of the program it gives.
+     *
+     * @return the lookup, or null if the patch cannot be memoised
+     */
+    public Lookup lookup(String targetClass, Patch patch, Object metadata, Collection<UnitTest> tests, int reps) {
+
+        if (!patch.isDeterministic()) {
+            return null;
+        }
+
+        String patchedSource;
+        boolean patchValid;
+        List<Boolean> editsValid;
+        synchronized (patch) {
+            patchedSource = patch.apply(metadata);
+            patchValid = patch.lastApplyWasValid();
+            editsValid = patch.getEditsInvalidOnLastApply();
+        }
+        String key = key(targetClass, patchedSource, patchValid, tests, reps);
+
+        synchronized (this) {
+            lookups++;
+            Entry entry = entries.get(key);
+            if (entry == null || !entry.reusable()) {
+                return new Lookup(key, null);
+            }
+            avoided++;
+            return new Lookup(key, reused(patch, patchedSource, patchValid, editsValid, entry));
+        }
+
+    }
+
+    /**
+     * Test a patch already applied, on the thread that applied it, unless the results of the
+     * program it gives can be reused, from the memo or from the same program being tested on
+     * another thread at the same time. Results tested here are recorded.
+     *
+     * @param patchedSource source given by the patch
+     * @param patchValid    whether the patch applied cleanly
+     * @param editsValid    whether each edit applied cleanly
+     * @param tester        tests the patch
+     * @return the results, reused or tested
+     */
+    public UnitTestResultSet test(String targetClass, Patch patch, String patchedSource, boolean patchValid, List<Boolean> editsValid,
+                                  Collection<UnitTest> tests, int reps, Supplier<UnitTestResultSet> tester) {
+
+        if (!patch.isDeterministic()) {
+            return tester.get();
+        }
+        String key = key(targetClass, patchedSource, patchValid, tests, reps);
+
+        CompletableFuture<UnitTestResultSet> other;
+        CompletableFuture<UnitTestResultSet> own = null;
+        synchronized (this) {
+            lookups++;
+            Entry entry = entries.get(key);
+            if (entry != null && entry.reusable()) {
+                avoided++;
+                return reused(patch, patchedSource, patchValid, editsValid, entry);
+            }
+            other = testing.get(key);
+            if (other == null) {
+                own = new CompletableFuture<>();
+                testing.put(key, own);
+            }
+        }
+
+        if (other != null) {
+            UnitTestResultSet tested;
+            try {
+                tested = other.join();
+            } catch (CompletionException | CancellationException e) {
+                // testing failed on the other thread; try here, without the memo
+                return tester.get();
+            }
+            synchronized (this) {
+                avoided++;
+            }
+            UnitTestResultSet results = new UnitTestResultSet(patch, patchedSource, patchValid, editsValid, tested.getCleanCompile(),
+                    tested.getCompileError(), tested.getNoOp(), new ArrayList<>(tested.getResults()));
+            results.setResultsReused(true);
+            return results;
+        }
+
+        try {
+            UnitTestResultSet results = tester.get();
+            synchronized (this) {
+                record(key, results);
+                testing.remove(key);
+            }
+            own.complete(results);
+            return results;
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                testing.remove(key);
+            }
+            own.completeExceptionally(e);
+            throw e;
+        }
+
+    }
+
+    private static UnitTestResultSet reused(Patch patch, String patchedSource, boolean patchValid, List<Boolean> editsValid, Entry entry) {
+        UnitTestResultSet results = new UnitTestResultSet(patch, patchedSource, patchValid, editsValid,
+                entry.cleanCompile, entry.compileError, entry.noOp, entry.meanResults());
+        results.setResultsReused(true);
+        return results;
+    }
+
+    /**
+     * Keep the results of testing a program, or add them to those kept.
+     *
+     * @param key     from {@link #lookup}
+     * @param results results of testing the program
+     */
+    public synchronized void record(String key, UnitTestResultSet results) {
+        Entry entry = entries.get(key);
+        if (entry == null || (!entry.deterministic && entry.runs == 0)) {
+            // nothing kept yet, or only a failure that timed out
+            entries.put(key, new Entry(results));
+        } else if (!entry.deterministic) {
+            entry.add(results);
+        }
+    }
+
+    /**
+     * @return the number of patches looked up
+     */
+    public synchronized long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return the number of patches whose results were reused rather than tested
+     */
+    public synchronized long getAvoided() {
+        return avoided;
+    }
+
+    static String key(String targetClass, String patchedSource, boolean patchValid, Collection<UnitTest> tests, int reps) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+        // tests may be reordered between patches, so they are keyed as a set
+        TreeSet<String> testNames = new TreeSet<>();
+        for (UnitTest test : tests) {
+            testNames.add(test.toString());
+        }
+        String header = targetClass + "\n" + patchValid + "\n" + reps + "\n" + String.join("\n", testNames) + "\n\n";
+        digest.update(header.getBytes(StandardCharsets.UTF_8));
+        digest.update(BytecodeCache.normalise(patchedSource).getBytes(StandardCharsets.UTF_8));
+        return HEX.formatHex(digest.digest());
+    }
+
+    /**
+     * @return true if the results failed for a reason that may not recur, i.e. a test timed out
+     */
+    private static boolean timedOut(UnitTestResultSet results) {
+        for (UnitTestResult result : results.getResults()) {
+            if (result.getTimedOut()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * a repetition of a test, which a result is kept for whatever order the tests ran in
+     */
+    private record TestRun(UnitTest test, int rep) {
+    }
+
+    /**
+     * The outcome of one test run, as first seen, and running means of its measurements.
+     */
+    private static class Measurement {
+
+        private final boolean passed;
+        private final boolean timedOut;
+        private final String exceptionType;
+        private final String exceptionMessage;
+        private final String expectedValue;
+        private final String actualValue;
+        private double executionTime = 0;
+        private double cpuTime = 0;
+        private double memoryUsage = 0;
+        private double energyUsage = 0;
+
+        Measurement(UnitTestResult result) {
+            this.passed = result.getPassed();
+            this.timedOut = result.getTimedOut();
+            this.exceptionType = result.getExceptionType();
+            this.exceptionMessage = result.getExceptionMessage();
+            this.expectedValue = result.getAssertionExpectedValue();
+            this.actualValue = result.getAssertionActualValue();
+        }
+
+        void add(UnitTestResult result, int runs) {
+            executionTime += (result.getExecutionTime() - executionTime) / runs;
+            cpuTime += (result.getCPUTime() - cpuTime) / runs;
+            memoryUsage += (result.getMemoryUsage() - memoryUsage) / runs;
+            energyUsage += (result.getEnergyUsage() - energyUsage) / runs;
+        }
+
+        UnitTestResult toResult(TestRun run) {
+            UnitTestResult result = new UnitTestResult(run.test(), run.rep());
+            result.setPassed(passed);
+            result.setTimedOut(timedOut);
+            result.setExceptionType(exceptionType);
+            result.setExceptionMessage(exceptionMessage);
+            result.setExpectedValue(expectedValue);
+            result.setActualValue(actualValue);
+            result.setExecutionTime(Math.round(executionTime));
+            result.setCPUTime(Math.round(cpuTime));
+            result.setMemoryUsage(Math.round(memoryUsage));
+            result.setEnergyUsage(energyUsage);
+            return result;
+        }
+
+    }
+
+    /**
+     * What is kept of a program's results: whether it compiled, and each test run's outcome and
+     * mean measurements, keyed by test and repetition. The patch and its source are not kept.
+     */
+    private class Entry {
+
+        private final boolean cleanCompile;
+        private final String compileError;
+        private final boolean noOp;
+        private final boolean deterministic;
+        private final Map<TestRun, Measurement> measurements = new LinkedHashMap<>();
+        // runs that passed all tests; a failure seen after passing runs marks the program as flaky
+        private int runs = 0;
+        private boolean flaky = false;
+        private double totalMean = 0;
+        private double totalM2 = 0;
+
+        Entry(UnitTestResultSet results) {
+            this.cleanCompile = results.getCleanCompile();
+            this.compileError = results.getCompileError();
+            this.noOp = results.getNoOp();
+            boolean passed = results.getValidPatch() && results.getCleanCompile() && results.allTestsSuccessful();
+            this.deterministic = !passed && !timedOut(results);
+            for (UnitTestResult result : results.getResults()) {
+                Measurement measurement = new Measurement(result);
+                measurement.add(result, 1);
+                measurements.put(new TestRun(result.getTest(), result.getRepNumber()), measurement);
+            }
+            if (passed) {
+                addTotal(results);
+            }
+        }
+
+        /**
+         * Add a further run of a program that has passed before. A failure that is not a time-out
+         * marks it as flaky, so it is no longer reused, but the runs that passed are kept.
+         */
+        void add(UnitTestResultSet newResults) {
+            if (!newResults.allTestsSuccessful()) {
+                if (!timedOut(newResults)) {
+                    flaky = true;
+                }
+                return;
+            }
+            List<UnitTestResult> list = newResults.getResults();
+            if (list.size() != measurements.size()) {
+                return;
+            }
+            for (UnitTestResult result : list) {
+                if (!measurements.containsKey(new TestRun(result.getTest(), result.getRepNumber()))) {
+                    return;
+                }
+            }
+            int newRuns = runs + 1;
+            for (UnitTestResult result : list) {
+                measurements.get(new TestRun(result.getTest(), result.getRepNumber())).add(result, newRuns);
+            }
+            addTotal(newResults);
+        }
+
+        private void addTotal(UnitTestResultSet results) {
+            runs++;
+            double total = results.totalExecutionTime();
+            // Welford's update
+            double delta = total - totalMean;
+            totalMean += delta / runs;
+            totalM2 += delta * (total - totalMean);
+        }
+
+        boolean reusable() {
+            if (deterministic) {
+                return true;
+            }
+            if (flaky || confidence <= 0 || runs < 2) {
+                return false;
+            }
+            double halfWidth = Z_95 * Math.sqrt(totalM2 / (runs - 1) / runs);
+            return halfWidth <= confidence * totalMean;
+        }
+
+        List<UnitTestResult> meanResults() {
+            List<UnitTestResult> results = new ArrayList<>(measurements.size());
+            for (Map.Entry<TestRun, Measurement> entry : measurements.entrySet()) {
+                results.add(entry.getValue().toResult(entry.getKey()));
+            }
+            return results;
+        }
+
+    }
+
+}
@@ -0,0 +1,126 @@
+package gin.test;
+
+import org.pmw.tinylog.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of worker threads used to evaluate several patches concurrently.
+ * <p>
+ * Each worker owns its own {@link Compiler}; class loaders are created by the
+ * worker for each patch it evaluates, so patched classes never leak between workers.
+ * Results of a batch are always returned in submission order; tasks submitted through a
+ * {@link CompletionService} are taken back in the order they finish.
+ */
+public class EvaluationPool implements AutoCloseable {
+
+    private static final AtomicInteger poolCounter = new AtomicInteger(0);
+
+    private final int size;
+    private final ExecutorService executor;
+    private final List<Compiler> allCompilers = new ArrayList<>();
+    private final ThreadLocal<Compiler> compilers = ThreadLocal.withInitial(this::newCompiler);
+
+    /**
+     * @param size number of worker threads; values below 1 are treated as 1
+     */
+    public EvaluationPool(int size) {
+        this.size = Math.max(1, size);
+        this.executor = Executors.newFixedThreadPool(this.size, new WorkerThreadFactory(poolCounter.incrementAndGet()));
+        Logger.info("Started evaluation pool with " + this.size + " workers.");
+    }
+
+    /**
+     * @return the default pool size: one worker per available processor
+     */
+    public static int defaultSize() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the compiler owned by the calling worker thread
+     */
+    public Compiler getCompiler() {
+        return compilers.get();
+    }
+
+    private Compiler newCompiler() {
+        Compiler compiler = new Compiler();
+        synchronized (allCompilers) {
+            allCompilers.add(compiler);
+        }
+        return compiler;
+    }
+
+    /**
+     * Run all tasks on the pool and wait for them to finish.
+     *
+     * @param tasks tasks to run
+     * @return the results, in the same order as the tasks were given
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws InterruptedException {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                throw new RuntimeException("Patch evaluation failed on a worker thread.", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return a service through which tasks are run on the pool, and taken back as they finish
+     */
+    public <T> CompletionService<T> newCompletionService() {
+        return new ExecutorCompletionService<>(executor);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        synchronized (allCompilers) {
+            allCompilers.forEach(Compiler::close);
+            allCompilers.clear();
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final int poolID;
+        private final AtomicInteger threadCounter = new AtomicInteger(0);
+
+        WorkerThreadFactory(int poolID) {
+            this.poolID = poolID;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "gin-eval-" + poolID + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -6,19 +6,13 @@ import org.apache.maven.shared.invoker.SystemOutHandler;
 import org.pmw.tinylog.Logger;
 
 import java.io.*;
-import java.lang.ProcessBuilder.Redirect;
-import java.net.Socket;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.text.ParseException;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Scanner;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 /**
  * Runs tests externally, by creating a new JVM.
@@ -36,6 +30,11 @@ public class ExternalTestRunner extends TestRunner {
      * If true, each repetition of the full test suite is run in a new JVM.
      */
     private final boolean eachRepetitionInNewSubProcess;
+    /**
+     * Warm harnesses to run the tests on, if any. Only used when neither each test
+     * nor each repetition needs a JVM of its own.
+     */
+    private transient HarnessWorkerPool workerPool = null;
     private Path temporaryDirectory;
     private Path temporaryPackageDirectory;
     /**
@@ -98,6 +97,15 @@ public class ExternalTestRunner extends TestRunner {
         this.failFast = failFast;
     }
 
+    /**
+     * Run tests on warm harnesses from the given pool rather than starting a JVM per patch.
+     *
+     * @param workerPool the pool, or null to start a new JVM for each patch
+     */
+    public void setWorkerPool(HarnessWorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
     /**
      * Apply and compile the given patch, then run all unit tests against it.
      *
@@ -107,29 +115,27 @@ public class ExternalTestRunner extends TestRunner {
      */
     public UnitTestResultSet runTests(Patch patch, Object metadata, int reps) throws IOException, InterruptedException {
 
-        createTempDirectory();
-
         // Apply the patch.
         String patchedSource = patch.apply(metadata);
         boolean patchValid = patch.lastApplyWasValid();
         List<Boolean> editsValid = patch.getEditsInvalidOnLastApply();
 
         // Did the code change as a result of applying the patch?
-        boolean noOp = isPatchedSourceSame(patch.getSourceFile().toString(), patchedSource);
+        boolean noOp = patch.lastApplyWasNoOp();
         //Initialise with default value
-        boolean compiledOK = false;
+        Compilation compilation = null;
         List<UnitTestResult> results;
         // Only tries to compile and run when the patch is valid
         // The patch might be invalid due to a couple of edits, which
         // drop to being no-ops; remaining edits might be ok so still
         // try compiling and then running in case of no-op
-        Compiler compiler = new Compiler();
         if (patchValid) {
-            // Compile
-            compiledOK = compileClassToTempDir(patchedSource, compiler);
+            // Compile in memory, or reuse the bytecode of the same patched source;
+            // the bytecode, inner classes included, is sent straight to the harness
+            compilation = compile(getCompiler(), Collections.singletonMap(this.getClassName(), patchedSource));
             // Run tests
-            if (compiledOK) {
-                results = runTests(reps);
+            if (compilation.compiledOK()) {
+                results = runTests(reps, compilation.classes());
             } else {
                 results = emptyResults(reps);
             }
@@ -137,14 +143,13 @@ public class ExternalTestRunner extends TestRunner {
             results = emptyResults(reps);
         }
 
-        deleteTempDirectory();
-
-        return new UnitTestResultSet(patch, patchedSource, patchValid, editsValid, compiledOK, compiler.getLastError(), noOp, results);
+        return newResultSet(patch, patchedSource, patchValid, editsValid, compilation, noOp, results);
 
     }
 
     /**
-     * Create a temporary directory. The patched source file will be written there and compiled.
+     * Create a temporary directory, for writing a patched source file to and compiling it on disk.
+     * Not needed for running tests: patched classes are compiled in memory and sent to the harness.
      *
      * @throws IOException if the directory couldn't be created
      */
@@ -176,187 +181,131 @@ public class ExternalTestRunner extends TestRunner {
     }
 
     /**
-     * Run each of the tests against the modified class held in the class load, rep times.
+     * Run each of the tests against the modified classes, rep times. Each harness loads the
+     * patched classes from their bytecode, through a class loader of its own.
      *
-     * @param reps Number of times to run each test
+     * @param reps           Number of times to run each test
+     * @param patchedClasses bytecode of the patched classes, by fully qualified name
      * @return List of Test Results
      */
-    private List<UnitTestResult> runTests(int reps) throws IOException, InterruptedException {
+    @Override
+    protected List<UnitTestResult> runTests(int reps, Map<String, byte[]> patchedClasses) throws IOException {
 
         List<UnitTestResult> results = new LinkedList<>();
 
-        File javaHome = new File(System.getProperty("java.home"));
-        File javaBin = new File(javaHome, "bin");
-        File jvm = new File(javaBin, "java");
-
-        String classpath = this.getTemporaryDirectory() + File.pathSeparator +
-                this.getClassPath() + File.pathSeparator +
-                System.getProperty("java.class.path");
+        boolean pooled = workerPool != null && !eachTestInNewSubProcess && !eachRepetitionInNewSubProcess;
 
-        classpath = Arrays.stream(classpath.split(File.pathSeparator))
-                .map(s -> Paths.get(s).normalize().toFile().getAbsolutePath())
-                .collect(Collectors.joining(File.pathSeparator));
+        int testCount = this.getTests().size();
 
         int index = 0;
 
-        int maxIndex = reps * this.getTests().size();
+        int maxIndex = reps * testCount;
 
         while (index < maxIndex) {
 
-            // in the following we use sockets to communicate with the
-            // TestHarness in a sub process.
-            // we don't just capture stdout from the process, because if
-            // you're running multiple tests in subprocess you have to
-            // communicate somehow to know that a test finished (or not)
-            // this doesn't work if the hanging test blocks stdout
-            // so: we fire up a subprocess, get it to tell us what port
-            // number it wants to use via stdout, then communicate via
-            // that port. stdout is redirected to the real System.out
-            // so that we can debug the running tests if needed.
-
-            ProcessBuilder builder;
-            builder = new ProcessBuilder(jvm.getAbsolutePath(),
-                    "-Dtinylog.level=" + Logger.getLevel(),
-                    "-cp", classpath,
-                    HARNESS_CLASS
-            );
-
-            // redirect everything except STDOUT for now as we need it to get the port
-            final Process process = builder.redirectError(Redirect.INHERIT).redirectInput(Redirect.INHERIT).start();
-            int port = 0;
-            final Scanner scanner = new Scanner(process.getInputStream());
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine();
-                if (line.startsWith(TestHarness.PORT_PREFIX)) {
-                    port = Integer.parseInt(line.substring(line.indexOf("=") + 1));
-                    break;
-                }
+            // tests for the next harness: up to the end, unless a new subprocess is needed
+            // 1) for each test
+            // 2) at the end of each repetition. This is needed to avoid
+            // test poisoning from one repetition to another
+            int batchEnd = maxIndex;
+            if (eachTestInNewSubProcess) {
+                batchEnd = index + 1;
+            } else if (eachRepetitionInNewSubProcess) {
+                batchEnd = (index / testCount + 1) * testCount;
             }
 
-            // having set off the process and grabbed the port number from its stdout, we now
-            // redirect its output to the real stdout
-            // (no need to kill this thread, it'll exit when the process dies)
-            new Thread(() -> {
-                while (scanner.hasNextLine()) {
-                    System.out.println(scanner.nextLine());
+            HarnessWorker worker;
+            if (pooled) {
+                worker = workerPool.acquire(this.getClassPath(), patchedClasses);
+            } else {
+                worker = HarnessWorker.start();
+                try {
+                    worker.loadPatch(this.getClassPath(), patchedClasses);
+                } catch (IOException e) {
+                    worker.close();
+                    throw e;
                 }
-                scanner.close();
-            }).start();
-
-            // we're spawning a separate process, and if our JVM
-            // dies we'll want to kill the other process too,
-            // otherwise it'll be left open keeping file and port
-            // handles open and causing all kinds of bother.
-            // (note - e.g. pressing eclipse red button forcibly
-            // kills the JVM so this doesn't fire in that situation;
-            // apparently nothing can be done about that)
-            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                if (process.isAlive()) {
-                    process.destroyForcibly();
+            }
+            try {
+                index = runTests(worker, index, batchEnd, reps, results);
+            } finally {
+                if (pooled) {
+                    workerPool.release(worker);
+                } else {
+                    worker.close();
                 }
-            }));
+            }
 
-            Thread.sleep(1000); // allowing for server startup time
+            // In case the tests failed, and it is fail fast, then stop the loop
+            if (failFast && results.stream()
+                    .anyMatch(result -> !result.getPassed())) {
+                break;
+            }
 
-            TestClient client = new TestClient();
-            client.startConnection("localhost", port);
+        }
 
-            while (index < maxIndex) {
+        return results;
 
-                int testIndex = index % this.getTests().size();
-                int rep = index / this.getTests().size();
-                UnitTest test = this.getTests().get(testIndex);
-                Logger.debug("Running test " + index + "/" + maxIndex + ": " + "rep=" + rep + 1 + "/" + reps + ", " + "testIndex=" + testIndex + "/" + this.getTests().size() + ": " + test);
+    }
 
-                long timeoutMS = test.getTimeoutMS();
-                String testName = test.toString();
-                index++;
+    /**
+     * Send tests index to batchEnd-1 to the harness in one batch, and collect their results
+     * as they come back. Stops early if the harness times out or fails, or if failing fast.
+     *
+     * @return index of the first test that was not run
+     */
+    private int runTests(HarnessWorker worker, int index, int batchEnd, int reps, List<UnitTestResult> results) {
 
-                client.setTimeoutMS(timeoutMS + 500); // extra time for connection overhead
+        int testCount = this.getTests().size();
 
-                String message = testName + "," + rep + 1 + "," + timeoutMS;
-                String resp;
-                try {
-                    resp = client.sendMessage(message);
-                } catch (SocketTimeoutException e) {
-                    resp = null;
-                }
-                try {
-                    if (resp != null) {
-                        UnitTestResult result = UnitTestResult.fromString(resp, timeoutMS);
-                        results.add(result);
-                        // closes the connection and creates a new sub-
-                        // process if:
-                        // 1) new subprocess for each test
-                        if (eachTestInNewSubProcess
-                                // 2) it is the last test of the
-                                // repetition. This is needed to avoid
-                                // test poisoning from one repetition to
-                                // another
-                                || (eachRepetitionInNewSubProcess && testIndex == this.getTests().size() - 1)
-                                // 3) it is fail fast and the test failed
-                                || (failFast && !result.getPassed())) {
-                            break;
-                        }
-                    } else {
-                        // connection timed out
-                        UnitTestResult result = timeoutResult(test, rep + 1);
-                        results.add(result);
-                        break;
-                    }
-                } catch (ParseException e) {
-                    // smth else went wrong, test or test result likely in the wrong format
-                    UnitTestResult result = new UnitTestResult(test, rep + 1);
-                    result.setExceptionType(e.getClass().getName());
-                    result.setExceptionMessage(e.getMessage());
-                    results.add(result);
-                    break;
-                }
-
-            } // end of inner
+        List<UnitTest> batch = new ArrayList<>(batchEnd - index);
+        List<Integer> batchReps = new ArrayList<>(batchEnd - index);
+        for (int i = index; i < batchEnd; i++) {
+            batch.add(this.getTests().get(i % testCount));
+            batchReps.add(i / testCount + 1);
+        }
 
-            try {
-                client.sendMessage("stop");
-            } catch (SocketTimeoutException ignored) {
-            }
+        try {
+            worker.sendTests(batch, batchReps, failFast);
+        } catch (IOException e) {
+            results.add(failedResult(batch.get(0), batchReps.get(0), e));
+            return index + 1;
+        }
 
-            client.stopConnection();
+        for (int i = 0; i < batch.size(); i++) {
 
-            Thread.sleep(500); // cleanup time
+            UnitTest test = batch.get(i);
+            int rep = batchReps.get(i);
+            Logger.debug("Running test " + index + "/" + (reps * testCount) + ": " + "rep=" + rep + "/" + reps + ", " + "testIndex=" + (index % testCount) + "/" + testCount + ": " + test);
+            index++;
 
-            if (process.isAlive()) {
-                process.destroyForcibly();
+            UnitTestResult result;
+            try {
+                result = worker.receiveResult(test);
+                if (result == null) {
+                    // connection timed out
+                    result = timeoutResult(test, rep);
+                }
+            } catch (IOException e) {
+                // smth else went wrong, e.g. the harness died
+                result = failedResult(test, rep, e);
             }
+            results.add(result);
 
-            Thread.sleep(500); // cleanup time
-
-            // In case the tests failed, and it is fail fast, then stop the loop
-            if (failFast && results.stream()
-                    .anyMatch(result -> !result.getPassed())) {
+            if (!worker.isUsable() || (failFast && !result.getPassed())) {
                 break;
             }
 
-        } // end of outer
+        }
 
-        return results;
+        return index;
 
     }
 
-    private UnitTestResult timeoutResult(UnitTest test, int rep) {
-
+    private UnitTestResult failedResult(UnitTest test, int rep, Exception e) {
         UnitTestResult result = new UnitTestResult(test, rep);
-
-        long timeoutMS = test.getTimeoutMS();
-        String exceptionType = "org.junit.runners.model.TestTimedOutException";
-        String exceptionMessage = "test timed out after " + timeoutMS + "  milliseconds";
-
-        result.setPassed(false);
-        result.setTimedOut(true);
-        result.setExceptionType(exceptionType);
-        result.setExceptionMessage(exceptionMessage);
-        result.setExecutionTime(timeoutMS * 1000000L);
-        result.setCPUTime(timeoutMS * 1000000L);
-
+        result.setExceptionType(e.getClass().getName());
+        result.setExceptionMessage(e.getMessage());
         return result;
     }
 
@@ -377,37 +326,4 @@ public class ExternalTestRunner extends TestRunner {
         }
     }
 
-    static class TestClient {
-
-        private Socket clientSocket;
-        private PrintWriter out;
-        private BufferedReader in;
-
-        public void startConnection(String ip, int port) throws IOException {
-            clientSocket = new Socket(ip, port);
-            out = new PrintWriter(clientSocket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-        }
-
-        public String sendMessage(String msg) throws IOException {
-            out.println(msg);
-            return in.readLine();
-        }
-
-        public void stopConnection() throws IOException {
-            in.close();
-            out.close();
-            clientSocket.close();
-        }
-
-        public void setTimeoutMS(long timeoutMS) throws SocketException { // consider changing type of timeoutMS in UnitTest to int
-            int timeout = Integer.MAX_VALUE;
-            if (timeoutMS < (long) timeout) {
-                timeout = (int) timeoutMS;
-            }
-            clientSocket.setSoTimeout(timeout);
-        }
-
-    }
-
 }
@@ -0,0 +1,211 @@
+package gin.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary protocol spoken between ExternalTestRunner and TestHarness.
+ * <p>
+ * Every message is a frame: a 4 byte length, then a 1 byte message type, then the payload.
+ * Tests are sent as a batch in a single frame; the harness then streams back one
+ * result frame per test as each test finishes, so there is no round trip per test.
+ */
+class HarnessChannel implements Closeable {
+
+    /*============== runner to harness ==============*/
+
+    /**
+     * Load the next patch. Payload: see {@link #writePatch}.
+     */
+    static final byte LOAD = 1;
+    /**
+     * Run tests. Payload: fail fast flag, test count, then per test: the test and its rep number.
+     */
+    static final byte RUN = 2;
+    static final byte STOP = 3;
+
+    /*============== harness to runner ==============*/
+
+    /**
+     * Patch loaded. Payload: bytes of heap in use.
+     */
+    static final byte LOADED = 11;
+    /**
+     * Result of one test. Payload: see {@link #writeResult}.
+     */
+    static final byte RESULT = 12;
+    /**
+     * Request could not be handled. Payload: message string.
+     */
+    static final byte ERROR = 13;
+
+    private static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream frameBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream frame = new DataOutputStream(frameBuffer);
+
+    HarnessChannel(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Writes a frame to the socket and flushes it.
+     */
+    void send(byte type, Payload payload) throws IOException {
+        frameBuffer.reset();
+        frame.writeByte(type);
+        payload.writeTo(frame);
+        frame.flush();
+        out.writeInt(frameBuffer.size());
+        frameBuffer.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Blocks until the next frame arrives, or the socket timeout expires.
+     */
+    Frame receive() throws IOException {
+        int length = in.readInt();
+        if (length < 1 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new Frame(bytes[0], new DataInputStream(new ByteArrayInputStream(bytes, 1, length - 1)));
+    }
+
+    void setTimeoutMS(long timeoutMS) throws SocketException {
+        socket.setSoTimeout((int) Math.min(timeoutMS, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /*============== payload encoding ==============*/
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Project classpath, then the number of patched classes, then the name and bytecode of each.
+     */
+    static void writePatch(DataOutputStream out, String classPath, Map<String, byte[]> patchedClasses) throws IOException {
+        writeString(out, classPath);
+        out.writeInt(patchedClasses.size());
+        for (Map.Entry<String, byte[]> patchedClass : patchedClasses.entrySet()) {
+            writeString(out, patchedClass.getKey());
+            out.writeInt(patchedClass.getValue().length);
+            out.write(patchedClass.getValue());
+        }
+    }
+
+    static Map<String, byte[]> readPatchedClasses(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, byte[]> patchedClasses = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String className = readString(in);
+            byte[] byteCode = new byte[in.readInt()];
+            in.readFully(byteCode);
+            patchedClasses.put(className, byteCode);
+        }
+        return patchedClasses;
+    }
+
+    static void writeTests(DataOutputStream out, List<UnitTest> tests, List<Integer> reps, boolean failFast) throws IOException {
+        out.writeBoolean(failFast);
+        out.writeInt(tests.size());
+        for (int i = 0; i < tests.size(); i++) {
+            UnitTest test = tests.get(i);
+            writeString(out, test.getFullClassName());
+            writeString(out, test.getMethodName());
+            writeString(out, test.getModuleName());
+            out.writeLong(test.getTimeoutMS());
+            out.writeInt(reps.get(i));
+        }
+    }
+
+    static UnitTest readTest(DataInputStream in) throws IOException {
+        UnitTest test = new UnitTest(readString(in), readString(in), readString(in));
+        test.setTimeoutMS(in.readLong());
+        return test;
+    }
+
+    /**
+     * Result fields, in order: rep, passed, timed out, exception type, exception message,
+     * expected value, actual value, execution time, CPU time, memory usage, energy usage.
+     * The test itself is not sent, as results come back in the order the tests were sent.
+     */
+    static void writeResult(DataOutputStream out, UnitTestResult result) throws IOException {
+        out.writeInt(result.getRepNumber());
+        out.writeBoolean(result.getPassed());
+        out.writeBoolean(result.getTimedOut());
+        writeString(out, result.getExceptionType());
+        writeString(out, result.getExceptionMessage());
+        writeString(out, result.getAssertionExpectedValue());
+        writeString(out, result.getAssertionActualValue());
+        out.writeLong(result.getExecutionTime());
+        out.writeLong(result.getCPUTime());
+        out.writeLong(result.getMemoryUsage());
+        out.writeDouble(result.getEnergyUsage());
+    }
+
+    static UnitTestResult readResult(DataInputStream in, UnitTest test) throws IOException {
+        UnitTestResult result = new UnitTestResult(test, in.readInt());
+        result.setPassed(in.readBoolean());
+        result.setTimedOut(in.readBoolean());
+        result.setExceptionType(readString(in));
+        result.setExceptionMessage(readString(in));
+        result.setExpectedValue(readString(in));
+        result.setActualValue(readString(in));
+        result.setExecutionTime(in.readLong());
+        result.setCPUTime(in.readLong());
+        result.setMemoryUsage(in.readLong());
+        result.setEnergyUsage(in.readDouble());
+        return result;
+    }
+
+    @FunctionalInterface
+    interface Payload {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    record Frame(byte type, DataInputStream payload) {
+    }
+
+}
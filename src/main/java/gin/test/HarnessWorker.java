@@ -0,0 +1,249 @@
+package gin.test;
+
+import org.pmw.tinylog.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * A TestHarness running in a separate JVM, and the connection used to talk to it.
+ */
+class HarnessWorker implements AutoCloseable {
+
+    /**
+     * How long to wait for a harness to exit after asking it to stop, before killing it.
+     */
+    private static final long STOP_WAIT_MS = 1000;
+
+    private final Process process;
+    private final Thread shutdownHook;
+    private final HarnessChannel channel;
+    private int patchesLoaded = 0;
+    private boolean broken = false;
+
+    private HarnessWorker(Process process, Thread shutdownHook, HarnessChannel channel) {
+        this.process = process;
+        this.shutdownHook = shutdownHook;
+        this.channel = channel;
+    }
+
+    /**
+     * Start a TestHarness in a new JVM, with gin's own classpath, and connect to it.
+     * Project classes are only loaded once a patch is loaded.
+     *
+     * @return the connected worker
+     * @throws IOException if the process could not be started or connected to
+     */
+    static HarnessWorker start() throws IOException {
+
+        String classpath = System.getProperty("java.class.path");
+
+        File javaHome = new File(System.getProperty("java.home"));
+        File javaBin = new File(javaHome, "bin");
+        File jvm = new File(javaBin, "java");
+
+        classpath = Arrays.stream(classpath.split(File.pathSeparator))
+                .map(s -> Paths.get(s).normalize().toFile().getAbsolutePath())
+                .collect(Collectors.joining(File.pathSeparator));
+
+        // in the following we use sockets to communicate with the
+        // TestHarness in a sub process.
+        // we don't just capture stdout from the process, because if
+        // you're running multiple tests in subprocess you have to
+        // communicate somehow to know that a test finished (or not)
+        // this doesn't work if the hanging test blocks stdout
+        // so: we fire up a subprocess, get it to tell us what port
+        // number it wants to use via stdout, then communicate via
+        // that port. stdout is redirected to the real System.out
+        // so that we can debug the running tests if needed.
+
+        ProcessBuilder builder = new ProcessBuilder(jvm.getAbsolutePath(),
+                "-Dtinylog.level=" + Logger.getLevel(),
+                "-cp", classpath,
+                ExternalTestRunner.HARNESS_CLASS
+        );
+
+        // redirect everything except STDOUT for now as we need it to get the port
+        final Process process = builder.redirectError(Redirect.INHERIT).redirectInput(Redirect.INHERIT).start();
+
+        // we're spawning a separate process, and if our JVM
+        // dies we'll want to kill the other process too,
+        // otherwise it'll be left open keeping file and port
+        // handles open and causing all kinds of bother.
+        // (note - e.g. pressing eclipse red button forcibly
+        // kills the JVM so this doesn't fire in that situation;
+        // apparently nothing can be done about that)
+        Thread shutdownHook = new Thread(() -> {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        // the harness prints its port once its server socket is bound and listening,
+        // so seeing the port line is all the startup synchronisation needed
+        int port = 0;
+        final Scanner scanner = new Scanner(process.getInputStream());
+        while (scanner.hasNextLine()) {
+            String line = scanner.nextLine();
+            if (line.startsWith(TestHarness.PORT_PREFIX)) {
+                port = Integer.parseInt(line.substring(line.indexOf("=") + 1));
+                break;
+            }
+        }
+
+        if (port == 0) {
+            process.destroyForcibly();
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            throw new IOException("Test harness exited before reporting its port.");
+        }
+
+        // having set off the process and grabbed the port number from its stdout, we now
+        // redirect its output to the real stdout
+        // (no need to kill this thread, it'll exit when the process dies)
+        Thread output = new Thread(() -> {
+            while (scanner.hasNextLine()) {
+                System.out.println(scanner.nextLine());
+            }
+            scanner.close();
+        });
+        output.setDaemon(true);
+        output.start();
+
+        HarnessChannel channel = new HarnessChannel(new Socket("localhost", port));
+
+        return new HarnessWorker(process, shutdownHook, channel);
+
+    }
+
+    /**
+     * Ask the harness to load the next patch through a fresh class loader, which defines
+     * the patched classes from the given bytecode and everything else from the classpath.
+     *
+     * @param classPath      project classpath
+     * @param patchedClasses bytecode of the patched classes, by fully qualified name
+     * @return bytes of heap in use in the harness JVM
+     * @throws IOException if the harness did not acknowledge the request
+     */
+    long loadPatch(String classPath, Map<String, byte[]> patchedClasses) throws IOException {
+        try {
+            channel.setTimeoutMS(0);
+            channel.send(HarnessChannel.LOAD, out -> HarnessChannel.writePatch(out, classPath, patchedClasses));
+            HarnessChannel.Frame reply = channel.receive();
+            if (reply.type() != HarnessChannel.LOADED) {
+                throw new IOException("Test harness failed to load patch: " + errorMessage(reply));
+            }
+            patchesLoaded++;
+            return reply.payload().readLong();
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Send a batch of tests to the harness in one go. Results are then collected one
+     * at a time, in the same order, with {@link #receiveResult}.
+     *
+     * @param tests    the tests to run
+     * @param reps     rep number of each test
+     * @param failFast whether the harness stops the batch after the first failed test
+     * @throws IOException if the batch could not be sent
+     */
+    void sendTests(List<UnitTest> tests, List<Integer> reps, boolean failFast) throws IOException {
+        try {
+            channel.send(HarnessChannel.RUN, out -> HarnessChannel.writeTests(out, tests, reps, failFast));
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for the result of the next test of the current batch.
+     *
+     * @param test the test the result is expected for
+     * @return the result, or null if the harness did not answer within the test's timeout
+     * @throws IOException if the connection to the harness failed or it sent something unexpected
+     */
+    UnitTestResult receiveResult(UnitTest test) throws IOException {
+        try {
+            channel.setTimeoutMS(test.getTimeoutMS() + 500); // extra time for connection overhead
+            HarnessChannel.Frame reply = channel.receive();
+            if (reply.type() != HarnessChannel.RESULT) {
+                throw new IOException("Test harness failed to run " + test + ": " + errorMessage(reply));
+            }
+            return HarnessChannel.readResult(reply.payload(), test);
+        } catch (SocketTimeoutException e) {
+            broken = true; // the test is still running in there
+            return null;
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    private static String errorMessage(HarnessChannel.Frame reply) throws IOException {
+        if (reply.type() == HarnessChannel.ERROR) {
+            return HarnessChannel.readString(reply.payload());
+        }
+        return "unexpected message type " + reply.type();
+    }
+
+    int getPatchesLoaded() {
+        return patchesLoaded;
+    }
+
+    /**
+     * @return false once the harness has crashed, hung, or sent back something unexpected
+     */
+    boolean isUsable() {
+        return !broken && process.isAlive();
+    }
+
+    /**
+     * Ask the harness to stop, and kill it if it does not exit promptly or is no longer usable.
+     */
+    @Override
+    public void close() {
+        if (!broken) {
+            try {
+                channel.send(HarnessChannel.STOP, out -> {
+                });
+            } catch (IOException ignored) {
+                // the harness has already gone; we make sure of it below
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        if (broken) {
+            process.destroyForcibly(); // possibly stuck in a test, no point waiting
+        }
+        try {
+            if (!process.waitFor(STOP_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                process.destroyForcibly().waitFor(STOP_WAIT_MS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // already shutting down
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package gin.test;
+
+import org.pmw.tinylog.Logger;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Long-lived TestHarness JVMs shared by the ExternalTestRunners of a single run.
+ * <p>
+ * Workers are started with gin's own classpath only; each patch is loaded into a worker
+ * through a fresh CacheClassLoader over the patched classes and the project classpath.
+ * A worker is thrown away after it crashes or hangs, after it has loaded a given number
+ * of patches, or when it reports more heap in use than allowed.
+ */
+public class HarnessWorkerPool implements AutoCloseable {
+
+    private final int patchLimit;
+    private final long heapLimitBytes;
+    private final Deque<HarnessWorker> idleWorkers = new ArrayDeque<>();
+    private int workersStarted = 0;
+    private boolean closed = false;
+
+    /**
+     * @param patchLimit  number of patches a worker may load before it is replaced
+     * @param heapLimitMB heap in use (in MB) above which a worker is replaced; 0 for no limit
+     */
+    public HarnessWorkerPool(int patchLimit, long heapLimitMB) {
+        this.patchLimit = Math.max(1, patchLimit);
+        this.heapLimitBytes = heapLimitMB * 1024L * 1024L;
+    }
+
+    /**
+     * Take a warm worker (or start one) and load the given patch into it.
+     *
+     * @param classPath      project classpath
+     * @param patchedClasses bytecode of the patched classes, by fully qualified name
+     * @return a worker ready to run tests against the patch; hand it back with {@link #release}
+     * @throws IOException if no worker could be started
+     */
+    HarnessWorker acquire(String classPath, Map<String, byte[]> patchedClasses) throws IOException {
+
+        HarnessWorker worker = pollIdle();
+
+        while (true) {
+
+            if (worker == null) {
+                worker = HarnessWorker.start();
+                synchronized (this) {
+                    workersStarted++;
+                }
+            }
+
+            boolean fresh = worker.getPatchesLoaded() == 0;
+            long heapUsed;
+            try {
+                heapUsed = worker.loadPatch(classPath, patchedClasses);
+            } catch (IOException e) {
+                worker.close();
+                if (fresh) {
+                    throw e;
+                }
+                Logger.debug("Idle test harness died, starting a new one: " + e.getMessage());
+                worker = null;
+                continue;
+            }
+
+            if (!fresh && heapLimitBytes > 0 && heapUsed > heapLimitBytes) {
+                Logger.debug("Replacing test harness using " + (heapUsed / (1024 * 1024)) + "MB of heap.");
+                worker.close();
+                worker = null;
+                continue;
+            }
+
+            return worker;
+
+        }
+
+    }
+
+    /**
+     * Hand back a worker after its patch has been tested. Workers that are no longer usable
+     * or have reached their patch limit are stopped.
+     */
+    void release(HarnessWorker worker) {
+        synchronized (this) {
+            if (!closed && worker.isUsable() && worker.getPatchesLoaded() < patchLimit) {
+                idleWorkers.push(worker);
+                return;
+            }
+        }
+        worker.close();
+    }
+
+    private synchronized HarnessWorker pollIdle() {
+        return idleWorkers.poll();
+    }
+
+    public synchronized int getWorkersStarted() {
+        return workersStarted;
+    }
+
+    @Override
+    public void close() {
+        Deque<HarnessWorker> toStop;
+        synchronized (this) {
+            closed = true;
+            toStop = new ArrayDeque<>(idleWorkers);
+            idleWorkers.clear();
+        }
+        toStop.forEach(HarnessWorker::close);
+        if (getWorkersStarted() > 0) {
+            Logger.info("Stopped test harness pool; " + getWorkersStarted() + " harness JVMs were started in total.");
+        }
+    }
+
+}
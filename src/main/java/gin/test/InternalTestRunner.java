@@ -1,17 +1,26 @@
 package gin.test;
 
 import gin.Patch;
-import org.mdkt.compiler.CompiledCode;
+import gin.SourceFile;
 import org.pmw.tinylog.Logger;
 
 import java.io.IOException;
 
 import java.io.Serial;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.Future;
 
 /**
  * Runs tests internally, through CacheClassLoader
@@ -27,6 +36,24 @@ public class InternalTestRunner extends TestRunner {
      * Automatic Program Repair.
      */
     private boolean failFast;
+    /**
+     * Loader holding the unchanged classes, shared with other runners; if null, every
+     * patch gets a CacheClassLoader of its own over the whole classpath.
+     */
+    private transient SharedClassLoader sharedClassLoader = null;
+    /**
+     * Harnesses to test patches on once the JVM is poisoned; if null, a JVM is started per patch.
+     */
+    private transient HarnessWorkerPool fallbackWorkerPool = null;
+    /**
+     * Results of programs tested before, looked up once a patch is applied; if null, every patch is tested.
+     */
+    private transient EvaluationMemo evaluationMemo = null;
+    /**
+     * Set once a test thread could not be stopped. It may still be running, holding locks or
+     * changing static state, so from then on all patches are tested in a separate JVM.
+     */
+    private static volatile boolean jvmPoisoned = false;
 
     /**
      * Create an InternalTestRunner given a package.ClassName, a classpath string separated by colons if needed,
@@ -59,9 +86,11 @@ public class InternalTestRunner extends TestRunner {
         this.setTests(testsForClass(testClassName));
     }
 
-    // Separated out so we can modify.
-    private static int getNumberOfThreads() {
-        return java.lang.Thread.activeCount();
+    /**
+     * @return true if a test thread could not be stopped, so tests are no longer run in this JVM
+     */
+    public static boolean isJVMPoisoned() {
+        return jvmPoisoned;
     }
 
     /**
@@ -83,6 +112,35 @@ public class InternalTestRunner extends TestRunner {
         this.failFast = failFast;
     }
 
+    /**
+     * Load unchanged classes through the given shared loader, so that each patch only
+     * reloads the patched class and the classes depending on it.
+     *
+     * @param sharedClassLoader loader over this runner's classpath, or null for a full loader per patch
+     */
+    public void setSharedClassLoader(SharedClassLoader sharedClassLoader) {
+        this.sharedClassLoader = sharedClassLoader;
+    }
+
+    /**
+     * Test patches on harnesses from the given pool once the JVM is poisoned. See {@link #isJVMPoisoned()}.
+     *
+     * @param fallbackWorkerPool the pool, or null to start a new JVM for each patch
+     */
+    public void setFallbackWorkerPool(HarnessWorkerPool fallbackWorkerPool) {
+        this.fallbackWorkerPool = fallbackWorkerPool;
+    }
+
+    /**
+     * Reuse the results of the same patched program when the memo has them, rather than test it again.
+     * Patches are looked up on the thread that applies and tests them.
+     *
+     * @param evaluationMemo the memo, or null to test every patch
+     */
+    public void setEvaluationMemo(EvaluationMemo evaluationMemo) {
+        this.evaluationMemo = evaluationMemo;
+    }
+
     /**
      * Apply and compile the given patch, then run all unit tests against it.
      *
@@ -91,39 +149,116 @@ public class InternalTestRunner extends TestRunner {
      * @return the results of the tests
      */
     public UnitTestResultSet runTests(Patch patch, Object metadata, int reps) {
-        List<UnitTestResult> results;
-        // Create a new class loader for every compilation, otherwise java will cache the modified class for us
-        CacheClassLoader classLoader = new CacheClassLoader(this.getClassPath());
-        try {
-            // Apply the patch.
-            String patchedSource = patch.apply(metadata);
-            boolean patchValid = patch.lastApplyWasValid();
-            List<Boolean> editsValid = patch.getEditsInvalidOnLastApply();
+        return runTests(patch, metadata, reps, getCompiler());
+    }
+
+    /**
+     * Apply, compile and test a batch of patches concurrently on the given pool.
+     * Each worker compiles with its own {@link Compiler} and loads the patched class
+     * into its own {@link CacheClassLoader}.
+     *
+     * @param patches Patches to evaluate.
+     * @param reps    Number of times to run each test.
+     * @param pool    Pool of workers to evaluate the patches on.
+     * @return the results of the tests, in the same order as the patches
+     */
+    public List<UnitTestResultSet> runTests(List<Patch> patches, Object metadata, int reps, EvaluationPool pool) throws InterruptedException {
+        // print the original sources once, on this thread: printing lazily attaches
+        // a printer to the shared compilation unit, which is not safe to do concurrently;
+        // the printed source is then kept, for no-op patches to return
+        Set<SourceFile> originals = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Callable<UnitTestResultSet>> tasks = new ArrayList<>(patches.size());
+        for (Patch patch : patches) {
+            if (originals.add(patch.getSourceFile())) {
+                patch.getSourceFile().getSource();
+            }
+            tasks.add(() -> runTests(patch, metadata, reps, pool.getCompiler()));
+        }
+        return pool.invokeAll(tasks);
+    }
+
+    /**
+     * Apply, compile and test a patch on a worker of the given pool, without waiting for it.
+     *
+     * @param patch      Patch to evaluate.
+     * @param reps       Number of times to run each test.
+     * @param pool       Pool of workers to evaluate the patch on.
+     * @param completion service of the pool, from which the results are taken once the patch is tested
+     * @return the pending results of the tests
+     */
+    public Future<UnitTestResultSet> submit(Patch patch, Object metadata, int reps, EvaluationPool pool, CompletionService<UnitTestResultSet> completion) {
+        // print the original source on this thread, as for a batch
+        patch.getSourceFile().getSource();
+        return completion.submit(() -> runTests(patch, metadata, reps, pool.getCompiler()));
+    }
+
+    private UnitTestResultSet runTests(Patch patch, Object metadata, int reps, Compiler compiler) {
+        String patchedSource;
+        boolean patchValid;
+        List<Boolean> editsValid;
+        boolean noOp;
+        // Apply the patch. The same patch object may be in a batch more than once.
+        synchronized (patch) {
+            patchedSource = patch.apply(metadata);
+            patchValid = patch.lastApplyWasValid();
+            editsValid = patch.getEditsInvalidOnLastApply();
             // Did the code change as a result of applying the patch?
-            boolean noOp = isPatchedSourceSame(patch.getSourceFile().toString(), patchedSource);
-            //Initialise with default value
-            boolean compiledOK = false;
-            // Only tries to compile and run when the patch is valid
-            // The patch might be invalid due to a couple of edits, which
-            // drop to being no-ops; remaining edits might be ok so still
-            // try compiling and then running in case of no-op
-            Compiler compiler = new Compiler();
-            if (patchValid) {
-                // Compile
-                CompiledCode code = compiler.compile(this.getClassName(), patchedSource, this.getClassPath());
-                compiledOK = (code != null);
-                // Run tests
-                if (compiledOK) {
-                    classLoader.setCustomCompiledCode(this.getClassName(), code.getByteCode());
-                    results = runTests(reps, classLoader);
-                } else {
-                    results = emptyResults(reps);
-                }
+            noOp = patch.lastApplyWasNoOp();
+        }
+        if (evaluationMemo != null) {
+            return evaluationMemo.test(getClassName(), patch, patchedSource, patchValid, editsValid, getTests(), reps,
+                    () -> compileAndRunTests(patch, patchedSource, patchValid, editsValid, noOp, reps, compiler));
+        }
+        return compileAndRunTests(patch, patchedSource, patchValid, editsValid, noOp, reps, compiler);
+    }
+
+    private UnitTestResultSet compileAndRunTests(Patch patch, String patchedSource, boolean patchValid, List<Boolean> editsValid,
+                                                 boolean noOp, int reps, Compiler compiler) {
+        List<UnitTestResult> results;
+        //Initialise with default value
+        Compilation compilation = null;
+        // Only tries to compile and run when the patch is valid
+        // The patch might be invalid due to a couple of edits, which
+        // drop to being no-ops; remaining edits might be ok so still
+        // try compiling and then running in case of no-op
+        if (patchValid) {
+            // Compile, or reuse the bytecode of the same patched source
+            compilation = compile(compiler, Collections.singletonMap(this.getClassName(), patchedSource));
+            // Run tests
+            if (compilation.compiledOK()) {
+                results = runTests(reps, compilation.classes());
             } else {
                 results = emptyResults(reps);
             }
+        } else {
+            results = emptyResults(reps);
+        }
+
+        return newResultSet(patch, patchedSource, patchValid, editsValid, compilation, noOp, results);
+    }
+
+    /**
+     * Load the patched classes, inner classes included, into a new class loader and run
+     * each of the tests against them, rep times. Once the JVM is poisoned, the tests are
+     * run in a separate JVM instead.
+     *
+     * @param reps           Number of times to run each test
+     * @param patchedClasses bytecode of the patched classes, by binary name
+     */
+    @Override
+    protected List<UnitTestResult> runTests(int reps, Map<String, byte[]> patchedClasses) {
 
-            return new UnitTestResultSet(patch, patchedSource, patchValid, editsValid, compiledOK, compiler.getLastError(), noOp, results);
+        if (jvmPoisoned) {
+            return runTestsExternally(reps, patchedClasses);
+        }
+
+        // Create a new class loader for every compilation, otherwise java will cache the modified class for us
+        CacheClassLoader classLoader = (sharedClassLoader != null) ?
+                sharedClassLoader.newPatchClassLoader(patchedClasses.keySet()) :
+                new CacheClassLoader(this.getClassPath());
+        try {
+            patchedClasses.forEach(classLoader::setCustomCompiledCode);
+            return runTests(reps, classLoader);
         } finally {
             try {
                 classLoader.close();
@@ -131,10 +266,15 @@ public class InternalTestRunner extends TestRunner {
                 Logger.error(ex, "Could not close CacheClassLoader.");
             }
         }
+
     }
 
     /**
      * Run each of the tests against the modified class held in the class load, rep times.
+     * JUnitBridge is loaded and bootstrapped once for the class loader; unless failing fast,
+     * all tests of a repetition are run as a single JUnit test plan. Tests run on threads
+     * watched by a {@link TestWatchdog}, which stops any test running past its timeout and
+     * any threads the tests leave behind.
      *
      * @param reps        Number of times to run each test
      * @param classLoader CacheClassLoader containing correct classpath and any modified classes.
@@ -143,19 +283,32 @@ public class InternalTestRunner extends TestRunner {
 
         List<UnitTest> testsToRun = this.getTests();
         List<UnitTestResult> results = new LinkedList<>();
-        for (int r = 1; r <= reps; r++) {
-            Logger.info("Running tests for rep " + r + " of " + reps + ".");
-            for (UnitTest testToRun : testsToRun) {
-                // Run the test.
-                UnitTestResult testResult = runSingleTest(testToRun, classLoader, r);
-                // Save results.
-                results.add(testResult);
-                // If it is fail fast and the test failed, then return and stop
-                // the execution.
-                if (failFast && !testResult.getPassed()) {
-                    return results;
+        TestWatchdog watchdog = new TestWatchdog();
+        try (LoadedBridge bridge = new LoadedBridge(classLoader)) {
+            for (int r = 1; r <= reps; r++) {
+                Logger.info("Running tests for rep " + r + " of " + reps + ".");
+                if (!failFast) {
+                    results.addAll(runAllTests(testsToRun, bridge, watchdog, r));
+                    continue;
+                }
+                for (UnitTest testToRun : testsToRun) {
+                    // Run the test.
+                    UnitTestResult testResult = runSingleTest(testToRun, bridge, watchdog, r);
+                    // Save results.
+                    results.add(testResult);
+                    // If it is fail fast and the test failed, then return and stop
+                    // the execution.
+                    if (!testResult.getPassed()) {
+                        return results;
+                    }
                 }
             }
+        } finally {
+            watchdog.close();
+            if (watchdog.isPoisoned() && !jvmPoisoned) {
+                jvmPoisoned = true;
+                Logger.error("Threads left by tests could not be stopped; further patches will be tested in a separate JVM.");
+            }
         }
 
         return results;
@@ -163,95 +316,171 @@ public class InternalTestRunner extends TestRunner {
     }
 
     /**
-     * Run the test class for a modified class.
-     * Loads JUnitBridge using a separate classloader and invokes jUnit using reflection.
-     * This allows us to have jUnit load all classes from a CacheClassLoader, enabling us to override the modified
-     * class with the freshly compiled version.
+     * Run one test through the bridge, on a watched thread.
      */
-    private UnitTestResult runSingleTest(UnitTest test, CacheClassLoader classLoader, int rep) {
+    private UnitTestResult runSingleTest(UnitTest test, LoadedBridge bridge, TestWatchdog watchdog, int rep) {
 
-        Class<?> runnerClass = null;
+        UnitTestResult[] result = new UnitTestResult[1];
+        TestWatchdog.Outcome outcome;
         try {
-            runnerClass = classLoader.loadClass(JUnitBridge.class.getName());
-        } catch (ClassNotFoundException e) {
-            Logger.error("Could not load isolated test runner - class not found.");
-            System.exit(-1);
+            outcome = watchdog.run(progress -> result[0] = bridge.runTest(test, rep, progress), test.getTimeoutMS());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return errorResult(test, rep, e);
         }
 
-        Object runner = null;
-        try {
-            runner = runnerClass.getDeclaredConstructor().newInstance();
-        } catch (InstantiationException | NoSuchMethodException | IllegalAccessException |
-                 InvocationTargetException e) {
-            Logger.error("Could not instantiate isolated test runner: " + e);
-            System.exit(-1);
+        if (outcome.timedOut()) {
+            return timeoutResult(test, rep);
+        }
+        if (outcome.failure() != null) {
+            Logger.trace(outcome.failure());
+            return errorResult(test, rep, outcome.failure());
+        }
+        return result[0];
+
+    }
+
+    /**
+     * Run all tests through the bridge, as a single test plan on a watched thread.
+     * When no test is running, e.g. during discovery, the longest test timeout applies.
+     */
+    private List<UnitTestResult> runAllTests(List<UnitTest> tests, LoadedBridge bridge, TestWatchdog watchdog, int rep) {
+
+        List<UnitTestResult> results = new ArrayList<>(tests.size());
+        long idleTimeoutMS = 0;
+        for (UnitTest test : tests) {
+            results.add(new UnitTestResult(test, rep));
+            idleTimeoutMS = Math.max(idleTimeoutMS, test.getTimeoutMS());
+        }
+        if (tests.isEmpty()) {
+            return results;
         }
 
-        Method method = null;
+        TestWatchdog.Outcome outcome;
         try {
-            method = runner.getClass().getMethod(JUnitBridge.BRIDGE_METHOD_NAME, UnitTest.class, int.class);
-        } catch (NoSuchMethodException e) {
-            Logger.error("Could not run isolated tests runner, can't find method: " + ISOLATED_TEST_RUNNER_METHOD_NAME);
-            System.exit(-1);
+            outcome = watchdog.run(progress -> bridge.runTests(results, progress), idleTimeoutMS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome = new TestWatchdog.Outcome(Collections.emptySet(), Collections.emptySet(), true, e);
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            UnitTestResult result = results.get(i);
+            if (outcome.overran().contains(result)) {
+                results.set(i, timeoutResult(result.getTest(), rep));
+            } else if (outcome.timedOut() && !outcome.finished().contains(result)) {
+                // the plan was stopped before this test finished, so it may pass another time
+                results.set(i, notRunResult(result.getTest(), rep));
+            } else if (outcome.failure() != null) {
+                results.set(i, errorResult(result.getTest(), rep, outcome.failure()));
+            }
         }
+        if (outcome.failure() != null) {
+            Logger.trace(outcome.failure());
+        }
+
+        return results;
 
-        int threadsBefore = getNumberOfThreads();
+    }
 
-        Object result;
+    /**
+     * Run the tests against the patched class in a separate JVM, for when this one is poisoned.
+     */
+    private List<UnitTestResult> runTestsExternally(int reps, Map<String, byte[]> patchedClasses) {
+        ExternalTestRunner runner = new ExternalTestRunner(this.getClassName(), this.getClassPath(), this.getTests(), false, false, failFast);
+        runner.setWorkerPool(fallbackWorkerPool);
         try {
-            // stop the method from running if it runs for more than 10 seconds
-            result = method.invoke(runner, test, rep);
-        } catch (IllegalAccessException | InvocationTargetException e) {
+            return runner.runTests(reps, patchedClasses);
+        } catch (IOException e) {
+            Logger.error("Could not run tests in a separate JVM: " + e);
             Logger.trace(e);
-            UnitTestResult tempResult = new UnitTestResult(test, rep);
-            tempResult.setExceptionType(e.getClass().getName());
-            tempResult.setExceptionMessage(e.getMessage());
-            tempResult.setPassed(false);
-            result = tempResult;
+            return emptyResults(reps);
         }
+    }
+
+    private static UnitTestResult notRunResult(UnitTest test, int rep) {
+        UnitTestResult result = new UnitTestResult(test, rep);
+        result.setPassed(false);
+        result.setTimedOut(true);
+        result.setExceptionType("org.junit.runners.model.TestTimedOutException");
+        result.setExceptionMessage("test not run: the tests were stopped for timing out before it finished");
+        return result;
+    }
+
+    private static UnitTestResult errorResult(UnitTest test, int rep, Throwable e) {
+        UnitTestResult result = new UnitTestResult(test, rep);
+        result.setExceptionType(e.getClass().getName());
+        result.setExceptionMessage(e.getMessage());
+        result.setPassed(false);
+        return result;
+    }
+
+    /**
+     * A JUnitBridge loaded through a patch's class loader, with handles to its run methods.
+     * Loading JUnitBridge through the CacheClassLoader lets jUnit load all classes from it,
+     * enabling us to override the modified class with the freshly compiled version.
+     */
+    private static class LoadedBridge implements AutoCloseable {
+
+        private final AutoCloseable instance;
+        private final MethodHandle runTest;
+        private final MethodHandle runTests;
+
+        LoadedBridge(CacheClassLoader classLoader) {
+
+            Class<?> runnerClass = null;
+            try {
+                runnerClass = classLoader.loadClass(JUnitBridge.class.getName());
+            } catch (ClassNotFoundException e) {
+                Logger.error("Could not load isolated test runner - class not found.");
+                System.exit(-1);
+            }
+
+            Object runner = null;
+            try {
+                runner = runnerClass.getDeclaredConstructor().newInstance();
+            } catch (InstantiationException | NoSuchMethodException | IllegalAccessException |
+                     InvocationTargetException e) {
+                Logger.error("Could not instantiate isolated test runner: " + e);
+                System.exit(-1);
+            }
+
+            MethodHandle single = null;
+            MethodHandle batch = null;
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                single = lookup.findVirtual(runnerClass, JUnitBridge.BRIDGE_METHOD_NAME,
+                        MethodType.methodType(UnitTestResult.class, UnitTest.class, int.class, TestRunListener.Progress.class)).bindTo(runner);
+                batch = lookup.findVirtual(runnerClass, JUnitBridge.BRIDGE_BATCH_METHOD_NAME,
+                        MethodType.methodType(void.class, List.class, TestRunListener.Progress.class)).bindTo(runner);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                Logger.error("Could not run isolated tests runner, can't find method: " + e.getMessage());
+                System.exit(-1);
+            }
+
+            this.instance = (AutoCloseable) runner;
+            this.runTest = single;
+            this.runTests = batch;
 
-//        ExecutorService executor = Executors.newSingleThreadExecutor();
-//        Method finalMethod = method;
-//        Object finalRunner = runner;
-//
-//        Future<Object> future = executor.submit(() -> {
-//            return finalMethod.invoke(finalRunner, test, rep); // Call the test method
-//        });
-//
-//        Object result;
-//        try {
-//            // Retrieve the result of the invocation, but only wait for 10 seconds
-//            result = future.get(10, TimeUnit.SECONDS);
-//        } catch (TimeoutException e) {
-//            Logger.error("Test timed out after 10 seconds.");
-//            future.cancel(true);
-//            executor.shutdownNow();
-//            UnitTestResult tempResult = new UnitTestResult(test, rep);
-//            tempResult.setExceptionType(e.getClass().getName());
-//            tempResult.setExceptionMessage("Test timed out after 10 seconds.");
-//            tempResult.setPassed(false);
-//            result = tempResult;
-//        } catch (InterruptedException | ExecutionException e) {
-//            UnitTestResult tempResult = new UnitTestResult(test, rep);
-//            tempResult.setExceptionType(e.getClass().getName());
-//            tempResult.setExceptionMessage(e.getMessage());
-//            tempResult.setPassed(false);
-//            result = tempResult;
-//        } finally {
-//            future.cancel(true);
-//            executor.shutdownNow(); // Clean up executor service
-//        }
-
-        int threadsAfter = getNumberOfThreads();
-
-        if (threadsAfter != threadsBefore) {
-            Logger.warn("Possible hanging threads remain after test");
-            Logger.info(String.format("Threads before: %d, Threads after: %d", threadsBefore, threadsAfter));
         }
 
-        return (UnitTestResult) result;
+        UnitTestResult runTest(UnitTest test, int rep, TestRunListener.Progress progress) throws Throwable {
+            return (UnitTestResult) runTest.invokeExact(test, rep, progress);
+        }
 
-    }
+        void runTests(List<UnitTestResult> results, TestRunListener.Progress progress) throws Throwable {
+            runTests.invokeExact(results, progress);
+        }
+
+        @Override
+        public void close() {
+            try {
+                instance.close();
+            } catch (Exception e) {
+                Logger.warn("Could not close isolated test runner: " + e);
+            }
+        }
 
+    }
 
 }
@@ -1,5 +1,7 @@
 package gin.test;
 
+import org.junit.platform.engine.DiscoverySelector;
+import org.junit.platform.engine.discovery.MethodSelector;
 import org.junit.platform.launcher.Launcher;
 import org.junit.platform.launcher.LauncherDiscoveryRequest;
 import org.junit.platform.launcher.LauncherSession;
@@ -11,6 +13,10 @@ import org.pmw.tinylog.Logger;
 import java.io.Serial;
 import java.io.Serializable;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.platform.engine.discovery.DiscoverySelectors.selectMethod;
 
@@ -18,13 +24,20 @@ import static org.junit.platform.engine.discovery.DiscoverySelectors.selectMetho
 // timeout annotation based on: https://gist.github.com/henrrich/185503f10cbb2499a0dc75ec4c29c8f2 and https://www.baeldung.com/java-reflection-change-annotation-params
 
 /**
- * Runs a given test in the same JVM as this class.
+ * Runs given tests in the same JVM as this class.
+ * <p>
+ * An instance is created once per class loader; it keeps one JUnit LauncherSession open
+ * until it is closed.
  */
-public class JUnitBridge implements Serializable {
+public class JUnitBridge implements Serializable, AutoCloseable {
 
     public static final String BRIDGE_METHOD_NAME = "runTest";
+    public static final String BRIDGE_BATCH_METHOD_NAME = "runTests";
     @Serial
     private static final long serialVersionUID = -1984013159496571086L;
+    private static final String TIMEOUT_PARAMETER = "junit.jupiter.execution.timeout.test.method.default";
+
+    private transient LauncherSession session = null;
 
     /**
      * This method is called using reflection to ensure tests are run in an environment that employs a separate
@@ -35,6 +48,19 @@ public class JUnitBridge implements Serializable {
      * @return the test results
      */
     public UnitTestResult runTest(UnitTest test, int rep) {
+        return runTest(test, rep, null);
+    }
+
+    /**
+     * As {@link #runTest(UnitTest, int)}, telling the given progress listener when the test
+     * starts and finishes.
+     *
+     * @param test     the unit test to run
+     * @param rep      the number of times to repeat the test
+     * @param progress told when the test starts and finishes; may be null
+     * @return the test results
+     */
+    public UnitTestResult runTest(UnitTest test, int rep, TestRunListener.Progress progress) {
 
         UnitTestResult result = new UnitTestResult(test, rep);
 
@@ -72,10 +98,10 @@ public class JUnitBridge implements Serializable {
 
         }
 
-        try (LauncherSession session = LauncherFactory.openSession()) {
-            Launcher launcher = session.getLauncher();
+        try {
+            Launcher launcher = getSession().getLauncher();
             TestPlan testPlan = launcher.discover(request);
-            launcher.execute(testPlan, new TestRunListener(result));
+            launcher.execute(testPlan, new TestRunListener(result, progress));
         } catch (Exception e) {
             Logger.error("Error running junit: " + e);
 
@@ -88,7 +114,93 @@ public class JUnitBridge implements Serializable {
 
     }
 
+    /**
+     * Runs all the given tests as a single test plan: discovery happens once for the
+     * whole list, and results are reported per test.
+     * Called using reflection, like {@link #runTest}.
+     *
+     * @param tests the unit tests to run
+     * @param rep   the repetition number of this run
+     * @return the test results, in the same order as the tests
+     */
+    public List<UnitTestResult> runTests(List<UnitTest> tests, int rep) {
+        List<UnitTestResult> results = new ArrayList<>(tests.size());
+        for (UnitTest test : tests) {
+            results.add(new UnitTestResult(test, rep));
+        }
+        runTests(results, null);
+        return results;
+    }
+
+    /**
+     * Runs the tests of the given results as a single test plan, recording into the results.
+     * Results are filled in as each test finishes, so a caller on another thread can see
+     * the results of the tests run so far.
+     *
+     * @param results  a result for each test to run, holding the test and its repetition number
+     * @param progress told when each test starts and finishes; may be null
+     */
+    public void runTests(List<UnitTestResult> results, TestRunListener.Progress progress) {
+
+        Map<String, UnitTestResult> resultsByTest = new HashMap<>();
+        List<DiscoverySelector> selectors = new ArrayList<>();
+        long timeoutMS = 0;
+
+        for (UnitTestResult result : results) {
+            UnitTest test = result.getTest();
+            try {
+                MethodSelector selector = selectTest(test);
+                selectors.add(selector);
+                resultsByTest.put(TestRunListener.key(selector.getClassName(), selector.getMethodName()), result);
+                timeoutMS = Math.max(timeoutMS, test.getTimeoutMS());
+            } catch (ClassNotFoundException e) {
+                Logger.error("Unable to find test class file: " + test);
+                Logger.error("Is the class file on provided classpath?");
+                Logger.trace(e);
+                result.setExceptionType(e.getClass().getName());
+                result.setExceptionMessage(e.getMessage());
+            } catch (NoSuchMethodException e) {
+                Logger.error(e.getMessage());
+                Logger.error("Note that parametirised JUnit tetsts are not allowed in Gin.");
+                Logger.trace(e);
+                result.setExceptionType(e.getClass().getName());
+                result.setExceptionMessage(e.getMessage());
+            }
+        }
+
+        if (selectors.isEmpty()) {
+            return;
+        }
+
+        LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request()
+                .selectors(selectors)
+                .configurationParameter(TIMEOUT_PARAMETER, timeoutMS + " ms")
+                .build();
+
+        try {
+            Launcher launcher = getSession().getLauncher();
+            TestPlan testPlan = launcher.discover(request);
+            launcher.execute(testPlan, new TestRunListener(resultsByTest, progress));
+        } catch (Exception e) {
+            Logger.error("Error running junit: " + e);
+            for (UnitTestResult result : resultsByTest.values()) {
+                if (!result.getPassed()) {
+                    result.setExceptionType(e.getClass().getName());
+                    result.setExceptionMessage(e.getMessage());
+                }
+            }
+        }
+
+    }
+
     public LauncherDiscoveryRequest buildRequest(UnitTest test) throws ClassNotFoundException, NoSuchMethodException, NoSuchFieldException, IllegalAccessException {
+        return LauncherDiscoveryRequestBuilder.request()
+                .selectors(selectTest(test))
+                .configurationParameter(TIMEOUT_PARAMETER, test.getTimeoutMS() + " ms")
+                .build();
+    }
+
+    private MethodSelector selectTest(UnitTest test) throws ClassNotFoundException, NoSuchMethodException {
         ClassLoader loader = this.getClass().getClassLoader();
 
         String testClassname = test.getFullClassName();
@@ -97,9 +209,25 @@ public class JUnitBridge implements Serializable {
         String methodName = test.getMethodName().replace("()", "");
         Method method = clazz.getDeclaredMethod(methodName);
 
-        return LauncherDiscoveryRequestBuilder.request()
-                .selectors(selectMethod(clazz, method.getName()))
-                .configurationParameter("junit.jupiter.execution.timeout.test.method.default", test.getTimeoutMS() + " ms")
-                .build();
+        return selectMethod(clazz, method.getName());
+    }
+
+    private LauncherSession getSession() {
+        if (session == null) {
+            session = LauncherFactory.openSession();
+        }
+        return session;
     }
+
+    /**
+     * Closes the LauncherSession, if one was opened.
+     */
+    @Override
+    public void close() {
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+    }
+
 }
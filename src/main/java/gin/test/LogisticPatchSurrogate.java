@@ -0,0 +1,156 @@
+package gin.test;
+
+import gin.Patch;
+import gin.SourceFile;
+import gin.SourceFileLine;
+import gin.SourceFileTree;
+import gin.edit.Edit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The default {@link PatchSurrogate}: two online logistic regressions over hashed features of
+ * the patch, one for whether it compiles, and one, trained only on patches that compiled, for
+ * whether it then passes all tests.
+ * <p>
+ * The features of each edit are its class and, for each location it names (source, destination,
+ * ...), the type of the node there, its parent's type and its depth, or for line edits what sort
+ * of line it is, each alone and with the edit class. Locations are read from the edit's
+ * description, in the form read back by its fromString method, and looked up in the original
+ * source file, so no patch is applied. Weights are learned by AdaGrad, so rare features still
+ * learn quickly.
+ */
+public class LogisticPatchSurrogate implements PatchSurrogate {
+
+    private static final int FEATURE_BITS = 14;
+    private static final double LEARNING_RATE = 0.5;
+    private static final int MAX_LOCATIONS = 3;
+    private static final int MAX_DEPTH = 12;
+    private static final int MAX_SIZE = 8;
+
+    /**
+     * a location in an edit's description: a file, maybe quoted, then a node or line ID and
+     * maybe the ID of a child in a block
+     */
+    private static final Pattern LOCATION = Pattern.compile("(?:\"[^\"]*\"|[^\\s\"]+?):(-?\\d+)(?::(-?\\d+))?");
+
+    private final Logistic compiles = new Logistic();
+    private final Logistic passes = new Logistic();
+
+    @Override
+    public synchronized double predict(Patch patch) {
+        int[] features = features(patch);
+        return compiles.predict(features) * passes.predict(features);
+    }
+
+    @Override
+    public synchronized void record(Patch patch, UnitTestResultSet results) {
+        int[] features = features(patch);
+        boolean compiled = results.getValidPatch() && results.getCleanCompile();
+        compiles.update(features, compiled);
+        if (compiled) {
+            passes.update(features, results.allTestsSuccessful());
+        }
+    }
+
+    /**
+     * @return the indices of the patch's features; the same feature may appear more than once
+     */
+    static int[] features(Patch patch) {
+        List<String> names = new ArrayList<>();
+        names.add("size=" + Math.min(patch.size(), MAX_SIZE));
+        SourceFile sourceFile = patch.getSourceFile();
+        for (Edit edit : patch.getEdits()) {
+            String editClass = edit.getClass().getSimpleName();
+            names.add("edit=" + editClass);
+            String description = edit.toString();
+            int newline = description.indexOf('\n');
+            Matcher matcher = LOCATION.matcher((newline < 0) ? description : description.substring(0, newline));
+            for (int location = 0; location < MAX_LOCATIONS && matcher.find(); location++) {
+                int id = Integer.parseInt(matcher.group(1));
+                for (String feature : locationFeatures(sourceFile, id)) {
+                    names.add(feature);
+                    names.add(editClass + "@" + location + ":" + feature);
+                }
+            }
+        }
+        int[] features = new int[names.size()];
+        for (int i = 0; i < features.length; i++) {
+            features[i] = (names.get(i).hashCode() * 0x9E3779B9) >>> (32 - FEATURE_BITS);
+        }
+        return features;
+    }
+
+    private static List<String> locationFeatures(SourceFile sourceFile, int id) {
+        List<String> features = new ArrayList<>(3);
+        if (sourceFile instanceof SourceFileTree tree) {
+            Class<?> nodeClass = tree.getNodeClass(id);
+            if (nodeClass == null) {
+                features.add("node=none");
+                return features;
+            }
+            Class<?> parentClass = tree.getParentNodeClass(id);
+            features.add("node=" + nodeClass.getSimpleName());
+            features.add("parent=" + ((parentClass == null) ? "none" : parentClass.getSimpleName()));
+            features.add("depth=" + Math.min(tree.getNodeDepth(id), MAX_DEPTH));
+        } else if (sourceFile instanceof SourceFileLine lines) {
+            features.add("line=" + lineKind(lines.getLine(id)));
+        }
+        return features;
+    }
+
+    private static String lineKind(String line) {
+        if (line == null) {
+            return "none";
+        }
+        String trimmed = line.trim();
+        if (trimmed.isEmpty()) {
+            return "blank";
+        }
+        if (trimmed.startsWith("//") || trimmed.startsWith("/*") || trimmed.startsWith("*")) {
+            return "comment";
+        }
+        if (trimmed.replaceAll("[{}();\\s]", "").isEmpty()) {
+            return "brace";
+        }
+        if (trimmed.endsWith("{")) {
+            return "open";
+        }
+        return "code";
+    }
+
+    /**
+     * logistic regression over binary features, trained one example at a time
+     */
+    private static class Logistic {
+
+        private final double[] weights = new double[1 << FEATURE_BITS];
+        private final double[] squaredGradients = new double[1 << FEATURE_BITS];
+        private double bias = 0;
+        private double biasSquaredGradient = 0;
+
+        double predict(int[] features) {
+            double z = bias;
+            for (int feature : features) {
+                z += weights[feature];
+            }
+            return 1.0 / (1.0 + Math.exp(-z));
+        }
+
+        void update(int[] features, boolean label) {
+            double gradient = (label ? 1.0 : 0.0) - predict(features);
+            double squared = gradient * gradient;
+            biasSquaredGradient += squared;
+            bias += LEARNING_RATE * gradient / Math.sqrt(biasSquaredGradient + 1e-8);
+            for (int feature : features) {
+                squaredGradients[feature] += squared;
+                weights[feature] += LEARNING_RATE * gradient / Math.sqrt(squaredGradients[feature] + 1e-8);
+            }
+        }
+
+    }
+
+}
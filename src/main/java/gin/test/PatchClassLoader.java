@@ -0,0 +1,66 @@
+package gin.test;
+
+import java.io.Serial;
+import java.util.Set;
+
+/**
+ * Loader for a single patch, on top of a {@link SharedClassLoader}. It defines the patched
+ * class, the classes that depend on it, and JUnitBridge itself, so that tests run against
+ * the patched code; every other class comes from the shared loader and is loaded only once.
+ */
+public class PatchClassLoader extends CacheClassLoader {
+
+    @Serial
+    private static final long serialVersionUID = -2385946275131620411L;
+
+    private final transient SharedClassLoader shared;
+    private final Set<String> overlaid;
+
+    /**
+     * @param shared   loader holding the unchanged classes
+     * @param overlaid fully qualified names of the classes to define afresh in this loader
+     */
+    PatchClassLoader(SharedClassLoader shared, Set<String> overlaid) {
+        super(shared);
+        this.shared = shared;
+        this.overlaid = overlaid;
+    }
+
+    /**
+     * Child first for overlaid classes, parent first for everything else.
+     */
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                if (isOverlaid(name)) {
+                    c = findClass(name);
+                } else {
+                    c = getParent().loadClass(name);
+                }
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] byteCode = customCompiledCode.get(name);
+        if (byteCode == null) {
+            byteCode = shared.getClassBytes(name);
+        }
+        if (byteCode == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, byteCode, 0, byteCode.length);
+    }
+
+    private boolean isOverlaid(String name) {
+        return customCompiledCode.containsKey(name) || overlaid.contains(name) || name.equals(JUnitBridge.class.getName());
+    }
+
+}
@@ -0,0 +1,26 @@
+package gin.test;
+
+import gin.Patch;
+
+/**
+ * A cheap model of how patches fare when tested, learned online from the patches tested so
+ * far, so that patches very likely to fail can be skipped before they are applied, compiled
+ * and run. See {@link SurrogateScreen} for how its predictions are used.
+ */
+public interface PatchSurrogate {
+
+    /**
+     * @param patch a patch about to be tested
+     * @return the estimated probability that the patch compiles and passes all tests
+     */
+    double predict(Patch patch);
+
+    /**
+     * Learn from the results of testing a patch.
+     *
+     * @param patch   the patch tested
+     * @param results its results
+     */
+    void record(Patch patch, UnitTestResultSet results);
+
+}
@@ -0,0 +1,226 @@
+package gin.test;
+
+import org.pmw.tinylog.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serial;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A long-lived CacheClassLoader holding the unchanged project and test classes, shared
+ * by many patches. Each patch gets a thin {@link PatchClassLoader} on top of it, which
+ * defines only the patched class and the project classes that depend on it.
+ * <p>
+ * A class depends on the target class if it refers to it, or to another class that
+ * depends on it: a class loaded here that refers to the target would otherwise be linked
+ * to the unpatched version. Dependencies are found by reading the constant pools of the
+ * class files in the directories of the project classpath; jars are assumed not to refer
+ * to project classes.
+ */
+public class SharedClassLoader extends CacheClassLoader {
+
+    @Serial
+    private static final long serialVersionUID = 4311581620463913127L;
+
+    private static final Pattern DESCRIPTOR_CLASS = Pattern.compile("L([^;<>]+)[;<]");
+
+    /**
+     * Project classes referred to by each project class, by internal name; read on first use.
+     */
+    private transient Map<String, Set<String>> references = null;
+    private final transient Map<String, Set<String>> dependents = new ConcurrentHashMap<>();
+    private final transient Map<String, byte[]> classBytes = new ConcurrentHashMap<>();
+
+    public SharedClassLoader(String classpath) {
+        super(classpath);
+    }
+
+    /**
+     * Create a loader for a single patch of the given class. Close it once the patch has been tested.
+     *
+     * @param className fully qualified name of the class being patched
+     * @return a loader that overlays the class and its dependents on this one
+     */
+    public PatchClassLoader newPatchClassLoader(String className) {
+        return new PatchClassLoader(this, getDependents(className));
+    }
+
+    /**
+     * Create a loader for a single patch of several classes. Close it once the patch has been tested.
+     *
+     * @param classNames fully qualified names of the classes being patched
+     * @return a loader that overlays the classes and their dependents on this one
+     */
+    public PatchClassLoader newPatchClassLoader(Collection<String> classNames) {
+        Set<String> overlaid = new HashSet<>();
+        classNames.forEach(className -> overlaid.addAll(getDependents(className)));
+        return new PatchClassLoader(this, overlaid);
+    }
+
+    /**
+     * @param className fully qualified class name
+     * @return the fully qualified names of the project classes that depend on the class, the class itself included
+     */
+    public Set<String> getDependents(String className) {
+        return dependents.computeIfAbsent(className, this::findDependents);
+    }
+
+    /**
+     * @return the bytecode of a class on the classpath, or null if there is no such class
+     */
+    byte[] getClassBytes(String className) {
+        byte[] bytes = classBytes.get(className);
+        if (bytes == null) {
+            try (InputStream in = getResourceAsStream(className.replace('.', '/') + ".class")) {
+                if (in == null) {
+                    return null;
+                }
+                bytes = in.readAllBytes();
+            } catch (IOException e) {
+                Logger.error("Could not read class file for " + className + ": " + e);
+                return null;
+            }
+            classBytes.put(className, bytes);
+        }
+        return bytes;
+    }
+
+    private Set<String> findDependents(String className) {
+
+        Map<String, Set<String>> referencedBy = new HashMap<>();
+        getReferences().forEach((from, tos) -> {
+            for (String to : tos) {
+                referencedBy.computeIfAbsent(to, k -> new HashSet<>()).add(from);
+            }
+        });
+
+        Set<String> found = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        toVisit.add(className.replace('.', '/'));
+        while (!toVisit.isEmpty()) {
+            String internalName = toVisit.poll();
+            if (found.add(internalName)) {
+                toVisit.addAll(referencedBy.getOrDefault(internalName, Collections.emptySet()));
+            }
+        }
+
+        Set<String> names = new HashSet<>();
+        found.forEach(internalName -> names.add(internalName.replace('/', '.')));
+        Logger.debug(names.size() + " classes are reloaded for each patch of " + className);
+        return Collections.unmodifiableSet(names);
+
+    }
+
+    private synchronized Map<String, Set<String>> getReferences() {
+
+        if (references != null) {
+            return references;
+        }
+
+        Map<String, Set<String>> constants = new HashMap<>();
+        for (URL url : getProvidedClassPath()) {
+            Path dir;
+            try {
+                dir = new File(url.toURI()).toPath();
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                continue;
+            }
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.filter(f -> f.toString().endsWith(".class")).forEach(f -> {
+                    String relative = dir.relativize(f).toString().replace(File.separatorChar, '/');
+                    String internalName = relative.substring(0, relative.length() - ".class".length());
+                    // earlier classpath entries win, as when loading
+                    if (!constants.containsKey(internalName)) {
+                        try {
+                            constants.put(internalName, readStringConstants(Files.readAllBytes(f)));
+                        } catch (IOException e) {
+                            Logger.warn("Could not read class file " + f + ": " + e);
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                Logger.warn("Could not scan classpath directory " + dir + ": " + e);
+            }
+        }
+
+        // keep only references to project classes, from class constants and type descriptors
+        references = new HashMap<>();
+        constants.forEach((internalName, strings) -> {
+            Set<String> refs = new HashSet<>();
+            for (String s : strings) {
+                if (constants.containsKey(s)) {
+                    refs.add(s);
+                }
+                if (s.indexOf(';') >= 0) {
+                    Matcher m = DESCRIPTOR_CLASS.matcher(s);
+                    while (m.find()) {
+                        if (constants.containsKey(m.group(1))) {
+                            refs.add(m.group(1));
+                        }
+                    }
+                }
+            }
+            refs.remove(internalName);
+            references.put(internalName, refs);
+        });
+
+        return references;
+
+    }
+
+    /**
+     * Reads the UTF8 entries of a class file's constant pool. Class names, descriptors and
+     * signatures of everything the class refers to are among them.
+     */
+    static Set<String> readStringConstants(byte[] classFile) throws IOException {
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile));
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        Set<String> strings = new HashSet<>();
+        int count = in.readUnsignedShort();
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1 -> strings.add(in.readUTF()); // Utf8
+                case 7, 8, 16, 19, 20 -> in.skipBytes(2); // Class, String, MethodType, Module, Package
+                case 15 -> in.skipBytes(3); // MethodHandle
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipBytes(4); // Integer, Float, refs, NameAndType, Dynamic
+                case 5, 6 -> { // Long, Double take two entries
+                    in.skipBytes(8);
+                    i++;
+                }
+                default -> throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        return strings;
+
+    }
+
+}
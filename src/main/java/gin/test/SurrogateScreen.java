@@ -0,0 +1,156 @@
+package gin.test;
+
+import com.opencsv.CSVWriter;
+import gin.Patch;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Decides which patches to skip on the predictions of a {@link PatchSurrogate}, and keeps score
+ * of how good the predictions were.
+ * <p>
+ * Nothing is skipped until the model has learned from a number of tested patches. After that, a
+ * patch predicted to compile and pass with less than the threshold probability is skipped, unless
+ * it is picked for exploration: a fixed fraction of such patches is tested anyway, so the model
+ * keeps learning about the patches it would reject, and so that its precision and recall can be
+ * measured.
+ * <p>
+ * Precision and recall are for predicting that a patch fails, i.e. for skipping it. Only the
+ * explored sample of patches predicted to fail is tested, so those are counted once for each
+ * patch they stand for when estimating recall.
+ */
+public class SurrogateScreen {
+
+    private static final String[] SUMMARY_HEADER = {"PatchesTested", "PatchesSkipped", "PatchesExplored",
+            "TruePositives", "FalsePositives", "FalseNegatives", "TrueNegatives", "Precision", "Recall"};
+
+    private final PatchSurrogate surrogate;
+    private final double threshold;
+    private final double exploration;
+    private final int warmUp;
+    private final Random rng;
+
+    private int tested = 0;
+    private int skipped = 0;
+    private int explored = 0;
+    // after warm-up; positive means predicted to fail
+    private int truePositives = 0;
+    private int falsePositives = 0;
+    private int falseNegatives = 0;
+    private int trueNegatives = 0;
+
+    /**
+     * @param surrogate   the model
+     * @param threshold   patches predicted to compile and pass with less than this probability are skipped
+     * @param exploration fraction of the patches that would be skipped that are tested anyway
+     * @param warmUp      number of patches to learn from before any is skipped
+     * @param seed        seed for choosing the patches to explore
+     */
+    public SurrogateScreen(PatchSurrogate surrogate, double threshold, double exploration, int warmUp, long seed) {
+        this.surrogate = surrogate;
+        this.threshold = threshold;
+        this.exploration = exploration;
+        this.warmUp = warmUp;
+        this.rng = new Random(seed);
+    }
+
+    /**
+     * @param patch a patch about to be tested
+     * @return true if the patch should not be tested
+     */
+    public synchronized boolean skip(Patch patch) {
+        if (tested < warmUp || patch.size() == 0) {
+            return false;
+        }
+        if (surrogate.predict(patch) >= threshold) {
+            return false;
+        }
+        if (rng.nextDouble() < exploration) {
+            explored++;
+            return false;
+        }
+        skipped++;
+        return true;
+    }
+
+    /**
+     * Score the prediction for a tested patch, then learn from its results. The prediction is
+     * also kept with the results, for the output file.
+     */
+    public synchronized void record(Patch patch, UnitTestResultSet results) {
+        double predicted = surrogate.predict(patch);
+        results.setPredictedPass(predicted);
+        if (tested >= warmUp) {
+            boolean failed = !(results.getValidPatch() && results.getCleanCompile() && results.allTestsSuccessful());
+            boolean predictedToFail = predicted < threshold;
+            if (predictedToFail) {
+                if (failed) {
+                    truePositives++;
+                } else {
+                    falsePositives++;
+                }
+            } else {
+                if (failed) {
+                    falseNegatives++;
+                } else {
+                    trueNegatives++;
+                }
+            }
+        }
+        surrogate.record(patch, results);
+        tested++;
+    }
+
+    public synchronized int getSkipped() {
+        return skipped;
+    }
+
+    public synchronized int getTested() {
+        return tested;
+    }
+
+    /**
+     * @return the fraction of the patches predicted to fail that did fail; NaN if none were tested
+     */
+    public synchronized double getPrecision() {
+        return (double) truePositives / (truePositives + falsePositives);
+    }
+
+    /**
+     * @return the estimated fraction of the failing patches that were predicted to fail; NaN if unknown
+     */
+    public synchronized double getRecall() {
+        double weightedTruePositives = (exploration > 0) ? truePositives / exploration : truePositives;
+        return weightedTruePositives / (weightedTruePositives + falseNegatives);
+    }
+
+    /**
+     * Write the counts, precision and recall to a CSV file.
+     */
+    public synchronized void writeSummary(File file) throws IOException {
+        try (CSVWriter writer = new CSVWriter(new FileWriter(file))) {
+            writer.writeNext(SUMMARY_HEADER);
+            writer.writeNext(new String[]{
+                    Integer.toString(tested),
+                    Integer.toString(skipped),
+                    Integer.toString(explored),
+                    Integer.toString(truePositives),
+                    Integer.toString(falsePositives),
+                    Integer.toString(falseNegatives),
+                    Integer.toString(trueNegatives),
+                    Double.toString(getPrecision()),
+                    Double.toString(getRecall())
+            });
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Surrogate skipped %d of %d patches (%d more explored); precision %.3f, recall %.3f",
+                skipped, skipped + tested, explored, getPrecision(), getRecall());
+    }
+
+}
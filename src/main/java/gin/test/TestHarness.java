@@ -13,15 +13,16 @@ import org.junit.platform.launcher.core.LauncherFactory;
 import org.pmw.tinylog.Logger;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.ServerSocket;
-import java.net.Socket;
-import java.text.ParseException;
+import java.util.Map;
 
 import static org.junit.platform.engine.discovery.DiscoverySelectors.selectMethod;
 
 /**
- * Runs a given test request. Uses sockets to communicate with ExternalTestRunner.
+ * Runs given test requests. Uses sockets to communicate with ExternalTestRunner, see {@link HarnessChannel}.
  */
 public class TestHarness implements Serializable {
 
@@ -29,9 +30,19 @@ public class TestHarness implements Serializable {
     @Serial
     private static final long serialVersionUID = -6547478455821943382L;
     private ServerSocket serverSocket;
-    private Socket clientSocket;
-    private PrintWriter out;
-    private BufferedReader in;
+    private HarnessChannel channel;
+    /**
+     * Class loader for the current patch, if one was loaded; otherwise tests are run
+     * against the classes on this JVM's own classpath.
+     */
+    private CacheClassLoader patchClassLoader = null;
+    /**
+     * Loader for the classes left unchanged by patches, kept while the classpath stays the same.
+     */
+    private SharedClassLoader sharedClassLoader = null;
+    private String sharedClassPath = null;
+    private Object bridge = null;
+    private Method bridgeMethod = null;
 
     public TestHarness(String[] args) {
         Args.parseOrExit(this, args);
@@ -48,17 +59,21 @@ public class TestHarness implements Serializable {
             int port = serverSocket.getLocalPort();
             System.out.println(PORT_PREFIX + "=" + port); // tell the ExternalTestRunner what port we'll be using
 
-            clientSocket = serverSocket.accept();
-            out = new PrintWriter(clientSocket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
+            channel = new HarnessChannel(serverSocket.accept());
 
-            String command;
-            while ((command = in.readLine()) != null) {
+            boolean stopped = false;
+            while (!stopped) {
+                HarnessChannel.Frame request;
                 try {
-                    String response = runTest(command);
-                    out.println(response);
-                } catch (ParseException e) {
-                    break;
+                    request = channel.receive();
+                } catch (EOFException e) {
+                    break; // runner went away
+                }
+                switch (request.type()) {
+                    case HarnessChannel.LOAD -> loadPatch(request.payload());
+                    case HarnessChannel.RUN -> runTests(request.payload());
+                    case HarnessChannel.STOP -> stopped = true;
+                    default -> sendError("Unknown request type: " + request.type());
                 }
             }
             stop();
@@ -71,9 +86,9 @@ public class TestHarness implements Serializable {
 
     public void stop() {
         try {
-            in.close();
-            out.close();
-            clientSocket.close();
+            closePatchClassLoader();
+            closeSharedClassLoader();
+            channel.close();
             serverSocket.close();
         } catch (IOException e) {
             Logger.error(e.getMessage());
@@ -81,35 +96,96 @@ public class TestHarness implements Serializable {
 
     }
 
-    private String runTest(String command) throws ParseException {
+    private void sendError(String message) throws IOException {
+        channel.send(HarnessChannel.ERROR, out -> HarnessChannel.writeString(out, message));
+    }
 
-        String testName;
-        int rep;
-        long timeoutMS;
+    /**
+     * Replace the current patch's class loader with a fresh one over the requested classpath
+     * and patched classes, and load JUnitBridge through it.
+     */
+    private void loadPatch(DataInputStream request) throws IOException {
+
+        String classPath = HarnessChannel.readString(request);
+        Map<String, byte[]> patchedClasses = HarnessChannel.readPatchedClasses(request);
+
+        closePatchClassLoader();
+        if (!classPath.equals(sharedClassPath)) {
+            closeSharedClassLoader();
+            sharedClassLoader = new SharedClassLoader(classPath);
+            sharedClassPath = classPath;
+        }
+        patchClassLoader = sharedClassLoader.newPatchClassLoader(patchedClasses.keySet());
+        patchedClasses.forEach(patchClassLoader::setCustomCompiledCode);
 
-        String[] params = command.split(",");
         try {
-            if (params.length == 3) {
-                testName = params[0];
-                rep = Integer.parseInt(params[1]);
-                timeoutMS = Long.parseLong(params[2]);
-            } else {
-                throw new ParseException("Not a test format: " + command, 0);
+            Class<?> bridgeClass = patchClassLoader.loadClass(JUnitBridge.class.getName());
+            bridge = bridgeClass.getDeclaredConstructor().newInstance();
+            bridgeMethod = bridgeClass.getMethod(JUnitBridge.BRIDGE_METHOD_NAME, UnitTest.class, int.class);
+        } catch (ReflectiveOperationException e) {
+            Logger.error("Could not load isolated test runner: " + e);
+            closePatchClassLoader();
+            sendError("Could not load isolated test runner: " + e);
+            return;
+        }
+
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        channel.send(HarnessChannel.LOADED, out -> out.writeLong(heapUsed));
+
+    }
+
+    private void closeSharedClassLoader() throws IOException {
+        if (sharedClassLoader != null) {
+            sharedClassLoader.close();
+            sharedClassLoader = null;
+            sharedClassPath = null;
+        }
+    }
+
+    private void closePatchClassLoader() throws IOException {
+        if (bridge instanceof AutoCloseable closeable) {
+            try {
+                closeable.close(); // the bridge's JUnit session
+            } catch (Exception e) {
+                Logger.warn("Could not close isolated test runner: " + e);
             }
-        } catch (NumberFormatException e) {
-            throw new ParseException("Not a test format: " + command, 0);
         }
+        bridge = null;
+        bridgeMethod = null;
+        if (patchClassLoader != null) {
+            patchClassLoader.close();
+            patchClassLoader = null;
+        }
+    }
+
+    /**
+     * Run a batch of tests, sending back each result as soon as its test finishes.
+     */
+    private void runTests(DataInputStream request) throws IOException {
 
-        UnitTest test = UnitTest.fromString(testName);
-        test.setTimeoutMS(timeoutMS);
-        UnitTestResult result = runTest(test, rep);
+        boolean failFast = request.readBoolean();
+        int count = request.readInt();
 
-        return result.toString();
+        for (int i = 0; i < count; i++) {
+            UnitTest test = HarnessChannel.readTest(request);
+            int rep = request.readInt();
+
+            UnitTestResult result = runTest(test, rep);
+            channel.send(HarnessChannel.RESULT, out -> HarnessChannel.writeResult(out, result));
+
+            if (failFast && !result.getPassed()) {
+                break;
+            }
+        }
 
     }
 
     private UnitTestResult runTest(UnitTest test, int rep) {
 
+        if (bridge != null) {
+            return runTestInPatchClassLoader(test, rep);
+        }
+
         UnitTestResult result = new UnitTestResult(test, rep);
 
         String className = test.getFullClassName();
@@ -165,6 +241,18 @@ public class TestHarness implements Serializable {
 
     }
 
+    private UnitTestResult runTestInPatchClassLoader(UnitTest test, int rep) {
+        try {
+            return (UnitTestResult) bridgeMethod.invoke(bridge, test, rep);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            Logger.trace(e);
+            UnitTestResult result = new UnitTestResult(test, rep);
+            result.setExceptionType(e.getClass().getName());
+            result.setExceptionMessage(e.getMessage());
+            return result;
+        }
+    }
+
     public LauncherDiscoveryRequest buildRequest(UnitTest test) throws ClassNotFoundException, NoSuchMethodException, NoSuchFieldException, IllegalAccessException {
         ClassLoader loader = this.getClass().getClassLoader();
 
@@ -0,0 +1,172 @@
+package gin.test;
+
+import gin.Patch;
+import gin.edit.Edit;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Orders the tests for a patch so that the tests most likely to fail it, for the least
+ * runtime, come first. With fail fast, a bad patch is then usually rejected after one
+ * cheap test rather than part way through the suite.
+ * <p>
+ * For each target method, it keeps how often each test failed patches holding each edit
+ * class, and each test's mean runtime. Tests are run in decreasing order of estimated
+ * failure probability over mean runtime; tests with no history get even odds and the
+ * mean runtime of the others.
+ * <p>
+ * With fail fast, only the tests run before the verdict are recorded, so the tests put last
+ * would otherwise keep their estimates for good. Instead, each time a patch with an edit
+ * class is recorded, what is known of the tests that did not run for it is aged, drifting
+ * their estimates back towards even odds until they are tried again.
+ */
+public class TestPrioritiser {
+
+    /**
+     * factor by which the history of a test that did not run for a patch is discounted
+     */
+    static final double AGEING = 0.95;
+
+    /**
+     * Statistics per target method, then per edit class, then per test.
+     */
+    private final Map<String, Map<Class<? extends Edit>, Map<UnitTest, Kills>>> kills = new HashMap<>();
+    /**
+     * Mean runtime of each test per target method, in ns.
+     */
+    private final Map<String, Map<UnitTest, Timing>> runtimes = new HashMap<>();
+
+    /**
+     * @param targetClass fully qualified name of the patched class
+     * @param patch       patch about to be tested
+     * @param tests       tests for the patch's target method
+     * @return the tests in the order they should run
+     */
+    public synchronized List<UnitTest> order(String targetClass, Patch patch, List<UnitTest> tests) {
+
+        String method = methodKey(targetClass, patch);
+        Set<Class<? extends Edit>> editClasses = editClasses(patch);
+        Map<Class<? extends Edit>, Map<UnitTest, Kills>> methodKills = kills.getOrDefault(method, Map.of());
+        Map<UnitTest, Timing> methodRuntimes = runtimes.getOrDefault(method, Map.of());
+
+        double defaultTime = methodRuntimes.values().stream().mapToDouble(r -> r.meanNS).average().orElse(1.0);
+
+        Map<UnitTest, Double> scores = new HashMap<>();
+        for (UnitTest test : tests) {
+            // probability that at least one of the patch's edits is caught by the test
+            double survives = 1.0;
+            for (Class<? extends Edit> editClass : editClasses) {
+                Kills k = methodKills.getOrDefault(editClass, Map.of()).get(test);
+                survives *= 1.0 - ((k == null) ? 0.5 : k.rate());
+            }
+            Timing r = methodRuntimes.get(test);
+            double time = (r == null) ? defaultTime : r.meanNS;
+            scores.put(test, (1.0 - survives) / Math.max(time, 1.0));
+        }
+
+        List<UnitTest> ordered = new ArrayList<>(tests);
+        // stable: ties keep the original order
+        ordered.sort(Comparator.comparingDouble((UnitTest test) -> scores.get(test)).reversed());
+        return ordered;
+
+    }
+
+    /**
+     * Update the statistics with the results of testing a patch. Patches that were not
+     * compiled and run are ignored, as are repetitions after the first.
+     */
+    public synchronized void record(String targetClass, Patch patch, UnitTestResultSet results) {
+
+        if (!results.getValidPatch() || !results.getCleanCompile()) {
+            return;
+        }
+
+        String method = methodKey(targetClass, patch);
+        Set<Class<? extends Edit>> editClasses = editClasses(patch);
+        Map<UnitTest, Timing> methodRuntimes = runtimes.computeIfAbsent(method, k -> new HashMap<>());
+
+        Set<UnitTest> run = new HashSet<>();
+        for (UnitTestResult result : results.getResults()) {
+            if (result.getRepNumber() != 1) {
+                continue;
+            }
+            UnitTest test = result.getTest();
+            run.add(test);
+            for (Class<? extends Edit> editClass : editClasses) {
+                kills.computeIfAbsent(method, k -> new HashMap<>())
+                        .computeIfAbsent(editClass, k -> new HashMap<>())
+                        .computeIfAbsent(test, k -> new Kills())
+                        .add(!result.getPassed());
+            }
+            methodRuntimes.computeIfAbsent(test, k -> new Timing()).add(result.getExecutionTime());
+        }
+
+        // tests not run for this patch, e.g. after fail fast reached a verdict
+        for (Class<? extends Edit> editClass : editClasses) {
+            kills.get(method).getOrDefault(editClass, Map.of()).forEach((test, k) -> {
+                if (!run.contains(test)) {
+                    k.age();
+                }
+            });
+        }
+
+    }
+
+    private static String methodKey(String targetClass, Patch patch) {
+        return targetClass + "." + patch.getSourceFile().getTargetMethodStrings();
+    }
+
+    private static Set<Class<? extends Edit>> editClasses(Patch patch) {
+        Set<Class<? extends Edit>> editClasses = new LinkedHashSet<>();
+        for (Edit edit : patch.getEdits()) {
+            editClasses.add(edit.getClass());
+        }
+        return editClasses;
+    }
+
+    private static class Kills {
+
+        private double runs = 0;
+        private double kills = 0;
+
+        void add(boolean killed) {
+            runs++;
+            if (killed) {
+                kills++;
+            }
+        }
+
+        void age() {
+            runs *= AGEING;
+            kills *= AGEING;
+        }
+
+        /**
+         * @return the estimated probability of failing a patch, with add-one smoothing
+         */
+        double rate() {
+            return (kills + 1.0) / (runs + 2.0);
+        }
+
+    }
+
+    private static class Timing {
+
+        private int count = 0;
+        private double meanNS = 0;
+
+        void add(long timeNS) {
+            count++;
+            meanNS += (timeNS - meanNS) / count;
+        }
+
+    }
+
+}
@@ -3,6 +3,8 @@ package gin.test;
 import jRAPL.EnergyDiff;
 import jRAPL.EnergyStats;
 import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.support.descriptor.MethodSource;
 import org.junit.platform.launcher.TestExecutionListener;
 import org.junit.platform.launcher.TestIdentifier;
 import org.junit.runner.Description;
@@ -13,12 +15,13 @@ import java.io.Serial;
 import java.io.Serializable;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 import jRAPL.*;
 
 /**
  * Saves result of a UnitTest run into UnitTestResult.
- * assumes one test case is run through JUnitCore at a time
+ * assumes test cases are run one after the other, not in parallel
  * ignored tests and tests with assumption violations are considered successful (following JUnit standard)
  */
 public class TestRunListener implements Serializable, TestExecutionListener {
@@ -27,7 +30,18 @@ public class TestRunListener implements Serializable, TestExecutionListener {
     private static final long serialVersionUID = -1768323084872818847L;
     private static final long MB = 1024 * 1024;
     private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
-    private final UnitTestResult unitTestResult;
+    /**
+     * The result to record into when a single test is run, otherwise null.
+     */
+    private final UnitTestResult singleResult;
+    /**
+     * Results to record into when several tests are run, by {@link #key}.
+     */
+    private final Map<String, UnitTestResult> resultsByTest;
+    /**
+     * Told when each test starts and finishes, if not null.
+     */
+    private final transient Progress progress;
     private final SyncEnergyMonitor energyMonitor = new SyncEnergyMonitor();
     private long startTime = 0;
     private long startCPUTime = 0;
@@ -35,7 +49,52 @@ public class TestRunListener implements Serializable, TestExecutionListener {
     private EnergyStats startEnergySample;
 
     public TestRunListener(UnitTestResult unitTestResult) {
-        this.unitTestResult = unitTestResult;
+        this(unitTestResult, null);
+    }
+
+    public TestRunListener(UnitTestResult unitTestResult, Progress progress) {
+        this.singleResult = unitTestResult;
+        this.resultsByTest = null;
+        this.progress = progress;
+    }
+
+    /**
+     * Listener for a test plan holding several tests.
+     *
+     * @param resultsByTest result for each test, by {@link #key} of its class and method name
+     */
+    public TestRunListener(Map<String, UnitTestResult> resultsByTest) {
+        this(resultsByTest, null);
+    }
+
+    /**
+     * Listener for a test plan holding several tests, reporting progress as it goes.
+     *
+     * @param resultsByTest result for each test, by {@link #key} of its class and method name
+     * @param progress      told when each test starts and finishes
+     */
+    public TestRunListener(Map<String, UnitTestResult> resultsByTest, Progress progress) {
+        this.singleResult = null;
+        this.resultsByTest = resultsByTest;
+        this.progress = progress;
+    }
+
+    public static String key(String className, String methodName) {
+        return className + "#" + methodName;
+    }
+
+    /**
+     * @return the result for the given test, or null if it is not one we are recording
+     */
+    private UnitTestResult resultFor(TestIdentifier testIdentifier) {
+        if (singleResult != null) {
+            return singleResult;
+        }
+        TestSource source = testIdentifier.getSource().orElse(null);
+        if (source instanceof MethodSource methodSource) {
+            return resultsByTest.get(key(methodSource.getClassName(), methodSource.getMethodName()));
+        }
+        return null;
     }
 
 
@@ -46,6 +105,10 @@ public class TestRunListener implements Serializable, TestExecutionListener {
             EnergyDiff diff = EnergyDiff.between(this.startEnergySample, endEnergySample);
             double energyDifference = diff.getPackage();
             energyMonitor.deactivate();
+            UnitTestResult unitTestResult = resultFor(testIdentifier);
+            if (unitTestResult == null) {
+                return;
+            }
             unitTestResult.setEnergyUsage(energyDifference);
 
             long endTime = System.nanoTime();
@@ -70,13 +133,19 @@ public class TestRunListener implements Serializable, TestExecutionListener {
                     unitTestResult.setPassed(true);
                     break;
             }
+            if (progress != null) {
+                progress.testFinished(unitTestResult);
+            }
         }
     }
 
     public void executionSkipped(TestIdentifier testIdentifier, String reason) {
         if (testIdentifier.isTest()) {
             Logger.debug("Test " + testIdentifier.getDisplayName() + " skipped due to " + reason);
-            unitTestResult.setPassed(true);
+            UnitTestResult unitTestResult = resultFor(testIdentifier);
+            if (unitTestResult != null) {
+                unitTestResult.setPassed(true);
+            }
         }
     }
 
@@ -89,7 +158,23 @@ public class TestRunListener implements Serializable, TestExecutionListener {
             this.startMemoryUsage = (runtime.totalMemory() - runtime.freeMemory()) / MB;
             energyMonitor.activate();
             this.startEnergySample = energyMonitor.getSample();
+            UnitTestResult unitTestResult = resultFor(testIdentifier);
+            if (progress != null && unitTestResult != null) {
+                progress.testStarted(unitTestResult);
+            }
         }
     }
 
+    /**
+     * Receives the start and end of each test that has a result, e.g. to enforce timeouts
+     * from another thread. Called on the thread running the tests.
+     */
+    public interface Progress {
+
+        void testStarted(UnitTestResult result);
+
+        void testFinished(UnitTestResult result);
+
+    }
+
 }
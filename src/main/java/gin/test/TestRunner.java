@@ -1,5 +1,6 @@
 package gin.test;
 
+import gin.MultiClassPatch;
 import gin.Patch;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
@@ -12,6 +13,7 @@ import java.io.Serial;
 import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A TestRunner is defined by a class name, a class path, and a set of tests to
@@ -25,6 +27,8 @@ public abstract class TestRunner implements Serializable {
     private final String packageName;
     private final String className;
     private final String classPath;
+    private transient Compiler compiler;
+    private transient BytecodeCache bytecodeCache;
     private List<UnitTest> tests;
 
     // Constructor with a list of tests to run
@@ -41,6 +45,131 @@ public abstract class TestRunner implements Serializable {
 
     public abstract UnitTestResultSet runTests(Patch patch, Object metadata, int reps) throws IOException, InterruptedException;
 
+    /**
+     * Run all unit tests, rep times, against the given compiled classes in place of the
+     * originals.
+     *
+     * @param reps           Number of times to run each test.
+     * @param patchedClasses bytecode of the patched classes, inner classes included, by binary name
+     * @return the results of the tests
+     */
+    protected abstract List<UnitTestResult> runTests(int reps, Map<String, byte[]> patchedClasses) throws IOException;
+
+    /**
+     * Apply a patch spanning several classes, compile all the patched classes together,
+     * then run all unit tests against them. The result set reports the patch of the first
+     * class, and the patched sources of all classes one after the other.
+     *
+     * @param patch Patch to apply.
+     * @param reps  Number of times to run each test.
+     * @return the results of the tests
+     */
+    public UnitTestResultSet runTests(MultiClassPatch patch, Object metadata, int reps) throws IOException {
+
+        Map<String, String> patchedSources = patch.apply(metadata);
+        boolean patchValid = patch.lastApplyWasValid();
+        List<Boolean> editsValid = patch.getEditsInvalidOnLastApply();
+        // a no-op only if the code of no class changed
+        boolean noOp = patch.lastApplyWasNoOp();
+
+        Compilation compilation = null;
+        List<UnitTestResult> results;
+        if (patchValid) {
+            compilation = compile(getCompiler(), patchedSources);
+            results = compilation.compiledOK() ? runTests(reps, compilation.classes()) : emptyResults(reps);
+        } else {
+            results = emptyResults(reps);
+        }
+
+        String patchedSource = String.join(System.lineSeparator(), patchedSources.values());
+        return newResultSet(patch.getPrimaryPatch(), patchedSource, patchValid, editsValid, compilation, noOp, results);
+
+    }
+
+    /**
+     * The result of compiling a patch, fresh or from the {@link BytecodeCache}.
+     *
+     * @param classes bytecode of every class produced, by binary name; null if compilation failed
+     * @param error   the compile errors, or null
+     * @param timeNS  time spent compiling, in ns; 0 if the bytecode was reused
+     * @param reused  whether the bytecode came from the cache
+     */
+    protected record Compilation(Map<String, byte[]> classes, String error, long timeNS, boolean reused) {
+
+        public boolean compiledOK() {
+            return classes != null;
+        }
+
+    }
+
+    /**
+     * Compile the given sources, reusing an earlier compilation of the same sources from the
+     * bytecode cache when there is one.
+     *
+     * @param compiler compiler to use on a cache miss
+     * @param sources  full source of each class, by fully qualified class name
+     * @return the bytecode or compile errors
+     */
+    protected Compilation compile(Compiler compiler, Map<String, String> sources) {
+        BytecodeCache cache = bytecodeCache;
+        String key = null;
+        if (cache != null) {
+            key = BytecodeCache.key(sources, classPath);
+            BytecodeCache.Entry entry = cache.get(key);
+            if (entry != null) {
+                return new Compilation(entry.classes(), entry.error(), 0, true);
+            }
+        }
+        Map<String, byte[]> classes = compiler.compile(sources, classPath);
+        Compilation compilation = new Compilation(classes, compiler.getLastError(), compiler.getLastCompileTimeNS(), false);
+        if (cache != null) {
+            cache.put(key, new BytecodeCache.Entry(classes, compilation.error()));
+        }
+        return compilation;
+    }
+
+    /**
+     * @param compilation the compilation of the patched code, or null if the patch was invalid and not compiled
+     */
+    protected static UnitTestResultSet newResultSet(Patch patch, String patchedSource, boolean patchValid, List<Boolean> editsValid,
+                                                    Compilation compilation, boolean noOp, List<UnitTestResult> results) {
+        if (compilation == null) {
+            return new UnitTestResultSet(patch, patchedSource, patchValid, editsValid, false, null, noOp, results);
+        }
+        UnitTestResultSet resultSet = new UnitTestResultSet(patch, patchedSource, patchValid, editsValid, compilation.compiledOK(), compilation.error(), noOp, results);
+        resultSet.setCompileTimeNS(compilation.timeNS());
+        resultSet.setBytecodeReused(compilation.reused());
+        return resultSet;
+    }
+
+    /**
+     * Reuse compilations from the given cache, shared with other runners.
+     *
+     * @param bytecodeCache the cache, or null to compile every patch
+     */
+    public void setBytecodeCache(BytecodeCache bytecodeCache) {
+        this.bytecodeCache = bytecodeCache;
+    }
+
+    /**
+     * Compile patches tested one at a time with the given compiler, so that it stays warm
+     * across runners. The caller owns the compiler and closes it.
+     */
+    public synchronized void setCompiler(Compiler compiler) {
+        this.compiler = compiler;
+    }
+
+    /**
+     * @return the compiler this runner uses for patches tested one at a time, kept warm
+     * between patches
+     */
+    protected synchronized Compiler getCompiler() {
+        if (compiler == null) {
+            compiler = new Compiler();
+        }
+        return compiler;
+    }
+
     public List<UnitTest> getTests() {
         return this.tests;
     }
@@ -108,21 +237,46 @@ public abstract class TestRunner implements Serializable {
         return results;
     }
 
+    /**
+     * The result recorded for a test that ran past its timeout and had to be stopped.
+     *
+     * @param test the test that timed out
+     * @param rep  repetition number
+     * @return a failed, timed out result taking the whole timeout
+     */
+    protected static UnitTestResult timeoutResult(UnitTest test, int rep) {
+
+        UnitTestResult result = new UnitTestResult(test, rep);
+
+        long timeoutMS = test.getTimeoutMS();
+        String exceptionType = "org.junit.runners.model.TestTimedOutException";
+        String exceptionMessage = "test timed out after " + timeoutMS + "  milliseconds";
+
+        result.setPassed(false);
+        result.setTimedOut(true);
+        result.setExceptionType(exceptionType);
+        result.setExceptionMessage(exceptionMessage);
+        result.setExecutionTime(timeoutMS * 1000000L);
+        result.setCPUTime(timeoutMS * 1000000L);
+
+        return result;
+    }
+
     /**
      * tests for a no-op patch
      *
      * @param original      - the original source
      * @param patchedSource - the patched source
-     * @return true if these are the "same" (i.e. patch was a no-op)
-     * - ignoring whitespace and line comments (JavaParser drops some line comments!)
+     * @return true if these are the "same" (i.e. patch was a no-op), ignoring whitespace
+     * @deprecated the runners now read {@link Patch#lastApplyWasNoOp()}, set by comparing the
+     * patched source file with the original ({@link gin.SourceFile#hasSameCodeAs}), which needs
+     * no printed source. Given only the two sources, this falls back to comparing them with
+     * whitespace collapsed. Unlike before, line comments are no longer stripped, so a patch
+     * that only adds, removes or changes a {@code //} comment is not a no-op here.
      */
+    @Deprecated
     protected boolean isPatchedSourceSame(String original, String patchedSource) {
-        String normalisedPatched = patchedSource.replaceAll("//.*\\n", "");
-        String normalisedOriginal = original.replaceAll("//.*\\n", "");
-        normalisedPatched = normalisedPatched.replaceAll("\\s+", " ");
-        normalisedOriginal = normalisedOriginal.replaceAll("\\s+", " ");
-        normalisedOriginal = normalisedOriginal.replaceAll("\\s+", " ");
-        return normalisedPatched.equals(normalisedOriginal);
+        return original.replaceAll("\\s+", " ").equals(patchedSource.replaceAll("\\s+", " "));
     }
 
 }
@@ -0,0 +1,229 @@
+package gin.test;
+
+import org.pmw.tinylog.Logger;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tests on threads of their own and enforces a hard deadline on each test.
+ * <p>
+ * One watchdog is used per patch class loader. Test threads run in a thread group of
+ * the watchdog's own, so threads started by the tests can be found and stopped once the
+ * patch has been tested. A test that runs past its timeout has its thread stopped; the
+ * test framework then records it as failed and moves on to the next test. If a thread
+ * cannot be stopped, the JVM is considered poisoned.
+ */
+class TestWatchdog implements AutoCloseable {
+
+    /**
+     * How long a stopped thread is given to die, or to move on to its next test.
+     */
+    static final long GRACE_MS = 2000;
+
+    private static final AtomicInteger groupCounter = new AtomicInteger(0);
+
+    private final ThreadGroup group;
+    private int threadCounter = 0;
+    private volatile boolean poisoned = false;
+
+    /*============== state of the current run, guarded by this ==============*/
+
+    private UnitTestResult running = null;
+    private long lastEventNanos = 0;
+
+    TestWatchdog() {
+        this.group = new ThreadGroup("gin-tests-" + groupCounter.incrementAndGet());
+    }
+
+    /**
+     * Run the task on a new thread in this watchdog's group and wait for it to finish.
+     * While a test reported through the given progress callback is running, the deadline
+     * is that test's timeout; otherwise (e.g. in discovery, or class-level set-up) it is
+     * the given idle timeout since the last test started or finished.
+     *
+     * @param task          the tests to run
+     * @param idleTimeoutMS deadline when no test is running
+     * @return the tests that finished and those that ran past their timeout, and whether the task
+     * was stopped outside a test
+     */
+    Outcome run(Task task, long idleTimeoutMS) throws InterruptedException {
+
+        Throwable[] failure = new Throwable[1];
+        boolean[] done = new boolean[1];
+        Progress progress = new Progress();
+        Thread thread = new Thread(group, () -> {
+            try {
+                task.run(progress);
+            } catch (Throwable t) {
+                failure[0] = t;
+            } finally {
+                synchronized (this) {
+                    done[0] = true;
+                    notifyAll();
+                }
+            }
+        }, group.getName() + "-" + (++threadCounter));
+        thread.setDaemon(true);
+
+        Set<UnitTestResult> overran = Collections.newSetFromMap(new IdentityHashMap<>());
+        boolean stalled = false;
+
+        synchronized (this) {
+
+            running = null;
+            lastEventNanos = System.nanoTime();
+            thread.start();
+
+            try {
+                while (!done[0] && thread.isAlive()) {
+
+                    long timeoutMS = (running != null) ? running.getTest().getTimeoutMS() : idleTimeoutMS;
+                    long remainingMS = timeoutMS - (System.nanoTime() - lastEventNanos) / 1000000L;
+                    if (remainingMS > 0) {
+                        wait(remainingMS);
+                        continue;
+                    }
+
+                    UnitTestResult culprit = running;
+                    if (culprit != null) {
+                        Logger.warn("Test " + culprit.getTest() + " timed out after " + timeoutMS + "ms, stopping it.");
+                        overran.add(culprit);
+                    } else {
+                        Logger.warn("Tests made no progress for " + timeoutMS + "ms, stopping them.");
+                        stalled = true;
+                    }
+                    stop(thread);
+
+                    // the thread should now die, or report the stopped test as finished
+                    long eventBefore = lastEventNanos;
+                    long graceEnd = System.nanoTime() + GRACE_MS * 1000000L;
+                    while (!done[0] && lastEventNanos == eventBefore && System.nanoTime() < graceEnd) {
+                        wait(Math.max(1, (graceEnd - System.nanoTime()) / 1000000L));
+                    }
+                    if (!done[0] && lastEventNanos == eventBefore && thread.isAlive()) {
+                        Logger.error("Test thread " + thread.getName() + " could not be stopped.");
+                        poisoned = true;
+                        stalled = true;
+                        break;
+                    }
+
+                }
+            } finally {
+                if (!done[0] && !poisoned) {
+                    // interrupted while waiting: don't leave the tests running behind our back
+                    stop(thread);
+                }
+                running = null;
+            }
+
+        }
+
+        Set<UnitTestResult> finished = Collections.newSetFromMap(new IdentityHashMap<>());
+        synchronized (this) {
+            // a thread that could not be stopped may still report tests
+            finished.addAll(progress.finished);
+        }
+        return new Outcome(overran, finished, stalled, failure[0]);
+
+    }
+
+    /**
+     * Stop any threads left in this watchdog's group, e.g. started by tests and never joined.
+     */
+    @Override
+    public void close() {
+
+        Thread[] threads = new Thread[group.activeCount() + 1];
+        int count = group.enumerate(threads);
+        if (count == 0) {
+            return;
+        }
+
+        Logger.warn(count + " threads remain after tests, stopping them.");
+        for (int i = 0; i < count; i++) {
+            stop(threads[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            try {
+                threads[i].join(GRACE_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (threads[i].isAlive()) {
+                Logger.error("Thread " + threads[i].getName() + " left by tests could not be stopped.");
+                poisoned = true;
+            }
+        }
+
+    }
+
+    /**
+     * @return true if a thread running tests could not be stopped; it may still be running
+     * and holding locks or static state
+     */
+    boolean isPoisoned() {
+        return poisoned;
+    }
+
+    @SuppressWarnings({"deprecation", "removal"})
+    private static void stop(Thread thread) {
+        thread.interrupt();
+        try {
+            thread.stop();
+        } catch (UnsupportedOperationException e) {
+            // Thread.stop was removed in later JDKs: interrupting is all we can do
+        }
+    }
+
+    /**
+     * Tests run on the watchdog's thread.
+     */
+    @FunctionalInterface
+    interface Task {
+        void run(TestRunListener.Progress progress) throws Throwable;
+    }
+
+    /**
+     * @param overran  results of the tests stopped for running past their timeout
+     * @param finished results of the tests reported as finished, the stopped ones included
+     * @param stalled  true if the tests were stopped outside any test, or abandoned
+     * @param failure  what the task threw, if anything
+     */
+    record Outcome(Set<UnitTestResult> overran, Set<UnitTestResult> finished, boolean stalled, Throwable failure) {
+
+        boolean timedOut() {
+            return stalled || !overran.isEmpty();
+        }
+
+    }
+
+    private class Progress implements TestRunListener.Progress {
+
+        private final Set<UnitTestResult> finished = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        @Override
+        public void testStarted(UnitTestResult result) {
+            synchronized (TestWatchdog.this) {
+                running = result;
+                lastEventNanos = System.nanoTime();
+                TestWatchdog.this.notifyAll();
+            }
+        }
+
+        @Override
+        public void testFinished(UnitTestResult result) {
+            synchronized (TestWatchdog.this) {
+                finished.add(result);
+                running = null;
+                lastEventNanos = System.nanoTime();
+                TestWatchdog.this.notifyAll();
+            }
+        }
+
+    }
+
+}
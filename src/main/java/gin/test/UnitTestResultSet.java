@@ -3,7 +3,9 @@ package gin.test;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import gin.Patch;
 
@@ -25,6 +27,11 @@ public class UnitTestResultSet implements Serializable {
     private String compileError = "N/A";
     private final List<Boolean> editsValid;
     private final String patchedCode;
+    private long compileTimeNS = 0;
+    private boolean bytecodeReused = false;
+    private double predictedPass = Double.NaN;
+    private boolean skipped = false;
+    private boolean resultsReused = false;
 
     /**
      * was the patch effectively a no-op? i.e. was there some difference between
@@ -67,6 +74,61 @@ public class UnitTestResultSet implements Serializable {
 		return compileError;
 	}
 
+    /**
+     * @return the time taken to compile the patched code, in ns; 0 if it was not compiled
+     */
+    public long getCompileTimeNS() {
+        return compileTimeNS;
+    }
+
+    public void setCompileTimeNS(long compileTimeNS) {
+        this.compileTimeNS = compileTimeNS;
+    }
+
+    /**
+     * @return true if the patched code was not compiled again, as its bytecode was cached
+     */
+    public boolean getBytecodeReused() {
+        return bytecodeReused;
+    }
+
+    public void setBytecodeReused(boolean bytecodeReused) {
+        this.bytecodeReused = bytecodeReused;
+    }
+
+    /**
+     * @return the probability that the patch compiles and passes, as predicted by a surrogate model before it was tested; NaN if none was made
+     */
+    public double getPredictedPass() {
+        return predictedPass;
+    }
+
+    public void setPredictedPass(double predictedPass) {
+        this.predictedPass = predictedPass;
+    }
+
+    /**
+     * @return true if the patch was not tested, as a surrogate model predicted it would fail; its tests are all marked as not passed
+     */
+    public boolean getSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(boolean skipped) {
+        this.skipped = skipped;
+    }
+
+    /**
+     * @return true if the tests were not run, as the results of the same patched program were reused; see {@link EvaluationMemo}
+     */
+    public boolean getResultsReused() {
+        return resultsReused;
+    }
+
+    public void setResultsReused(boolean resultsReused) {
+        this.resultsReused = resultsReused;
+    }
+
     public boolean getNoOp() {
         return noOp;
     }
@@ -84,6 +146,23 @@ public class UnitTestResultSet implements Serializable {
         return true;
     }
 
+    /**
+     * @return the number of test runs it took to reach a verdict on the patch: up to and
+     * including the first failure, or all of them if every test passed; 0 if the patch was
+     * invalid or did not compile, as no test was run
+     */
+    public int getTestsExecutedBeforeVerdict() {
+        if (!patchValid || !compiledOK) {
+            return 0;
+        }
+        for (int i = 0; i < results.size(); i++) {
+            if (!results.get(i).getPassed()) {
+                return i + 1;
+            }
+        }
+        return results.size();
+    }
+
     public long totalExecutionTime() {
         long totalTime = 0;
         for (UnitTestResult testResult : results) {
@@ -92,6 +171,14 @@ public class UnitTestResultSet implements Serializable {
         return totalTime;
     }
 
+    public long totalCPUTime() {
+        long totalTime = 0;
+        for (UnitTestResult testResult : results) {
+            totalTime += testResult.getCPUTime();
+        }
+        return totalTime;
+    }
+
     public long totalMemoryUsage() {
         long totalMemory = 0;
         for (UnitTestResult testResult : results) {
@@ -108,18 +195,18 @@ public class UnitTestResultSet implements Serializable {
         return totalEnergy;
     }
 
-    ////  Could be used to set timeout for individual tests. Unused at the moment.
-    //
-    //public Map<UnitTest, long[]> getUnitTestTimes() {
-    //    List<UnitTestResult> testResults = this.results.stream().filter(result -> result.getRepNumber() == 0).collect(Collectors.toList());
-    //    Map<UnitTest, long[]> testRunTimes = new HashMap<UnitTest, long[]>();
-    //    for (UnitTestResult testResult : testResults) {
-    //        List<Long> runtimes = new LinkedList<>();
-    //        this.results.stream().filter(result -> testResult.getTest() == result.getTest()).forEach(result -> runtimes.add(result.getExecutionTime()));
-    //        testRunTimes.put(testResult.getTest(), runtimes.stream().mapToLong(l -> l).toArray());
-    //    }
-    //    return testRunTimes;
-    //}
+    /**
+     * @return the execution times (ns) of each test over all its repetitions, in the order the tests were first run
+     */
+    public Map<UnitTest, long[]> getUnitTestTimes() {
+        Map<UnitTest, List<Long>> runtimes = new LinkedHashMap<>();
+        for (UnitTestResult result : results) {
+            runtimes.computeIfAbsent(result.getTest(), k -> new ArrayList<>()).add(result.getExecutionTime());
+        }
+        Map<UnitTest, long[]> testRunTimes = new LinkedHashMap<>();
+        runtimes.forEach((test, times) -> testRunTimes.put(test, times.stream().mapToLong(l -> l).toArray()));
+        return testRunTimes;
+    }
 
     @Override
     public String toString() {
@@ -60,6 +60,11 @@ public class DeleteEnumerator extends Sampler {
         Logger.info("Random seed for method selection: " + randomSeed);
     }
 
+    @Override
+    protected long getSurrogateSeed() {
+        return randomSeed;
+    }
+
     protected void sampleMethodsHook() {
 
         Random rng = new JDKRandomBridge(RandomSource.MT, Long.valueOf(randomSeed));
@@ -7,8 +7,14 @@ import gin.Patch;
 import gin.SourceFile;
 import gin.edit.Edit;
 import gin.edit.Edit.EditType;
+import gin.edit.EditBandit;
+import gin.edit.NoEdit;
+import gin.misc.RandomStreams;
 import gin.test.UnitTest;
 import gin.test.UnitTestResultSet;
+import gin.util.island.Migrant;
+import gin.util.island.MigrationTransport;
+import gin.util.island.TcpMigrationTransport;
 import org.apache.commons.rng.simple.JDKRandomBridge;
 import org.apache.commons.rng.simple.RandomSource;
 import org.pmw.tinylog.Logger;
@@ -17,6 +23,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Serial;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -47,12 +54,45 @@ public abstract class GP extends Sampler {
     @Argument(alias = "is", description = "Random seed for individual selection")
     protected Integer individualSeed = 123;
 
+    @Argument(alias = "ss", description = "Steady-state search: breed and test offspring as soon as an evaluation worker is free, each replacing the worst of a tournament once tested, rather than a generation at a time. Use with -pw to test several at once.")
+    protected Boolean steadyState = false;
+
+    @Argument(alias = "pm", description = "Mutate each generation in parallel, each mutant with its own random stream split from the mutation seed")
+    protected Boolean parallelMutation = false;
+
+    @Argument(alias = "ip", description = "Island model: port this island listens on for migrants; islands exchange patches only if this is set. See gin.util.island.IslandCoordinator to run several islands at once")
+    protected Integer islandPort = null;
+
+    @Argument(alias = "ipr", description = "Island model: comma separated host:port of the islands to send migrants to")
+    protected String islandPeers = "";
+
+    @Argument(alias = "mi", description = "Island model: number of generations between migrations")
+    protected Integer migrationInterval = 5;
+
+    @Argument(alias = "mn", description = "Island model: number of best patches sent to the other islands at each migration; migrants received are tested within the same evaluation budget as offspring")
+    protected Integer migrantNumber = 2;
+
+    @Argument(alias = "eb", description = EditBandit.ENABLE_DESCRIPTION)
+    protected Boolean editBandit = false;
+
+    @Argument(alias = "ebd", description = EditBandit.DECAY_DESCRIPTION)
+    protected Double editBanditDecay = EditBandit.DEFAULT_DECAY;
+
     // Allowed edit types for sampling: parsed from editType
     protected List<Class<? extends Edit>> editTypes;
 
     protected Random mutationRng;
     protected Random individualRng;
 
+    // Independent streams for mutating in parallel, split from the mutation seed
+    protected RandomStreams mutationStreams;
+
+    // Chooses the class of each mutation's edit; null to choose uniformly
+    protected transient EditBandit bandit;
+
+    // Exchanges patches with the other islands; null unless running as an island
+    protected transient MigrationTransport migration;
+
     public GP(String[] args) {
         super(args);
         Args.parseOrExit(this, args);
@@ -72,12 +112,20 @@ public abstract class GP extends Sampler {
         Logger.info("Number of individuals: " + indNumber);
         Logger.info("Random seed for mutation operator selection: " + mutationSeed);
         Logger.info("Random seed for individual selection: " + individualSeed);
+        Logger.info("Parallel mutation: " + parallelMutation);
+        Logger.info("Steady-state search: " + steadyState);
+        if (islandPort != null) {
+            Logger.info("Island port: " + islandPort + ", peers: " + islandPeers);
+            Logger.info("Migration interval: " + migrationInterval + ", migrants: " + migrantNumber);
+        }
     }
 
     private void setup() {
         mutationRng = new JDKRandomBridge(RandomSource.MT, Long.valueOf(mutationSeed));
         individualRng = new JDKRandomBridge(RandomSource.MT, Long.valueOf(individualSeed));
+        mutationStreams = new RandomStreams(mutationSeed);
         editTypes = Edit.parseEditClassesFromString(editType);
+        bandit = EditBandit.fromOptions(editBandit, editBanditDecay);
     }
 
     // Implementation of gin.util.Sampler's abstract method
@@ -89,15 +137,25 @@ public abstract class GP extends Sampler {
 
             writeNewHeader();
 
-            for (TargetMethod method : methodData) {
+            migration = createMigrationTransport();
+
+            try {
+                for (TargetMethod method : methodData) {
+
+                    Logger.info("Running GP on method " + method);
 
-                Logger.info("Running GP on method " + method);
+                    // Setup SourceFile for patching
+                    SourceFile sourceFile = makeSourceFile(editTypes, method.getFileSource().getPath(), Collections.singletonList(method.getMethodName()));
 
-                // Setup SourceFile for patching
-                SourceFile sourceFile = SourceFile.makeSourceFileForEditTypes(editTypes, method.getFileSource().getPath(), Collections.singletonList(method.getMethodName()));
+                    search(method, new Patch(sourceFile));
 
-                search(method, new Patch(sourceFile));
+                    if (bandit != null) {
+                        Logger.info(bandit);
+                    }
 
+                }
+            } finally {
+                closeMigrationTransport();
             }
         }
 
@@ -129,6 +187,124 @@ public abstract class GP extends Sampler {
     // Compare two fitness values
     protected abstract double compareFitness(double newFitness, double oldFitness);
 
+    /*============== Edit bandit  ==============*/
+
+    /**
+     * Reward the class of a mutant's last edit, the one added by mutation, with how the mutant
+     * did when tested. Does nothing unless the edit bandit is in use.
+     *
+     * @param patch           the mutant
+     * @param results         its test results
+     * @param fitness         its fitness
+     * @param baselineFitness fitness that counts as no improvement, e.g. of the original code
+     */
+    protected void rewardEdit(Patch patch, UnitTestResultSet results, double fitness, double baselineFitness) {
+        if (bandit == null || patch.size() == 0 || results.getSkipped()) {
+            return;
+        }
+        Edit edit = patch.getEdits().get(patch.size() - 1);
+        if (edit instanceof NoEdit) {
+            return;
+        }
+        boolean passed = results.getValidPatch() && results.getCleanCompile() && results.allTestsSuccessful();
+        double improvement = 0;
+        if (passed && compareFitness(fitness, baselineFitness) > 0) {
+            improvement = (baselineFitness == 0) ? 1 : Math.abs(fitness - baselineFitness) / Math.abs(baselineFitness);
+        }
+        bandit.record(edit.getClass(), passed, improvement, results.getCompileTimeNS() + results.totalExecutionTime());
+    }
+
+    @Override
+    protected long getSurrogateSeed() {
+        return mutationSeed;
+    }
+
+    /*============== Island model  ==============*/
+
+    /**
+     * Override to migrate by some other means than TCP.
+     *
+     * @return the transport for exchanging patches with the other islands, or null if this
+     * search is not one of several islands
+     */
+    protected MigrationTransport createMigrationTransport() {
+        if (islandPort == null) {
+            return null;
+        }
+        try {
+            MigrationTransport transport = new TcpMigrationTransport(islandPort, TcpMigrationTransport.parsePeers(islandPeers));
+            Logger.info("Island started: " + transport);
+            return transport;
+        } catch (IOException e) {
+            Logger.error(e, "Could not listen for migrants on port " + islandPort);
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    private void closeMigrationTransport() {
+        if (migration != null) {
+            try {
+                migration.close();
+            } catch (IOException e) {
+                Logger.warn("Could not close migration transport: " + e.getMessage());
+            }
+            migration = null;
+        }
+    }
+
+    /**
+     * @param generation generation just finished, from 0
+     * @return true if migrants should be exchanged after this generation
+     */
+    protected boolean isMigrationDue(int generation) {
+        return (migration != null) && (migrationInterval > 0) && ((generation + 1) % migrationInterval == 0);
+    }
+
+    /**
+     * Send the fittest patches with at least one edit to the other islands.
+     */
+    protected void emigrate(String methodName, Map<Patch, Double> population) {
+        if (migration == null) {
+            return;
+        }
+        List<Map.Entry<Patch, Double>> entries = new ArrayList<>(population.entrySet());
+        entries.removeIf(entry -> entry.getKey().size() == 0);
+        entries.sort((a, b) -> Double.compare(compareFitness(b.getValue(), a.getValue()), 0));
+        List<Migrant> migrants = new ArrayList<>();
+        for (int i = 0; i < Math.min(migrantNumber, entries.size()); i++) {
+            migrants.add(new Migrant(methodName, entries.get(i).getKey().toString()));
+        }
+        Logger.info("Sending " + migrants.size() + " migrants");
+        migration.send(migrants);
+    }
+
+    /**
+     * Patches that arrived from the other islands for this method since the last call. Their
+     * fitness is not sent with them, as the islands may run on different machines, so they
+     * need testing here. Migrants for other methods are dropped.
+     *
+     * @return the migrants, applying to the source file of the original patch
+     */
+    protected List<Patch> immigrate(String methodName, Patch origPatch) {
+        List<Patch> patches = new ArrayList<>();
+        if (migration == null) {
+            return patches;
+        }
+        for (Migrant migrant : migration.receive()) {
+            if (!migrant.getMethodName().equals(methodName)) {
+                continue;
+            }
+            try {
+                patches.add(Patch.fromString(migrant.getPatch(), origPatch.getSourceFile()));
+            } catch (IllegalArgumentException e) {
+                Logger.warn("Migrant patch dropped: " + e.getMessage());
+            }
+        }
+        Logger.info("Received " + patches.size() + " migrants");
+        return patches;
+    }
+
     /*============== Helper methods  ==============*/
 
     protected void writeNewHeader() {
@@ -1,7 +1,6 @@
 package gin.util;
 
 import com.sampullara.cli.Args;
-import com.sampullara.cli.Argument;
 import gin.Patch;
 import gin.test.UnitTest;
 import gin.test.UnitTestResult;
@@ -28,17 +27,13 @@ public class GPFix extends GPSimple {
     private static final long serialVersionUID = 1043876194620277519L;
     // Arguments used in fitness calculation
     private final static double WEIGHT = 2.0;
-    @Argument(alias = "rec", description = "Record all fitness values in a HashMap")
-    protected Boolean record = false;
     private double multiplier = 0.0;
     private double targetFitness = -1.0;
     private Map<UnitTest, Boolean> testResults = new HashMap<>();
-    private Map<Patch, Double> recordedFitness = new HashMap<>();
 
     public GPFix(String[] args) {
         super(args);
         Args.parseOrExit(this, args);
-        printAdditionalArguments();
     }
 
     // Constructor used for testing
@@ -51,10 +46,6 @@ public class GPFix extends GPSimple {
         sampler.sampleMethods();
     }
 
-    private void printAdditionalArguments() {
-        Logger.info("Record all fitness values in a HashMap: " + record);
-    }
-
     /*============== Implementation of abstract methods  ==============*/
 
     protected UnitTestResultSet initFitness(String className, List<UnitTest> tests, Patch origPatch) {
@@ -67,20 +58,13 @@ public class GPFix extends GPSimple {
         return results;
     }
 
-    // Calculate fitness
+    // Calculate fitness; programs already tested are not run again, see Sampler's -mem
     protected double fitness(UnitTestResultSet results) {
 
         double fitness = 0;
         Patch patch = results.getPatch();
 
-        if (recordedFitness.containsKey(patch)) {
-            return recordedFitness.get(patch);
-        }
-
         if (!results.getCleanCompile()) {
-            if (record) {
-                recordedFitness.put(patch, fitness);
-            }
             return fitness;
         }
 
@@ -94,9 +78,6 @@ public class GPFix extends GPSimple {
                 }
             }
         }
-        if (record) {
-            recordedFitness.put(patch, fitness);
-        }
         if (Double.compare(fitness, this.targetFitness) == 0) {
             Logger.info("Found individual with target fitness: " + patch);
         }
@@ -124,7 +105,6 @@ public class GPFix extends GPSimple {
         int passing = 0;
         int failing = 0;
         this.testResults = new HashMap<>();
-        this.recordedFitness = new HashMap<>();
 
         for (UnitTestResult testResult : results.getResults()) {
             if (testResult.getPassed()) {
@@ -9,6 +9,7 @@ import org.pmw.tinylog.Logger;
 import java.io.File;
 import java.io.Serial;
 import java.util.*;
+import java.util.stream.IntStream;
 
 
 /**
@@ -30,6 +31,10 @@ public abstract class GPSimple extends GP {
 
     int numRuns = 5;
 
+    // Fitness of the patches selected for breeding, and of the offspring crossed over from them,
+    // by identity, until they are mutated; an offspring inherits the fitter of its parents'
+    private transient Map<Patch, Double> inheritedFitness = new IdentityHashMap<>();
+
     public GPSimple(String[] args) {
         super(args);
     }
@@ -58,6 +63,11 @@ public abstract class GPSimple extends GP {
     // Simple GP search (based on Simple)
     protected void search(TargetMethod method, Patch origPatch) {
 
+        if (super.steadyState) {
+            searchSteadyState(method, origPatch);
+            return;
+        }
+
         String className = method.getClassName();
         String methodName = method.toString();
         List<UnitTest> tests = method.getGinTests();
@@ -73,28 +83,31 @@ public abstract class GPSimple extends GP {
         Map<Patch, Double> population = new HashMap<>();
         population.put(origPatch, orig);
 
+        List<Patch> initialPatches = new ArrayList<>();
         for (int i = 1; i < indNumber; i++) {
+            initialPatches.add(origPatch);
+        }
+        // Add a mutation to each
+        initialPatches = mutateAll(initialPatches);
 
-            // Add a mutation
-            Patch patch = mutate(origPatch);
-            // If fitnessThreshold met, add it
+        // Test the whole generation at once, so it can be evaluated in parallel
+        double[] initialFitness = new double[initialPatches.size()];
+        List<UnitTestResultSet> initialResults = testPatchesAveraged(className, tests, initialPatches, initialFitness);
 
-            double fit = 0;
-            for (int k = 0; k < this.numRuns; k++) {
-                results = testPatch(className, tests, patch, null);
-                fit += fitness(results);
-            }
-            fit /= this.numRuns;
-
-            super.writePatch(-1, i, results, methodName, fit, 0);
+        for (int i = 0; i < initialPatches.size(); i++) {
+            results = initialResults.get(i);
+            super.writePatch(-1, i + 1, results, methodName, initialFitness[i], 0);
+            super.rewardEdit(initialPatches.get(i), results, initialFitness[i], orig);
+            // If fitnessThreshold met, add it
             if (fitnessThreshold(results, orig)) {
-                population.put(patch, fit);
+                population.put(initialPatches.get(i), initialFitness[i]);
             }
-
         }
 
+        // migrants count against the budget, as in the steady-state search, so the last generations may be cut short
+        int budget = indNumber * (genNumber + 1);
         int evals = indNumber;
-        for (int g = 0; g < genNumber; g++) {
+        for (int g = 0; g < genNumber && evals < budget; g++) {
 
             // Previous generation
             List<Patch> patches = new ArrayList<>(population.keySet());
@@ -112,30 +125,31 @@ public abstract class GPSimple extends GP {
 
             // If less than indNumber variants produced, add random patches from the previous generation
             while (crossoverPatches.size() < indNumber) {
-                crossoverPatches.add(patches.get(super.individualRng.nextInt(patches.size())).clone());
+                Patch patch = patches.get(super.individualRng.nextInt(patches.size()));
+                Patch clone = patch.clone();
+                inheritedFitness.put(clone, population.get(patch));
+                crossoverPatches.add(clone);
             }
 
-            // Mutate the newly created population and check fitness
-            for (Patch patch : crossoverPatches) {
-
-                // Add a mutation
-                patch = mutate(patch);
-
-                Logger.debug("Testing patch: " + patch);
+            // Mutate the newly created population, each mutation rewarded over the patch mutated
+            double[] parentFitness = takeInheritedFitness(crossoverPatches, orig);
+            List<Patch> mutatedPatches = mutateAll(crossoverPatches);
+            if (mutatedPatches.size() > budget - evals) {
+                mutatedPatches = new ArrayList<>(mutatedPatches.subList(0, budget - evals));
+            }
 
-                // Test the patched source file
-                double fit = 0;
-                for (int k = 0; k < this.numRuns; k++) {
-                    results = testPatch(className, tests, patch, null);
-                    fit += fitness(results);
-                }
-                fit /= this.numRuns;
+            // Test the patched source files, the whole generation at once
+            double[] generationFitness = new double[mutatedPatches.size()];
+            List<UnitTestResultSet> generationResults = testPatchesAveraged(className, tests, mutatedPatches, generationFitness);
 
+            for (int i = 0; i < mutatedPatches.size(); i++) {
+                results = generationResults.get(i);
                 // If fitness threshold met, add patch to the mating population
                 if (fitnessThreshold(results, orig)) {
-                    newPopulation.put(patch, fit);
+                    newPopulation.put(mutatedPatches.get(i), generationFitness[i]);
                 }
-                super.writePatch(g, evals++, results, methodName, fit, compareFitness(fit, orig));
+                super.writePatch(g, evals++, results, methodName, generationFitness[i], compareFitness(generationFitness[i], orig));
+                super.rewardEdit(mutatedPatches.get(i), results, generationFitness[i], parentFitness[i]);
             }
 
             population = new HashMap<>(newPopulation);
@@ -143,18 +157,248 @@ public abstract class GPSimple extends GP {
                 population.put(origPatch, orig);
             }
 
+            // Exchange the best patches with the other islands, if running as one of several
+            if (super.isMigrationDue(g)) {
+                super.emigrate(methodName, population);
+                List<Patch> migrants = super.immigrate(methodName, origPatch);
+                if (migrants.size() > budget - evals) {
+                    migrants = new ArrayList<>(migrants.subList(0, budget - evals));
+                }
+                double[] migrantFitness = new double[migrants.size()];
+                List<UnitTestResultSet> migrantResults = testPatchesAveraged(className, tests, migrants, migrantFitness);
+                for (int i = 0; i < migrants.size(); i++) {
+                    results = migrantResults.get(i);
+                    if (fitnessThreshold(results, orig)) {
+                        population.put(migrants.get(i), migrantFitness[i]);
+                    }
+                    super.writePatch(g, evals++, results, methodName, migrantFitness[i], compareFitness(migrantFitness[i], orig));
+                }
+            }
+
         }
 
     }
+
+    /**
+     * Asynchronous steady-state search, with the same operators and number of evaluations as
+     * the generational search. Whenever a worker is free, offspring are bred from the population
+     * as it is then, and each offspring is folded into the population as soon as all its runs
+     * are tested. A slow offspring holds up one worker, rather than a whole generation.
+     */
+    protected void searchSteadyState(TargetMethod method, Patch origPatch) {
+
+        String className = method.getClassName();
+        String methodName = method.toString();
+        List<UnitTest> tests = method.getGinTests();
+
+        // Run original code
+        UnitTestResultSet results = initFitness(className, tests, origPatch);
+
+        // Calculate fitness and record result, including fitness improvement (currently 0)
+        double orig = fitness(results);
+        super.writePatch(-1, 0, results, methodName, orig, 0);
+
+        Map<Patch, Double> population = new LinkedHashMap<>();
+        population.put(origPatch, orig);
+
+        // evaluations are numbered as in the generational search, in the order they are started
+        int budget = indNumber * (genNumber + 1);
+        int evals = 1;
+        Deque<Patch> offspring = new ArrayDeque<>();
+        Map<Patch, Evaluation> evaluations = new HashMap<>();
+        PatchEvaluations tester = startEvaluations(className, tests, null);
+        // evaluations finished, counting the original, to migrate as often as the generational search would
+        int completed = 1;
+        // migrants waiting to be tested, which were not mutated here
+        Set<Patch> immigrants = new HashSet<>();
+        // fitness of the patch each offspring was mutated from, until it is tested
+        Map<Patch, Double> parentFitness = new IdentityHashMap<>();
+
+        while (evals < budget || !evaluations.isEmpty()) {
+
+            // Keep every worker busy
+            while (evals < budget && tester.getPending() < tester.getCapacity()) {
+                if (offspring.isEmpty()) {
+                    breed(offspring, parentFitness, population, origPatch, orig, evals);
+                }
+                Patch patch = offspring.poll();
+                evaluations.put(patch, new Evaluation(evals++, !immigrants.remove(patch)));
+                for (int k = 0; k < this.numRuns; k++) {
+                    tester.submit(patch);
+                }
+            }
+
+            // Fold in the next offspring to have all its runs tested
+            results = tester.take();
+            Patch patch = results.getPatch();
+            Evaluation evaluation = evaluations.get(patch);
+            evaluation.fitness += fitness(results);
+            if (++evaluation.runs < this.numRuns) {
+                continue;
+            }
+            evaluations.remove(patch);
+            double fitness = evaluation.fitness / this.numRuns;
+            int iteration = evaluation.number / indNumber - 1;
+            super.writePatch(iteration, evaluation.number, results, methodName, fitness, (iteration < 0) ? 0 : compareFitness(fitness, orig));
+            // If fitness threshold met, add patch to the population
+            if (fitnessThreshold(results, orig)) {
+                replace(population, patch, fitness);
+            }
+            Double parent = parentFitness.remove(patch);
+            if (evaluation.mutant) {
+                super.rewardEdit(patch, results, fitness, (parent == null) ? orig : parent);
+            }
+            // Migrants are tested next, in place of offspring
+            int generation = ++completed / super.indNumber - 2;
+            if (completed % super.indNumber == 0 && generation >= 0 && super.isMigrationDue(generation)) {
+                super.emigrate(methodName, population);
+                List<Patch> migrants = super.immigrate(methodName, origPatch);
+                immigrants.addAll(migrants);
+                Collections.reverse(migrants);
+                migrants.forEach(offspring::addFirst);
+            }
+
+        }
+
+    }
+
+    /**
+     * Add offspring to the queue: mutants of the original for the initial population,
+     * then the mutated results of crossing over two parents chosen by tournament.
+     *
+     * @param parentFitness filled with the fitness of the patch each offspring was mutated from
+     */
+    private void breed(Deque<Patch> offspring, Map<Patch, Double> parentFitness, Map<Patch, Double> population, Patch origPatch, double orig, int evals) {
+        if (evals < indNumber) {
+            offspring.add(mutate(origPatch));
+            return;
+        }
+        List<Patch> selectedPatches = select(population, origPatch, orig);
+        List<Patch> parents = new ArrayList<>(selectedPatches.subList(0, Math.min(2, selectedPatches.size())));
+        List<Patch> crossoverPatches = (parents.size() < 2) ? parents : crossover(parents, origPatch);
+        if (crossoverPatches.isEmpty()) {
+            crossoverPatches = Collections.singletonList(origPatch);
+        }
+        double[] fitness = takeInheritedFitness(crossoverPatches, orig);
+        for (int i = 0; i < crossoverPatches.size(); i++) {
+            Patch mutant = mutate(crossoverPatches.get(i));
+            parentFitness.put(mutant, fitness[i]);
+            offspring.add(mutant);
+        }
+    }
+
+    /**
+     * @return the fitness inherited by each patch about to be mutated, the original's if none;
+     * what is kept of the patches bred is then dropped
+     */
+    private double[] takeInheritedFitness(List<Patch> patches, double orig) {
+        double[] fitness = new double[patches.size()];
+        for (int i = 0; i < fitness.length; i++) {
+            fitness[i] = inheritedFitness.getOrDefault(patches.get(i), orig);
+        }
+        inheritedFitness.clear();
+        return fitness;
+    }
+
+    /**
+     * Tournament replacement: the patch joins the population while it is smaller than the
+     * number of individuals, and otherwise replaces the worst of a random tournament if it
+     * is at least as fit.
+     */
+    private void replace(Map<Patch, Double> population, Patch patch, double fitness) {
+        if (population.size() < super.indNumber) {
+            population.put(patch, fitness);
+            return;
+        }
+        List<Patch> patches = new ArrayList<>(population.keySet());
+        Collections.shuffle(patches, super.individualRng);
+        int tournamentSize = Math.min(patches.size(), Math.max(2, (int) (super.indNumber * TOURNAMENT_PERCENTAGE)));
+        Patch worstPatch = patches.get(0);
+        double worst = population.get(worstPatch);
+        for (int j = 1; j < tournamentSize; j++) {
+            double other = population.get(patches.get(j));
+            if (compareFitness(other, worst) < 0) {
+                worstPatch = patches.get(j);
+                worst = other;
+            }
+        }
+        if (compareFitness(fitness, worst) >= 0) {
+            population.remove(worstPatch);
+            population.put(patch, fitness);
+        }
+    }
+
+    /**
+     * an offspring being tested, with the sum of its fitness over the runs so far
+     */
+    private static class Evaluation {
+
+        private final int number;
+        private final boolean mutant;
+        private int runs = 0;
+        private double fitness = 0;
+
+        Evaluation(int number, boolean mutant) {
+            this.number = number;
+            this.mutant = mutant;
+        }
+
+    }
+
+    /**
+     * Test each patch numRuns times and average its fitness over the runs.
+     *
+     * @param averageFitness filled with the average fitness of each patch
+     * @return the results of the last run of each patch
+     */
+    private List<UnitTestResultSet> testPatchesAveraged(String className, List<UnitTest> tests, List<Patch> patches, double[] averageFitness) {
+        List<UnitTestResultSet> results = Collections.emptyList();
+        for (int k = 0; k < this.numRuns; k++) {
+            results = testPatches(className, tests, patches, null);
+            for (int i = 0; i < patches.size(); i++) {
+                averageFitness[i] += fitness(results.get(i));
+            }
+        }
+        for (int i = 0; i < patches.size(); i++) {
+            averageFitness[i] /= this.numRuns;
+        }
+        return results;
+    }
+
     /*====== GP Operators ======*/
 
-    // Adds a random edit of the given type with equal probability among allowed types
+    // Adds a random edit of the given type, chosen with equal probability among allowed types unless the edit bandit is in use
     protected Patch mutate(Patch oldPatch) {
+        return mutate(oldPatch, super.mutationRng);
+    }
+
+    protected Patch mutate(Patch oldPatch, Random rng) {
         Patch patch = oldPatch.clone();
-        patch.addRandomEditOfClasses(super.mutationRng, super.editTypes);
+        patch.addRandomEditOfClasses(rng, super.editTypes, super.bandit);
         return patch;
     }
 
+    /**
+     * Mutate each patch, in parallel if requested, with the streams handed out in order
+     * beforehand so that the mutants do not depend on how the threads are scheduled.
+     *
+     * @return a mutant of each patch, in the same order
+     */
+    protected List<Patch> mutateAll(List<Patch> patches) {
+        List<Patch> mutatedPatches = new ArrayList<>(patches.size());
+        if (!super.parallelMutation) {
+            for (Patch patch : patches) {
+                mutatedPatches.add(mutate(patch));
+            }
+            return mutatedPatches;
+        }
+        Random[] rngs = super.mutationStreams.next(patches.size());
+        Patch[] mutants = new Patch[patches.size()];
+        IntStream.range(0, mutants.length).parallel().forEach(i -> mutants[i] = mutate(patches.get(i), rngs[i]));
+        mutatedPatches.addAll(Arrays.asList(mutants));
+        return mutatedPatches;
+    }
+
     // Tournament selection for patches
     protected List<Patch> select(Map<Patch, Double> population, Patch origPatch, double origFitness) {
 
@@ -185,7 +429,9 @@ public abstract class GPSimple extends GP {
                 }
             }
 
-            selectedPatches.add(bestPatch.clone());
+            Patch selected = bestPatch.clone();
+            inheritedFitness.put(selected, best);
+            selectedPatches.add(selected);
 
         }
         return selectedPatches;
@@ -227,6 +473,14 @@ public abstract class GPSimple extends GP {
                 }
             }
 
+            Double fitness1 = inheritedFitness.get(parent1);
+            Double fitness2 = inheritedFitness.get(parent2);
+            if (fitness1 != null && fitness2 != null) {
+                double fitter = (compareFitness(fitness1, fitness2) >= 0) ? fitness1 : fitness2;
+                inheritedFitness.put(child1, fitter);
+                inheritedFitness.put(child2, fitter);
+            }
+
             crossedPatches.add(parent1);
             crossedPatches.add(parent2);
             crossedPatches.add(child1);
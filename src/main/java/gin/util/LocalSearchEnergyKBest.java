@@ -108,6 +108,9 @@ public class LocalSearchEnergyKBest extends GP {
                 newFitness /= repeats;
             }
 
+            // improvement is over the patch mutated
+            super.rewardEdit(patch, results, newFitness, best);
+
             if (compareFitness(newFitness, best) > 0) {
                 bestNeighbours.add(new Tuple(patch, newFitness));
                 Logger.info(String.format("Adding neighbour on step %d, eval %d\n", i, numAdds));
@@ -132,10 +135,10 @@ public class LocalSearchEnergyKBest extends GP {
 
     /*====== GP Operators ======*/
 
-    // Adds a random edit of the given type with equal probability among allowed types
+    // Adds a random edit of the given type, chosen with equal probability among allowed types unless the edit bandit is in use
     protected Patch mutate(Patch oldPatch) {
         Patch patch = oldPatch.clone();
-        patch.addRandomEditOfClasses(super.mutationRng, super.editTypes);
+        patch.addRandomEditOfClasses(super.mutationRng, super.editTypes, super.bandit);
         return patch;
     }
 
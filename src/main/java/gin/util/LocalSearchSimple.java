@@ -107,6 +107,8 @@ public abstract class LocalSearchSimple extends GP {
             }
 
             super.writePatch(i, i, results, methodName, newFitness, compareFitness(newFitness, orig));
+            // improvement is over the patch mutated
+            super.rewardEdit(patch, results, newFitness, best);
 
             // Check if better
             if (compareFitness(newFitness, best) > 0) {
@@ -118,10 +120,10 @@ public abstract class LocalSearchSimple extends GP {
 
     /*====== GP Operators ======*/
 
-    // Adds a random edit of the given type with equal probability among allowed types
+    // Adds a random edit of the given type, chosen with equal probability among allowed types unless the edit bandit is in use
     protected Patch mutate(Patch oldPatch) {
         Patch patch = oldPatch.clone();
-        patch.addRandomEditOfClasses(super.mutationRng, super.editTypes);
+        patch.addRandomEditOfClasses(super.mutationRng, super.editTypes, super.bandit);
         return patch;
     }
 
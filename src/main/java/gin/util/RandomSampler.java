@@ -75,6 +75,11 @@ public class RandomSampler extends Sampler {
         Logger.info("Random seed for edit type selection: " + patchSeed);
     }
 
+    @Override
+    protected long getSurrogateSeed() {
+        return patchSeed;
+    }
+
     protected void sampleMethodsHook() {
 
         Random mrng = new JDKRandomBridge(RandomSource.MT, Long.valueOf(methodSeed));
@@ -96,7 +101,7 @@ public class RandomSampler extends Sampler {
                 File source = method.getFileSource();
 
                 // Setup SourceFile for patching
-                SourceFile sourceFile = SourceFile.makeSourceFileForEditTypes(editTypes, source.getPath(), Collections.singletonList(method.getMethodName()));
+                SourceFile sourceFile = makeSourceFile(editTypes, source.getPath(), Collections.singletonList(method.getMethodName()));
 
                 Patch patch = new Patch(sourceFile);
                 for (int j = 0; j < patchSize; j++) {
@@ -5,12 +5,16 @@ import com.opencsv.CSVWriter;
 import com.opencsv.exceptions.CsvValidationException;
 import com.sampullara.cli.Args;
 import com.sampullara.cli.Argument;
+import gin.MultiClassPatch;
 import gin.Patch;
 import gin.SourceFile;
+import gin.SourceFileTree;
+import gin.edit.Edit;
 import gin.edit.llm.LLMConfig;
 import gin.edit.llm.PromptTemplate;
 import gin.edit.llm.LLMConfig.PromptType;
 import gin.test.*;
+import gin.test.Compiler;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
@@ -21,6 +25,9 @@ import java.lang.reflect.Field;
 import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Handy class for mutating and running tests on mutated code.
@@ -48,7 +55,7 @@ public abstract class Sampler implements Serializable {
     private static final String[] OUT_HEADER = {"PatchIndex", "PatchSize", "Patch", "MethodIndex", "TestIndex", "UnitTest", "RepNumber",
             "PatchValid", "PatchCompiled", "TestPassed", "TestExecutionTime(ns)", "TestCPUTime(ns)", "EnergyUsage(J)",
             "TestTimedOut", "TestExceptionType", "TestExceptionMessage", "AssertionExpectedValue",
-            "AssertionActualValue", "NoOp", "EditsValid"};
+            "AssertionActualValue", "NoOp", "EditsValid", "CompileTime(ns)", "BytecodeReused", "PredictedPass", "SkippedBySurrogate"};
     private static final Integer DEFAULT_ID = 0; // default id for MethodIndex
     @Argument(alias = "d", description = "Project directory, required", required = true)
     protected File projectDirectory;
@@ -75,9 +82,14 @@ public abstract class Sampler implements Serializable {
     @Argument(alias = "nm", description = "Number of methods from the method data to sample from. 0 for all.")
     protected Integer numberOfMethodsToSample = 0;
 
-    // Unused at the moment, thus commented out
-    //@Argument(alias = "b", description = "Buffer time for test cases to be run on modified code, set only if > -1 and when -inSubprocess is false")
-    //private Integer bufferTimeMS = -1;  // test case timeout: timeout on unmodified code + bufferTime
+    @Argument(alias = "tm", description = "Adaptive timeouts: each test's timeout becomes this multiple of its runtime on the unmodified code (see -tp) plus a floor (see -tf), at most -x. 0 to use -x for all tests.")
+    protected Double timeoutMultiplier = 0.0;
+    @Argument(alias = "tp", description = "Percentile of a test's runtimes on the unmodified code used for adaptive timeouts. Use -r > 1 for a distribution.")
+    protected Double timeoutPercentile = 95.0;
+    @Argument(alias = "tf", description = "Time in milliseconds added to each adaptive timeout")
+    protected Long timeoutFloorMS = 100L;
+    @Argument(alias = "tof", description = "CSV file for adaptive timeouts. Derived timeouts are written to it; if it exists, timeouts are read from it rather than derived.")
+    protected File timeoutsFile = null;
 
     /*============== Other  ==============*/
     @Argument(alias = "j", description = "Run tests in a separate jvm")
@@ -90,6 +102,38 @@ public abstract class Sampler implements Serializable {
             + "If set to true, the tests will stop at the first failure and the next patch will be executed. "
             + "You probably don't want to set this to true for Automatic Program Repair.")
     protected Boolean failFast = false;
+    @Argument(alias = "pw", description = "Number of patches evaluated in parallel when tests run internally. 0 for one per available processor.")
+    protected Integer parallelWorkers = 1;
+    @Argument(alias = "wp", description = "Number of patches a warm test jvm runs before it is replaced, with '-j' only. 0 to start a new jvm for every patch.")
+    protected Integer workerPatchLimit = 100;
+    @Argument(alias = "wh", description = "Heap in MB above which a warm test jvm is replaced, with '-j' only. 0 for no limit.")
+    protected Long workerHeapLimitMB = 512L;
+    @Argument(alias = "tpr", description = "With fail fast, run first the tests that most often failed patches with the same edit types, cheapest first; the history of tests left unrun is aged so they are tried again.")
+    protected Boolean prioritiseTests = false;
+    @Argument(alias = "scl", description = "Load unchanged classes once and reload only the patched class and its dependents for each patch, when tests run internally.")
+    protected Boolean sharedClassLoader = true;
+    @Argument(alias = "bcs", description = "Number of compiled patched programs kept in memory, so that patches giving the same source are compiled once. 0 to compile every patch.")
+    protected Integer bytecodeCacheSize = 1000;
+    @Argument(alias = "bcd", description = "Directory in which compiled patched programs are kept between runs. Requires -bcs > 0.")
+    protected File bytecodeCacheDir = null;
+    @Argument(alias = "mem", description = "Reuse the results of a patched program already tested, rather than testing it again.")
+    protected Boolean memoise = true;
+    @Argument(alias = "mci", description = "With -mem, a program that passed all tests is tested again until the 95% confidence interval of its mean test time is within this fraction of the mean. 0 to always test it again.")
+    protected Double memoConfidence = 0.05;
+    @Argument(alias = "mms", description = "With -mem, number of tested programs whose results are kept; the least recently used are dropped first.")
+    protected Integer memoSize = 10000;
+    @Argument(alias = "msp", description = "For statement edits, print only the target method of each patched program into the original file's text, rather than printing the whole class.")
+    protected Boolean methodScopedPrinting = false;
+    @Argument(alias = "sg", description = "Skip patches that a surrogate model, learned from the patches tested so far, predicts will fail to compile or pass the tests.")
+    protected Boolean surrogate = false;
+    @Argument(alias = "sgt", description = "With -sg, skip patches predicted to compile and pass with less than this probability.")
+    protected Double surrogateThreshold = 0.05;
+    @Argument(alias = "sge", description = "With -sg, fraction of the patches the surrogate would skip that are tested anyway, to keep it learning and to measure it.")
+    protected Double surrogateExploration = 0.1;
+    @Argument(alias = "sgw", description = "With -sg, number of patches tested before the surrogate skips any.")
+    protected Integer surrogateWarmUp = 100;
+    @Argument(alias = "sgo", description = "With -sg, output CSV file for the number of patches skipped and the surrogate's precision and recall.")
+    protected File surrogateOutputFile = new File("surrogate_results.csv");
     // This will only be instantiated with Gradle and Maven projects, used for getting classpath
     protected Project project = null;
     protected List<TargetMethod> methodData = new ArrayList<>();
@@ -115,6 +159,30 @@ public abstract class Sampler implements Serializable {
     /*============== Structures holding all project data  ==============*/
     protected Set<UnitTest> testData = new LinkedHashSet<>();
     private int patchCount = 0;
+    // Created on first use of testPatches, closed in close()
+    private transient EvaluationPool evaluationPool = null;
+    // Created on first test run when workerPatchLimit > 0, closed in close(); workers start on first use
+    private transient HarnessWorkerPool harnessWorkerPool = null;
+    // Created on first internal test run when sharedClassLoader is set, closed in close()
+    private transient SharedClassLoader sharedLoader = null;
+    // Created on first patch when failFast and prioritiseTests are set
+    private transient TestPrioritiser testPrioritiser = null;
+    private long testsBeforeVerdict = 0;
+    private int patchesWithVerdict = 0;
+    // Created on first patch tested one at a time, closed in close(); kept warm across patches
+    private transient Compiler compiler = null;
+    // Created on first patch when bytecodeCacheSize > 0
+    private transient BytecodeCache bytecodeCache = null;
+    // Created on first patch when memoise is set
+    private transient EvaluationMemo evaluationMemo = null;
+    // Created on first patch when surrogate is set
+    private transient SurrogateScreen surrogateScreen = null;
+    private long compileTimeNS = 0;
+    private int patchesCompiled = 0;
+    // Created on first empty patch when timeoutMultiplier > 0
+    private transient AdaptiveTimeouts adaptiveTimeouts = null;
+    // The tests whose timeouts were set from a baseline, so each baseline is only used once
+    private transient Set<UnitTest> timedTests = null;
 
 
     /*============== Constructors ==============*/
@@ -223,58 +291,504 @@ public abstract class Sampler implements Serializable {
             Logger.debug("Successfully passed all tests on the unmodified code.");
         }
 
-        //// Set timeout for test cases to: max time on original code + bufferTime, if bufferTime > -1
-        //if ((!inSubprocess) && (bufferTimeMS > -1)) {
-        //    Map<UnitTest, long[]> runtimes = resultSet.getUnitTestTimes();
-        //    if (runtimes.size() > 0) {
-        //        for (UnitTest test: runtimes.keySet()){
-        //            long[] values = runtimes.get(test);
-        //            long maxvalue = 0;
-        //            for(long newmax : values) {
-        //                if (newmax > maxvalue) {
-        //                    maxvalue = newmax;
-        //                }
-        //            }
-        //            test.setTimeoutMS(maxvalue / 1000000 + bufferTimeMS);
-        //        }
-        //    } else {
-        //        Logger.error("Error extracting unit test case runtimes.");
-        //        System.exit(-1);
-        //    }
-        //}
+        // Set timeout for test cases from their runtimes on the original code
+        if (timeoutMultiplier > 0) {
+            setAdaptiveTimeouts(resultSet, tests);
+        }
 
         return resultSet;
     }
 
+    /**
+     * Set the timeouts of the tests from their runtimes on the original code, unless a baseline
+     * already set them: the empty patch may be tested both by testEmptyPatch and by a search.
+     */
+    private void setAdaptiveTimeouts(UnitTestResultSet baseline, Collection<UnitTest> tests) {
+
+        if (timedTests == null) {
+            timedTests = Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+        if (timedTests.containsAll(tests)) {
+            return;
+        }
+        timedTests.addAll(tests);
+
+        if (adaptiveTimeouts == null) {
+            adaptiveTimeouts = new AdaptiveTimeouts(timeoutMultiplier, timeoutPercentile, timeoutFloorMS);
+            if (timeoutsFile != null && timeoutsFile.exists()) {
+                try {
+                    adaptiveTimeouts.read(timeoutsFile);
+                    Logger.info("Read " + adaptiveTimeouts.getTimeouts().size() + " test timeouts from " + timeoutsFile);
+                } catch (IOException e) {
+                    Logger.error(e, "Could not read test timeouts from " + timeoutsFile);
+                    System.exit(-1);
+                }
+            }
+        }
+
+        int known = adaptiveTimeouts.getTimeouts().size();
+        adaptiveTimeouts.apply(baseline, tests);
+        for (UnitTest test : tests) {
+            Logger.debug("Timeout for " + test + ": " + test.getTimeoutMS() + "ms");
+        }
+
+        if (timeoutsFile != null && adaptiveTimeouts.getTimeouts().size() > known) {
+            try {
+                adaptiveTimeouts.write(timeoutsFile);
+            } catch (IOException e) {
+                Logger.error(e, "Could not write test timeouts to " + timeoutsFile);
+            }
+        }
+
+    }
+
     /*============== methods for running tests  ==============*/
 
     protected UnitTestResultSet testPatch(String targetClass, List<UnitTest> tests, Patch patch, Object metadata) {
 
+        // internal runners look up the memo themselves, once they have applied the patch
+        boolean internal = !inSubprocess && !eachTestInNewSubprocess;
+        PreparedTest prepared = prepare(targetClass, tests, patch, metadata, !internal);
+        if (prepared.results() != null) {
+            return prepared.results();
+        }
+
+        UnitTestResultSet resultSet;
+        if (internal) {
+            resultSet = testPatchInternally(targetClass, prepared.testOrder(), patch, metadata);
+        } else {
+            resultSet = testPatchInSubprocess(targetClass, prepared.testOrder(), patch, metadata);
+        }
+
+        finish(targetClass, tests, prepared, resultSet);
+        return resultSet;
+
+    }
+
+    /**
+     * Test a batch of patches, e.g. a whole generation of a GP run.
+     * When tests are run internally and parallelWorkers is not 1, the patches are
+     * evaluated concurrently; otherwise they are tested one by one. Either way, when results
+     * are memoised, a program given by more than one patch of the batch is tested once.
+     *
+     * @return the results, in the same order as the given patches
+     */
+    protected List<UnitTestResultSet> testPatches(String targetClass, List<UnitTest> tests, List<Patch> patches, Object metadata) {
+
+        if (inSubprocess || eachTestInNewSubprocess || parallelWorkers == 1 || patches.size() < 2) {
+            List<UnitTestResultSet> results = new ArrayList<>(patches.size());
+            for (Patch patch : patches) {
+                results.add(testPatch(targetClass, tests, patch, metadata));
+            }
+            return results;
+        }
+
+        Logger.debug("Testing " + patches.size() + " patches in parallel.");
+
+        // the memo is looked up on the workers, which wait for a program already being tested rather than test it again
+        List<UnitTestResultSet> results = new ArrayList<>(Collections.nCopies(patches.size(), null));
+        List<PreparedTest> toTest = new ArrayList<>();
+        List<Integer> toTestIndices = new ArrayList<>();
+        for (int i = 0; i < patches.size(); i++) {
+            PreparedTest prepared = prepare(targetClass, tests, patches.get(i), metadata, false);
+            if (prepared.results() != null) {
+                results.set(i, prepared.results());
+                continue;
+            }
+            toTest.add(prepared);
+            toTestIndices.add(i);
+        }
+
+        EvaluationPool pool = getEvaluationPool();
+        CompletionService<UnitTestResultSet> completion = pool.newCompletionService();
+        List<Future<UnitTestResultSet>> futures = new ArrayList<>(toTest.size());
+        for (PreparedTest prepared : toTest) {
+            futures.add(newInternalTestRunner(targetClass, prepared.testOrder()).submit(prepared.patch(), metadata, reps, pool, completion));
+        }
+        for (int j = 0; j < toTest.size(); j++) {
+            UnitTestResultSet resultSet = null;
+            try {
+                resultSet = futures.get(j).get();
+            } catch (InterruptedException e) {
+                Logger.error(e);
+                System.exit(-1);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Patch evaluation failed on a worker thread.", e.getCause());
+            }
+            finish(targetClass, tests, toTest.get(j), resultSet);
+            results.set(toTestIndices.get(j), resultSet);
+        }
+
+        return results;
+
+    }
+
+    /**
+     * A patch about to be tested: the key of its program in the memo, if it was looked up, and the
+     * order to run the tests in. If its results are already known, from the memo or because the
+     * surrogate model skipped it, they are given and the patch is not tested.
+     */
+    private record PreparedTest(Patch patch, EvaluationMemo.Lookup lookup, List<UnitTest> testOrder, UnitTestResultSet results) {
+    }
+
+    /**
+     * Everything done for a patch before it is tested, however it is tested.
+     *
+     * @param lookUp whether to look up the memo here, which applies the patch on this thread;
+     *               false if the test runner looks it up
+     */
+    private PreparedTest prepare(String targetClass, List<UnitTest> tests, Patch patch, Object metadata, boolean lookUp) {
+
         Logger.debug("Testing patch: " + patch);
 
         patchCount++;
 
-        UnitTestResultSet resultSet;
+        UnitTestResultSet skippedResults = screen(tests, patch);
+        if (skippedResults != null) {
+            return new PreparedTest(patch, null, tests, skippedResults);
+        }
+
+        EvaluationMemo.Lookup lookup = lookUp ? lookUpResults(targetClass, tests, patch, metadata) : null;
+        if (lookup != null && lookup.results() != null) {
+            Logger.debug("Reusing the results of the same patched program.");
+            return new PreparedTest(patch, lookup, tests, lookup.results());
+        }
+
+        // run the tests most likely to fail the patch first
+        List<UnitTest> testOrder = tests;
+        if (failFast && prioritiseTests) {
+            if (testPrioritiser == null) {
+                testPrioritiser = new TestPrioritiser();
+            }
+            testOrder = testPrioritiser.order(targetClass, patch, tests);
+        }
+
+        return new PreparedTest(patch, lookup, testOrder, null);
+
+    }
+
+    /**
+     * Everything done with the results of a patch once it is tested, however it was tested.
+     */
+    private void finish(String targetClass, List<UnitTest> tests, PreparedTest prepared, UnitTestResultSet resultSet) {
+
+        // the tests were not run, so there is nothing to learn from
+        if (resultSet.getResultsReused()) {
+            return;
+        }
+
+        Patch patch = prepared.patch();
+
+        if (testPrioritiser != null) {
+            testPrioritiser.record(targetClass, patch, resultSet);
+        }
+        if (resultSet.getTestsExecutedBeforeVerdict() > 0) {
+            testsBeforeVerdict += resultSet.getTestsExecutedBeforeVerdict();
+            patchesWithVerdict++;
+        }
+        Logger.debug("Verdict reached after " + resultSet.getTestsExecutedBeforeVerdict() + " tests.");
+        recordCompileTime(resultSet);
+
+        // the empty patch gives the runtimes of the tests on the original code, if testEmptyPatch did not
+        if (timeoutMultiplier > 0 && patch.size() == 0) {
+            setAdaptiveTimeouts(resultSet, tests);
+        }
+
+        if (prepared.lookup() != null) {
+            evaluationMemo.record(prepared.lookup().key(), resultSet);
+        }
+        recordSurrogate(patch, resultSet);
 
+    }
+
+    /**
+     * Start testing patches one at a time without waiting for each, e.g. for a steady-state
+     * search. When tests are run internally and parallelWorkers is not 1, the patches are
+     * tested concurrently on the evaluation pool; otherwise each is tested as it is submitted.
+     *
+     * @return the evaluations, to submit patches to and take their results from
+     */
+    protected PatchEvaluations startEvaluations(String targetClass, List<UnitTest> tests, Object metadata) {
+        return new PatchEvaluations(targetClass, tests, metadata);
+    }
+
+    /**
+     * Patches being tested, with their results taken in the order they finish.
+     */
+    protected class PatchEvaluations {
+
+        private final String targetClass;
+        private final List<UnitTest> tests;
+        private final Object metadata;
+        // null if patches are tested as they are submitted
+        private final EvaluationPool pool;
+        private final CompletionService<UnitTestResultSet> completion;
+        // results already known, e.g. reused from the same program tested before
+        private final Deque<UnitTestResultSet> finished = new ArrayDeque<>();
+        private final Map<Future<UnitTestResultSet>, PreparedTest> running = new HashMap<>();
+
+        private PatchEvaluations(String targetClass, List<UnitTest> tests, Object metadata) {
+            this.targetClass = targetClass;
+            this.tests = tests;
+            this.metadata = metadata;
+            if (inSubprocess || eachTestInNewSubprocess || parallelWorkers == 1) {
+                this.pool = null;
+                this.completion = null;
+            } else {
+                this.pool = getEvaluationPool();
+                this.completion = pool.newCompletionService();
+            }
+        }
+
+        /**
+         * @return the number of patches that can be tested at once
+         */
+        public int getCapacity() {
+            return (pool == null) ? 1 : pool.getSize();
+        }
+
+        /**
+         * @return the number of patches submitted whose results have not been taken
+         */
+        public int getPending() {
+            return finished.size() + running.size();
+        }
+
+        /**
+         * Start testing the patch. The same patch may be submitted more than once.
+         */
+        public void submit(Patch patch) {
+            if (pool == null) {
+                finished.add(testPatch(targetClass, tests, patch, metadata));
+                return;
+            }
+            PreparedTest prepared = prepare(targetClass, tests, patch, metadata, false);
+            if (prepared.results() != null) {
+                finished.add(prepared.results());
+            } else {
+                InternalTestRunner testRunner = newInternalTestRunner(targetClass, prepared.testOrder());
+                running.put(testRunner.submit(patch, metadata, reps, pool, completion), prepared);
+            }
+        }
+
+        /**
+         * Wait for the next patch to finish testing.
+         *
+         * @return the results of a patch submitted, which can be told apart by {@link UnitTestResultSet#getPatch()}
+         * @throws NoSuchElementException if no patch is pending
+         */
+        public UnitTestResultSet take() {
+            if (!finished.isEmpty()) {
+                return finished.poll();
+            }
+            if (running.isEmpty()) {
+                throw new NoSuchElementException("No patch is being tested.");
+            }
+            UnitTestResultSet resultSet = null;
+            try {
+                Future<UnitTestResultSet> future = completion.take();
+                PreparedTest prepared = running.remove(future);
+                resultSet = future.get();
+                finish(targetClass, tests, prepared, resultSet);
+            } catch (InterruptedException e) {
+                Logger.error(e);
+                System.exit(-1);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Patch evaluation failed on a worker thread.", e.getCause());
+            }
+            return resultSet;
+        }
+
+    }
+
+    /**
+     * Test a patch spanning several classes: all patched classes are compiled together and
+     * replace the originals for the same test run.
+     */
+    protected UnitTestResultSet testPatch(List<UnitTest> tests, MultiClassPatch patch, Object metadata) {
+
+        Logger.debug("Testing patch: " + patch);
+
+        patchCount++;
+
+        String targetClass = patch.getClassNames().iterator().next();
+        TestRunner testRunner;
         if (!inSubprocess && !eachTestInNewSubprocess) {
-            resultSet = testPatchInternally(targetClass, tests, patch, metadata);
+            testRunner = newInternalTestRunner(targetClass, tests);
         } else {
-            resultSet = testPatchInSubprocess(targetClass, tests, patch, metadata);
+            ExternalTestRunner externalRunner = new ExternalTestRunner(targetClass, classPath, tests, eachRepetitionInNewSubprocess, eachTestInNewSubprocess, failFast);
+            externalRunner.setWorkerPool(getHarnessWorkerPool());
+            externalRunner.setBytecodeCache(getBytecodeCache());
+            testRunner = externalRunner;
         }
+        testRunner.setCompiler(getCompiler());
 
-        return resultSet;
+        UnitTestResultSet results = null;
+        try {
+            results = testRunner.runTests(patch, metadata, reps);
+        } catch (IOException e) {
+            Logger.error(e);
+            System.exit(-1);
+        }
+        recordCompileTime(results);
+        return results;
 
     }
 
     private UnitTestResultSet testPatchInternally(String targetClass, List<UnitTest> tests, Patch patch, Object metadata) {
 
-        InternalTestRunner testRunner = new InternalTestRunner(targetClass, classPath, tests, failFast);
+        InternalTestRunner testRunner = newInternalTestRunner(targetClass, tests);
+        testRunner.setCompiler(getCompiler());
         return testRunner.runTests(patch, metadata, reps);
     }
 
+    private InternalTestRunner newInternalTestRunner(String targetClass, List<UnitTest> tests) {
+        InternalTestRunner testRunner = new InternalTestRunner(targetClass, classPath, tests, failFast);
+        if (sharedClassLoader) {
+            if (sharedLoader == null) {
+                sharedLoader = new SharedClassLoader(classPath);
+            }
+            testRunner.setSharedClassLoader(sharedLoader);
+        }
+        // only used if a test thread cannot be stopped
+        testRunner.setFallbackWorkerPool(getHarnessWorkerPool());
+        testRunner.setBytecodeCache(getBytecodeCache());
+        testRunner.setEvaluationMemo(getEvaluationMemo());
+        return testRunner;
+    }
+
+    /**
+     * @return the source file to patch, for the given edit types; see {@link SourceFile#makeSourceFileForEditTypes}
+     */
+    protected SourceFile makeSourceFile(List<Class<? extends Edit>> editTypes, String filename, List<String> targetMethodNames) {
+        SourceFile sourceFile = SourceFile.makeSourceFileForEditTypes(editTypes, filename, targetMethodNames);
+        if (methodScopedPrinting && (sourceFile instanceof SourceFileTree)) {
+            ((SourceFileTree) sourceFile).setMethodScopedPrinting(true);
+        }
+        return sourceFile;
+    }
+
+    private Compiler getCompiler() {
+        if (compiler == null) {
+            compiler = new Compiler();
+        }
+        return compiler;
+    }
+
+    /**
+     * Ask the surrogate model, if there is one, whether the patch is worth testing.
+     *
+     * @return results marking the patch as skipped, with every test not passed; null if the patch should be tested
+     */
+    private UnitTestResultSet screen(List<UnitTest> tests, Patch patch) {
+        if (!surrogate) {
+            return null;
+        }
+        if (surrogateScreen == null) {
+            surrogateScreen = new SurrogateScreen(createSurrogate(), surrogateThreshold, surrogateExploration, surrogateWarmUp, getSurrogateSeed());
+        }
+        if (!surrogateScreen.skip(patch)) {
+            return null;
+        }
+        Logger.debug("Skipping patch predicted to fail.");
+        List<UnitTestResult> results = new ArrayList<>(reps * tests.size());
+        for (int rep = 1; rep <= reps; rep++) {
+            for (UnitTest test : tests) {
+                results.add(new UnitTestResult(test, rep));
+            }
+        }
+        UnitTestResultSet resultSet = new UnitTestResultSet(patch, null, false, Collections.emptyList(), false,
+                "Not compiled: predicted to fail by the surrogate model", false, results);
+        resultSet.setSkipped(true);
+        return resultSet;
+    }
+
+    private void recordSurrogate(Patch patch, UnitTestResultSet resultSet) {
+        if (surrogateScreen != null) {
+            surrogateScreen.record(patch, resultSet);
+        }
+    }
+
+    /**
+     * Override to screen patches with some other model.
+     *
+     * @return the surrogate model used with -sg
+     */
+    protected PatchSurrogate createSurrogate() {
+        return new LogisticPatchSurrogate();
+    }
+
+    /**
+     * Override to follow the seed of the search, so that runs with different seeds explore
+     * different patches predicted to fail.
+     *
+     * @return the seed for choosing which patches predicted to fail are tested anyway
+     */
+    protected long getSurrogateSeed() {
+        return 0;
+    }
+
+    /**
+     * @return the memoised results of the program the patch gives, if any; null if results are not memoised
+     */
+    private EvaluationMemo.Lookup lookUpResults(String targetClass, List<UnitTest> tests, Patch patch, Object metadata) {
+        EvaluationMemo memo = getEvaluationMemo();
+        return (memo == null) ? null : memo.lookup(targetClass, patch, metadata, tests, reps);
+    }
+
+    /**
+     * @return the memo of results, or null if results are not memoised
+     */
+    private EvaluationMemo getEvaluationMemo() {
+        if (!memoise) {
+            return null;
+        }
+        if (evaluationMemo == null) {
+            evaluationMemo = new EvaluationMemo(memoConfidence, memoSize);
+        }
+        return evaluationMemo;
+    }
+
+    private synchronized BytecodeCache getBytecodeCache() {
+        if (bytecodeCacheSize <= 0) {
+            return null;
+        }
+        if (bytecodeCache == null) {
+            bytecodeCache = new BytecodeCache(bytecodeCacheSize, bytecodeCacheDir);
+        }
+        return bytecodeCache;
+    }
+
+    private EvaluationPool getEvaluationPool() {
+        if (evaluationPool == null) {
+            evaluationPool = new EvaluationPool(parallelWorkers > 0 ? parallelWorkers : EvaluationPool.defaultSize());
+        }
+        return evaluationPool;
+    }
+
+    private void recordCompileTime(UnitTestResultSet resultSet) {
+        if (resultSet.getCompileTimeNS() > 0) {
+            compileTimeNS += resultSet.getCompileTimeNS();
+            patchesCompiled++;
+        }
+    }
+
+    private synchronized HarnessWorkerPool getHarnessWorkerPool() {
+        if (workerPatchLimit <= 0) {
+            return null;
+        }
+        if (harnessWorkerPool == null) {
+            harnessWorkerPool = new HarnessWorkerPool(workerPatchLimit, workerHeapLimitMB);
+        }
+        return harnessWorkerPool;
+    }
+
     private UnitTestResultSet testPatchInSubprocess(String targetClass, List<UnitTest> tests, Patch patch, Object metadata) {
 
         ExternalTestRunner testRunner = new ExternalTestRunner(targetClass, classPath, tests, eachRepetitionInNewSubprocess, eachTestInNewSubprocess, failFast);
+        testRunner.setWorkerPool(getHarnessWorkerPool());
+        testRunner.setCompiler(getCompiler());
+        testRunner.setBytecodeCache(getBytecodeCache());
 
         UnitTestResultSet results = null;
 
@@ -447,11 +961,12 @@ public abstract class Sampler implements Serializable {
     protected void writeResults(UnitTestResultSet testResultSet, int patchCount, Integer methodID) {
         int testIdx = 1;
         for (UnitTestResult result : testResultSet.getResults()) {
-            writeResult(patchCount, testIdx++, testResultSet.getPatch(), testResultSet.getValidPatch(), testResultSet.getCleanCompile(), result, methodID, testResultSet.getNoOp(), testResultSet.getEditsValid());
+            writeResult(patchCount, testIdx++, testResultSet.getPatch(), testResultSet.getValidPatch(), testResultSet.getCleanCompile(), result, methodID, testResultSet.getNoOp(), testResultSet.getEditsValid(), testResultSet.getCompileTimeNS(), testResultSet.getBytecodeReused(),
+                    testResultSet.getPredictedPass(), testResultSet.getSkipped());
         }
     }
 
-    private void writeResult(int patchCount, int testNameIdx, Patch patch, boolean patchValid, boolean compiledOK, UnitTestResult testResult, Integer methodID, boolean patchNoOp, List<Boolean> editsValid) {
+    private void writeResult(int patchCount, int testNameIdx, Patch patch, boolean patchValid, boolean compiledOK, UnitTestResult testResult, Integer methodID, boolean patchNoOp, List<Boolean> editsValid, long compileTimeNS, boolean bytecodeReused, double predictedPass, boolean skipped) {
 
         String patchIndex = Integer.toString(patchCount);
         String methodIndex = Integer.toString(methodID);
@@ -497,13 +1012,59 @@ public abstract class Sampler implements Serializable {
                 testAssertionExpectedValue,
                 testAssertionActualValue,
                 noOp,
-                editsValidStr.toString()
+                editsValidStr.toString(),
+                Long.toString(compileTimeNS),
+                Boolean.toString(bytecodeReused),
+                Double.isNaN(predictedPass) ? "" : Double.toString(predictedPass),
+                Boolean.toString(skipped)
         };
 
         outputFileWriter.writeNext(entry);
     }
 
     protected void close() {
+        if (patchesWithVerdict > 0) {
+            Logger.info(String.format("Tests executed before verdict: %.2f per patch on average.", (double) testsBeforeVerdict / patchesWithVerdict));
+        }
+        if (patchesCompiled > 0) {
+            Logger.info(String.format("Compiled %d patches in %.1fms on average.", patchesCompiled, compileTimeNS / 1000000.0 / patchesCompiled));
+        }
+        if (evaluationMemo != null && evaluationMemo.getLookups() > 0) {
+            Logger.info(String.format("Avoided %d of %d patch evaluations (%.1f%%) by reusing the results of the same program.", evaluationMemo.getAvoided(),
+                    evaluationMemo.getLookups(), 100.0 * evaluationMemo.getAvoided() / evaluationMemo.getLookups()));
+        }
+        if (bytecodeCache != null) {
+            Logger.info(String.format("Reused compiled bytecode for %d of %d patches (%.1f%%).", bytecodeCache.getHits(),
+                    bytecodeCache.getHits() + bytecodeCache.getMisses(), 100.0 * bytecodeCache.getReuseRate()));
+        }
+        if (surrogateScreen != null) {
+            Logger.info(surrogateScreen);
+            try {
+                surrogateScreen.writeSummary(surrogateOutputFile);
+            } catch (IOException e) {
+                Logger.error(e, "Exception writing surrogate results to: " + surrogateOutputFile.getAbsolutePath());
+            }
+        }
+        if (this.compiler != null) {
+            this.compiler.close();
+            this.compiler = null;
+        }
+        if (this.evaluationPool != null) {
+            this.evaluationPool.close();
+            this.evaluationPool = null;
+        }
+        if (this.harnessWorkerPool != null) {
+            this.harnessWorkerPool.close();
+            this.harnessWorkerPool = null;
+        }
+        if (this.sharedLoader != null) {
+            try {
+                this.sharedLoader.close();
+            } catch (IOException ex) {
+                Logger.error(ex, "Could not close the shared class loader.");
+            }
+            this.sharedLoader = null;
+        }
         try {
             if (this.outputFileWriter != null) {
                 this.outputFileWriter.close();
@@ -0,0 +1,194 @@
+package gin.util.island;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+import com.sampullara.cli.Args;
+import com.sampullara.cli.Argument;
+import org.pmw.tinylog.Logger;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs an island-model GP search: several copies of a GP search (e.g. gin.util.GPRuntime), each
+ * in its own JVM with its own random seeds, passing their best patches round a ring every few
+ * generations. Once all islands have finished, their results are merged into one CSV file, with
+ * the island each row came from in an extra first column.
+ * <p>
+ * Arguments after "--" are passed to every island. The coordinator sets each island's output
+ * files, seeds, island port and peer itself, so these should not be among them, e.g.
+ * <pre>
+ * java gin.util.island.IslandCoordinator -c gin.util.GPRuntime -n 4 -- -d project -m methods.csv -p project -gn 20 -in 10
+ * </pre>
+ * Islands may also be started by hand on other hosts, with -ip and -ipr pointing each at the next;
+ * then run the coordinator with -merge to merge their results once they are copied back.
+ */
+public class IslandCoordinator {
+
+    static final String ISLAND_HEADER = "Island";
+
+    @Argument(alias = "c", description = "GP class to run on each island, e.g. gin.util.GPRuntime")
+    protected String className = null;
+
+    @Argument(alias = "n", description = "Number of islands")
+    protected Integer islands = 4;
+
+    @Argument(alias = "bp", description = "Port of the first island; the others listen on the ports following it")
+    protected Integer basePort = 40000;
+
+    @Argument(alias = "ms", description = "Random seed of the first island; the others use the seeds following it")
+    protected Integer seed = 123;
+
+    @Argument(alias = "o", description = "Merged output CSV file; each island writes its own file next to it")
+    protected File outputFile = new File("islands_results.csv");
+
+    @Argument(alias = "merge", description = "Comma separated CSV files of islands already run, to merge without running any")
+    protected String mergeFiles = null;
+
+    protected String[] islandArgs = new String[0];
+
+    public IslandCoordinator(String[] args) {
+        int separator = Arrays.asList(args).indexOf("--");
+        if (separator >= 0) {
+            islandArgs = Arrays.copyOfRange(args, separator + 1, args.length);
+            args = Arrays.copyOfRange(args, 0, separator);
+        }
+        Args.parseOrExit(this, args);
+    }
+
+    public static void main(String[] args) {
+        IslandCoordinator coordinator = new IslandCoordinator(args);
+        coordinator.run();
+    }
+
+    private void run() {
+        List<File> results = new ArrayList<>();
+        if (mergeFiles != null) {
+            for (String file : mergeFiles.split(",")) {
+                results.add(new File(file.trim()));
+            }
+        } else if (className == null || islands < 1) {
+            Logger.error("Please give a GP class to run and a positive number of islands.");
+            System.exit(-1);
+        } else {
+            results = runIslands();
+        }
+        try {
+            mergeResults(results, outputFile);
+        } catch (IOException e) {
+            Logger.error(e, "Exception writing merged results to: " + outputFile.getAbsolutePath());
+            System.exit(-1);
+        }
+        Logger.info("Merged results of " + results.size() + " islands saved to: " + outputFile.getAbsolutePath());
+    }
+
+    /**
+     * Start every island in its own JVM, and wait for them all to finish.
+     *
+     * @return the output file of each island
+     */
+    private List<File> runIslands() {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classpath = System.getProperty("java.class.path");
+        List<File> results = new ArrayList<>();
+        List<Process> processes = new ArrayList<>();
+
+        // if the coordinator dies, take the islands with it
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> processes.forEach(Process::destroyForcibly)));
+
+        for (int i = 0; i < islands; i++) {
+            File output = islandFile(outputFile, i, "");
+            File timing = islandFile(outputFile, i, "_timing");
+            List<String> command = new ArrayList<>(Arrays.asList(java, "-Dtinylog.level=" + Logger.getLevel(), "-cp", classpath, className));
+            command.addAll(Arrays.asList(islandArgs));
+            command.addAll(Arrays.asList(
+                    "-o", output.getPath(),
+                    "-to", timing.getPath(),
+                    "-ms", Integer.toString(seed + i),
+                    "-is", Integer.toString(seed + i),
+                    "-ip", Integer.toString(basePort + i),
+                    "-ipr", "localhost:" + (basePort + (i + 1) % islands)));
+            Logger.info("Starting island " + i + ": " + String.join(" ", command));
+            try {
+                processes.add(new ProcessBuilder(command).redirectOutput(Redirect.INHERIT).redirectError(Redirect.INHERIT).start());
+            } catch (IOException e) {
+                Logger.error(e, "Could not start island " + i);
+                System.exit(-1);
+            }
+            results.add(output);
+        }
+
+        for (int i = 0; i < processes.size(); i++) {
+            try {
+                int exitCode = processes.get(i).waitFor();
+                if (exitCode != 0) {
+                    Logger.warn("Island " + i + " exited with code " + exitCode);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Logger.error("Interrupted waiting for island " + i);
+                System.exit(-1);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return e.g. results_island2.csv for island 2 of results.csv
+     */
+    static File islandFile(File outputFile, int island, String suffix) {
+        String name = outputFile.getName();
+        int dot = name.lastIndexOf('.');
+        String base = (dot < 0) ? name : name.substring(0, dot);
+        String extension = (dot < 0) ? "" : name.substring(dot);
+        return new File(outputFile.getAbsoluteFile().getParentFile(), base + suffix + "_island" + island + extension);
+    }
+
+    /**
+     * Concatenate the CSV files of the islands, prefixing each row with the index of its island.
+     * The header is taken from the first file that has one. Missing files are skipped, as an
+     * island that failed should not lose the results of the others.
+     *
+     * @param islandFiles output file of each island, in island order
+     * @param merged      file to write
+     */
+    public static void mergeResults(List<File> islandFiles, File merged) throws IOException {
+        try (CSVWriter writer = new CSVWriter(new FileWriter(merged))) {
+            boolean headerWritten = false;
+            for (int i = 0; i < islandFiles.size(); i++) {
+                File file = islandFiles.get(i);
+                if (!file.exists()) {
+                    Logger.warn("No results for island " + i + ": " + file.getAbsolutePath());
+                    continue;
+                }
+                try (CSVReader reader = new CSVReader(new FileReader(file))) {
+                    String[] row = reader.readNext();
+                    if (row != null && !headerWritten) {
+                        writer.writeNext(prepend(ISLAND_HEADER, row));
+                        headerWritten = true;
+                    }
+                    while ((row = reader.readNext()) != null) {
+                        writer.writeNext(prepend(Integer.toString(i), row));
+                    }
+                } catch (CsvValidationException e) {
+                    throw new IOException("Cannot read results of island " + i + ": " + file.getAbsolutePath(), e);
+                }
+            }
+        }
+    }
+
+    private static String[] prepend(String first, String[] row) {
+        String[] prefixed = new String[row.length + 1];
+        prefixed[0] = first;
+        System.arraycopy(row, 0, prefixed, 1, row.length);
+        return prefixed;
+    }
+
+}
@@ -0,0 +1,50 @@
+package gin.util.island;
+
+import java.util.Objects;
+
+/**
+ * A patch sent from one island to another, in the textual form given by
+ * {@link gin.Patch#toString()}, with the method it improves.
+ */
+public final class Migrant {
+
+    private final String methodName;
+    private final String patch;
+
+    /**
+     * @param methodName the target method, as named in the results CSV
+     * @param patch      the patch, as given by {@link gin.Patch#toString()}
+     */
+    public Migrant(String methodName, String patch) {
+        this.methodName = Objects.requireNonNull(methodName);
+        this.patch = Objects.requireNonNull(patch);
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public String getPatch() {
+        return patch;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Migrant)) {
+            return false;
+        }
+        Migrant other = (Migrant) o;
+        return methodName.equals(other.methodName) && patch.equals(other.patch);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * methodName.hashCode() + patch.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return methodName + " " + patch;
+    }
+
+}
@@ -0,0 +1,28 @@
+package gin.util.island;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Carries migrants between the islands of an island-model search. Islands may be in other
+ * JVMs or on other hosts, so sending is best effort: a migrant that cannot be delivered is
+ * dropped and the search carries on without it.
+ * <p>
+ * Implementations other than {@link TcpMigrationTransport} (e.g. over a message queue shared
+ * by build agents) are plugged in by overriding {@link gin.util.GP#createMigrationTransport()}.
+ */
+public interface MigrationTransport extends Closeable {
+
+    /**
+     * Send migrants to the neighbouring islands.
+     *
+     * @param migrants the migrants; the list may be empty
+     */
+    void send(List<Migrant> migrants);
+
+    /**
+     * @return the migrants received since the last call, in the order they arrived; does not block
+     */
+    List<Migrant> receive();
+
+}
@@ -0,0 +1,200 @@
+package gin.util.island;
+
+import org.pmw.tinylog.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Migration over plain TCP. Each island listens on a port of its own, and sends its migrants
+ * to a fixed list of peers, e.g. the next island round a ring. Migrants are sent over a
+ * short-lived connection per send, so islands may be started in any order and may finish at
+ * different times; a peer that cannot be reached just misses that migration.
+ * <p>
+ * A connection carries one message: the number of migrants, then the method name and patch
+ * of each, as length-prefixed UTF-8. Each connection accepted is read on a thread of its own,
+ * so a peer that stalls mid-message holds up only its own migrants.
+ */
+public class TcpMigrationTransport implements MigrationTransport {
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+    private final ServerSocket serverSocket;
+    private final List<InetSocketAddress> peers;
+    private final Queue<Migrant> received = new ConcurrentLinkedQueue<>();
+    private final Thread listener;
+    // reads the connections accepted by the listener
+    private final ExecutorService readers;
+
+    /**
+     * @param port  port to listen on for migrants; 0 for any free port
+     * @param peers islands to send migrants to
+     * @throws IOException if the port could not be bound
+     */
+    public TcpMigrationTransport(int port, List<InetSocketAddress> peers) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.peers = new ArrayList<>(peers);
+        this.readers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "migration-reader-" + serverSocket.getLocalPort());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.listener = new Thread(this::listen, "migration-listener-" + serverSocket.getLocalPort());
+        this.listener.setDaemon(true);
+        this.listener.start();
+    }
+
+    /**
+     * @param peers comma separated list of host:port
+     * @return the addresses, unresolved until they are connected to
+     * @throws IllegalArgumentException if an entry has no port
+     */
+    public static List<InetSocketAddress> parsePeers(String peers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        if (peers == null) {
+            return addresses;
+        }
+        for (String peer : peers.split(",")) {
+            peer = peer.trim();
+            if (peer.isEmpty()) {
+                continue;
+            }
+            int colon = peer.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Island address has no port: " + peer);
+            }
+            String host = (colon == 0) ? "localhost" : peer.substring(0, colon);
+            addresses.add(InetSocketAddress.createUnresolved(host, Integer.parseInt(peer.substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    /**
+     * @return the port migrants are received on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void send(List<Migrant> migrants) {
+        for (InetSocketAddress peer : peers) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(peer.getHostString(), peer.getPort()), CONNECT_TIMEOUT_MS);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                out.writeInt(migrants.size());
+                for (Migrant migrant : migrants) {
+                    writeString(out, migrant.getMethodName());
+                    writeString(out, migrant.getPatch());
+                }
+                out.flush();
+            } catch (IOException e) {
+                Logger.warn("Could not send migrants to island " + peer + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public List<Migrant> receive() {
+        List<Migrant> migrants = new ArrayList<>();
+        Migrant migrant;
+        while ((migrant = received.poll()) != null) {
+            migrants.add(migrant);
+        }
+        return migrants;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        // a reader still waiting on a stalled peer is left to time out, on its daemon thread
+        readers.shutdown();
+        try {
+            listener.join(READ_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void listen() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    Logger.warn("Could not accept migrants: " + e.getMessage());
+                }
+                continue;
+            }
+            try {
+                readers.execute(() -> read(socket));
+            } catch (RejectedExecutionException e) {
+                // closing
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private void read(Socket socket) {
+        try (socket) {
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            int count = in.readInt();
+            List<Migrant> migrants = new ArrayList<>(Math.max(0, Math.min(count, 1024)));
+            for (int i = 0; i < count; i++) {
+                migrants.add(new Migrant(readString(in), readString(in)));
+            }
+            // only whole messages are taken in
+            received.addAll(migrants);
+        } catch (IOException e) {
+            Logger.warn("Could not receive migrants from " + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // nothing more to do with it
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new IOException("Bad string length in migration message: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "TCP migration on port " + getPort() + " to " + peers;
+    }
+
+}
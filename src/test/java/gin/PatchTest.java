@@ -28,6 +28,8 @@ import java.util.List;
 import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class PatchTest {
 
@@ -79,6 +81,112 @@ public class PatchTest {
         assertEquals(patchTree.toString(), clonedPatch.toString());
     }
 
+    @Test
+    public void noOpLine() throws Exception {
+        String filename = TestConfiguration.EXAMPLE_DIR_NAME + "TriangleWithComments.java";
+        SourceFileLine sourceFile = new SourceFileLine(filename, Collections.emptyList());
+
+        // deleting a blank line and a line comment leaves the code unchanged
+        Patch patch = new Patch(sourceFile);
+        patch.add(new DeleteLine(filename, 20));
+        patch.add(new DeleteLine(filename, 24));
+        assertEquals(sourceFile.getSource(), patch.apply());
+        assertTrue(patch.lastApplyWasNoOp());
+
+        patch.add(new DeleteLine(filename, 22));
+        patch.apply();
+        assertFalse(patch.lastApplyWasNoOp());
+    }
+
+    @Test
+    public void noOpTree() throws Exception {
+        patchTree.apply();
+        assertTrue(patchTree.lastApplyWasNoOp());
+
+        int statement = sourceFileTree.getStatementIDsInTargetMethod().get(0);
+        patchTree.add(new DeleteStatement(verySmallExampleSourceFilename, statement));
+        patchTree.apply();
+        assertFalse(patchTree.lastApplyWasNoOp());
+    }
+
+    @Test
+    public void applyInPlaceMatchesCopies() throws Exception {
+        String original = sourceFileTree.getSource();
+        int blockID = sourceFileTree.getIDForBlockNumber(0);
+        List<Edit> edits = Arrays.asList(
+                new MoveStatement(verySmallExampleSourceFilename, sourceFileTree.getIDForStatementNumber(1), verySmallExampleSourceFilename, blockID, sourceFileTree.getIDForStatementNumber(2)),
+                new SwapStatement(verySmallExampleSourceFilename, sourceFileTree.getIDForStatementNumber(2), verySmallExampleSourceFilename, sourceFileTree.getIDForStatementNumber(3)),
+                new CopyStatement(verySmallExampleSourceFilename, sourceFileTree.getIDForStatementNumber(5), verySmallExampleSourceFilename, blockID, sourceFileTree.getIDForStatementNumber(1)),
+                new DeleteStatement(verySmallExampleSourceFilename, sourceFileTree.getIDForStatementNumber(4)),
+                new ReplaceStatement(verySmallExampleSourceFilename, sourceFileTree.getIDForStatementNumber(2), verySmallExampleSourceFilename, sourceFileTree.getIDForStatementNumber(3)));
+
+        // each edit applied to a new copy, as when the source file is sealed
+        SourceFile expected = sourceFileTree;
+        for (Edit edit : edits) {
+            SourceFile patched = edit.apply(expected, null);
+            if (patched != null) {
+                expected = patched;
+            }
+            patchTree.add(edit);
+        }
+
+        assertEquals(expected.getSource(), patchTree.apply());
+        assertEquals(expected.getSource(), patchTree.apply());
+        assertEquals(original, sourceFileTree.getSource());
+    }
+
+    @Test
+    public void applyReusesAppliedPrefix() throws Exception {
+        int[] ids = {sourceFileTree.getIDForStatementNumber(1), sourceFileTree.getIDForStatementNumber(2), sourceFileTree.getIDForStatementNumber(3)};
+        CountingDelete first = new CountingDelete(ids[0]);
+        CountingDelete second = new CountingDelete(ids[1]);
+        CountingDelete third = new CountingDelete(ids[2]);
+
+        patchTree.add(first);
+        patchTree.apply();
+
+        // adding an edit to a clone of an applied patch applies only that edit
+        Patch child = patchTree.clone();
+        child.add(second);
+        child.apply();
+        Patch grandchild = child.clone();
+        grandchild.add(third);
+        String patchedSource = grandchild.apply();
+        assertEquals(1, first.applied);
+        assertEquals(1, second.applied);
+        assertEquals(1, third.applied);
+
+        Patch fresh = new Patch(sourceFileTree);
+        for (int id : ids) {
+            fresh.add(new DeleteStatement(verySmallExampleSourceFilename, id));
+        }
+        assertEquals(fresh.apply(), patchedSource);
+        assertEquals(Arrays.asList(true, true, true), grandchild.getEditsInvalidOnLastApply());
+
+        // removing an edit replays from the longest prefix still kept
+        grandchild.remove(1);
+        grandchild.apply();
+        assertEquals(1, first.applied);
+        assertEquals(1, second.applied);
+        assertEquals(2, third.applied);
+    }
+
+    private static class CountingDelete extends DeleteStatement {
+
+        private int applied = 0;
+
+        CountingDelete(int statementToDelete) {
+            super(verySmallExampleSourceFilename, statementToDelete);
+        }
+
+        @Override
+        public SourceFile apply(SourceFile sourceFile, Object metadata) {
+            applied++;
+            return super.apply(sourceFile, metadata);
+        }
+
+    }
+
     @Test
     public void addLine() throws Exception {
         Edit edit = new CopyLine(sourceFileLine.getRelativePathToWorkingDir(), 1, sourceFileLine.getRelativePathToWorkingDir(), 3);
@@ -967,5 +1075,30 @@ public class PatchTest {
                 "| gin.edit.statement.MoveStatement \"" + verySmallExampleSourceFilename + "\":3 -> \"" + verySmallExampleSourceFilename + "\":4:2 |", patchTree.toString());
     }
 
-}
+    @Test
+    public void fromString() throws Exception {
+        int blockID = sourceFileTree.getIDForBlockNumber(0);
+        patchTree.add(new DeleteStatement(verySmallExampleSourceFilename, sourceFileTree.getIDForStatementNumber(4)));
+        patchTree.add(new CopyStatement(verySmallExampleSourceFilename, sourceFileTree.getIDForStatementNumber(5), verySmallExampleSourceFilename, blockID, sourceFileTree.getIDForStatementNumber(1)));
+        Patch parsed = Patch.fromString(patchTree.toString(), sourceFileTree);
+        assertEquals(patchTree.toString(), parsed.toString());
+        assertEquals(patchTree.apply(), parsed.apply());
+
+        patchLine.add(new DeleteLine(verySmallExampleSourceFilename, 2));
+        assertEquals(patchLine.toString(), Patch.fromString(patchLine.toString(), sourceFileLine).toString());
+
+        assertEquals(0, Patch.fromString("|", sourceFileTree).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromStringUnknownEdit() throws Exception {
+        Patch.fromString("| gin.edit.NoSuchEdit \"Small.java\":1 |", sourceFileTree);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromStringWrongSourceFile() throws Exception {
+        patchLine.add(new DeleteLine(verySmallExampleSourceFilename, 2));
+        Patch.fromString(patchLine.toString(), sourceFileTree);
+    }
 
+}
@@ -7,11 +7,14 @@ import org.junit.Test;
 import java.io.File;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class SourceFileLineTest {
 
@@ -82,6 +85,30 @@ public class SourceFileLineTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void editLines() throws Exception {
+        List<String> lines = new ArrayList<>(FileUtils.readLines(new File(exampleSourceFilename), Charset.defaultCharset()));
+        String source = sourceFile.getSource();
+
+        SourceFileLine edited = sourceFile.removeLine(3).insertLine(3, "a").insertLine(3, "b").insertLine(100, "c");
+        // an inserted line does not take the place of the deleted line it follows
+        assertNull(edited.getLine(3));
+        assertSame(edited, edited.removeLine(3));
+        assertEquals(lines.get(3), edited.getLine(4));
+
+        lines.set(2, "a");
+        lines.add(3, "b");
+        lines.add("c");
+        assertEquals(String.join(System.lineSeparator(), lines) + System.lineSeparator(), edited.getSource());
+        assertEquals(53, edited.getAllLineIDs().size());
+        assertEquals(Arrays.asList(1, 2, 3, 3, 4), edited.getAllLineIDs().subList(0, 5));
+        assertEquals(100, (int) edited.getAllLineIDs().get(52));
+
+        // copies share the original lines, which edits leave alone
+        assertEquals(source, sourceFile.getSource());
+        assertEquals(edited.getSource(), edited.copyOf().getSource());
+    }
+
     @Test
     public void getLineIDsOnlyCommentsMethod() throws Exception {
         List<Integer> expected = Arrays.asList(8, 9, 10, 11, 12, 13, 14, 17, 18, 19, 24, 47);
@@ -13,6 +13,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class SourceFileTreeTest {
 
@@ -43,6 +44,28 @@ public class SourceFileTreeTest {
         assertEqualsWithoutWhitespace(expectedSource, sourceFile.getSource());
     }
 
+    @Test
+    public void getSourceMethodScoped() throws Exception {
+        SourceFileTree scoped = new SourceFileTree(exampleSourceFilename, Collections.singletonList(exampleMethodName));
+        scoped.setMethodScopedPrinting(true);
+
+        // outside the target method, the file's own text is kept
+        String fileText = FileUtils.readFileToString(new File(exampleSourceFilename), charSet);
+        String beforeMethod = fileText.substring(0, fileText.indexOf("private static void delay()"));
+        assertTrue(scoped.getSource().startsWith(beforeMethod));
+        assertEqualsWithoutWhitespace(fileText, scoped.getSource());
+
+        int sleepID = -1;
+        for (int id : scoped.getStatementIDsInTargetMethod()) {
+            if (scoped.getStatement(id).toString().startsWith("Thread.sleep")) {
+                sleepID = id;
+            }
+        }
+        SourceFileTree patched = scoped.removeStatement(sleepID);
+        assertTrue(patched.getSource().startsWith(beforeMethod));
+        assertEqualsWithoutWhitespace(sourceFileWithMethod.removeStatement(sleepID).getSource(), patched.getSource());
+    }
+
     @Test
     public void getFilename() throws Exception {
         assertEquals(exampleSourceFilename, sourceFile.getRelativePathToWorkingDir());
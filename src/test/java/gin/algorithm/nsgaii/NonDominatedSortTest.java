@@ -0,0 +1,115 @@
+package gin.algorithm.nsgaii;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NonDominatedSortTest {
+
+    @Test
+    public void rankMatchesPeelingFronts() {
+        Random rng = new Random(42);
+        for (int objectives = 1; objectives <= 4; objectives++) {
+            for (int trial = 0; trial < 20; trial++) {
+                int n = 1 + rng.nextInt(60);
+                double[][] costs = new double[objectives][n];
+                for (double[] row : costs) {
+                    for (int i = 0; i < n; i++) {
+                        // few distinct values, so that there are ties and duplicates
+                        row[i] = rng.nextInt(8);
+                    }
+                }
+                assertArrayEquals(peelFronts(costs), NonDominatedSort.rank(costs));
+            }
+        }
+    }
+
+    @Test
+    public void twoObjectives() {
+        double[][] costs = {
+                {1, 2, 3, 2, 4, 1, 5},
+                {5, 2, 1, 3, 4, 5, Double.MAX_VALUE}};
+        assertArrayEquals(new int[]{1, 1, 1, 2, 3, 1, 4}, NonDominatedSort.rank(costs));
+        int[][] fronts = NonDominatedSort.fronts(NonDominatedSort.rank(costs));
+        assertArrayEquals(new int[]{0, 1, 2, 5}, fronts[0]);
+        assertArrayEquals(new int[]{6}, fronts[3]);
+    }
+
+    @Test
+    public void crowdingDistance() {
+        double[][] costs = {
+                {0, 1, 3, 4},
+                {4, 3, 1, 0}};
+        double[] distance = NonDominatedSort.crowdingDistance(costs, new int[]{0, 1, 2, 3});
+        assertEquals(Double.POSITIVE_INFINITY, distance[0], 0);
+        assertEquals(Double.POSITIVE_INFINITY, distance[3], 0);
+        assertEquals(3.0 / 4 + 3.0 / 4, distance[1], 1e-12);
+        assertEquals(3.0 / 4 + 3.0 / 4, distance[2], 1e-12);
+
+        // an objective on which the front is equal adds nothing
+        double[][] flat = {{1, 2, 3}, {7, 7, 7}};
+        assertEquals(1.0, NonDominatedSort.crowdingDistance(flat, new int[]{0, 1, 2})[1], 1e-12);
+    }
+
+    @Test
+    public void largePopulation() {
+        Random rng = new Random(7);
+        int n = 5000;
+        double[][] costs = new double[2][n];
+        for (int i = 0; i < n; i++) {
+            costs[0][i] = rng.nextDouble();
+            costs[1][i] = rng.nextDouble();
+        }
+        int[] ranks = NonDominatedSort.rank(costs);
+        for (int[] front : NonDominatedSort.fronts(ranks)) {
+            assertTrue(front.length > 0);
+            NonDominatedSort.crowdingDistance(costs, front);
+        }
+        assertEquals(n, Arrays.stream(NonDominatedSort.fronts(ranks)).mapToInt(f -> f.length).sum());
+    }
+
+    // fronts by definition: each front is the non-dominated individuals of those left
+    private static int[] peelFronts(double[][] costs) {
+        int n = costs[0].length;
+        int[] ranks = new int[n];
+        int ranked = 0;
+        for (int rank = 1; ranked < n; rank++) {
+            int[] front = new int[n];
+            int size = 0;
+            for (int p = 0; p < n; p++) {
+                if (ranks[p] != 0) {
+                    continue;
+                }
+                boolean dominated = false;
+                for (int q = 0; q < n && !dominated; q++) {
+                    dominated = (ranks[q] == 0) && dominates(costs, q, p);
+                }
+                if (!dominated) {
+                    front[size++] = p;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                ranks[front[i]] = rank;
+            }
+            ranked += size;
+        }
+        return ranks;
+    }
+
+    private static boolean dominates(double[][] costs, int p, int q) {
+        boolean better = false;
+        for (double[] row : costs) {
+            if (row[p] > row[q]) {
+                return false;
+            }
+            better |= row[p] < row[q];
+        }
+        return better;
+    }
+
+}
@@ -0,0 +1,107 @@
+package gin.edit;
+
+import gin.edit.modifynode.BinaryOperatorReplacement;
+import gin.edit.statement.DeleteStatement;
+import gin.edit.statement.SwapStatement;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EditBanditTest {
+
+    private static final List<Class<? extends Edit>> EDIT_TYPES = Arrays.asList(
+            DeleteStatement.class, SwapStatement.class, BinaryOperatorReplacement.class);
+
+    private static int timesChosen(EditBandit bandit, Class<? extends Edit> editType, int draws, Random rng) {
+        int chosen = 0;
+        for (int i = 0; i < draws; i++) {
+            if (bandit.choose(EDIT_TYPES, rng) == editType) {
+                chosen++;
+            }
+        }
+        return chosen;
+    }
+
+    @Test
+    public void untriedEditsAreChosenAlike() {
+        EditBandit bandit = new EditBandit(1.0);
+        int chosen = timesChosen(bandit, SwapStatement.class, 3000, new Random(0));
+        assertTrue(chosen > 800 && chosen < 1200);
+    }
+
+    @Test
+    public void failingEditsAreStarved() {
+        EditBandit bandit = new EditBandit(1.0);
+        for (int i = 0; i < 30; i++) {
+            bandit.record(DeleteStatement.class, false, 0, 1000);
+            bandit.record(SwapStatement.class, false, 0, 1000);
+            bandit.record(BinaryOperatorReplacement.class, true, 0, 1000);
+        }
+        int chosen = timesChosen(bandit, BinaryOperatorReplacement.class, 1000, new Random(0));
+        assertTrue(chosen > 950);
+    }
+
+    @Test
+    public void rewardIsPerCost() {
+        EditBandit bandit = new EditBandit(1.0);
+        for (int i = 0; i < 30; i++) {
+            bandit.record(DeleteStatement.class, true, 0, 10000);
+            bandit.record(SwapStatement.class, true, 0, 1000);
+            bandit.record(BinaryOperatorReplacement.class, true, 0, 10000);
+        }
+        int chosen = timesChosen(bandit, SwapStatement.class, 1000, new Random(0));
+        assertTrue(chosen > 900);
+    }
+
+    @Test
+    public void failuresCostAFullEvaluation() {
+        EditBandit bandit = new EditBandit(1.0);
+        // failing to compile is quick, but costs the search an evaluation all the same
+        bandit.record(DeleteStatement.class, false, 0, 100);
+        assertEquals(100, bandit.getMeanCost(DeleteStatement.class), 1e-9);
+        bandit.record(SwapStatement.class, true, 0, 1000);
+        bandit.record(SwapStatement.class, true, 0, 3000);
+        bandit.record(DeleteStatement.class, false, 0, 100);
+        bandit.record(BinaryOperatorReplacement.class, false, 0, 5000);
+        assertEquals(1050, bandit.getMeanCost(DeleteStatement.class), 1e-9);
+        assertEquals(5000, bandit.getMeanCost(BinaryOperatorReplacement.class), 1e-9);
+    }
+
+    @Test
+    public void improvementAddsToReward() {
+        EditBandit bandit = new EditBandit(1.0);
+        bandit.record(DeleteStatement.class, true, 0, 1000);
+        bandit.record(SwapStatement.class, true, 1, 1000);
+        bandit.record(BinaryOperatorReplacement.class, true, 5, 1000);
+        assertEquals(0.5, bandit.getMeanReward(DeleteStatement.class), 1e-9);
+        assertEquals(0.75, bandit.getMeanReward(SwapStatement.class), 1e-9);
+        // improvement is counted up to 1
+        assertEquals(0.75, bandit.getMeanReward(BinaryOperatorReplacement.class), 1e-9);
+    }
+
+    @Test
+    public void pastRewardsAreDiscounted() {
+        EditBandit bandit = new EditBandit(0.5);
+        bandit.record(DeleteStatement.class, true, 0, 1000);
+        bandit.record(DeleteStatement.class, true, 0, 1000);
+        assertEquals(1.5, bandit.getPlays(DeleteStatement.class), 1e-9);
+        bandit.record(SwapStatement.class, false, 0, 1000);
+        assertEquals(0.75, bandit.getPlays(DeleteStatement.class), 1e-9);
+        assertEquals(1.0, bandit.getPlays(SwapStatement.class), 1e-9);
+    }
+
+    @Test
+    public void choosingDoesNotLearn() {
+        EditBandit bandit = new EditBandit(1.0);
+        bandit.record(DeleteStatement.class, true, 0, 1000);
+        timesChosen(bandit, DeleteStatement.class, 100, new Random(0));
+        assertEquals(1.0, bandit.getPlays(DeleteStatement.class), 1e-9);
+        assertEquals(0.0, bandit.getPlays(SwapStatement.class), 1e-9);
+    }
+
+}
@@ -0,0 +1,52 @@
+package gin.edit;
+
+import gin.Patch;
+import gin.SourceFile;
+import gin.SourceFileTree;
+import gin.TestConfiguration;
+import gin.edit.modifynode.BinaryOperatorReplacement;
+import gin.edit.statement.DeleteStatement;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EditFactoryTest {
+
+    private SourceFile sourceFile;
+
+    @Before
+    public void setUp() {
+        // returnsTrue() has statements, but no operators
+        sourceFile = new SourceFileTree(new File(TestConfiguration.EXAMPLE_DIR, "mypackage/Simple.java"), "returnsTrue()");
+    }
+
+    @Test
+    public void applicability() {
+        assertTrue(sourceFile.canBeEditedBy(DeleteStatement.class));
+        assertFalse(sourceFile.canBeEditedBy(BinaryOperatorReplacement.class));
+        assertNull(EditFactory.of(BinaryOperatorReplacement.class).create(sourceFile, new Random(0)));
+        // no (SourceFile,Random) constructor
+        assertFalse(sourceFile.canBeEditedBy(NoEdit.class));
+
+        // edits that cannot be made are never chosen
+        List<Class<? extends Edit>> editTypes = Arrays.asList(BinaryOperatorReplacement.class, DeleteStatement.class);
+        Patch patch = new Patch(sourceFile);
+        Random rng = new Random(1);
+        for (int i = 0; i < 10; i++) {
+            patch.addRandomEditOfClasses(rng, editTypes);
+        }
+        for (Edit edit : patch.getEdits()) {
+            assertEquals(DeleteStatement.class, edit.getClass());
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package gin.misc;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IntObjectMapTest {
+
+    @Test
+    public void putGetRemove() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        for (int i = -1; i < 1000; i++) {
+            assertNull(map.put(i, "v" + i));
+        }
+        assertEquals(1001, map.size());
+        assertEquals("v-1", map.put(-1, "minus one"));
+        assertEquals(1001, map.size());
+
+        // removing every other key must leave the rest reachable past the gaps
+        for (int i = 0; i < 1000; i += 2) {
+            assertEquals("v" + i, map.remove(i));
+        }
+        assertNull(map.remove(0));
+        assertEquals(501, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 2 != 0, map.containsKey(i));
+            assertEquals((i % 2 != 0) ? "v" + i : null, map.get(i));
+        }
+        assertEquals("minus one", map.get(-1));
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+        map.put(1, "a");
+        map.put(17, "b");
+        IntObjectMap<String> copy = map.copy();
+        copy.remove(1);
+        copy.put(2, "c");
+
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new int[]{1, 17}, keys);
+        keys = copy.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new int[]{2, 17}, keys);
+        assertEquals("b", copy.get(17));
+    }
+
+    @Test
+    public void intSet() {
+        IntSet set = new IntSet();
+        assertTrue(set.isEmpty());
+        assertTrue(set.add(5));
+        assertFalse(set.add(5));
+        assertTrue(set.add(Integer.MIN_VALUE));
+        assertTrue(set.contains(Integer.MIN_VALUE));
+        assertTrue(set.remove(5));
+        assertFalse(set.contains(5));
+        assertEquals(1, set.size());
+    }
+
+}
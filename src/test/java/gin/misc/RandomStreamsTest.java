@@ -0,0 +1,27 @@
+package gin.misc;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class RandomStreamsTest {
+
+    @Test
+    public void streamsAreReproducible() {
+        Random[] streams = new RandomStreams(123).next(2);
+        Random[] again = new RandomStreams(123).next(2);
+        long first = streams[0].nextLong();
+        assertEquals(first, again[0].nextLong());
+        assertEquals(streams[1].nextInt(100), again[1].nextInt(100));
+    }
+
+    @Test
+    public void streamsDiffer() {
+        RandomStreams streams = new RandomStreams(123);
+        assertNotEquals(streams.next().nextLong(), streams.next().nextLong());
+    }
+
+}
@@ -0,0 +1,76 @@
+package gin.test;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveTimeoutsTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void testTimeoutFromPercentile() {
+        AdaptiveTimeouts timeouts = new AdaptiveTimeouts(3.0, 90.0, 100L);
+        long[] times = {5 * MS, 1 * MS, 4 * MS, 2 * MS, 3 * MS, 6 * MS, 7 * MS, 8 * MS, 9 * MS, 50 * MS};
+        // 90th percentile of ten samples is the 9th smallest
+        assertEquals(3 * 9 + 100, timeouts.timeoutFor(times));
+        assertEquals(3 * 50 + 100, new AdaptiveTimeouts(3.0, 100.0, 100L).timeoutFor(times));
+    }
+
+    @Test
+    public void testApply() {
+
+        UnitTest fast = new UnitTest("mypackage.SimpleTest", "testReturnsTrue");
+        UnitTest slow = new UnitTest("mypackage.SimpleTest", "testSlow");
+        UnitTest failing = new UnitTest("mypackage.SimpleTest", "testFails");
+        slow.setTimeoutMS(1000L);
+
+        List<UnitTestResult> results = Arrays.asList(
+                passed(fast, 1, 4 * MS), passed(fast, 2, 6 * MS),
+                passed(slow, 1, 900 * MS), passed(slow, 2, 950 * MS),
+                new UnitTestResult(failing, 1), new UnitTestResult(failing, 2));
+        UnitTestResultSet baseline = new UnitTestResultSet(null, null, true, Collections.emptyList(), true, null, true, results);
+
+        new AdaptiveTimeouts(2.0, 95.0, 10L).apply(baseline, Arrays.asList(fast, slow, failing));
+
+        assertEquals(2 * 6 + 10, fast.getTimeoutMS());
+        assertEquals(1000L, slow.getTimeoutMS()); // capped at its flat timeout
+        assertEquals(UnitTest.defaultTimeoutMS, failing.getTimeoutMS());
+
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+
+        UnitTest test = new UnitTest("mypackage.SimpleTest", "testReturnsTrue");
+        UnitTestResultSet baseline = new UnitTestResultSet(null, null, true, Collections.emptyList(), true, null, true,
+                Collections.singletonList(passed(test, 1, 20 * MS)));
+        AdaptiveTimeouts derived = new AdaptiveTimeouts(5.0, 95.0, 100L);
+        derived.apply(baseline, Collections.singletonList(test));
+
+        File file = File.createTempFile("timeouts", ".csv");
+        file.deleteOnExit();
+        derived.write(file);
+
+        AdaptiveTimeouts read = new AdaptiveTimeouts(1.0, 50.0, 0L);
+        read.read(file);
+        UnitTest fresh = new UnitTest("mypackage.SimpleTest", "testReturnsTrue");
+        read.apply(new UnitTestResultSet(null, null, true, Collections.emptyList(), true, null, true, Collections.emptyList()),
+                Collections.singletonList(fresh));
+        assertEquals(5 * 20 + 100, fresh.getTimeoutMS());
+
+    }
+
+    private static UnitTestResult passed(UnitTest test, int rep, long timeNS) {
+        UnitTestResult result = new UnitTestResult(test, rep);
+        result.setPassed(true);
+        result.setExecutionTime(timeNS);
+        return result;
+    }
+
+}
@@ -0,0 +1,93 @@
+package gin.test;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BytecodeCacheTest {
+
+    private static final String CLASS_NAME = "mypackage.Simple";
+    private static final String SOURCE = "package mypackage;\npublic class Simple {\n    int x = 1;\n}\n";
+
+    @Test
+    public void testKeyIgnoresLineEndingsAndTrailingWhitespace() {
+        String key = BytecodeCache.key(Map.of(CLASS_NAME, SOURCE), "cp");
+        assertEquals(key, BytecodeCache.key(Map.of(CLASS_NAME, SOURCE.replace("\n", "  \r\n")), "cp"));
+        // changes inside a line, the class name or the classpath are a different compilation
+        assertNotEquals(key, BytecodeCache.key(Map.of(CLASS_NAME, SOURCE.replace("x = 1", "x  = 1")), "cp"));
+        assertNotEquals(key, BytecodeCache.key(Map.of("mypackage.Other", SOURCE), "cp"));
+        assertNotEquals(key, BytecodeCache.key(Map.of(CLASS_NAME, SOURCE), "other"));
+    }
+
+    @Test
+    public void testKeyCoversOptionsAndClassPathContents() throws IOException {
+        assertNotEquals(BytecodeCache.key(Map.of(CLASS_NAME, SOURCE), "cp", List.of()),
+                BytecodeCache.key(Map.of(CLASS_NAME, SOURCE), "cp", List.of("-g")));
+
+        File dir = Files.createTempDirectory("gin-classpath").toFile();
+        File jar = new File(dir, "lib.jar");
+        Files.write(jar.toPath(), new byte[]{1});
+        String before = BytecodeCache.fingerprint(dir.getPath());
+        assertEquals(before, BytecodeCache.fingerprint(dir.getPath()));
+        Files.write(jar.toPath(), new byte[]{1, 2});
+        assertNotEquals(before, BytecodeCache.fingerprint(dir.getPath()));
+        assertNotEquals(BytecodeCache.fingerprint(jar.getPath()), BytecodeCache.fingerprint(dir.getPath()));
+
+        jar.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+
+        BytecodeCache cache = new BytecodeCache(2, null);
+        cache.put("a", entry(1));
+        cache.put("b", entry(2));
+        assertNotNull(cache.get("a"));
+        cache.put("c", entry(3));
+
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.75, cache.getReuseRate(), 1e-9);
+
+    }
+
+    @Test
+    public void testEntriesPersistAcrossCaches() throws IOException {
+
+        File dir = Files.createTempDirectory("gin-bytecode").toFile();
+        dir.deleteOnExit();
+
+        BytecodeCache cache = new BytecodeCache(10, dir);
+        cache.put("ok", entry(42));
+        cache.put("error", new BytecodeCache.Entry(null, "cannot find symbol"));
+
+        BytecodeCache reopened = new BytecodeCache(10, dir);
+        BytecodeCache.Entry ok = reopened.get("ok");
+        assertArrayEquals(new byte[]{42}, ok.classes().get(CLASS_NAME));
+        assertArrayEquals(new byte[]{42}, ok.classes().get(CLASS_NAME + "$Inner"));
+        BytecodeCache.Entry error = reopened.get("error");
+        assertNull(error.classes());
+        assertEquals("cannot find symbol", error.error());
+        assertNull(reopened.get("missing"));
+
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+
+    }
+
+    private static BytecodeCache.Entry entry(int value) {
+        return new BytecodeCache.Entry(Map.of(CLASS_NAME, new byte[]{(byte) value}, CLASS_NAME + "$Inner", new byte[]{(byte) value}), null);
+    }
+
+}
@@ -6,6 +6,9 @@ import org.mdkt.compiler.CompiledCode;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -53,4 +56,62 @@ public class CompilerTest {
         
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testCompileSeveralClasses() throws ClassNotFoundException, IOException {
+
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("mypackage.First", "package mypackage; public class First { public static int value() { return Second.Inner.VALUE + 1; } }");
+        sources.put("mypackage.Second", "package mypackage; public class Second { public static class Inner { public static final int VALUE = 41; } }");
+
+        Compiler compiler = new Compiler();
+        Map<String, byte[]> classes = compiler.compile(sources, exampleDirName);
+
+        assertNotNull(classes);
+        assertEquals(Set.of("mypackage.First", "mypackage.Second", "mypackage.Second$Inner"), classes.keySet());
+
+        try (CacheClassLoader loader = new CacheClassLoader(exampleDirName)) {
+            classes.forEach(loader::setCustomCompiledCode);
+            assertEquals("Inner", loader.loadClass("mypackage.Second$Inner").getSimpleName());
+            assertNotNull(loader.loadClass("mypackage.First"));
+        }
+
+    }
+
+    @Test
+    public void testNoCompileSeveralClasses() {
+
+        Map<String, String> sources = new LinkedHashMap<>();
+        sources.put("mypackage.First", "package mypackage; public class First { int x = Second.missing(); }");
+        sources.put("mypackage.Second", "package mypackage; public class Second { }");
+
+        Compiler compiler = new Compiler();
+
+        assertNull(compiler.compile(sources, exampleDirName));
+        assertTrue(compiler.getLastError().contains("missing"));
+
+    }
+
+    @Test
+    public void testWarmCompilerIsReused() {
+
+        String source = "package mypackage; public class Warm { int x = new Simple().hashCode(); }";
+
+        try (Compiler compiler = new Compiler()) {
+
+            assertNotNull(compiler.compile(Map.of("mypackage.Warm", source), exampleDirName));
+            // a broken patch leaves the file manager usable
+            assertNull(compiler.compile(Map.of("mypackage.Warm", "package mypackage; public class Warm { int x = y; }"), exampleDirName));
+            assertNotNull(compiler.compile(Map.of("mypackage.Warm", source), exampleDirName));
+            // a different classpath is picked up
+            assertNull(compiler.compile(Map.of("mypackage.Warm", source), null));
+            assertTrue(compiler.getLastError().contains("Simple"));
+
+            assertEquals(4, compiler.getCompilations());
+            assertTrue(compiler.getLastCompileTimeNS() > 0);
+            assertTrue(compiler.getTotalCompileTimeNS() >= compiler.getLastCompileTimeNS());
+
+        }
+
+    }
+
+}
@@ -0,0 +1,238 @@
+package gin.test;
+
+import gin.Patch;
+import gin.SourceFileLine;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static gin.test.TestFixtures.CLASS_NAME;
+import static gin.test.TestFixtures.TEST_CLASS_NAME;
+import static gin.test.TestFixtures.result;
+import static gin.test.TestFixtures.resultSet;
+import static org.junit.Assert.*;
+
+public class EvaluationMemoTest {
+
+    private final UnitTest firstTest = new UnitTest(TEST_CLASS_NAME, "testReturnsTrue");
+    private final UnitTest secondTest = new UnitTest(TEST_CLASS_NAME, "otherTest");
+    private final List<UnitTest> tests = Arrays.asList(firstTest, secondTest);
+
+    private SourceFileLine sourceFile;
+
+    @Before
+    public void setUp() {
+        sourceFile = TestFixtures.simpleSourceFile();
+    }
+
+    @Test
+    public void testFailedProgramIsReused() {
+
+        EvaluationMemo memo = new EvaluationMemo(0.05, 100);
+
+        Patch patch = deletePatch();
+        EvaluationMemo.Lookup lookup = memo.lookup(CLASS_NAME, patch, null, tests, 1);
+        assertNull(lookup.results());
+        memo.record(lookup.key(), results(patch, false, 1000L));
+
+        // a different patch object giving the same program, with the tests reordered
+        Patch same = deletePatch();
+        List<UnitTest> reordered = Arrays.asList(secondTest, firstTest);
+        UnitTestResultSet reused = memo.lookup(CLASS_NAME, same, null, reordered, 1).results();
+        assertNotNull(reused);
+        assertSame(same, reused.getPatch());
+        assertFalse(reused.allTestsSuccessful());
+        assertEquals(1, memo.getAvoided());
+        assertEquals(2, memo.getLookups());
+
+        // the unpatched program, or more repetitions, are not the same evaluation
+        assertNull(memo.lookup(CLASS_NAME, new Patch(sourceFile), null, tests, 1).results());
+        assertNull(memo.lookup(CLASS_NAME, deletePatch(), null, tests, 2).results());
+
+    }
+
+    @Test
+    public void testPassingProgramIsMeasuredUntilConfident() {
+
+        EvaluationMemo memo = new EvaluationMemo(0.05, 100);
+        Patch patch = new Patch(sourceFile);
+
+        EvaluationMemo.Lookup lookup = memo.lookup(CLASS_NAME, patch, null, tests, 1);
+        memo.record(lookup.key(), results(patch, true, 1000L));
+        // one run gives no confidence interval
+        lookup = memo.lookup(CLASS_NAME, patch, null, tests, 1);
+        assertNull(lookup.results());
+        memo.record(lookup.key(), results(patch, true, 1010L));
+
+        UnitTestResultSet reused = memo.lookup(CLASS_NAME, patch, null, tests, 1).results();
+        assertNotNull(reused);
+        assertEquals(1005L, reused.getResults().get(0).getExecutionTime());
+
+    }
+
+    @Test
+    public void testNoisyProgramIsAlwaysMeasured() {
+
+        EvaluationMemo memo = new EvaluationMemo(0.05, 100);
+        Patch patch = new Patch(sourceFile);
+
+        for (long time : new long[]{1000L, 3000L, 500L}) {
+            EvaluationMemo.Lookup lookup = memo.lookup(CLASS_NAME, patch, null, tests, 1);
+            assertNull(lookup.results());
+            memo.record(lookup.key(), results(patch, true, time));
+        }
+
+        EvaluationMemo never = new EvaluationMemo(0, 100);
+        for (int i = 0; i < 3; i++) {
+            EvaluationMemo.Lookup lookup = never.lookup(CLASS_NAME, patch, null, tests, 1);
+            assertNull(lookup.results());
+            never.record(lookup.key(), results(patch, true, 1000L));
+        }
+        assertEquals(0, never.getAvoided());
+
+    }
+
+    @Test
+    public void testReorderedTestsKeepTheirOwnMeasurements() {
+
+        EvaluationMemo memo = new EvaluationMemo(0.05, 100);
+        Patch patch = new Patch(sourceFile);
+
+        EvaluationMemo.Lookup lookup = memo.lookup(CLASS_NAME, patch, null, tests, 1);
+        memo.record(lookup.key(), results(patch, Arrays.asList(firstTest, secondTest), true, 1000L, 3000L));
+        List<UnitTest> reordered = Arrays.asList(secondTest, firstTest);
+        lookup = memo.lookup(CLASS_NAME, patch, null, reordered, 1);
+        memo.record(lookup.key(), results(patch, reordered, true, 3020L, 1020L));
+
+        UnitTestResultSet reused = memo.lookup(CLASS_NAME, patch, null, tests, 1).results();
+        assertNotNull(reused);
+        for (UnitTestResult result : reused.getResults()) {
+            long expected = result.getTest().equals(firstTest) ? 1010L : 3010L;
+            assertEquals(expected, result.getExecutionTime());
+        }
+
+    }
+
+    @Test
+    public void testTimeOutIsNotReused() {
+
+        EvaluationMemo memo = new EvaluationMemo(0.05, 100);
+        Patch patch = deletePatch();
+
+        EvaluationMemo.Lookup lookup = memo.lookup(CLASS_NAME, patch, null, tests, 1);
+        UnitTestResultSet timedOut = results(patch, false, 1000L);
+        timedOut.getResults().get(0).setTimedOut(true);
+        memo.record(lookup.key(), timedOut);
+        assertNull(memo.lookup(CLASS_NAME, patch, null, tests, 1).results());
+
+        // a later result replaces the time-out
+        memo.record(lookup.key(), results(patch, false, 1000L));
+        assertNotNull(memo.lookup(CLASS_NAME, patch, null, tests, 1).results());
+
+    }
+
+    @Test
+    public void testFlakyFailureKeepsPassingRuns() {
+
+        EvaluationMemo memo = new EvaluationMemo(0.05, 100);
+        Patch patch = new Patch(sourceFile);
+
+        EvaluationMemo.Lookup lookup = memo.lookup(CLASS_NAME, patch, null, tests, 1);
+        memo.record(lookup.key(), results(patch, true, 1000L));
+        memo.record(lookup.key(), results(patch, false, 1000L));
+        memo.record(lookup.key(), results(patch, true, 1000L));
+        // it failed once, so is tested every time, but is not taken to fail
+        assertNull(memo.lookup(CLASS_NAME, patch, null, tests, 1).results());
+
+    }
+
+    @Test
+    public void testProgramBeingTestedIsNotTestedAgain() throws Exception {
+
+        EvaluationMemo memo = new EvaluationMemo(0.05, 100);
+        Patch patch = deletePatch();
+        Patch same = deletePatch();
+        String patchedSource = patch.apply();
+        AtomicInteger tested = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<UnitTestResultSet> first = executor.submit(() -> memo.test(CLASS_NAME, patch, patchedSource, true, Collections.emptyList(), tests, 1, () -> {
+                tested.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // failing, so the results are reused even if this thread records them before the other looks
+                return results(patch, false, 1000L);
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                }
+                release.countDown();
+            }).start();
+            // waits for the first thread, rather than testing the same program again
+            UnitTestResultSet reused = memo.test(CLASS_NAME, same, patchedSource, true, Collections.emptyList(), tests, 1, () -> {
+                tested.incrementAndGet();
+                return results(same, false, 2000L);
+            });
+            assertFalse(first.get().getResultsReused());
+            assertTrue(reused.getResultsReused());
+            assertSame(same, reused.getPatch());
+            assertEquals(1000L, reused.getResults().get(0).getExecutionTime());
+            assertEquals(1, tested.get());
+            assertEquals(1, memo.getAvoided());
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsDropped() {
+
+        EvaluationMemo memo = new EvaluationMemo(0.05, 1);
+        Patch failing = deletePatch();
+        memo.record(memo.lookup(CLASS_NAME, failing, null, tests, 1).key(), results(failing, false, 1000L));
+        assertNotNull(memo.lookup(CLASS_NAME, failing, null, tests, 1).results());
+
+        Patch other = new Patch(sourceFile);
+        memo.record(memo.lookup(CLASS_NAME, other, null, tests, 1).key(), results(other, false, 1000L));
+        assertNull(memo.lookup(CLASS_NAME, failing, null, tests, 1).results());
+
+    }
+
+    private Patch deletePatch() {
+        return TestFixtures.deletePatch(sourceFile);
+    }
+
+    private UnitTestResultSet results(Patch patch, boolean passed, long timeNS) {
+        return results(patch, tests, passed, timeNS, timeNS);
+    }
+
+    private UnitTestResultSet results(Patch patch, List<UnitTest> order, boolean passed, long firstTimeNS, long secondTimeNS) {
+        List<UnitTestResult> results = new ArrayList<>();
+        for (UnitTest test : order) {
+            results.add(result(test, passed, results.isEmpty() ? firstTimeNS : secondTimeNS));
+        }
+        return resultSet(patch, true, results);
+    }
+
+}
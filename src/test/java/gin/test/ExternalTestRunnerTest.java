@@ -246,4 +246,37 @@ public class ExternalTestRunnerTest {
         assertTrue(results.getResults().get(0).getPassed());
         assertTrue(results.getResults().get(1).getPassed());
     }
+
+    @Test
+    public void testPooledWorkerReusedAcrossPatches() throws IOException, InterruptedException {
+        List<UnitTest> tests = new LinkedList<>();
+        UnitTest test = new UnitTest("mypackage.Poison", "testPoison");
+        tests.add(test);
+        try (HarnessWorkerPool pool = new HarnessWorkerPool(10, 0)) {
+            for (int i = 0; i < 2; i++) {
+                ExternalTestRunner externalRunner = new ExternalTestRunner(fullClassName, classPath, tests, false, false, false);
+                externalRunner.setWorkerPool(pool);
+                UnitTestResultSet results = externalRunner.runTests(new Patch(new SourceFileLine(sourceFile, methodName)), null, 1);
+                // each patch gets a fresh class loader, so static state does not leak between patches
+                assertTrue(results.getResults().get(0).getPassed());
+            }
+            assertEquals(1, pool.getWorkersStarted());
+        }
+    }
+
+    @Test
+    public void testPooledWorkerReplacedAfterPatchLimit() throws IOException, InterruptedException {
+        List<UnitTest> tests = new LinkedList<>();
+        UnitTest test = new UnitTest("mypackage.Poison", "testPoison");
+        tests.add(test);
+        try (HarnessWorkerPool pool = new HarnessWorkerPool(1, 0)) {
+            for (int i = 0; i < 2; i++) {
+                ExternalTestRunner externalRunner = new ExternalTestRunner(fullClassName, classPath, tests, false, false, false);
+                externalRunner.setWorkerPool(pool);
+                UnitTestResultSet results = externalRunner.runTests(new Patch(new SourceFileLine(sourceFile, methodName)), null, 1);
+                assertTrue(results.getResults().get(0).getPassed());
+            }
+            assertEquals(2, pool.getWorkersStarted());
+        }
+    }
 }
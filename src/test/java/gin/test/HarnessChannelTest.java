@@ -0,0 +1,116 @@
+package gin.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HarnessChannelTest {
+
+    private HarnessChannel runnerEnd;
+    private HarnessChannel harnessEnd;
+
+    @Before
+    public void setUp() throws IOException {
+        try (ServerSocket server = new ServerSocket(0)) {
+            runnerEnd = new HarnessChannel(new Socket("localhost", server.getLocalPort()));
+            harnessEnd = new HarnessChannel(server.accept());
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        runnerEnd.close();
+        harnessEnd.close();
+    }
+
+    @Test
+    public void testLoadPatchedClasses() throws IOException {
+
+        Map<String, byte[]> patchedClasses = new LinkedHashMap<>();
+        patchedClasses.put("mypackage.Simple", new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 1});
+        patchedClasses.put("mypackage.Simple$Inner", new byte[0]);
+        String classPath = "build/classes" + File.pathSeparator + "lib/junit.jar";
+
+        runnerEnd.send(HarnessChannel.LOAD, out -> HarnessChannel.writePatch(out, classPath, patchedClasses));
+
+        HarnessChannel.Frame frame = harnessEnd.receive();
+        assertEquals(HarnessChannel.LOAD, frame.type());
+        assertEquals(classPath, HarnessChannel.readString(frame.payload()));
+
+        Map<String, byte[]> received = HarnessChannel.readPatchedClasses(frame.payload());
+        assertEquals(patchedClasses.keySet(), received.keySet());
+        for (Map.Entry<String, byte[]> patchedClass : patchedClasses.entrySet()) {
+            assertArrayEquals(patchedClass.getValue(), received.get(patchedClass.getKey()));
+        }
+        assertEquals(-1, frame.payload().read());
+
+    }
+
+    @Test
+    public void testBatchOfTests() throws IOException {
+
+        UnitTest test1 = new UnitTest("mypackage.SimpleTest", "testReturnsTrue");
+        test1.setTimeoutMS(1234L);
+        UnitTest test2 = new UnitTest("mypackage.ExampleTest", "testReturnOneHundred");
+        List<UnitTest> tests = Arrays.asList(test1, test2);
+        List<Integer> reps = Arrays.asList(1, 2);
+
+        runnerEnd.send(HarnessChannel.RUN, out -> HarnessChannel.writeTests(out, tests, reps, true));
+
+        HarnessChannel.Frame frame = harnessEnd.receive();
+        assertEquals(HarnessChannel.RUN, frame.type());
+        assertTrue(frame.payload().readBoolean());
+        assertEquals(2, frame.payload().readInt());
+
+        UnitTest received = HarnessChannel.readTest(frame.payload());
+        assertEquals(test1, received);
+        assertEquals(1234L, received.getTimeoutMS());
+        assertEquals(1, frame.payload().readInt());
+
+        assertEquals(test2, HarnessChannel.readTest(frame.payload()));
+        assertEquals(2, frame.payload().readInt());
+
+    }
+
+    @Test
+    public void testResultWithAwkwardMessage() throws IOException {
+
+        UnitTest test = new UnitTest("mypackage.SimpleTest", "testReturnsTrue");
+        UnitTestResult result = new UnitTestResult(test, 3);
+        result.setExceptionType("java.lang.AssertionError");
+        result.setExceptionMessage("expected:<1; 2>\nbut was:<3;>");
+        result.setExpectedValue(null);
+        result.setExecutionTime(42L);
+        result.setCPUTime(41L);
+        result.setMemoryUsage(1024L);
+
+        harnessEnd.send(HarnessChannel.RESULT, out -> HarnessChannel.writeResult(out, result));
+
+        HarnessChannel.Frame frame = runnerEnd.receive();
+        assertEquals(HarnessChannel.RESULT, frame.type());
+        UnitTestResult received = HarnessChannel.readResult(frame.payload(), test);
+
+        assertSame(test, received.getTest());
+        assertEquals(3, received.getRepNumber());
+        assertFalse(received.getPassed());
+        assertEquals("java.lang.AssertionError", received.getExceptionType());
+        assertEquals("expected:<1; 2>\nbut was:<3;>", received.getExceptionMessage());
+        assertNull(received.getAssertionExpectedValue());
+        assertEquals(42L, received.getExecutionTime());
+        assertEquals(41L, received.getCPUTime());
+        assertEquals(1024L, received.getMemoryUsage());
+
+    }
+
+}
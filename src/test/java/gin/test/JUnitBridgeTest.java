@@ -230,6 +230,35 @@ public class JUnitBridgeTest {
         assertEquals(result.getExceptionType(), "java.lang.ClassNotFoundException");
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void runTestsAsOnePlan() throws Exception {
+
+        List<UnitTest> tests = Arrays.asList(
+                new UnitTest("ErrorTest", "testException"),
+                new UnitTest("ErrorTest", "thisTestDoesNotExist"),
+                new UnitTest("ErrorTest", "testIgnoredTest"),
+                new UnitTest("ErrorTest", "testAssertionError"));
+
+        Method batchMethod = junitBridge.getClass().getMethod(JUnitBridge.BRIDGE_BATCH_METHOD_NAME, List.class, int.class);
+        List<UnitTestResult> results = (List<UnitTestResult>) batchMethod.invoke(junitBridge, tests, 1);
+
+        // one result per test, in order
+        assertEquals(4, results.size());
+        for (int i = 0; i < tests.size(); i++) {
+            assertEquals(tests.get(i), results.get(i).getTest());
+            assertEquals(1, results.get(i).getRepNumber());
+        }
+        assertFalse(results.get(0).getPassed());
+        assertEquals("java.lang.NullPointerException", results.get(0).getExceptionType());
+        assertFalse(results.get(1).getPassed());
+        assertEquals("java.lang.NoSuchMethodException", results.get(1).getExceptionType());
+        assertTrue(results.get(2).getPassed());
+        assertFalse(results.get(3).getPassed());
+
+        ((AutoCloseable) junitBridge).close();
+    }
+
     @After
     public void tearDown() throws Exception {
         File resourcesDir = new File(TestConfiguration.EXAMPLE_DIR_NAME);
@@ -0,0 +1,107 @@
+package gin.test;
+
+import gin.Patch;
+import gin.SourceFileLine;
+import gin.TestConfiguration;
+import gin.edit.line.DeleteLine;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SharedClassLoaderTest {
+
+    private static final String packageName = "mypackage";
+    private static final File packageDir = new File(TestConfiguration.EXAMPLE_DIR, packageName);
+    private SharedClassLoader sharedLoader;
+
+    @BeforeClass
+    public static void setUpClass() {
+        String[] sourceFilenames = new String[]{
+                "Simple.java",
+                "SimpleTest.java",
+                "Poison.java",
+                "ExampleWithInnerClass.java",
+                "ExampleWithInnerClassTest.java"};
+
+        for (String sourceFilename : sourceFilenames) {
+            new Compiler().compileFile(new File(packageDir, sourceFilename), TestConfiguration.EXAMPLE_DIR_NAME);
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        Files.deleteIfExists(new File(packageDir, "Poison.class").toPath());
+        Files.deleteIfExists(new File(packageDir, "ExampleWithInnerClass.class").toPath());
+        Files.deleteIfExists(new File(packageDir, "ExampleWithInnerClass$MyInner.class").toPath());
+        Files.deleteIfExists(new File(packageDir, "ExampleWithInnerClassTest.class").toPath());
+    }
+
+    @Before
+    public void setUp() {
+        sharedLoader = new SharedClassLoader(TestConfiguration.EXAMPLE_DIR_NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        sharedLoader.close();
+    }
+
+    @Test
+    public void testDependents() {
+        Set<String> dependents = sharedLoader.getDependents("mypackage.Simple");
+        assertTrue(dependents.contains("mypackage.Simple"));
+        assertTrue(dependents.contains("mypackage.SimpleTest"));
+        assertFalse(dependents.contains("mypackage.Poison"));
+    }
+
+    @Test
+    public void testInnerClassIsDependent() {
+        Set<String> dependents = sharedLoader.getDependents("mypackage.ExampleWithInnerClass");
+        assertTrue(dependents.contains("mypackage.ExampleWithInnerClass$MyInner"));
+        assertTrue(dependents.contains("mypackage.ExampleWithInnerClassTest"));
+    }
+
+    @Test
+    public void testOnlyDependentsAreReloaded() throws Exception {
+        Class<?> sharedPoison = sharedLoader.loadClass("mypackage.Poison");
+        try (PatchClassLoader first = sharedLoader.newPatchClassLoader("mypackage.Simple");
+             PatchClassLoader second = sharedLoader.newPatchClassLoader("mypackage.Simple")) {
+            Class<?> firstTest = first.loadClass("mypackage.SimpleTest");
+            Class<?> secondTest = second.loadClass("mypackage.SimpleTest");
+            assertSame(first, firstTest.getClassLoader());
+            assertNotSame(firstTest, secondTest);
+            assertSame(sharedPoison, first.loadClass("mypackage.Poison"));
+            assertSame(sharedPoison, second.loadClass("mypackage.Poison"));
+        }
+    }
+
+    @Test
+    public void testPatchesDoNotLeak() {
+
+        List<UnitTest> tests = new LinkedList<>();
+        tests.add(new UnitTest("mypackage.SimpleTest", "testReturnsTrue"));
+        InternalTestRunner runner = new InternalTestRunner("mypackage.Simple", TestConfiguration.EXAMPLE_DIR_NAME, tests, false);
+        runner.setSharedClassLoader(sharedLoader);
+
+        File sourceFile = new File(packageDir, "Simple.java");
+        SourceFileLine sourceFileLine = new SourceFileLine(sourceFile, "returnsTrue()");
+        Patch deletePatch = new Patch(sourceFileLine);
+        deletePatch.add(new DeleteLine(sourceFile.getAbsolutePath(), 7)); // deletes result=10 hence introducing a bug
+
+        assertFalse(runner.runTests(deletePatch, null, 1).allTestsSuccessful());
+        assertTrue(runner.runTests(new Patch(sourceFileLine), null, 1).allTestsSuccessful());
+        assertFalse(runner.runTests(deletePatch, null, 1).allTestsSuccessful());
+
+    }
+
+}
@@ -0,0 +1,94 @@
+package gin.test;
+
+import gin.Patch;
+import gin.SourceFileTree;
+import gin.TestConfiguration;
+import gin.edit.statement.DeleteStatement;
+import gin.edit.statement.SwapStatement;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static gin.test.TestFixtures.TEST_CLASS_NAME;
+import static gin.test.TestFixtures.result;
+import static gin.test.TestFixtures.resultSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SurrogateScreenTest {
+
+    private static final String FILENAME = TestConfiguration.EXAMPLE_DIR_NAME + "Small.java";
+
+    private SourceFileTree sourceFile;
+    private List<Integer> statements;
+
+    @Before
+    public void setUp() {
+        sourceFile = new SourceFileTree(FILENAME, Collections.emptyList());
+        statements = sourceFile.getAllStatementIDs();
+    }
+
+    @Test
+    public void learnsWhichEditsFail() {
+        LogisticPatchSurrogate surrogate = new LogisticPatchSurrogate();
+        for (int i = 0; i < 50; i++) {
+            surrogate.record(deletePatch(i), results(deletePatch(i), true, true));
+            surrogate.record(swapPatch(i), results(swapPatch(i), false, false));
+        }
+        assertTrue(surrogate.predict(deletePatch(0)) > 0.8);
+        assertTrue(surrogate.predict(swapPatch(0)) < 0.2);
+    }
+
+    @Test
+    public void skipsOnlyAfterWarmUp() {
+        SurrogateScreen screen = new SurrogateScreen(new LogisticPatchSurrogate(), 0.5, 0.0, 20, 0);
+        for (int i = 0; i < 20; i++) {
+            assertFalse(screen.skip(swapPatch(i)));
+            screen.record(swapPatch(i), results(swapPatch(i), false, false));
+        }
+        assertTrue(screen.skip(swapPatch(0)));
+        // the empty patch is always tested
+        assertFalse(screen.skip(new Patch(sourceFile)));
+        assertEquals(1, screen.getSkipped());
+        assertEquals(20, screen.getTested());
+    }
+
+    @Test
+    public void explorationKeepsTesting() {
+        SurrogateScreen screen = new SurrogateScreen(new LogisticPatchSurrogate(), 0.5, 0.5, 10, 0);
+        for (int i = 0; i < 10; i++) {
+            screen.record(swapPatch(i), results(swapPatch(i), false, false));
+        }
+        int tested = 0;
+        for (int i = 0; i < 200; i++) {
+            if (!screen.skip(swapPatch(i))) {
+                tested++;
+                screen.record(swapPatch(i), results(swapPatch(i), false, false));
+            }
+        }
+        assertTrue(tested > 60 && tested < 140);
+        assertEquals(1.0, screen.getPrecision(), 0);
+        assertEquals(1.0, screen.getRecall(), 0);
+    }
+
+    private Patch deletePatch(int i) {
+        Patch patch = new Patch(sourceFile);
+        patch.add(new DeleteStatement(FILENAME, statements.get(i % statements.size())));
+        return patch;
+    }
+
+    private Patch swapPatch(int i) {
+        Patch patch = new Patch(sourceFile);
+        int n = statements.size();
+        patch.add(new SwapStatement(FILENAME, statements.get(i % n), FILENAME, statements.get((i + 1) % n)));
+        return patch;
+    }
+
+    private static UnitTestResultSet results(Patch patch, boolean compiled, boolean passed) {
+        return resultSet(patch, compiled, Collections.singletonList(result(new UnitTest(TEST_CLASS_NAME, "testReturnsTrue"), passed, 0)));
+    }
+
+}
@@ -0,0 +1,55 @@
+package gin.test;
+
+import gin.Patch;
+import gin.SourceFileLine;
+import gin.TestConfiguration;
+import gin.edit.line.DeleteLine;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Patches of the example class and made-up test results, shared by the tests of the classes
+ * that learn from the results of testing patches.
+ */
+final class TestFixtures {
+
+    static final String CLASS_NAME = "mypackage.Simple";
+    static final String TEST_CLASS_NAME = "mypackage.SimpleTest";
+    static final File SIMPLE_FILE = new File(TestConfiguration.EXAMPLE_DIR, "mypackage/Simple.java");
+
+    private TestFixtures() {
+    }
+
+    /**
+     * @return the example class, line by line, targeting returnsTrue()
+     */
+    static SourceFileLine simpleSourceFile() {
+        return new SourceFileLine(SIMPLE_FILE, "returnsTrue()");
+    }
+
+    /**
+     * @return a new patch of the example class, deleting line 7
+     */
+    static Patch deletePatch(SourceFileLine sourceFile) {
+        Patch patch = new Patch(sourceFile);
+        patch.add(new DeleteLine(SIMPLE_FILE.getAbsolutePath(), 7));
+        return patch;
+    }
+
+    static UnitTestResult result(UnitTest test, boolean passed, long timeNS) {
+        UnitTestResult result = new UnitTestResult(test, 1);
+        result.setPassed(passed);
+        result.setExecutionTime(timeNS);
+        return result;
+    }
+
+    /**
+     * @return results of a patch that applied cleanly and changed the code
+     */
+    static UnitTestResultSet resultSet(Patch patch, boolean compiled, List<UnitTestResult> results) {
+        return new UnitTestResultSet(patch, null, true, Collections.emptyList(), compiled, null, false, results);
+    }
+
+}
@@ -0,0 +1,117 @@
+package gin.test;
+
+import gin.Patch;
+import gin.SourceFileLine;
+import gin.edit.line.SwapLine;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static gin.test.TestFixtures.CLASS_NAME;
+import static gin.test.TestFixtures.TEST_CLASS_NAME;
+import static gin.test.TestFixtures.result;
+import static gin.test.TestFixtures.resultSet;
+import static org.junit.Assert.*;
+
+public class TestPrioritiserTest {
+
+    private final UnitTest slowTest = new UnitTest(TEST_CLASS_NAME, "testSlow");
+    private final UnitTest killerTest = new UnitTest(TEST_CLASS_NAME, "testKiller");
+    private final UnitTest fastTest = new UnitTest(TEST_CLASS_NAME, "testFast");
+    private final List<UnitTest> tests = Arrays.asList(slowTest, killerTest, fastTest);
+
+    private TestPrioritiser prioritiser;
+    private SourceFileLine sourceFile;
+
+    @Before
+    public void setUp() {
+        prioritiser = new TestPrioritiser();
+        sourceFile = TestFixtures.simpleSourceFile();
+    }
+
+    @Test
+    public void testOriginalOrderWithoutHistory() {
+        assertEquals(tests, prioritiser.order(CLASS_NAME, deletePatch(), tests));
+    }
+
+    @Test
+    public void testLikelyKillerRunsFirst() {
+
+        for (int i = 0; i < 5; i++) {
+            prioritiser.record(CLASS_NAME, deletePatch(), results(deletePatch(), killerTest));
+        }
+
+        List<UnitTest> ordered = prioritiser.order(CLASS_NAME, deletePatch(), tests);
+        assertEquals(killerTest, ordered.get(0));
+        // equally unlikely to fail, so the cheaper one comes first
+        assertEquals(fastTest, ordered.get(1));
+        assertEquals(slowTest, ordered.get(2));
+
+    }
+
+    @Test
+    public void testHistoryIsPerEditClass() {
+
+        for (int i = 0; i < 5; i++) {
+            prioritiser.record(CLASS_NAME, deletePatch(), results(deletePatch(), killerTest));
+        }
+
+        Patch swapPatch = new Patch(sourceFile);
+        String filename = TestFixtures.SIMPLE_FILE.getAbsolutePath();
+        swapPatch.add(new SwapLine(filename, 6, filename, 7));
+        for (int i = 0; i < 5; i++) {
+            prioritiser.record(CLASS_NAME, swapPatch, results(swapPatch, fastTest));
+        }
+
+        assertEquals(killerTest, prioritiser.order(CLASS_NAME, deletePatch(), tests).get(0));
+        assertEquals(fastTest, prioritiser.order(CLASS_NAME, swapPatch, tests).get(0));
+
+    }
+
+    @Test
+    public void testUnrunTestsAreTriedAgain() {
+
+        for (int i = 0; i < 5; i++) {
+            prioritiser.record(CLASS_NAME, deletePatch(), results(deletePatch(), killerTest));
+        }
+        // the killer now passes, but is run first each time, so the fast test is not run
+        for (int i = 0; i < 30; i++) {
+            prioritiser.record(CLASS_NAME, deletePatch(), resultSet(deletePatch(), true,
+                    Collections.singletonList(result(killerTest, true, 1000000L))));
+        }
+
+        assertEquals(fastTest, prioritiser.order(CLASS_NAME, deletePatch(), tests).get(0));
+
+    }
+
+    @Test
+    public void testTestsExecutedBeforeVerdict() {
+        UnitTestResultSet failed = results(deletePatch(), killerTest);
+        assertEquals(2, failed.getTestsExecutedBeforeVerdict());
+        UnitTestResultSet passed = results(deletePatch(), null);
+        assertEquals(3, passed.getTestsExecutedBeforeVerdict());
+        UnitTestResultSet notCompiled = resultSet(deletePatch(), false, passed.getResults());
+        assertEquals(0, notCompiled.getTestsExecutedBeforeVerdict());
+    }
+
+    private Patch deletePatch() {
+        return TestFixtures.deletePatch(sourceFile);
+    }
+
+    /**
+     * Results of running all tests once: the slow test takes 100ms and the others 1ms,
+     * and only the given test fails.
+     */
+    private UnitTestResultSet results(Patch patch, UnitTest failing) {
+        List<UnitTestResult> results = new ArrayList<>();
+        for (UnitTest test : tests) {
+            results.add(result(test, test != failing, test == slowTest ? 100000000L : 1000000L));
+        }
+        return resultSet(patch, true, results);
+    }
+
+}
@@ -1,5 +1,6 @@
 package gin.test;
 
+import gin.MultiClassPatch;
 import gin.Patch;
 import gin.SourceFileLine;
 import gin.TestConfiguration;
@@ -188,6 +189,39 @@ public class TestRunnerTest {
 
     }
 
+    @Test
+    public void testMultiClassPatch() throws IOException {
+
+        LinkedList<UnitTest> tests = new LinkedList<>();
+        tests.add(new UnitTest(fullTestClassName, testMethodName));
+        tests.add(new UnitTest("mypackage.ExampleTest", "testReturnOneHundred"));
+
+        File exampleSourceFile = new File(packageDir, "Example.java");
+        Patch examplePatch = new Patch(new SourceFileLine(exampleSourceFile, "returnOneHundred()"));
+
+        MultiClassPatch emptyPatch = new MultiClassPatch();
+        emptyPatch.add(fullClassName, new Patch(sourceFileLine));
+        emptyPatch.add("mypackage.Example", examplePatch);
+
+        InternalTestRunner runner = new InternalTestRunner(fullClassName, TestConfiguration.EXAMPLE_DIR_NAME, tests, false);
+        UnitTestResultSet resultSet = runner.runTests(emptyPatch, null, 1);
+        assertTrue(resultSet.getCleanCompile());
+        assertTrue(resultSet.getNoOp());
+        assertTrue(resultSet.allTestsSuccessful());
+
+        Patch deletePatch = new Patch(sourceFileLine);
+        deletePatch.add(new DeleteLine(sourceFile.getAbsolutePath(), 7)); // deletes result=10 hence introducing a bug
+        MultiClassPatch patch = new MultiClassPatch();
+        patch.add(fullClassName, deletePatch);
+        patch.add("mypackage.Example", examplePatch);
+
+        resultSet = runner.runTests(patch, null, 1);
+        assertTrue(resultSet.getCleanCompile());
+        assertFalse(resultSet.getNoOp());
+        assertFalse(resultSet.allTestsSuccessful());
+
+    }
+
     /**
      * Test that compiling a class that implements an interface works, where the compiled class for that interface
      * is on the classpath.
@@ -223,6 +257,33 @@ public class TestRunnerTest {
 
     }
 
+    @Test
+    public void testBatchInParallel() throws InterruptedException {
+
+        Patch emptyPatch = new Patch(sourceFileLine);
+        Patch deletePatch = new Patch(sourceFileLine);
+        deletePatch.add(new DeleteLine(sourceFile.getAbsolutePath(), 7)); // deletes result=10 hence introducing a bug
+
+        List<Patch> patches = new LinkedList<>();
+        patches.add(deletePatch);
+        patches.add(emptyPatch);
+        patches.add(deletePatch.clone());
+
+        List<UnitTestResultSet> resultSets;
+        try (EvaluationPool pool = new EvaluationPool(2)) {
+            resultSets = internalTestRunner.runTests(patches, null, 1, pool);
+        }
+
+        // results come back in submission order
+        assertEquals(3, resultSets.size());
+        assertSame(deletePatch, resultSets.get(0).getPatch());
+        assertFalse(resultSets.get(0).allTestsSuccessful());
+        assertTrue(resultSets.get(1).allTestsSuccessful());
+        assertTrue(resultSets.get(1).getNoOp());
+        assertFalse(resultSets.get(2).allTestsSuccessful());
+
+    }
+
     @Test
     public void testNotFailFast() {
 
@@ -0,0 +1,121 @@
+package gin.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestWatchdogTest {
+
+    private TestWatchdog watchdog;
+
+    @Before
+    public void setUp() {
+        watchdog = new TestWatchdog();
+    }
+
+    @After
+    public void tearDown() {
+        watchdog.close();
+    }
+
+    @Test
+    public void testFinishedTestIsNotStopped() throws Exception {
+
+        UnitTestResult result = newResult(1000L);
+
+        TestWatchdog.Outcome outcome = watchdog.run(progress -> {
+            progress.testStarted(result);
+            Thread.sleep(50);
+            result.setPassed(true);
+            progress.testFinished(result);
+        }, 1000L);
+
+        assertFalse(outcome.timedOut());
+        assertNull(outcome.failure());
+        assertTrue(result.getPassed());
+
+    }
+
+    @Test
+    public void testInfiniteLoopIsStopped() throws Exception {
+
+        UnitTestResult looping = newResult(200L);
+        UnitTestResult next = newResult(1000L);
+
+        long start = System.currentTimeMillis();
+        TestWatchdog.Outcome outcome = watchdog.run(progress -> {
+            try {
+                progress.testStarted(looping);
+                while (!looping.getPassed()) {
+                    // never ends, and ignores interrupts
+                }
+            } catch (ThreadDeath e) {
+                // a test framework records the failure and moves on
+                progress.testFinished(looping);
+            }
+            progress.testStarted(next);
+            next.setPassed(true);
+            progress.testFinished(next);
+        }, 1000L);
+
+        assertTrue(System.currentTimeMillis() - start < 200L + TestWatchdog.GRACE_MS);
+        assertTrue(outcome.timedOut());
+        assertTrue(outcome.overran().contains(looping));
+        assertFalse(outcome.overran().contains(next));
+        assertTrue(next.getPassed());
+        assertFalse(watchdog.isPoisoned());
+
+    }
+
+    @Test
+    public void testStallKeepsFinishedTests() throws Exception {
+
+        UnitTestResult first = newResult(1000L);
+        UnitTestResult unreached = newResult(1000L);
+
+        TestWatchdog.Outcome outcome = watchdog.run(progress -> {
+            progress.testStarted(first);
+            first.setPassed(true);
+            progress.testFinished(first);
+            // stuck between tests, e.g. in class-level set-up
+            Thread.sleep(10000L);
+        }, 200L);
+
+        assertTrue(outcome.timedOut());
+        assertTrue(outcome.stalled());
+        assertTrue(outcome.finished().contains(first));
+        assertFalse(outcome.finished().contains(unreached));
+        assertTrue(outcome.overran().isEmpty());
+
+    }
+
+    @Test
+    public void testLeftoverThreadsAreStopped() throws Exception {
+
+        Thread[] leftover = new Thread[1];
+        watchdog.run(progress -> {
+            // inherits the watchdog's thread group
+            leftover[0] = new Thread(() -> {
+                while (true) {
+                    Thread.onSpinWait();
+                }
+            });
+            leftover[0].start();
+        }, 1000L);
+
+        assertTrue(leftover[0].isAlive());
+        watchdog.close();
+        assertFalse(leftover[0].isAlive());
+        assertFalse(watchdog.isPoisoned());
+
+    }
+
+    private static UnitTestResult newResult(long timeoutMS) {
+        UnitTest test = new UnitTest("mypackage.SimpleTest", "testReturnsTrue");
+        test.setTimeoutMS(timeoutMS);
+        return new UnitTestResult(test, 1);
+    }
+
+}
@@ -16,6 +16,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
@@ -95,6 +96,35 @@ public class GPFixTest {
 
     }
 
+    @Test
+    public void testSteadyState() throws Exception {
+
+        sampler.indNumber = 5;
+        sampler.genNumber = 1;
+        sampler.steadyState = true;
+        sampler.parallelWorkers = 2;
+        sampler.sampleMethods();
+
+        try (CSVReader reader = new CSVReader(new FileReader(outputFile))) {
+            List<String[]> lines = reader.readAll();
+
+            // the same number of evaluations as the generational search
+            assertEquals(11, lines.size());
+
+            String[] header = lines.get(0);
+            int evaluationIndex = Arrays.asList(header).indexOf("EvaluationNumber");
+            List<String> evaluations = new ArrayList<>();
+            for (String[] line : lines.subList(1, lines.size())) {
+                evaluations.add(line[evaluationIndex]);
+            }
+            evaluations.sort(Comparator.comparingInt(Integer::parseInt));
+            assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"), evaluations);
+
+        }
+        Files.deleteIfExists(outputFile.toPath());  // tidy up
+
+    }
+
     @After
     public void tearDown() throws Exception {
         File resourcesDir = new File(TestConfiguration.EXAMPLE_DIR_NAME);
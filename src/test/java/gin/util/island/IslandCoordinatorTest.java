@@ -0,0 +1,45 @@
+package gin.util.island;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class IslandCoordinatorTest {
+
+    @Test
+    public void mergeResults() throws Exception {
+        File dir = Files.createTempDirectory("islands").toFile();
+        File island0 = new File(dir, "results_island0.csv");
+        File island2 = new File(dir, "results_island2.csv");
+        FileUtils.writeStringToFile(island0, "\"MethodName\",\"Patch\"\n\"a()\",\"|\"\n", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(island2, "\"MethodName\",\"Patch\"\n\"a()\",\"| x | y |\"\n\"b()\",\"|\"\n", StandardCharsets.UTF_8);
+        File missing = new File(dir, "results_island1.csv");
+        File merged = new File(dir, "results.csv");
+
+        IslandCoordinator.mergeResults(Arrays.asList(island0, missing, island2), merged);
+
+        List<String> lines = FileUtils.readLines(merged, StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList(
+                "\"Island\",\"MethodName\",\"Patch\"",
+                "\"0\",\"a()\",\"|\"",
+                "\"2\",\"a()\",\"| x | y |\"",
+                "\"2\",\"b()\",\"|\""), lines);
+
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void islandFile() {
+        File output = new File("out/results.csv");
+        assertEquals(new File("out/results_island3.csv").getAbsoluteFile(), IslandCoordinator.islandFile(output, 3, ""));
+        assertEquals(new File("out/results_timing_island0.csv").getAbsoluteFile(), IslandCoordinator.islandFile(output, 0, "_timing"));
+    }
+
+}
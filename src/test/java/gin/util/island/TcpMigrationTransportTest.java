@@ -0,0 +1,82 @@
+package gin.util.island;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TcpMigrationTransportTest {
+
+    @Test
+    public void sendAndReceive() throws Exception {
+        try (TcpMigrationTransport receiver = new TcpMigrationTransport(0, Collections.emptyList());
+             TcpMigrationTransport sender = new TcpMigrationTransport(0, TcpMigrationTransport.parsePeers("localhost:" + receiver.getPort()))) {
+            List<Migrant> migrants = Arrays.asList(
+                    new Migrant("Example.method()", "| gin.edit.line.DeleteLine \"Example.java\":3 |"),
+                    new Migrant("Example.method()", "|"));
+            sender.send(migrants);
+
+            List<Migrant> received = new ArrayList<>();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (received.size() < migrants.size() && System.currentTimeMillis() < deadline) {
+                received.addAll(receiver.receive());
+                Thread.sleep(10);
+            }
+            assertEquals(migrants, received);
+            assertTrue(receiver.receive().isEmpty());
+        }
+    }
+
+    @Test
+    public void stalledPeerDoesNotHoldUpOthers() throws Exception {
+        try (TcpMigrationTransport receiver = new TcpMigrationTransport(0, Collections.emptyList());
+             TcpMigrationTransport sender = new TcpMigrationTransport(0, TcpMigrationTransport.parsePeers("localhost:" + receiver.getPort()));
+             Socket stalled = new Socket("localhost", receiver.getPort())) {
+            // the stalled peer says there is a migrant, then sends nothing more
+            stalled.getOutputStream().write(new byte[]{0, 0, 0, 1});
+            stalled.getOutputStream().flush();
+
+            List<Migrant> migrants = Collections.singletonList(new Migrant("Example.method()", "|"));
+            sender.send(migrants);
+            List<Migrant> received = new ArrayList<>();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (received.isEmpty() && System.currentTimeMillis() < deadline) {
+                received.addAll(receiver.receive());
+                Thread.sleep(10);
+            }
+            assertEquals(migrants, received);
+        }
+    }
+
+    @Test
+    public void unreachablePeerIsSkipped() throws Exception {
+        int port;
+        try (TcpMigrationTransport closed = new TcpMigrationTransport(0, Collections.emptyList())) {
+            port = closed.getPort();
+        }
+        try (TcpMigrationTransport sender = new TcpMigrationTransport(0, TcpMigrationTransport.parsePeers(":" + port))) {
+            sender.send(Collections.singletonList(new Migrant("Example.method()", "|")));
+        }
+    }
+
+    @Test
+    public void parsePeers() {
+        List<InetSocketAddress> peers = TcpMigrationTransport.parsePeers("host1:4000, host2:4001,");
+        assertEquals(2, peers.size());
+        assertEquals("host2", peers.get(1).getHostString());
+        assertEquals(4001, peers.get(1).getPort());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parsePeersWithoutPort() {
+        TcpMigrationTransport.parsePeers("host1");
+    }
+
+}